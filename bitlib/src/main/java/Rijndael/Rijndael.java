@@ -440,27 +440,40 @@ public final class Rijndael {
      * @param   ct          ciphertext block.
      */
     public void encrypt(byte[] pt, byte[] ct) {
+        encrypt(pt, 0, ct, 0);
+    }
+
+    /**
+     * Encrypt exactly one block (BLOCK_SIZE bytes) of plaintext at an offset.
+     * The plaintext and ciphertext may be the same block of the same array.
+     *
+     * @param   pt          plaintext buffer.
+     * @param   ptOff       offset of the plaintext block.
+     * @param   ct          ciphertext buffer.
+     * @param   ctOff       offset of the ciphertext block.
+     */
+    public void encrypt(byte[] pt, int ptOff, byte[] ct, int ctOff) {
         /*
 	     * map byte array block to cipher state
 	     * and add initial round key:
 	     */
         int k = 0, v;
-        int t0   = ((pt[ 0]       ) << 24 |
-                (pt[ 1] & 0xff) << 16 |
-                (pt[ 2] & 0xff) <<  8 |
-                (pt[ 3] & 0xff)        ) ^ rek[0];
-        int t1   = ((pt[ 4]       ) << 24 |
-                (pt[ 5] & 0xff) << 16 |
-                (pt[ 6] & 0xff) <<  8 |
-                (pt[ 7] & 0xff)        ) ^ rek[1];
-        int t2   = ((pt[ 8]       ) << 24 |
-                (pt[ 9] & 0xff) << 16 |
-                (pt[10] & 0xff) <<  8 |
-                (pt[11] & 0xff)        ) ^ rek[2];
-        int t3   = ((pt[12]       ) << 24 |
-                (pt[13] & 0xff) << 16 |
-                (pt[14] & 0xff) <<  8 |
-                (pt[15] & 0xff)        ) ^ rek[3];
+        int t0   = ((pt[ptOff]       ) << 24 |
+                (pt[ptOff + 1] & 0xff) << 16 |
+                (pt[ptOff + 2] & 0xff) <<  8 |
+                (pt[ptOff + 3] & 0xff)        ) ^ rek[0];
+        int t1   = ((pt[ptOff + 4]       ) << 24 |
+                (pt[ptOff + 5] & 0xff) << 16 |
+                (pt[ptOff + 6] & 0xff) <<  8 |
+                (pt[ptOff + 7] & 0xff)        ) ^ rek[1];
+        int t2   = ((pt[ptOff + 8]       ) << 24 |
+                (pt[ptOff + 9] & 0xff) << 16 |
+                (pt[ptOff + 10] & 0xff) <<  8 |
+                (pt[ptOff + 11] & 0xff)        ) ^ rek[2];
+        int t3   = ((pt[ptOff + 12]       ) << 24 |
+                (pt[ptOff + 13] & 0xff) << 16 |
+                (pt[ptOff + 14] & 0xff) <<  8 |
+                (pt[ptOff + 15] & 0xff)        ) ^ rek[3];
         /*
 	     * Nr - 1 full rounds:
 	     */
@@ -498,28 +511,28 @@ public final class Rijndael {
         k += 4;
 
         v = rek[k    ];
-        ct[ 0] = (byte)(Se[(t0 >>> 24)       ] ^ (v >>> 24));
-        ct[ 1] = (byte)(Se[(t1 >>> 16) & 0xff] ^ (v >>> 16));
-        ct[ 2] = (byte)(Se[(t2 >>>  8) & 0xff] ^ (v >>>  8));
-        ct[ 3] = (byte)(Se[(t3       ) & 0xff] ^ (v       ));
+        ct[ctOff] = (byte)(Se[(t0 >>> 24)       ] ^ (v >>> 24));
+        ct[ctOff + 1] = (byte)(Se[(t1 >>> 16) & 0xff] ^ (v >>> 16));
+        ct[ctOff + 2] = (byte)(Se[(t2 >>>  8) & 0xff] ^ (v >>>  8));
+        ct[ctOff + 3] = (byte)(Se[(t3       ) & 0xff] ^ (v       ));
 
         v = rek[k + 1];
-        ct[ 4] = (byte)(Se[(t1 >>> 24)       ] ^ (v >>> 24));
-        ct[ 5] = (byte)(Se[(t2 >>> 16) & 0xff] ^ (v >>> 16));
-        ct[ 6] = (byte)(Se[(t3 >>>  8) & 0xff] ^ (v >>>  8));
-        ct[ 7] = (byte)(Se[(t0       ) & 0xff] ^ (v       ));
+        ct[ctOff + 4] = (byte)(Se[(t1 >>> 24)       ] ^ (v >>> 24));
+        ct[ctOff + 5] = (byte)(Se[(t2 >>> 16) & 0xff] ^ (v >>> 16));
+        ct[ctOff + 6] = (byte)(Se[(t3 >>>  8) & 0xff] ^ (v >>>  8));
+        ct[ctOff + 7] = (byte)(Se[(t0       ) & 0xff] ^ (v       ));
 
         v = rek[k + 2];
-        ct[ 8] = (byte)(Se[(t2 >>> 24)       ] ^ (v >>> 24));
-        ct[ 9] = (byte)(Se[(t3 >>> 16) & 0xff] ^ (v >>> 16));
-        ct[10] = (byte)(Se[(t0 >>>  8) & 0xff] ^ (v >>>  8));
-        ct[11] = (byte)(Se[(t1       ) & 0xff] ^ (v       ));
+        ct[ctOff + 8] = (byte)(Se[(t2 >>> 24)       ] ^ (v >>> 24));
+        ct[ctOff + 9] = (byte)(Se[(t3 >>> 16) & 0xff] ^ (v >>> 16));
+        ct[ctOff + 10] = (byte)(Se[(t0 >>>  8) & 0xff] ^ (v >>>  8));
+        ct[ctOff + 11] = (byte)(Se[(t1       ) & 0xff] ^ (v       ));
 
         v = rek[k + 3];
-        ct[12] = (byte)(Se[(t3 >>> 24)       ] ^ (v >>> 24));
-        ct[13] = (byte)(Se[(t0 >>> 16) & 0xff] ^ (v >>> 16));
-        ct[14] = (byte)(Se[(t1 >>>  8) & 0xff] ^ (v >>>  8));
-        ct[15] = (byte)(Se[(t2       ) & 0xff] ^ (v       ));
+        ct[ctOff + 12] = (byte)(Se[(t3 >>> 24)       ] ^ (v >>> 24));
+        ct[ctOff + 13] = (byte)(Se[(t0 >>> 16) & 0xff] ^ (v >>> 16));
+        ct[ctOff + 14] = (byte)(Se[(t1 >>>  8) & 0xff] ^ (v >>>  8));
+        ct[ctOff + 15] = (byte)(Se[(t2       ) & 0xff] ^ (v       ));
     }
 
     /**
@@ -529,27 +542,40 @@ public final class Rijndael {
      * @param   pt          plaintext block.
      */
     public void decrypt(byte[] ct, byte[] pt) {
+        decrypt(ct, 0, pt, 0);
+    }
+
+    /**
+     * Decrypt exactly one block (BLOCK_SIZE bytes) of ciphertext at an offset.
+     * The ciphertext and plaintext may be the same block of the same array.
+     *
+     * @param   ct          ciphertext buffer.
+     * @param   ctOff       offset of the ciphertext block.
+     * @param   pt          plaintext buffer.
+     * @param   ptOff       offset of the plaintext block.
+     */
+    public void decrypt(byte[] ct, int ctOff, byte[] pt, int ptOff) {
         /*
 	     * map byte array block to cipher state
 	     * and add initial round key:
 	     */
         int k = 0, v;
-        int t0 =   ((ct[ 0]       ) << 24 |
-                (ct[ 1] & 0xff) << 16 |
-                (ct[ 2] & 0xff) <<  8 |
-                (ct[ 3] & 0xff)        ) ^ rdk[0];
-        int t1 =   ((ct[ 4]       ) << 24 |
-                (ct[ 5] & 0xff) << 16 |
-                (ct[ 6] & 0xff) <<  8 |
-                (ct[ 7] & 0xff)        ) ^ rdk[1];
-        int t2 =   ((ct[ 8]       ) << 24 |
-                (ct[ 9] & 0xff) << 16 |
-                (ct[10] & 0xff) <<  8 |
-                (ct[11] & 0xff)        ) ^ rdk[2];
-        int t3 =   ((ct[12]       ) << 24 |
-                (ct[13] & 0xff) << 16 |
-                (ct[14] & 0xff) <<  8 |
-                (ct[15] & 0xff)        ) ^ rdk[3];
+        int t0 =   ((ct[ctOff]       ) << 24 |
+                (ct[ctOff + 1] & 0xff) << 16 |
+                (ct[ctOff + 2] & 0xff) <<  8 |
+                (ct[ctOff + 3] & 0xff)        ) ^ rdk[0];
+        int t1 =   ((ct[ctOff + 4]       ) << 24 |
+                (ct[ctOff + 5] & 0xff) << 16 |
+                (ct[ctOff + 6] & 0xff) <<  8 |
+                (ct[ctOff + 7] & 0xff)        ) ^ rdk[1];
+        int t2 =   ((ct[ctOff + 8]       ) << 24 |
+                (ct[ctOff + 9] & 0xff) << 16 |
+                (ct[ctOff + 10] & 0xff) <<  8 |
+                (ct[ctOff + 11] & 0xff)        ) ^ rdk[2];
+        int t3 =   ((ct[ctOff + 12]       ) << 24 |
+                (ct[ctOff + 13] & 0xff) << 16 |
+                (ct[ctOff + 14] & 0xff) <<  8 |
+                (ct[ctOff + 15] & 0xff)        ) ^ rdk[3];
         /*
 	     * Nr - 1 full rounds:
 	     */
@@ -587,34 +613,35 @@ public final class Rijndael {
         k += 4;
 
         v = rdk[k    ];
-        pt[ 0] = (byte)(Sd[(t0 >>> 24)       ] ^ (v >>> 24));
-        pt[ 1] = (byte)(Sd[(t3 >>> 16) & 0xff] ^ (v >>> 16));
-        pt[ 2] = (byte)(Sd[(t2 >>>  8) & 0xff] ^ (v >>>  8));
-        pt[ 3] = (byte)(Sd[(t1       ) & 0xff] ^ (v       ));
+        pt[ptOff] = (byte)(Sd[(t0 >>> 24)       ] ^ (v >>> 24));
+        pt[ptOff + 1] = (byte)(Sd[(t3 >>> 16) & 0xff] ^ (v >>> 16));
+        pt[ptOff + 2] = (byte)(Sd[(t2 >>>  8) & 0xff] ^ (v >>>  8));
+        pt[ptOff + 3] = (byte)(Sd[(t1       ) & 0xff] ^ (v       ));
 
         v = rdk[k + 1];
-        pt[ 4] = (byte)(Sd[(t1 >>> 24)       ] ^ (v >>> 24));
-        pt[ 5] = (byte)(Sd[(t0 >>> 16) & 0xff] ^ (v >>> 16));
-        pt[ 6] = (byte)(Sd[(t3 >>>  8) & 0xff] ^ (v >>>  8));
-        pt[ 7] = (byte)(Sd[(t2       ) & 0xff] ^ (v       ));
+        pt[ptOff + 4] = (byte)(Sd[(t1 >>> 24)       ] ^ (v >>> 24));
+        pt[ptOff + 5] = (byte)(Sd[(t0 >>> 16) & 0xff] ^ (v >>> 16));
+        pt[ptOff + 6] = (byte)(Sd[(t3 >>>  8) & 0xff] ^ (v >>>  8));
+        pt[ptOff + 7] = (byte)(Sd[(t2       ) & 0xff] ^ (v       ));
 
         v = rdk[k + 2];
-        pt[ 8] = (byte)(Sd[(t2 >>> 24)       ] ^ (v >>> 24));
-        pt[ 9] = (byte)(Sd[(t1 >>> 16) & 0xff] ^ (v >>> 16));
-        pt[10] = (byte)(Sd[(t0 >>>  8) & 0xff] ^ (v >>>  8));
-        pt[11] = (byte)(Sd[(t3       ) & 0xff] ^ (v       ));
+        pt[ptOff + 8] = (byte)(Sd[(t2 >>> 24)       ] ^ (v >>> 24));
+        pt[ptOff + 9] = (byte)(Sd[(t1 >>> 16) & 0xff] ^ (v >>> 16));
+        pt[ptOff + 10] = (byte)(Sd[(t0 >>>  8) & 0xff] ^ (v >>>  8));
+        pt[ptOff + 11] = (byte)(Sd[(t3       ) & 0xff] ^ (v       ));
 
         v = rdk[k + 3];
-        pt[12] = (byte)(Sd[(t3 >>> 24)       ] ^ (v >>> 24));
-        pt[13] = (byte)(Sd[(t2 >>> 16) & 0xff] ^ (v >>> 16));
-        pt[14] = (byte)(Sd[(t1 >>>  8) & 0xff] ^ (v >>>  8));
-        pt[15] = (byte)(Sd[(t0       ) & 0xff] ^ (v       ));
+        pt[ptOff + 12] = (byte)(Sd[(t3 >>> 24)       ] ^ (v >>> 24));
+        pt[ptOff + 13] = (byte)(Sd[(t2 >>> 16) & 0xff] ^ (v >>> 16));
+        pt[ptOff + 14] = (byte)(Sd[(t1 >>>  8) & 0xff] ^ (v >>>  8));
+        pt[ptOff + 15] = (byte)(Sd[(t0       ) & 0xff] ^ (v       ));
     }
 
     /**
-     * Destroy all sensitive information in this object.
+     * Destroy all sensitive information in this object. A key has to be made
+     * again before the object can be used.
      */
-    protected final void finalize() {
+    public void clearKey() {
         if (rek != null) {
             for (int i = 0; i < rek.length; i++) {
                 rek[i] = 0;
@@ -628,4 +655,11 @@ public final class Rijndael {
             rdk = null;
         }
     }
+
+    /**
+     * Destroy all sensitive information in this object.
+     */
+    protected final void finalize() {
+        clearKey();
+    }
 }
@@ -26,6 +26,7 @@ import com.mrd.bitlib.crypto.BitcoinSigner;
 import com.mrd.bitlib.crypto.IPrivateKeyRing;
 import com.mrd.bitlib.crypto.IPublicKeyRing;
 import com.mrd.bitlib.crypto.PublicKey;
+import com.mrd.bitlib.crypto.digest.SHA256Digest;
 import com.mrd.bitlib.model.*;
 import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.CoinUtil;
@@ -133,6 +134,19 @@ public class StandardTransactionBuilder {
          // Create transaction with valid outputs and empty inputs
          Transaction transaction = new Transaction(1, inputs, _outputs, getLockTime());
 
+         // The transaction up to the input being signed is hashed once into a midstate, which is extended by one
+         // input after each signature hash. Everything after the inputs is the same for all signature hashes.
+         SHA256Digest head = new SHA256Digest();
+         ByteWriter headWriter = new ByteWriter(16);
+         headWriter.putIntLE(transaction.version);
+         headWriter.putCompactInt(inputs.length);
+         head.update(headWriter.toBytes());
+         byte[][] emptyInputs = new byte[inputs.length][];
+         for (int i = 0; i < inputs.length; i++) {
+            emptyInputs[i] = toBytes(inputs[i]);
+         }
+         byte[] tail = hashTail(transaction);
+
          for (int i = 0; i < _funding.length; i++) {
             UnspentTransactionOutput f = _funding[i];
 
@@ -156,10 +170,11 @@ public class StandardTransactionBuilder {
             inputs[i].script = ScriptInput.fromOutputScript(_funding[i].script);
 
             // Calculate the transaction hash that has to be signed
-            Sha256Hash hash = hashTransaction(transaction);
+            Sha256Hash hash = hashTransaction(head, inputs[i], emptyInputs, i + 1, tail);
 
             // Set the input to the empty script again
             inputs[i] = new TransactionInput(_funding[i].outPoint, ScriptInput.EMPTY);
+            head.update(toBytes(inputs[i]));
 
             _signingRequests[i] = new SigningRequest(publicKey, hash);
          }
@@ -499,16 +514,47 @@ public class StandardTransactionBuilder {
       return sum;
    }
 
-   private static Sha256Hash hashTransaction(Transaction t) {
+   /**
+    * Hash a transaction for signing one input, given the midstate of everything before that input
+    *
+    * @param head        the digest of the transaction up to the input being signed
+    * @param input       the input being signed
+    * @param inputs      the serialized inputs
+    * @param firstInput  the index of the first input after the input being signed
+    * @param tail        the serialized outputs, lock time and hash type
+    */
+   private static Sha256Hash hashTransaction(SHA256Digest head, TransactionInput input, byte[][] inputs,
+                                             int firstInput, byte[] tail) {
       ByteWriter writer = new ByteWriter(1024);
-      t.toByteWriter(writer);
-      // We also have to write a hash type.
-      int hashType = 1;
-      writer.putIntLE(hashType);
+      input.toByteWriter(writer);
+      for (int i = firstInput; i < inputs.length; i++) {
+         writer.putBytes(inputs[i]);
+      }
+      writer.putBytes(tail);
+      byte[] bytes = writer.toBytes();
       // Note that this is NOT reversed to ensure it will be signed
       // correctly. If it were to be printed out
       // however then we would expect that it is IS reversed.
-      return HashUtils.doubleSha256(writer.toBytes());
+      return HashUtils.doubleSha256(head, bytes, 0, bytes.length);
+   }
+
+   private static byte[] hashTail(Transaction t) {
+      ByteWriter writer = new ByteWriter(1024);
+      writer.putCompactInt(t.outputs.length);
+      for (TransactionOutput output : t.outputs) {
+         output.toByteWriter(writer);
+      }
+      writer.putIntLE(t.lockTime);
+      // We also have to write a hash type.
+      int hashType = 1;
+      writer.putIntLE(hashType);
+      return writer.toBytes();
+   }
+
+   private static byte[] toBytes(TransactionInput input) {
+      ByteWriter writer = new ByteWriter(64);
+      input.toByteWriter(writer);
+      return writer.toBytes();
    }
 
    /**
@@ -23,7 +23,6 @@ package com.mrd.bitlib.bitcoinj;
 import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
 
-import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
 import java.util.Arrays;
 
@@ -48,6 +47,12 @@ import java.util.Arrays;
  * <li>Doubleclicking selects the whole number as one word if it's all
  * alphanumeric.</li>
  * </ul>
+ * <p>
+ * The conversion between base 256 and base 58 is done a machine word at a
+ * time: encoding divides by 58^5 and emits five digits per division, decoding
+ * consumes five digits per multiplication into 32 bit limbs. Decoding with a
+ * checksum verifies the checksum in the decode buffer before copying the
+ * payload out.
  */
 public class Base58 {
    public static final char[] ALPHABET = "123456789ABCDEFGHJKLMNPQRSTUVWXYZabcdefghijkmnopqrstuvwxyz".toCharArray();
@@ -62,45 +67,79 @@ public class Base58 {
       }
    }
 
+   // The number is converted in limbs of five base58 digits when encoding, and
+   // of four bytes when decoding. A limb times 2^32 or 58^5 fits into a long.
+   private static final int DIGITS_PER_LIMB = 5;
+   private static final long LIMB_58 = 58L * 58 * 58 * 58 * 58;
+   private static final long[] POWERS_OF_58 = { 1, 58, 58 * 58, 58 * 58 * 58, 58 * 58 * 58 * 58, LIMB_58 };
+   private static final int CHECKSUM_LENGTH = 4;
+
+   private static final ThreadLocal<byte[]> CHECKSUM_BUFFER = new ThreadLocal<byte[]>() {
+      @Override
+      protected byte[] initialValue() {
+         return new byte[Sha256Hash.HASH_LENGTH];
+      }
+   };
+
    /** Encodes the given bytes in base58. No checksum is appended. */
    public static String encode(byte[] input) {
-      if (input.length == 0) {
+      return encode(input, 0, input.length);
+   }
+
+   /** Encodes a range of bytes in base58. No checksum is appended. */
+   public static String encode(byte[] input, int offset, int length) {
+      if (length == 0) {
          return "";
       }
-      input = copyOfRange(input, 0, input.length);
+      int end = offset + length;
       // Count leading zeroes.
       int zeroCount = 0;
-      while (zeroCount < input.length && input[zeroCount] == 0) {
+      while (zeroCount < length && input[offset + zeroCount] == 0) {
          ++zeroCount;
       }
-      // The actual encoding.
-      byte[] temp = new byte[input.length * 2];
-      int j = temp.length;
 
-      int startAt = zeroCount;
-      while (startAt < input.length) {
-         byte mod = divmod58(input, startAt);
-         if (input[startAt] == 0) {
-            ++startAt;
+      // Convert to limbs of five base58 digits, least significant first,
+      // taking in up to four bytes at a time
+      int[] limbs = new int[(length - zeroCount) * 138 / 100 / DIGITS_PER_LIMB + 2];
+      int limbCount = 0;
+      int i = offset + zeroCount;
+      while (i < end) {
+         int chunk = Math.min(4, end - i);
+         long carry = 0;
+         for (int k = 0; k < chunk; k++) {
+            carry = (carry << 8) | (input[i++] & 0xFF);
+         }
+         int shift = chunk * 8;
+         for (int k = 0; k < limbCount; k++) {
+            long t = ((long) limbs[k] << shift) + carry;
+            carry = t / LIMB_58;
+            limbs[k] = (int) (t - carry * LIMB_58);
+         }
+         while (carry != 0) {
+            limbs[limbCount++] = (int) (carry % LIMB_58);
+            carry /= LIMB_58;
          }
-         temp[--j] = (byte) ALPHABET[mod];
       }
 
-      // Strip extra '1' if there are some after decoding.
-      while (j < temp.length && temp[j] == ALPHABET[0]) {
+      // Write the digits from the least significant end
+      char[] output = new char[zeroCount + limbCount * DIGITS_PER_LIMB];
+      int j = output.length;
+      for (int k = 0; k < limbCount; k++) {
+         int limb = limbs[k];
+         for (int d = 0; d < DIGITS_PER_LIMB; d++) {
+            output[--j] = ALPHABET[limb % 58];
+            limb /= 58;
+         }
+      }
+      // Strip the leading zero digits of the most significant limb.
+      while (j < output.length && output[j] == ALPHABET[0]) {
          ++j;
       }
       // Add as many leading '1' as there were leading zeros.
       while (--zeroCount >= 0) {
-         temp[--j] = (byte) ALPHABET[0];
-      }
-
-      byte[] output = copyOfRange(temp, j, temp.length);
-      try {
-         return new String(output, "US-ASCII");
-      } catch (UnsupportedEncodingException e) {
-         throw new RuntimeException(e); // Cannot happen.
+         output[--j] = ALPHABET[0];
       }
+      return new String(output, j, output.length - j);
    }
 
    /**
@@ -108,62 +147,105 @@ public class Base58 {
     * address encoding
     */
    public static String encodeWithChecksum(byte[] input) {
-      byte[] b = new byte[input.length + 4];
+      byte[] b = new byte[input.length + CHECKSUM_LENGTH];
       System.arraycopy(input, 0, b, 0, input.length);
-      Sha256Hash checkSum = HashUtils.doubleSha256(b, 0, input.length);
-      System.arraycopy(checkSum.getBytes(), 0, b, input.length, 4);
+      byte[] checksum = CHECKSUM_BUFFER.get();
+      HashUtils.doubleSha256(b, 0, input.length, checksum, 0);
+      System.arraycopy(checksum, 0, b, input.length, CHECKSUM_LENGTH);
       return encode(b);
    }
    
    public static byte[] decode(String input) {
-
-      if (input.length() == 0) {
-         return new byte[0];
+      int[] limbs = decodeToLimbs(input);
+      if (limbs == null) {
+         return null;
       }
+      byte[] output = new byte[decodedLength(limbs)];
+      writeDecoded(limbs, output, 0, output.length);
+      return output;
+   }
+
+   /**
+    * Decode a base58 string into the base 2^32 limbs of its value, least
+    * significant first. The first element holds the number of leading zero
+    * bytes and the second the number of limbs that follow.
+    *
+    * @return the limbs or null if the input contains characters that are not
+    *         base58
+    */
+   private static int[] decodeToLimbs(String input) {
+      int start = 0;
       // Get rid of any UTF-8 BOM marker. Those should not be present, but might have slipped in nonetheless,
       // since Java does not automatically discard them when reading a stream. Only remove it, if at the beginning
       // of the string. Otherwise, something is probably seriously wrong.
-      if (input.charAt(0) == '\uFEFF') input = input.substring(1);
-
-      byte[] input58 = new byte[input.length()];
-      // Transform the String to a base58 byte sequence
-      for (int i = 0; i < input.length(); ++i) {
-         char c = input.charAt(i);
-
-         int digit58 = -1;
-         if (c >= 0 && c < 128) {
-            digit58 = INDEXES[c];
-         }
-         if (digit58 < 0) {
-            return null;
-         }
-
-         input58[i] = (byte) digit58;
+      if (input.length() > 0 && input.charAt(0) == '\uFEFF') {
+         start = 1;
       }
+      int length = input.length();
+
       // Count leading zeroes
       int zeroCount = 0;
-      while (zeroCount < input58.length && input58[zeroCount] == 0) {
+      while (start + zeroCount < length && input.charAt(start + zeroCount) == ALPHABET[0]) {
          ++zeroCount;
       }
-      // The encoding
-      byte[] temp = new byte[input.length()];
-      int j = temp.length;
 
-      int startAt = zeroCount;
-      while (startAt < input58.length) {
-         byte mod = divmod256(input58, startAt);
-         if (input58[startAt] == 0) {
-            ++startAt;
+      // Convert to limbs of four bytes, taking in up to five digits at a time
+      int[] limbs = new int[2 + (length - start - zeroCount) * 733 / 1000 / 4 + 2];
+      int limbCount = 0;
+      int i = start + zeroCount;
+      while (i < length) {
+         int chunk = Math.min(DIGITS_PER_LIMB, length - i);
+         long carry = 0;
+         for (int k = 0; k < chunk; k++) {
+            char c = input.charAt(i++);
+            int digit58 = c < 128 ? INDEXES[c] : -1;
+            if (digit58 < 0) {
+               return null;
+            }
+            carry = carry * 58 + digit58;
+         }
+         long multiplier = POWERS_OF_58[chunk];
+         for (int k = 2; k < 2 + limbCount; k++) {
+            long t = (limbs[k] & 0xFFFFFFFFL) * multiplier + carry;
+            limbs[k] = (int) t;
+            carry = t >>> 32;
+         }
+         if (carry != 0) {
+            limbs[2 + limbCount++] = (int) carry;
          }
-
-         temp[--j] = mod;
       }
-      // Do no add extra leading zeroes, move j to first non null byte.
-      while (j < temp.length && temp[j] == 0) {
-         ++j;
+      limbs[0] = zeroCount;
+      limbs[1] = limbCount;
+      return limbs;
+   }
+
+   private static int decodedLength(int[] limbs) {
+      int limbCount = limbs[1];
+      int significantBytes = limbCount * 4;
+      if (limbCount > 0) {
+         significantBytes -= Integer.numberOfLeadingZeros(limbs[1 + limbCount]) / 8;
       }
+      return limbs[0] + significantBytes;
+   }
 
-      return copyOfRange(temp, j - zeroCount, temp.length);
+   /**
+    * Write the decoded value big endian into a buffer, right aligned in the
+    * given length
+    */
+   private static void writeDecoded(int[] limbs, byte[] output, int offset, int length) {
+      int zeroCount = limbs[0];
+      int limbCount = limbs[1];
+      for (int i = 0; i < zeroCount; i++) {
+         output[offset + i] = 0;
+      }
+      int j = offset + length;
+      for (int k = 2; k < 2 + limbCount && j > offset + zeroCount; k++) {
+         int limb = limbs[k];
+         for (int b = 0; b < 4 && j > offset + zeroCount; b++) {
+            output[--j] = (byte) limb;
+            limb >>>= 8;
+         }
+      }
    }
 
    public static BigInteger decodeToBigInteger(String input) {
@@ -175,60 +257,28 @@ public class Base58 {
     * rest are correct. The checksum is removed from the returned data.
     */
    public static byte[] decodeChecked(String input) {
-      byte tmp[] = decode(input);
-      if (tmp == null || tmp.length < 4) {
+      int[] limbs = decodeToLimbs(input);
+      if (limbs == null) {
          return null;
       }
-      byte[] bytes = copyOfRange(tmp, 0, tmp.length - 4);
-      byte[] checksum = copyOfRange(tmp, tmp.length - 4, tmp.length);
-
-      Sha256Hash sha256Hash = HashUtils.doubleSha256(bytes);
-      byte[] hash = sha256Hash.firstFourBytes();
-      if (!Arrays.equals(checksum, hash)) {
+      int length = decodedLength(limbs);
+      if (length < CHECKSUM_LENGTH) {
          return null;
       }
-
-      return bytes;
-   }
-
-   //
-   // number -> number / 58, returns number % 58
-   //
-   private static byte divmod58(byte[] number, int startAt) {
-      int remainder = 0;
-      for (int i = startAt; i < number.length; i++) {
-         int digit256 = (int) number[i] & 0xFF;
-         int temp = remainder * 256 + digit256;
-
-         number[i] = (byte) (temp / 58);
-
-         remainder = temp % 58;
+      // Decode the payload followed by the checksum into one buffer and only
+      // copy the payload out once the checksum has been verified
+      byte[] decoded = new byte[length];
+      writeDecoded(limbs, decoded, 0, length);
+      int payloadLength = length - CHECKSUM_LENGTH;
+      byte[] hash = CHECKSUM_BUFFER.get();
+      HashUtils.doubleSha256(decoded, 0, payloadLength, hash, 0);
+      int difference = 0;
+      for (int i = 0; i < CHECKSUM_LENGTH; i++) {
+         difference |= hash[i] ^ decoded[payloadLength + i];
       }
-
-      return (byte) remainder;
-   }
-
-   //
-   // number -> number / 256, returns number % 256
-   //
-   private static byte divmod256(byte[] number58, int startAt) {
-      int remainder = 0;
-      for (int i = startAt; i < number58.length; i++) {
-         int digit58 = (int) number58[i] & 0xFF;
-         int temp = remainder * 58 + digit58;
-
-         number58[i] = (byte) (temp / 256);
-
-         remainder = temp % 256;
+      if (difference != 0) {
+         return null;
       }
-
-      return (byte) remainder;
-   }
-
-   private static byte[] copyOfRange(byte[] source, int from, int to) {
-      byte[] range = new byte[to - from];
-      System.arraycopy(source, from, range, 0, range.length);
-
-      return range;
+      return Arrays.copyOf(decoded, payloadLength);
    }
 }
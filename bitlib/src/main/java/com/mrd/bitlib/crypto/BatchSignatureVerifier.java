@@ -0,0 +1,246 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.mrd.bitlib.crypto.ec.EcTools;
+import com.mrd.bitlib.crypto.ec.Parameters;
+import com.mrd.bitlib.crypto.ec.Point;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * Verifies many ECDSA signatures at once, for instance all inputs of a
+ * transaction.
+ * <p>
+ * Each signature is still checked on its own, but the work is shared where
+ * possible:
+ * <ul>
+ * <li>the s^-1 mod n of all signatures are calculated with a single modular
+ * inversion (Montgomery's trick)</li>
+ * <li>the resulting points are converted to affine coordinates with a single
+ * field inversion</li>
+ * <li>the precomputed multiples of a public key are reused for all its
+ * signatures</li>
+ * </ul>
+ * Optionally the signatures are split into chunks and verified on an
+ * executor. Add the
+ * signatures with one of the add methods and call {@link #verify()}. The
+ * result holds one entry per added signature in the order they were added.
+ * <p>
+ * Instances are not thread safe.
+ */
+public class BatchSignatureVerifier {
+   /**
+    * Batches are not split further than this in parallel verification
+    */
+   private static final int MIN_CHUNK_SIZE = 8;
+
+   private static class Entry {
+      private final BigInteger e;
+      private final Signature signature;
+      private final PublicKey publicKey;
+
+      private Entry(BigInteger e, Signature signature, PublicKey publicKey) {
+         this.e = e;
+         this.signature = signature;
+         this.publicKey = publicKey;
+      }
+   }
+
+   // null entries are signatures that failed decoding or range checks
+   private final List<Entry> _entries = new ArrayList<Entry>();
+
+   /**
+    * Add a standard bitcoin signature, a DER encoded signature followed by a
+    * hash type byte. See
+    * {@link PublicKey#verifyStandardBitcoinSignature(Sha256Hash, byte[], boolean)}
+    *
+    * @return the index of the signature in the result
+    */
+   public int addStandardBitcoinSignature(Sha256Hash data, byte[] signature, PublicKey publicKey, boolean forceLowS) {
+      ByteReader reader = new ByteReader(signature);
+      Signature params = Signatures.decodeSignatureParameters(reader);
+      // Make sure that we have a hash type at the end
+      if (params == null || reader.available() != 1) {
+         return addInvalid();
+      }
+      return add(data.getBytes(), params, publicKey, forceLowS);
+   }
+
+   /**
+    * Add a DER encoded signature without hash type. See
+    * {@link PublicKey#verifyDerEncodedSignature(Sha256Hash, byte[])}
+    *
+    * @return the index of the signature in the result
+    */
+   public int addDerEncodedSignature(Sha256Hash data, byte[] signature, PublicKey publicKey) {
+      Signature params = Signatures.decodeSignatureParameters(new ByteReader(signature));
+      if (params == null) {
+         return addInvalid();
+      }
+      return add(data.getBytes(), params, publicKey, false);
+   }
+
+   /**
+    * Add a signature of a message
+    *
+    * @return the index of the signature in the result
+    */
+   public int add(byte[] message, Signature signature, PublicKey publicKey, boolean forceLowS) {
+      if (!Signatures.isInRange(signature, forceLowS)) {
+         return addInvalid();
+      }
+      _entries.add(new Entry(Signatures.calculateE(Parameters.n, message), signature, publicKey));
+      return _entries.size() - 1;
+   }
+
+   private int addInvalid() {
+      _entries.add(null);
+      return _entries.size() - 1;
+   }
+
+   /**
+    * The number of signatures added
+    */
+   public int size() {
+      return _entries.size();
+   }
+
+   /**
+    * Verify all signatures in the calling thread
+    *
+    * @return for each added signature whether it is valid
+    */
+   public boolean[] verify() {
+      boolean[] results = new boolean[_entries.size()];
+      verifyRange(_entries, 0, results.length, results);
+      return results;
+   }
+
+   /**
+    * Verify all signatures on the given executor, split into one chunk per
+    * thread. Chunks are verified in the calling thread if there is only one.
+    *
+    * @param threads the number of threads of the executor
+    * @return for each added signature whether it is valid
+    */
+   public boolean[] verify(ExecutorService executor, int threads) {
+      final boolean[] results = new boolean[_entries.size()];
+      int chunkSize = Math.max(MIN_CHUNK_SIZE, (results.length + threads - 1) / Math.max(1, threads));
+      if (results.length <= chunkSize) {
+         verifyRange(_entries, 0, results.length, results);
+         return results;
+      }
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int from = 0; from < results.length; from += chunkSize) {
+         final int chunkFrom = from;
+         final int chunkTo = Math.min(results.length, from + chunkSize);
+         futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+               verifyRange(_entries, chunkFrom, chunkTo, results);
+               return null;
+            }
+         }));
+      }
+      try {
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } catch (InterruptedException e) {
+         for (Future<Void> future : futures) {
+            future.cancel(true);
+         }
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      }
+      return results;
+   }
+
+   private static void verifyRange(List<Entry> entries, int from, int to, boolean[] results) {
+      BigInteger n = Parameters.n;
+      int count = to - from;
+
+      BigInteger[] sInverses = new BigInteger[count];
+      for (int i = 0; i < count; i++) {
+         Entry entry = entries.get(from + i);
+         sInverses[i] = entry == null ? null : entry.signature.s;
+      }
+      invertAll(sInverses, n);
+
+      Point[] points = new Point[count];
+      for (int i = 0; i < count; i++) {
+         Entry entry = entries.get(from + i);
+         if (entry == null) {
+            points[i] = Parameters.curve.getInfinity();
+            continue;
+         }
+         BigInteger c = sInverses[i];
+         BigInteger u1 = entry.e.multiply(c).mod(n);
+         BigInteger u2 = entry.signature.r.multiply(c).mod(n);
+         points[i] = EcTools.sumOfTwoMultiplies(Parameters.G, u1, entry.publicKey.getQ(), u2);
+      }
+      points = EcTools.normalizeAll(points);
+
+      for (int i = 0; i < count; i++) {
+         Entry entry = entries.get(from + i);
+         if (entry == null || points[i].isInfinity()) {
+            results[from + i] = false;
+            continue;
+         }
+         BigInteger v = points[i].getX().toBigInteger().mod(n);
+         results[from + i] = v.equals(entry.signature.r);
+      }
+   }
+
+   /**
+    * Replace all non-null values by their inverse mod a prime using a single
+    * modular inversion. All non-null values must be in [1, modulus-1].
+    */
+   static void invertAll(BigInteger[] values, BigInteger modulus) {
+      // products[i] is the product of all non-null values before index i
+      BigInteger[] products = new BigInteger[values.length];
+      BigInteger product = BigInteger.ONE;
+      for (int i = 0; i < values.length; i++) {
+         if (values[i] != null) {
+            products[i] = product;
+            product = product.multiply(values[i]).mod(modulus);
+         }
+      }
+      BigInteger inverse = product.modInverse(modulus);
+      for (int i = values.length - 1; i >= 0; i--) {
+         if (values[i] != null) {
+            BigInteger value = values[i];
+            values[i] = inverse.multiply(products[i]).mod(modulus);
+            inverse = inverse.multiply(value).mod(modulus);
+         }
+      }
+   }
+}
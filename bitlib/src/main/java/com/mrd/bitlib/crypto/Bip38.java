@@ -51,10 +51,15 @@ public class Bip38 {
     */
    public static String encryptNoEcMultiply(String passphrase, String base58EncodedPrivateKey,
                                             SCryptProgress progressTracker, NetworkParameters network) throws InterruptedException {
+      return encryptNoEcMultiply(passphrase, base58EncodedPrivateKey, progressTracker, network, null);
+   }
+
+   static String encryptNoEcMultiply(String passphrase, String base58EncodedPrivateKey, SCryptProgress progressTracker,
+                                     NetworkParameters network, SCrypt.Scratch scratch) throws InterruptedException {
       InMemoryPrivateKey key = new InMemoryPrivateKey(base58EncodedPrivateKey, NetworkParameters.productionNetwork);
       Address address = key.getPublicKey().toAddress(NetworkParameters.productionNetwork);
       byte[] salt = Bip38.calculateScryptSalt(address);
-      byte[] stretchedKeyMaterial = bip38Stretch1(passphrase, salt, progressTracker, SCRYPT_LENGTH);
+      byte[] stretchedKeyMaterial = bip38Stretch1(passphrase, salt, progressTracker, SCRYPT_LENGTH, scratch);
       return encryptNoEcMultiply(stretchedKeyMaterial, key, salt);
    }
 
@@ -66,10 +71,23 @@ public class Bip38 {
     */
    public static byte[] bip38Stretch1(String passphrase, byte[] salt, SCryptProgress progressTracker, int outputSize)
          throws InterruptedException {
+      return bip38Stretch1(passphrase, salt, progressTracker, outputSize, null);
+   }
+
+   /**
+    * Perform BIP38 password stretching in the calling thread using the given
+    * scrypt scratch space, or the default way if it is null
+    */
+   static byte[] bip38Stretch1(String passphrase, byte[] salt, SCryptProgress progressTracker, int outputSize,
+                               SCrypt.Scratch scratch) throws InterruptedException {
       byte[] derived;
       try {
-         derived = SCrypt.scrypt(passphrase.getBytes("UTF-8"), salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, outputSize,
-               progressTracker);
+         byte[] password = passphrase.getBytes("UTF-8");
+         if (scratch == null) {
+            derived = SCrypt.scrypt(password, salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, outputSize, progressTracker);
+         } else {
+            derived = SCrypt.scrypt(password, salt, SCRYPT_N, SCRYPT_R, SCRYPT_P, outputSize, progressTracker, scratch);
+         }
          return derived;
       } catch (UnsupportedEncodingException e) {
          throw new RuntimeException(e);
@@ -237,20 +255,30 @@ public class Bip38 {
     */
    public static String decrypt(String bip38PrivateKeyString, String passphrase, SCryptProgress progressTracker,
                                 NetworkParameters network) throws InterruptedException {
+      return decrypt(bip38PrivateKeyString, passphrase, progressTracker, network, null);
+   }
+
+   static String decrypt(String bip38PrivateKeyString, String passphrase, SCryptProgress progressTracker,
+                         NetworkParameters network, SCrypt.Scratch scratch) throws InterruptedException {
       Bip38PrivateKey bip38Key = parseBip38PrivateKey(bip38PrivateKeyString);
       if (bip38Key == null) {
          return null;
       }
       if (bip38Key.ecMultiply) {
-         return decryptEcMultiply(bip38Key, passphrase, progressTracker, network);
+         return decryptEcMultiply(bip38Key, passphrase, progressTracker, network, scratch);
       } else {
-         byte[] stretcedKeyMaterial = bip38Stretch1(passphrase, bip38Key.salt, progressTracker, SCRYPT_LENGTH);
+         byte[] stretcedKeyMaterial = bip38Stretch1(passphrase, bip38Key.salt, progressTracker, SCRYPT_LENGTH, scratch);
          return decryptNoEcMultiply(bip38Key, stretcedKeyMaterial, network);
       }
    }
 
    public static String decryptEcMultiply(Bip38PrivateKey bip38Key, String passphrase, SCryptProgress progressTracker,
                                           NetworkParameters network) throws InterruptedException {
+      return decryptEcMultiply(bip38Key, passphrase, progressTracker, network, null);
+   }
+
+   static String decryptEcMultiply(Bip38PrivateKey bip38Key, String passphrase, SCryptProgress progressTracker,
+                                   NetworkParameters network, SCrypt.Scratch scratch) throws InterruptedException {
       // Get 8 byte Owner Salt
       byte[] ownerEntropy = new byte[8];
       System.arraycopy(bip38Key.data, 0, ownerEntropy, 0, 8);
@@ -262,7 +290,7 @@ public class Bip38 {
       }
 
       // Stretch to get Pass Factor
-      byte[] passFactor = bip38Stretch1(passphrase, ownerSalt, progressTracker, 32);
+      byte[] passFactor = bip38Stretch1(passphrase, ownerSalt, progressTracker, 32, scratch);
 
       if (bip38Key.lotSequence) {
          byte[] tmp = new byte[40];
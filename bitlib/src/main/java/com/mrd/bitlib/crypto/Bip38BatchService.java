@@ -0,0 +1,314 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.lambdaworks.crypto.SCrypt;
+import com.mrd.bitlib.lambdaworks.crypto.SCryptProgress;
+import com.mrd.bitlib.model.NetworkParameters;
+
+/**
+ * Encrypts and decrypts many BIP38 keys on a bounded pool of worker threads.
+ * <p>
+ * Every key needs one scrypt calculation with 16 MB of scratch space. Each
+ * worker thread allocates its scratch space once and reuses it for all the
+ * keys it processes, so a batch needs no more memory than a single key per
+ * thread. The keys of a batch share one progress tracker, and a batch can be
+ * cancelled as a whole.
+ */
+public class Bip38BatchService {
+
+   private static final long SCRATCH_BYTES = 128L * Bip38.SCRYPT_R * Bip38.SCRYPT_N;
+   // The mixing iterations a key reports to its progress tracker
+   private static final long KEY_WORK = 2L * Bip38.SCRYPT_N * Bip38.SCRYPT_P;
+
+   /**
+    * Receives the result of each key as soon as it is done. It is called on
+    * the worker threads, in no particular order.
+    */
+   public interface Listener {
+      /**
+       * @param index
+       *           the position of the key in the batch
+       * @param input
+       *           the key as passed to the batch
+       * @param result
+       *           the decrypted or encrypted key, or null if the passphrase was
+       *           wrong or the key could not be parsed
+       */
+      void onResult(int index, String input, String result);
+   }
+
+   /**
+    * A handle on a batch that has been submitted
+    */
+   public static class Job {
+      private final SCryptProgress _progress;
+      private final List<Future<String>> _futures;
+
+      private Job(SCryptProgress progress, int size) {
+         _progress = progress;
+         _futures = new ArrayList<Future<String>>(size);
+      }
+
+      /**
+       * Get the progress of the whole batch between 0 and 1
+       */
+      public double getProgress() {
+         return _progress.getProgress();
+      }
+
+      /**
+       * Stop the batch. Keys that are being processed are aborted, and keys
+       * that have not been started are skipped.
+       */
+      public void cancel() {
+         _progress.terminate();
+         for (Future<String> future : _futures) {
+            future.cancel(false);
+         }
+      }
+
+      public boolean isDone() {
+         for (Future<String> future : _futures) {
+            if (!future.isDone()) {
+               return false;
+            }
+         }
+         return true;
+      }
+
+      /**
+       * Wait for the batch to finish and get the results in the order of the
+       * input keys. A result is null if the passphrase was wrong or the key
+       * could not be parsed.
+       *
+       * @throws InterruptedException
+       *            if the batch has been cancelled or the calling thread is
+       *            interrupted
+       */
+      public List<String> awaitResults() throws InterruptedException {
+         List<String> results = new ArrayList<String>(_futures.size());
+         for (Future<String> future : _futures) {
+            try {
+               results.add(future.get());
+            } catch (CancellationException e) {
+               throw new InterruptedException();
+            } catch (ExecutionException e) {
+               if (e.getCause() instanceof InterruptedException) {
+                  throw (InterruptedException) e.getCause();
+               }
+               if (e.getCause() instanceof RuntimeException) {
+                  throw (RuntimeException) e.getCause();
+               }
+               throw new RuntimeException(e.getCause());
+            }
+         }
+         return results;
+      }
+   }
+
+   private final ExecutorService _executor;
+   private final ThreadLocal<SCrypt.Scratch> _scratch = new ThreadLocal<SCrypt.Scratch>() {
+      @Override
+      protected SCrypt.Scratch initialValue() {
+         return new SCrypt.Scratch(Bip38.SCRYPT_N, Bip38.SCRYPT_R);
+      }
+   };
+
+   /**
+    * Create a service with a worker thread for every processor, as long as
+    * their scratch space uses at most a quarter of the maximum heap size.
+    */
+   public Bip38BatchService() {
+      this(defaultThreads());
+   }
+
+   public Bip38BatchService(int threads) {
+      Preconditions.checkArgument(threads > 0, "at least one thread is needed");
+      _executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+         private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+         @Override
+         public Thread newThread(Runnable r) {
+            Thread thread = delegate.newThread(r);
+            thread.setDaemon(true);
+            return thread;
+         }
+      });
+   }
+
+   private static int defaultThreads() {
+      long memoryThreads = Runtime.getRuntime().maxMemory() / 4 / SCRATCH_BYTES;
+      return (int) Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), memoryThreads));
+   }
+
+   /**
+    * Decrypt BIP38 keys that all use the same passphrase
+    *
+    * @param listener
+    *           notified as each key is done, may be null
+    */
+   public Job decrypt(List<String> bip38PrivateKeys, String passphrase, NetworkParameters network, Listener listener) {
+      return decrypt(bip38PrivateKeys, Collections.nCopies(bip38PrivateKeys.size(), passphrase), network, listener);
+   }
+
+   /**
+    * Decrypt BIP38 keys with a passphrase for each key
+    *
+    * @param listener
+    *           notified as each key is done, may be null
+    */
+   public Job decrypt(List<String> bip38PrivateKeys, List<String> passphrases, final NetworkParameters network,
+                      Listener listener) {
+      return submit(bip38PrivateKeys, passphrases, listener, new Operation() {
+         @Override
+         public String run(String key, String passphrase, SCryptProgress progress, SCrypt.Scratch scratch)
+               throws InterruptedException {
+            return Bip38.decrypt(key, passphrase, progress, network, scratch);
+         }
+      });
+   }
+
+   /**
+    * Encrypt SIPA formatted private keys with a passphrase
+    *
+    * @param listener
+    *           notified as each key is done, may be null
+    */
+   public Job encrypt(List<String> base58EncodedPrivateKeys, String passphrase, final NetworkParameters network,
+                      Listener listener) {
+      List<String> passphrases = Collections.nCopies(base58EncodedPrivateKeys.size(), passphrase);
+      return submit(base58EncodedPrivateKeys, passphrases, listener, new Operation() {
+         @Override
+         public String run(String key, String passphrase, SCryptProgress progress, SCrypt.Scratch scratch)
+               throws InterruptedException {
+            return Bip38.encryptNoEcMultiply(passphrase, key, progress, network, scratch);
+         }
+      });
+   }
+
+   /**
+    * Stop the worker threads. Batches that are still running are finished
+    * first.
+    */
+   public void shutdown() {
+      _executor.shutdown();
+   }
+
+   private interface Operation {
+      String run(String key, String passphrase, SCryptProgress progress, SCrypt.Scratch scratch)
+            throws InterruptedException;
+   }
+
+   /**
+    * The progress of a single key, which is passed on to the progress of the
+    * batch
+    */
+   private static class KeyProgress extends SCryptProgress {
+      private static final long serialVersionUID = 1L;
+
+      private final SCryptProgress _batch;
+      // Lanes may report in parallel
+      private final AtomicLong _reported = new AtomicLong();
+
+      private KeyProgress(SCryptProgress batch) {
+         super(Bip38.SCRYPT_N, Bip38.SCRYPT_R, Bip38.SCRYPT_P);
+         _batch = batch;
+      }
+
+      @Override
+      public void addWork(int iterations) throws InterruptedException {
+         _reported.addAndGet(iterations);
+         _batch.addWork(iterations);
+      }
+
+      @Override
+      public void checkTerminated() throws InterruptedException {
+         _batch.checkTerminated();
+      }
+
+      @Override
+      public void terminate() {
+         _batch.terminate();
+      }
+
+      @Override
+      public double getProgress() {
+         return (double) _reported.get() / KEY_WORK;
+      }
+
+      /**
+       * Add the work this key has not reported to the batch
+       */
+      private void complete() {
+         long remaining = KEY_WORK - _reported.getAndSet(KEY_WORK);
+         if (remaining <= 0) {
+            return;
+         }
+         try {
+            _batch.addWork((int) remaining);
+         } catch (InterruptedException e) {
+            // The batch has been cancelled, its progress does not matter any more
+         }
+      }
+   }
+
+   private Job submit(List<String> keys, List<String> passphrases, final Listener listener, final Operation operation) {
+      Preconditions.checkArgument(keys.size() == passphrases.size(), "need one passphrase for every key");
+      final SCryptProgress progress = new SCryptProgress(Bip38.SCRYPT_N, Bip38.SCRYPT_R, Bip38.SCRYPT_P
+            * Math.max(1, keys.size()));
+      Job job = new Job(progress, keys.size());
+      for (int i = 0; i < keys.size(); i++) {
+         final int index = i;
+         final String key = keys.get(i);
+         final String passphrase = passphrases.get(i);
+         job._futures.add(_executor.submit(new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+               progress.checkTerminated();
+               KeyProgress keyProgress = new KeyProgress(progress);
+               String result;
+               try {
+                  result = operation.run(key, passphrase, keyProgress, _scratch.get());
+               } finally {
+                  // Keys that could not be parsed or failed part way still
+                  // count as done
+                  keyProgress.complete();
+               }
+               if (listener != null) {
+                  listener.onResult(index, key, result);
+               }
+               return result;
+            }
+         }));
+      }
+      return job;
+   }
+}
@@ -17,7 +17,6 @@
 package com.mrd.bitlib.crypto;
 
 import com.google.common.base.Optional;
-import com.mrd.bitlib.lambdaworks.crypto.PBKDF;
 import com.mrd.bitlib.util.BitUtils;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.ByteWriter;
@@ -25,17 +24,16 @@ import com.mrd.bitlib.util.HashUtils;
 
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.security.GeneralSecurityException;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Implementation of Bip39
  */
 public class Bip39 {
-   private static final String ALGORITHM = "HmacSHA512";
    private static final int REPETITIONS = 2048;
    private static final int BIP32_SEED_LENGTH = 64;
    private static final String BASE_SALT = "mnemonic";
@@ -400,30 +398,83 @@ public class Bip39 {
       if (passphrase == null) {
          passphrase = "";
       }
+      byte[] seed = Pbkdf2HmacSha512.derive(mnemonicBytes(wordList), saltBytes(passphrase), REPETITIONS,
+            BIP32_SEED_LENGTH);
+      return new MasterSeed(wordListToRawEntropy(wordList.toArray(new String[0])), passphrase, seed);
+   }
+
+   /**
+    * Generate the master seeds of a BIP39 word list for many passphrase candidates in the calling thread.
+    * <p/>
+    * This method does not check whether the check sum of the word list id valid
+    *
+    * @param wordList the word list
+    * @param passphrases the passphrase candidates
+    * @return the BIP32 master seeds in the order of the passphrases
+    */
+   public static List<MasterSeed> generateSeedsFromWordList(List<String> wordList, List<String> passphrases) {
+      return generateSeedsFromWordList(wordList, passphrases, null);
+   }
+
+   /**
+    * Generate the master seeds of a BIP39 word list for many passphrase candidates, spreading the work over the
+    * threads of an executor.
+    * <p/>
+    * This method does not check whether the check sum of the word list id valid
+    *
+    * @param wordList the word list
+    * @param passphrases the passphrase candidates
+    * @param executor the executor to use, or null to use the calling thread
+    * @return the BIP32 master seeds in the order of the passphrases
+    */
+   public static List<MasterSeed> generateSeedsFromWordList(List<String> wordList, List<String> passphrases,
+                                                            ExecutorService executor) {
+      byte[] mnemonic = mnemonicBytes(wordList);
+      List<byte[]> passwords = new ArrayList<byte[]>(passphrases.size());
+      List<byte[]> salts = new ArrayList<byte[]>(passphrases.size());
+      for (String passphrase : passphrases) {
+         passwords.add(mnemonic);
+         salts.add(saltBytes(passphrase == null ? "" : passphrase));
+      }
+      List<byte[]> seeds;
+      if (executor == null) {
+         seeds = Pbkdf2HmacSha512.deriveAll(passwords, salts, REPETITIONS, BIP32_SEED_LENGTH);
+      } else {
+         seeds = Pbkdf2HmacSha512.deriveAll(passwords, salts, REPETITIONS, BIP32_SEED_LENGTH, executor);
+      }
+
+      byte[] rawEntropy = wordListToRawEntropy(wordList.toArray(new String[0]));
+      List<MasterSeed> masterSeeds = new ArrayList<MasterSeed>(seeds.size());
+      for (int i = 0; i < seeds.size(); i++) {
+         String passphrase = passphrases.get(i);
+         masterSeeds.add(new MasterSeed(rawEntropy, passphrase == null ? "" : passphrase, seeds.get(i)));
+      }
+      return masterSeeds;
+   }
 
+   private static byte[] mnemonicBytes(List<String> wordList) {
       // Concatenate all words using a single space as separator
       StringBuilder sb = new StringBuilder();
       for (String s : wordList) {
          sb.append(s).append(' ');
       }
-      String mnemonic = sb.toString().trim();
+      return utf8Bytes(sb.toString().trim());
+   }
 
+   @SuppressWarnings("NewApi")
+   private static byte[] saltBytes(String passphrase) {
       // The salt is is the passphrase with a prefix
       String salt = BASE_SALT + passphrase;
+      return utf8Bytes(Normalizer.normalize(salt, Normalizer.Form.NFKD));
+   }
 
-      // Calculate and return the seed
-      byte[] seed;
+   private static byte[] utf8Bytes(String string) {
       try {
-         byte[] saltBytes = Normalizer.normalize(salt, Normalizer.Form.NFKD).getBytes(UTF8);
-         seed = PBKDF.pbkdf2(ALGORITHM, mnemonic.getBytes(UTF8), saltBytes, REPETITIONS, BIP32_SEED_LENGTH);
+         return string.getBytes(UTF8);
       } catch (UnsupportedEncodingException e) {
          // UTF-8 should be supported by every system we run on
          throw new RuntimeException(e);
-      } catch (GeneralSecurityException e) {
-         // HMAC-SHA512 should be supported by every system we run on
-         throw new RuntimeException(e);
       }
-      return new MasterSeed(wordListToRawEntropy(wordList.toArray(new String[0])), passphrase, seed);
    }
 
    public static final String[] ENGLISH_WORD_LIST = {"abandon", "ability", "able", "about", "above",
@@ -19,11 +19,13 @@ package com.mrd.bitlib.crypto;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 
 import com.mrd.bitlib.bitcoinj.Base58;
 import com.google.common.base.Preconditions;
+import com.mrd.bitlib.crypto.ec.EcTools;
 import com.mrd.bitlib.crypto.ec.Parameters;
 import com.mrd.bitlib.crypto.ec.Point;
 import com.mrd.bitlib.model.hdpath.HdKeyPath;
@@ -261,13 +263,9 @@ public class HdKeyNode implements Serializable {
     */
    public HdKeyNode createChildNode(int index) throws KeyGenerationException {
       byte[] data;
-      byte[] publicKeyBytes = _publicKey.getPublicKeyBytes();
       if (0 == (index & HARDENED_MARKER)) {
          // Not hardened key
-         ByteWriter writer = new ByteWriter(publicKeyBytes.length + 4);
-         writer.putBytes(publicKeyBytes);
-         writer.putIntBE(index);
-         data = writer.toBytes();
+         data = nonHardenedDerivationData(index);
       } else {
          // Hardened key
          if (!isPrivateHdKeyNode()) {
@@ -311,6 +309,104 @@ public class HdKeyNode implements Serializable {
       }
    }
 
+   /**
+    * Create the child nodes of this node for all indexes from fromIndex
+    * (inclusive) to toIndex (exclusive). Only non-hardened indexes are
+    * allowed.
+    * <p>
+    * The result is the same as calling {@link #createChildNode(int)} for each
+    * index, but the child points are calculated in Jacobian coordinates and
+    * converted to affine coordinates together with a single modular inversion.
+    * For a public node the parent point is also decoded only once. Use this
+    * when deriving long ranges of addresses.
+    *
+    * @param fromIndex
+    *           the first index to derive
+    * @param toIndex
+    *           the index after the last index to derive
+    * @return the child nodes in index order
+    * @throws KeyGenerationException
+    *            if no key can be created for one of the indexes (extremely
+    *            unlikely)
+    */
+   public List<HdKeyNode> createChildNodes(int fromIndex, int toIndex) throws KeyGenerationException {
+      Preconditions.checkArgument(fromIndex >= 0 && fromIndex <= toIndex, "invalid non-hardened index range");
+      int count = toIndex - fromIndex;
+      byte[][] chainCodes = new byte[count][];
+      BigInteger[] keys = new BigInteger[count];
+      Point[] points = new Point[count];
+      BigInteger kpar = null;
+      Point parent = null;
+      if (isPrivateHdKeyNode()) {
+         kpar = new BigInteger(1, _privateKey.getPrivateKeyBytes());
+      } else {
+         parent = Parameters.curve.decodePoint(_publicKey.getPublicKeyBytes());
+      }
+      HmacContext hmac = HmacContext.hmacSha512(_chainCode);
+      byte[] l = new byte[hmac.getMacLength()];
+      for (int i = 0; i < count; i++) {
+         hmac.update(nonHardenedDerivationData(fromIndex + i));
+         hmac.doFinal(l, 0);
+         BigInteger m = new BigInteger(1, BitUtils.copyOfRange(l, 0, 32));
+         if (m.compareTo(Parameters.n) >= 0) {
+            throw new KeyGenerationException(
+                  "An unlikely thing happened: A key derivation parameter is larger than the N modulus of the curve");
+         }
+         chainCodes[i] = BitUtils.copyOfRange(l, 32, 64);
+         if (kpar != null) {
+            BigInteger k = m.add(kpar).mod(Parameters.n);
+            if (k.equals(BigInteger.ZERO)) {
+               throw new KeyGenerationException("An unlikely thing happened: The derived key is zero");
+            }
+            keys[i] = k;
+            points[i] = Parameters.G.multiply(k);
+         } else {
+            Point q = Parameters.G.multiply(m).add(parent);
+            if (q.isInfinity()) {
+               throw new KeyGenerationException("An unlikely thing happened: Invalid key point at infinity");
+            }
+            points[i] = q;
+         }
+      }
+
+      Point[] affine = EcTools.normalizeAll(points);
+      int fingerprint = getFingerprint();
+      List<HdKeyNode> children = new ArrayList<HdKeyNode>(count);
+      for (int i = 0; i < count; i++) {
+         byte[] publicKeyBytes = new Point(Parameters.curve, affine[i].getX(), affine[i].getY(), true).getEncoded();
+         if (kpar != null) {
+            InMemoryPrivateKey key = new InMemoryPrivateKey(bigIntegerTo32Bytes(keys[i]), publicKeyBytes);
+            children.add(new HdKeyNode(key, chainCodes[i], _depth + 1, fingerprint, fromIndex + i));
+         } else {
+            children.add(new HdKeyNode(new PublicKey(publicKeyBytes), chainCodes[i], _depth + 1, fingerprint,
+                  fromIndex + i));
+         }
+      }
+      return children;
+   }
+
+   /**
+    * Create the child public keys of this node for all indexes from fromIndex
+    * (inclusive) to toIndex (exclusive). See
+    * {@link #createChildNodes(int, int)}.
+    */
+   public List<PublicKey> createChildPublicKeys(int fromIndex, int toIndex) throws KeyGenerationException {
+      List<HdKeyNode> children = createChildNodes(fromIndex, toIndex);
+      List<PublicKey> publicKeys = new ArrayList<PublicKey>(children.size());
+      for (HdKeyNode child : children) {
+         publicKeys.add(child._publicKey);
+      }
+      return publicKeys;
+   }
+
+   private byte[] nonHardenedDerivationData(int index) {
+      byte[] publicKeyBytes = _publicKey.getPublicKeyBytes();
+      ByteWriter writer = new ByteWriter(publicKeyBytes.length + 4);
+      writer.putBytes(publicKeyBytes);
+      writer.putIntBE(index);
+      return writer.toBytes();
+   }
+
    private byte[] bigIntegerTo32Bytes(BigInteger b) {
       // Returns an array of bytes which is at most 33 bytes long, and possibly
       // with a leading zero
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.crypto.digest.SHA256Digest;
+import com.mrd.bitlib.crypto.digest.SHA512Digest;
+
+/**
+ * HMAC calculation with a fixed key that can be reused for many messages.
+ * <p>
+ * The inner and outer padded key blocks are hashed once when the context is
+ * created and kept as the chaining variables of the digest. Every MAC starts
+ * from these midstates by copying them into the working digest, so
+ * calculating a MAC allocates nothing when the result is written into a
+ * caller supplied buffer. Creating a context costs two hashed blocks, which
+ * pays off from the second MAC; {@link Hmac} is cheaper for a single one.
+ * <p>
+ * A context is not thread safe. Keep it confined to one thread, or create one
+ * per thread.
+ */
+public abstract class HmacContext {
+
+   /**
+    * Create a HMAC-SHA256 context for a key
+    */
+   public static HmacContext hmacSha256(byte[] key) {
+      return new Sha256(key);
+   }
+
+   /**
+    * Create a HMAC-SHA512 context for a key
+    */
+   public static HmacContext hmacSha512(byte[] key) {
+      return new Sha512(key);
+   }
+
+   private HmacContext() {
+   }
+
+   /**
+    * Get the length of the MAC in bytes
+    */
+   public abstract int getMacLength();
+
+   /**
+    * Discard any data passed to update since the last MAC was calculated
+    */
+   public abstract void reset();
+
+   public abstract void update(byte input);
+
+   public void update(byte[] input) {
+      update(input, 0, input.length);
+   }
+
+   public abstract void update(byte[] input, int offset, int length);
+
+   /**
+    * Calculate the MAC of the data passed to update and write it to a buffer.
+    * The context is reset afterwards.
+    *
+    * @param out
+    *           the buffer to write the MAC to
+    * @param offset
+    *           the offset in the buffer to write the MAC at
+    */
+   public void doFinal(byte[] out, int offset) {
+      Preconditions.checkArgument(offset >= 0 && out.length - offset >= getMacLength(), "output buffer too small");
+      finish(out, offset);
+   }
+
+   /**
+    * Calculate the MAC of the data passed to update. The context is reset
+    * afterwards.
+    */
+   public byte[] doFinal() {
+      byte[] mac = new byte[getMacLength()];
+      finish(mac, 0);
+      return mac;
+   }
+
+   /**
+    * Calculate the MAC of the data passed to update followed by a message.
+    * The context is reset afterwards.
+    */
+   public byte[] doFinal(byte[] message) {
+      update(message);
+      return doFinal();
+   }
+
+   protected abstract void finish(byte[] out, int offset);
+
+   // The key zero padded to the block size. Keys longer than the block size
+   // are hashed into the block by the caller.
+   private static byte[] keyBlock(byte[] key, int blockSize) {
+      byte[] block = new byte[blockSize];
+      if (key.length <= blockSize) {
+         System.arraycopy(key, 0, block, 0, key.length);
+      }
+      return block;
+   }
+
+   private static void xor(byte[] block, int pad) {
+      for (int i = 0; i < block.length; i++) {
+         block[i] ^= pad;
+      }
+   }
+
+   private static class Sha256 extends HmacContext {
+      private static final int BLOCK_LENGTH = 64;
+
+      private final SHA256Digest _digest = new SHA256Digest();
+      private final int[] _innerKeyState = new int[8];
+      private final int[] _outerKeyState = new int[8];
+      private final byte[] _innerHash = new byte[SHA256Digest.DIGEST_LENGTH];
+
+      private Sha256(byte[] key) {
+         byte[] block = keyBlock(key, BLOCK_LENGTH);
+         if (key.length > BLOCK_LENGTH) {
+            _digest.update(key, 0, key.length);
+            _digest.doFinal(block, 0);
+         }
+         xor(block, 0x36);
+         _digest.update(block, 0, BLOCK_LENGTH);
+         _digest.getMidstate(_innerKeyState);
+         _digest.reset();
+         xor(block, 0x36 ^ 0x5c);
+         _digest.update(block, 0, BLOCK_LENGTH);
+         _digest.getMidstate(_outerKeyState);
+         reset();
+      }
+
+      @Override
+      public int getMacLength() {
+         return SHA256Digest.DIGEST_LENGTH;
+      }
+
+      @Override
+      public void reset() {
+         _digest.setMidstate(_innerKeyState, BLOCK_LENGTH);
+      }
+
+      @Override
+      public void update(byte input) {
+         _digest.update(input);
+      }
+
+      @Override
+      public void update(byte[] input, int offset, int length) {
+         _digest.update(input, offset, length);
+      }
+
+      @Override
+      protected void finish(byte[] out, int offset) {
+         _digest.doFinal(_innerHash, 0);
+         _digest.setMidstate(_outerKeyState, BLOCK_LENGTH);
+         _digest.update(_innerHash, 0, _innerHash.length);
+         _digest.doFinal(out, offset);
+         reset();
+      }
+   }
+
+   private static class Sha512 extends HmacContext {
+      private static final int BLOCK_LENGTH = SHA512Digest.BLOCK_LENGTH;
+
+      private final SHA512Digest _digest = new SHA512Digest();
+      private final long[] _innerKeyState = new long[8];
+      private final long[] _outerKeyState = new long[8];
+      private final byte[] _innerHash = new byte[SHA512Digest.DIGEST_LENGTH];
+
+      private Sha512(byte[] key) {
+         byte[] block = keyBlock(key, BLOCK_LENGTH);
+         if (key.length > BLOCK_LENGTH) {
+            _digest.update(key, 0, key.length);
+            _digest.doFinal(block, 0);
+         }
+         xor(block, 0x36);
+         _digest.update(block, 0, BLOCK_LENGTH);
+         _digest.getMidstate(_innerKeyState);
+         _digest.reset();
+         xor(block, 0x36 ^ 0x5c);
+         _digest.update(block, 0, BLOCK_LENGTH);
+         _digest.getMidstate(_outerKeyState);
+         reset();
+      }
+
+      @Override
+      public int getMacLength() {
+         return SHA512Digest.DIGEST_LENGTH;
+      }
+
+      @Override
+      public void reset() {
+         _digest.setMidstate(_innerKeyState, BLOCK_LENGTH);
+      }
+
+      @Override
+      public void update(byte input) {
+         _digest.update(input);
+      }
+
+      @Override
+      public void update(byte[] input, int offset, int length) {
+         _digest.update(input, offset, length);
+      }
+
+      @Override
+      protected void finish(byte[] out, int offset) {
+         _digest.doFinal(_innerHash, 0);
+         _digest.setMidstate(_outerKeyState, BLOCK_LENGTH);
+         _digest.update(_innerHash, 0, _innerHash.length);
+         _digest.doFinal(out, offset);
+         reset();
+      }
+   }
+}
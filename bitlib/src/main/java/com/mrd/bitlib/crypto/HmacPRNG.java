@@ -19,7 +19,6 @@ package com.mrd.bitlib.crypto;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 
-import com.mrd.bitlib.crypto.Hmac;
 import com.mrd.bitlib.util.BitUtils;
 
 /**
@@ -35,6 +34,7 @@ public class HmacPRNG extends SecureRandom {
 
    private int _nonce;
    private byte[] _key;
+   private transient HmacContext _hmac;
    private byte[] _randomBuffer;
    private int _index;
 
@@ -55,7 +55,10 @@ public class HmacPRNG extends SecureRandom {
    private void hmacIteration() {
       byte[] message = new byte[4];
       BitUtils.uint32ToByteArrayLE(_nonce++, message, 0);
-      byte[] temp = Hmac.hmacSha256(_key, message);
+      if (_hmac == null) {
+         _hmac = HmacContext.hmacSha256(_key);
+      }
+      byte[] temp = _hmac.doFinal(message);
       // Only use half of the output as random bytes
       System.arraycopy(temp, 0, _randomBuffer, 0, _randomBuffer.length);
       _index = 0;
@@ -305,10 +305,11 @@ public class InMemoryPrivateKey extends PrivateKey implements KeyExporter, Seria
          k = Hmac.hmacSha256(k, bwF.toBytes());
 
          // Step g
-         v = Hmac.hmacSha256(k, v);
+         HmacContext hmacK = HmacContext.hmacSha256(k);
+         v = hmacK.doFinal(v);
 
          // Step H2b
-         v = Hmac.hmacSha256(k, v);
+         v = hmacK.doFinal(v);
 
          BigInteger t = bits2int(v);
 
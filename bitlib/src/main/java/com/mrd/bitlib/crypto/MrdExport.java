@@ -17,8 +17,10 @@
 package com.mrd.bitlib.crypto;
 
 import Rijndael.Rijndael;
+import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterables;
 import com.google.common.io.BaseEncoding;
 import com.mrd.bitlib.lambdaworks.crypto.SCrypt;
 import com.mrd.bitlib.lambdaworks.crypto.SCryptProgress;
@@ -31,6 +33,18 @@ import com.mrd.bitlib.util.Sha256Hash;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 public class MrdExport {
 
@@ -80,6 +94,10 @@ public class MrdExport {
       private static final int V1_BLOCK_CIPHER_LENGTH = 16;
       public static final int V1_CIPHER_KEY_LENGTH = 32;
 
+      // Decrypting an entry is mostly one public key calculation, the entries
+      // are split into chunks that are worth a task of their own
+      private static final int DECRYPT_CHUNK_SIZE = 16;
+
       public static class WrongNetworkException extends DecodingException {
          private static final long serialVersionUID = 1L;
       }
@@ -386,6 +404,285 @@ public class MrdExport {
          }
       }
 
+      /**
+       * Encrypts and decrypts many entries of the version 1 format with the
+       * same encryption parameters, such as all the keys of one backup.
+       * <p>
+       * The key derivation runs once for the whole batch, and the AES key
+       * schedule is set up once instead of for every entry. A batch is only
+       * read after it has been created, so it may be shared between threads.
+       */
+      public static class Batch {
+         private final EncryptionParameters _parameters;
+         private final Rijndael _aes;
+
+         public Batch(EncryptionParameters parameters) {
+            _parameters = parameters;
+            _aes = makeAesKey(parameters);
+         }
+
+         /**
+          * Derive the encryption parameters for a batch
+          *
+          * @throws InterruptedException if the key derivation is terminated
+          * @throws java.lang.OutOfMemoryError if the heap is not large enough
+          */
+         public static Batch generate(KdfParameters p) throws InterruptedException, OutOfMemoryError {
+            return new Batch(EncryptionParameters.generate(p));
+         }
+
+         public EncryptionParameters getParameters() {
+            return _parameters;
+         }
+
+         /**
+          * @see V1#encryptPrivateKey(EncryptionParameters, String, NetworkParameters)
+          */
+         public String encryptPrivateKey(String base58EncodedPrivateKey, NetworkParameters network) {
+            return V1.encryptPrivateKey(_parameters, _aes, base58EncodedPrivateKey, network);
+         }
+
+         /**
+          * @see V1#encryptMasterSeed(EncryptionParameters, Bip39.MasterSeed, NetworkParameters)
+          */
+         public String encryptMasterSeed(Bip39.MasterSeed masterSeed, NetworkParameters network) {
+            return V1.encryptMasterSeed(_parameters, _aes, masterSeed, network);
+         }
+
+         /**
+          * Encrypt private keys one at a time as the result is iterated, so
+          * that the encrypted entries can be written out as they are
+          * produced. Nothing is kept, iterating twice encrypts twice.
+          */
+         public Iterable<String> encryptPrivateKeys(Iterable<String> base58EncodedPrivateKeys,
+                                                    final NetworkParameters network) {
+            return Iterables.transform(base58EncodedPrivateKeys, new Function<String, String>() {
+               @Override
+               public String apply(String base58EncodedPrivateKey) {
+                  return encryptPrivateKey(base58EncodedPrivateKey, network);
+               }
+            });
+         }
+
+         /**
+          * @see V1#decryptPrivateKey(EncryptionParameters, String, NetworkParameters)
+          */
+         public String decryptPrivateKey(String base64EncryptedPrivateKey, NetworkParameters network)
+               throws DecodingException, WrongNetworkException, InvalidChecksumException {
+            return V1.decryptPrivateKey(_parameters, _aes, base64EncryptedPrivateKey, network);
+         }
+
+         /**
+          * @see V1#decryptMasterSeed(EncryptionParameters, String, NetworkParameters)
+          */
+         public Bip39.MasterSeed decryptMasterSeed(String base64EncryptedMasterSeed, NetworkParameters network)
+               throws DecodingException, WrongNetworkException, InvalidChecksumException {
+            return V1.decryptMasterSeed(_parameters, _aes, base64EncryptedMasterSeed, network);
+         }
+
+         /**
+          * Decrypt private keys in the calling thread
+          *
+          * @return the base58 encoded private keys in the order of the
+          *         encrypted entries, absent for entries that could not be
+          *         decoded, were meant for another network or have an invalid
+          *         checksum
+          */
+         public List<Optional<String>> decryptPrivateKeys(List<String> base64EncryptedPrivateKeys,
+                                                          NetworkParameters network) {
+            return decryptPrivateKeys(base64EncryptedPrivateKeys, network, null);
+         }
+
+         /**
+          * Decrypt private keys in parallel on the given executor
+          *
+          * @param executor the executor to use, or null to use the calling
+          *                 thread
+          * @see #decryptPrivateKeys(List, NetworkParameters)
+          */
+         public List<Optional<String>> decryptPrivateKeys(List<String> base64EncryptedPrivateKeys,
+                                                          NetworkParameters network, ExecutorService executor) {
+            Batch[] batches = new Batch[base64EncryptedPrivateKeys.size()];
+            Arrays.fill(batches, this);
+            return decryptAll(new ArrayList<String>(base64EncryptedPrivateKeys), batches, network, executor);
+         }
+      }
+
+      /**
+       * Decrypt private keys from any number of backups, for instance when
+       * importing many backups at once. Every entry has its own password, but
+       * the key derivation runs only once for every distinct password, salt
+       * and set of scrypt parameters. Everything runs in the calling thread.
+       *
+       * @return the base58 encoded private keys in the order of the encrypted
+       *         entries, absent for entries that could not be decoded, were
+       *         meant for another network or have an invalid checksum
+       * @throws java.lang.OutOfMemoryError if the heap is not large enough for
+       *                                    the key derivation
+       */
+      public static List<Optional<String>> decryptPrivateKeys(List<String> passphrases,
+                                                              List<String> base64EncryptedPrivateKeys,
+                                                              NetworkParameters network) {
+         return decryptPrivateKeys(passphrases, base64EncryptedPrivateKeys, network, null);
+      }
+
+      /**
+       * Decrypt private keys from any number of backups, running the key
+       * derivations and the decryption in parallel on the given executor.
+       *
+       * @param executor the executor to use, or null to use the calling thread
+       * @see #decryptPrivateKeys(List, List, NetworkParameters)
+       */
+      public static List<Optional<String>> decryptPrivateKeys(List<String> passphrases,
+                                                              List<String> base64EncryptedPrivateKeys,
+                                                              NetworkParameters network, ExecutorService executor) {
+         Preconditions.checkArgument(passphrases.size() == base64EncryptedPrivateKeys.size());
+
+         // Start one key derivation for every distinct set of parameters
+         Map<List<Object>, Future<Batch>> derivations = new HashMap<List<Object>, Future<Batch>>();
+         List<Future<Batch>> entryDerivations = new ArrayList<Future<Batch>>();
+         for (int i = 0; i < passphrases.size(); i++) {
+            Header header;
+            try {
+               header = extractHeader(base64EncryptedPrivateKeys.get(i));
+            } catch (DecodingException e) {
+               entryDerivations.add(null);
+               continue;
+            }
+            String passphrase = passphrases.get(i);
+            List<Object> kdfKey = Arrays.<Object>asList(passphrase, BaseEncoding.base16().encode(header.salt),
+                  header.n, header.r, header.p);
+            Future<Batch> derivation = derivations.get(kdfKey);
+            if (derivation == null) {
+               derivation = derive(KdfParameters.fromPassphraseAndHeader(passphrase, header), executor);
+               derivations.put(kdfKey, derivation);
+            }
+            entryDerivations.add(derivation);
+         }
+
+         Batch[] batches = new Batch[entryDerivations.size()];
+         for (int i = 0; i < batches.length; i++) {
+            Future<Batch> derivation = entryDerivations.get(i);
+            batches[i] = derivation == null ? null : await(derivation, derivations.values());
+         }
+         return decryptAll(new ArrayList<String>(base64EncryptedPrivateKeys), batches, network, executor);
+      }
+
+      /**
+       * Decrypt private keys from any number of backups made with the same
+       * password in the calling thread
+       *
+       * @see #decryptPrivateKeys(List, List, NetworkParameters)
+       */
+      public static List<Optional<String>> decryptPrivateKeys(String passphrase,
+                                                              List<String> base64EncryptedPrivateKeys,
+                                                              NetworkParameters network) {
+         return decryptPrivateKeys(passphrase, base64EncryptedPrivateKeys, network, null);
+      }
+
+      /**
+       * Decrypt private keys from any number of backups made with the same
+       * password
+       *
+       * @see #decryptPrivateKeys(List, List, NetworkParameters, ExecutorService)
+       */
+      public static List<Optional<String>> decryptPrivateKeys(String passphrase,
+                                                              List<String> base64EncryptedPrivateKeys,
+                                                              NetworkParameters network, ExecutorService executor) {
+         return decryptPrivateKeys(Collections.nCopies(base64EncryptedPrivateKeys.size(), passphrase),
+               base64EncryptedPrivateKeys, network, executor);
+      }
+
+      private static Future<Batch> derive(final KdfParameters kdfParameters, ExecutorService executor) {
+         Callable<Batch> derivation = new Callable<Batch>() {
+            @Override
+            public Batch call() {
+               try {
+                  return Batch.generate(kdfParameters);
+               } catch (InterruptedException e) {
+                  // Never happens, the parameters are never terminated
+                  throw new RuntimeException(e);
+               }
+            }
+         };
+         if (executor != null) {
+            return executor.submit(derivation);
+         }
+         FutureTask<Batch> task = new FutureTask<Batch>(derivation);
+         task.run();
+         return task;
+      }
+
+      private static List<Optional<String>> decryptAll(final List<String> base64EncryptedPrivateKeys,
+                                                       final Batch[] batches, final NetworkParameters network,
+                                                       ExecutorService executor) {
+         final String[] results = new String[batches.length];
+         if (executor == null || results.length <= DECRYPT_CHUNK_SIZE) {
+            decryptRange(base64EncryptedPrivateKeys, batches, network, 0, results.length, results);
+         } else {
+            List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int from = 0; from < results.length; from += DECRYPT_CHUNK_SIZE) {
+               final int chunkFrom = from;
+               final int chunkTo = Math.min(results.length, from + DECRYPT_CHUNK_SIZE);
+               futures.add(executor.submit(new Callable<Void>() {
+                  @Override
+                  public Void call() {
+                     decryptRange(base64EncryptedPrivateKeys, batches, network, chunkFrom, chunkTo, results);
+                     return null;
+                  }
+               }));
+            }
+            for (Future<Void> future : futures) {
+               await(future, futures);
+            }
+         }
+         List<Optional<String>> decrypted = new ArrayList<Optional<String>>(results.length);
+         for (String result : results) {
+            decrypted.add(Optional.fromNullable(result));
+         }
+         return decrypted;
+      }
+
+      private static void decryptRange(List<String> encrypted, Batch[] batches, NetworkParameters network, int from,
+                                       int to, String[] results) {
+         for (int i = from; i < to; i++) {
+            if (batches[i] == null) {
+               continue;
+            }
+            try {
+               results[i] = batches[i].decryptPrivateKey(encrypted.get(i), network);
+            } catch (DecodingException e) {
+               // Leave the result empty, this includes wrong networks and
+               // invalid checksums
+            }
+         }
+      }
+
+      /**
+       * Wait for a task and rethrow what it failed with. All tasks of the
+       * operation are cancelled if the calling thread is interrupted.
+       */
+      private static <T> T await(Future<T> future, Collection<? extends Future<?>> all) {
+         try {
+            return future.get();
+         } catch (InterruptedException e) {
+            for (Future<?> other : all) {
+               other.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+         } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+               throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+               // Such as running out of memory in the key derivation
+               throw (Error) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+         }
+      }
+
       public static Header extractHeader(String base64EncryptedPrivateKey) throws DecodingException {
          // Decode data
          byte[] data = base64UrlDecode(base64EncryptedPrivateKey);
@@ -411,6 +708,12 @@ public class MrdExport {
        */
       public static String decryptPrivateKey(EncryptionParameters parameters, String base64EncryptedPrivateKey,
                                              NetworkParameters network) throws DecodingException, WrongNetworkException, InvalidChecksumException {
+         return decryptPrivateKey(parameters, makeAesKey(parameters), base64EncryptedPrivateKey, network);
+      }
+
+      private static String decryptPrivateKey(EncryptionParameters parameters, Rijndael aes,
+                                              String base64EncryptedPrivateKey, NetworkParameters network)
+            throws DecodingException, WrongNetworkException, InvalidChecksumException {
 
          // Decode data
          byte[] data = base64UrlDecode(base64EncryptedPrivateKey);
@@ -440,7 +743,7 @@ public class MrdExport {
          index += V1_CHECKSUM_LENGTH;
 
          // Decrypt
-         byte[] decrypted = decryptBytes(parameters, ciphertext, checksum);
+         byte[] decrypted = decryptBytes(parameters, aes, ciphertext, checksum);
 
          // Create key
          InMemoryPrivateKey key = new InMemoryPrivateKey(decrypted, header.type == Header.Type.COMPRESSED);
@@ -472,6 +775,12 @@ public class MrdExport {
        */
       public static Bip39.MasterSeed decryptMasterSeed(EncryptionParameters parameters, String base64EncryptedMasterSeed,
                                                        NetworkParameters network) throws DecodingException, WrongNetworkException, InvalidChecksumException {
+         return decryptMasterSeed(parameters, makeAesKey(parameters), base64EncryptedMasterSeed, network);
+      }
+
+      private static Bip39.MasterSeed decryptMasterSeed(EncryptionParameters parameters, Rijndael aes,
+                                                        String base64EncryptedMasterSeed, NetworkParameters network)
+            throws DecodingException, WrongNetworkException, InvalidChecksumException {
 
          // Decode data
          byte[] data = base64UrlDecode(base64EncryptedMasterSeed);
@@ -509,7 +818,7 @@ public class MrdExport {
          index += V1_CHECKSUM_LENGTH;
 
          // Decrypt
-         byte[] decrypted = decryptBytes(parameters, ciphertext, checksum);
+         byte[] decrypted = decryptBytes(parameters, aes, ciphertext, checksum);
 
          // Create master seed
          Optional<Bip39.MasterSeed> masterSeed = Bip39.MasterSeed.fromBytes(decrypted, true);
@@ -531,11 +840,13 @@ public class MrdExport {
        * Decrypt a the contained 32 bytes of the version 1 format.
        *
        * @param parameters The decryption parameters to use
+       * @param aes        the AES key schedule made from the parameters
        * @param ciphertext the complete version 1 format decoded to bytes
        * @param checksum   the checksum used for initializing the IV
        * @return The decrypted bytes
        */
-      private static byte[] decryptBytes(EncryptionParameters parameters, byte[] ciphertext, byte[] checksum) throws InvalidChecksumException {
+      private static byte[] decryptBytes(EncryptionParameters parameters, Rijndael aes, byte[] ciphertext,
+                                         byte[] checksum) throws InvalidChecksumException {
          // Ciphertext must be a multiple of 16 bytes
          Preconditions.checkArgument(ciphertext.length % V1_BLOCK_CIPHER_LENGTH == 0);
 
@@ -546,10 +857,6 @@ public class MrdExport {
          byte[] hash = HashUtils.sha256(parameters.salt, checksum).getBytes();
          System.arraycopy(hash, 0, IV, 0, IV.length);
 
-         // Initialize AES key
-         Rijndael aes = new Rijndael();
-         aes.makeKey(parameters.aesKey, V1_CIPHER_KEY_LENGTH * 8);
-
          // Use IV as the first cbc block
          byte[] cbcBlock = IV;
 
@@ -589,6 +896,11 @@ public class MrdExport {
        */
       public static String encryptPrivateKey(EncryptionParameters parameters, String base58EncodedPrivateKey,
                                              NetworkParameters network) {
+         return encryptPrivateKey(parameters, makeAesKey(parameters), base58EncodedPrivateKey, network);
+      }
+
+      private static String encryptPrivateKey(EncryptionParameters parameters, Rijndael aes,
+                                              String base58EncodedPrivateKey, NetworkParameters network) {
          InMemoryPrivateKey key = new InMemoryPrivateKey(base58EncodedPrivateKey, network);
 
          // Encoded result
@@ -608,7 +920,7 @@ public class MrdExport {
          byte[] checksum = calculatePrivateKeyChecksum(key, network);
 
          // Encrypt
-         byte[] ciphertext = encryptBytes(parameters, key.getPrivateKeyBytes(), checksum);
+         byte[] ciphertext = encryptBytes(parameters, aes, key.getPrivateKeyBytes(), checksum);
 
          // Copy encrypted form to encoding
          System.arraycopy(ciphertext, 0, encoded, index, 16);
@@ -636,6 +948,11 @@ public class MrdExport {
        */
       public static String encryptMasterSeed(EncryptionParameters parameters, Bip39.MasterSeed masterSeed,
                                              NetworkParameters network) {
+         return encryptMasterSeed(parameters, makeAesKey(parameters), masterSeed, network);
+      }
+
+      private static String encryptMasterSeed(EncryptionParameters parameters, Rijndael aes,
+                                              Bip39.MasterSeed masterSeed, NetworkParameters network) {
          // Encoded result
          int index = 0;
 
@@ -658,7 +975,7 @@ public class MrdExport {
          byte[] checksum = calculateMasterSeedChecksum(masterSeed);
 
          // Encrypt
-         byte[] ciphertext = encryptBytes(parameters, paddedPlaintext, checksum);
+         byte[] ciphertext = encryptBytes(parameters, aes, paddedPlaintext, checksum);
 
          // Copy encrypted form to encoding
          System.arraycopy(ciphertext, 0, encoded, index, paddedPlaintext.length);
@@ -687,11 +1004,13 @@ public class MrdExport {
        * Encrypt a multiple of 16 bytes using CBC mode and basing the IV on the checksum from our version 1 format.
        *
        * @param parameters The encryption parameters to use
+       * @param aes        the AES key schedule made from the parameters
        * @param plaintext  The plaintext data to encrypt
        * @param checksum   the checksum used for initializing the IV
        * @return the ciphertext
        */
-      private static byte[] encryptBytes(EncryptionParameters parameters, byte[] plaintext, byte[] checksum) {
+      private static byte[] encryptBytes(EncryptionParameters parameters, Rijndael aes, byte[] plaintext,
+                                         byte[] checksum) {
          // Plaintext must be a multiple of 16 bytes
          Preconditions.checkArgument(plaintext.length % 16 == 0);
 
@@ -703,10 +1022,6 @@ public class MrdExport {
          byte[] hash = HashUtils.sha256(parameters.salt, checksum).getBytes();
          System.arraycopy(hash, 0, IV, 0, V1_BLOCK_CIPHER_LENGTH);
 
-         // Initialize AES key
-         Rijndael aes = new Rijndael();
-         aes.makeKey(parameters.aesKey, V1_CIPHER_KEY_LENGTH * 8);
-
          // Use IV as the first cbc block
          byte[] cbcBlock = IV;
 
@@ -733,6 +1048,16 @@ public class MrdExport {
          return encrypted;
       }
 
+      /**
+       * Set up the AES key schedule for encryption parameters. Once made, the
+       * key schedule is only read and may be shared between threads.
+       */
+      private static Rijndael makeAesKey(EncryptionParameters parameters) {
+         Rijndael aes = new Rijndael();
+         aes.makeKey(parameters.aesKey, V1_CIPHER_KEY_LENGTH * 8);
+         return aes;
+      }
+
       /**
        * The alfabet used when generating passwords. It only contains characters
        * [a-z]. This lowers the entropy for each character but makes it easier
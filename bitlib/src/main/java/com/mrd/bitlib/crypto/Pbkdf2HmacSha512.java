@@ -0,0 +1,222 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.base.Preconditions;
+import com.mrd.bitlib.crypto.digest.SHA512Digest;
+
+/**
+ * PBKDF2 (RFC 2898) with HMAC-SHA512 as pseudo random function, as used by
+ * BIP39.
+ * <p>
+ * The SHA-512 states after hashing the inner and outer padded password are
+ * calculated once per derivation. Each of the following iterations hashes a
+ * single 64 byte block from these states, which is done with the SHA-512
+ * compression function directly on long words without any allocation.
+ */
+public class Pbkdf2HmacSha512 {
+
+   private static final int BLOCK_SIZE = 128;
+   private static final int HASH_LENGTH = 64;
+   private static final int HASH_WORDS = 8;
+   // Length in bits of a padded key block followed by one hash
+   private static final long ITERATION_MESSAGE_BITS = (BLOCK_SIZE + HASH_LENGTH) * 8;
+
+   private static final long[] IV = { 0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL,
+         0xa54ff53a5f1d36f1L, 0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L };
+
+   /**
+    * Derive a key from a password and a salt.
+    *
+    * @param password
+    *           the password
+    * @param salt
+    *           the salt
+    * @param iterations
+    *           the iteration count
+    * @param dkLen
+    *           the length in bytes of the key to derive
+    * @return the derived key
+    */
+   public static byte[] derive(byte[] password, byte[] salt, int iterations, int dkLen) {
+      Preconditions.checkArgument(iterations > 0, "iteration count must be positive");
+      Preconditions.checkArgument(dkLen >= 0, "key length must not be negative");
+
+      // The key is hashed if it is longer than the block size, and zero padded
+      byte[] key = password.length > BLOCK_SIZE ? sha512(password) : password;
+      byte[] padded = Arrays.copyOf(key, BLOCK_SIZE);
+      long[] w = new long[80];
+      long[] innerState = new long[HASH_WORDS];
+      long[] outerState = new long[HASH_WORDS];
+      padBlock(padded, (byte) 0x36, w);
+      SHA512Digest.compress(IV, w, innerState);
+      padBlock(padded, (byte) 0x5c, w);
+      SHA512Digest.compress(IV, w, outerState);
+
+      HmacContext hmac = HmacContext.hmacSha512(password);
+      byte[] first = new byte[HASH_LENGTH];
+      byte[] blockIndex = new byte[4];
+      long[] u = new long[HASH_WORDS];
+      long[] t = new long[HASH_WORDS];
+      byte[] dk = new byte[dkLen];
+      for (int i = 1; (i - 1) * HASH_LENGTH < dkLen; i++) {
+         // U1 = HMAC(P, S || INT(i))
+         blockIndex[0] = (byte) (i >>> 24);
+         blockIndex[1] = (byte) (i >>> 16);
+         blockIndex[2] = (byte) (i >>> 8);
+         blockIndex[3] = (byte) i;
+         hmac.update(salt);
+         hmac.update(blockIndex);
+         hmac.doFinal(first, 0);
+         for (int j = 0; j < HASH_WORDS; j++) {
+            u[j] = readLong(first, j * 8);
+         }
+         System.arraycopy(u, 0, t, 0, HASH_WORDS);
+
+         // Uj = HMAC(P, Uj-1), T = U1 ^ U2 ^ ... ^ Uc
+         for (int j = 1; j < iterations; j++) {
+            hashIteration(innerState, u, w);
+            hashIteration(outerState, u, w);
+            for (int k = 0; k < HASH_WORDS; k++) {
+               t[k] ^= u[k];
+            }
+         }
+
+         int offset = (i - 1) * HASH_LENGTH;
+         int length = Math.min(HASH_LENGTH, dkLen - offset);
+         for (int k = 0; k < length; k++) {
+            dk[offset + k] = (byte) (t[k >>> 3] >>> (56 - ((k & 7) << 3)));
+         }
+      }
+      return dk;
+   }
+
+   /**
+    * Derive keys for many password and salt candidates in the calling thread.
+    *
+    * @return the derived keys in the order of the candidates
+    */
+   public static List<byte[]> deriveAll(List<byte[]> passwords, List<byte[]> salts, int iterations, int dkLen) {
+      Preconditions.checkArgument(passwords.size() == salts.size());
+      byte[][] results = new byte[passwords.size()][];
+      deriveRange(passwords, salts, iterations, dkLen, 0, results.length, results);
+      return Arrays.asList(results);
+   }
+
+   /**
+    * Derive keys for many password and salt candidates on the given executor.
+    * Every candidate is plenty of work on its own, so each one is submitted as
+    * a task of its own.
+    *
+    * @return the derived keys in the order of the candidates
+    */
+   public static List<byte[]> deriveAll(List<byte[]> passwords, List<byte[]> salts, final int iterations,
+         final int dkLen, ExecutorService executor) {
+      Preconditions.checkArgument(passwords.size() == salts.size());
+      List<Future<byte[]>> futures = new ArrayList<Future<byte[]>>(passwords.size());
+      for (int i = 0; i < passwords.size(); i++) {
+         final byte[] password = passwords.get(i);
+         final byte[] salt = salts.get(i);
+         futures.add(executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() {
+               return derive(password, salt, iterations, dkLen);
+            }
+         }));
+      }
+      List<byte[]> results = new ArrayList<byte[]>(futures.size());
+      try {
+         for (Future<byte[]> future : futures) {
+            results.add(future.get());
+         }
+      } catch (InterruptedException e) {
+         for (Future<byte[]> future : futures) {
+            future.cancel(true);
+         }
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      }
+      return results;
+   }
+
+   private static void deriveRange(List<byte[]> passwords, List<byte[]> salts, int iterations, int dkLen, int from,
+         int to, byte[][] results) {
+      for (int i = from; i < to; i++) {
+         results[i] = derive(passwords.get(i), salts.get(i), iterations, dkLen);
+      }
+   }
+
+   /**
+    * Hash the eight words in u from one of the HMAC states and put the result
+    * back into u. The message is padded as the second block of a message
+    * starting with the padded key.
+    */
+   private static void hashIteration(long[] state, long[] u, long[] w) {
+      System.arraycopy(u, 0, w, 0, HASH_WORDS);
+      w[8] = 0x8000000000000000L;
+      w[9] = 0;
+      w[10] = 0;
+      w[11] = 0;
+      w[12] = 0;
+      w[13] = 0;
+      w[14] = 0;
+      w[15] = ITERATION_MESSAGE_BITS;
+      SHA512Digest.compress(state, w, u);
+   }
+
+   private static void padBlock(byte[] key, byte pad, long[] w) {
+      for (int i = 0; i < 16; i++) {
+         long word = 0;
+         for (int j = 0; j < 8; j++) {
+            word = (word << 8) | ((key[i * 8 + j] ^ pad) & 0xFF);
+         }
+         w[i] = word;
+      }
+   }
+
+   private static long readLong(byte[] buf, int offset) {
+      long result = 0;
+      for (int i = 0; i < 8; i++) {
+         result = (result << 8) | (buf[offset + i] & 0xFF);
+      }
+      return result;
+   }
+
+   private static byte[] sha512(byte[] data) {
+      try {
+         return MessageDigest.getInstance("SHA-512").digest(data);
+      } catch (NoSuchAlgorithmException e) {
+         // Only happens if the platform does not support SHA-512
+         throw new RuntimeException(e);
+      }
+   }
+}
@@ -113,27 +113,29 @@ public class Signatures {
    // transaction malleability problem, according to Bip62
    // https://github.com/bitcoin/bips/blob/master/bip-0062.mediawiki#New_rules, pt5
    static boolean verifySignatureLowS(byte[] message, Signature signature, Point Q) {
-      BigInteger n = Parameters.n;
-      BigInteger e = calculateE(n, message);
-      BigInteger r = signature.r;
-      BigInteger s = signature.s;
-
-      // r in the range [1,n-1]
-      if (r.compareTo(BigInteger.ONE) < 0 || r.compareTo(n) >= 0) {
+      if (!isInRange(signature, true)) {
          return false;
       }
+      BigInteger n = Parameters.n;
+      BigInteger e = calculateE(n, message);
+      return checkSignature(Q, n, e, signature.r, signature.s);
+   }
 
-      // s in the range [1,n/2]
-      if (s.compareTo(BigInteger.ONE) < 0 || s.compareTo(Parameters.MAX_SIG_S) > 0) {
+   static boolean verifySignature(byte[] message, Signature signature, Point Q) {
+      if (!isInRange(signature, false)) {
          return false;
       }
-
-      return checkSignature(Q, n, e, r, s);
+      BigInteger n = Parameters.n;
+      BigInteger e = calculateE(n, message);
+      return checkSignature(Q, n, e, signature.r, signature.s);
    }
 
-   static boolean verifySignature(byte[] message, Signature signature, Point Q) {
+   /**
+    * Check that r is in the range [1,n-1] and s in [1,n-1], or in [1,n/2] if a
+    * low S value is enforced
+    */
+   static boolean isInRange(Signature signature, boolean forceLowS) {
       BigInteger n = Parameters.n;
-      BigInteger e = calculateE(n, message);
       BigInteger r = signature.r;
       BigInteger s = signature.s;
 
@@ -142,12 +144,9 @@ public class Signatures {
          return false;
       }
 
-      // s in the range [1,n-1]
-      if (s.compareTo(BigInteger.ONE) < 0 || s.compareTo(n) >= 0) {
-         return false;
-      }
-
-      return checkSignature(Q, n, e, r, s);
+      // s in the range [1,n-1] or [1,n/2]
+      BigInteger maxS = forceLowS ? Parameters.MAX_SIG_S : n.subtract(BigInteger.ONE);
+      return s.compareTo(BigInteger.ONE) >= 0 && s.compareTo(maxS) <= 0;
    }
 
    private static boolean checkSignature(Point Q, BigInteger n, BigInteger e, BigInteger r, BigInteger s) {
@@ -165,7 +164,7 @@ public class Signatures {
       return v.equals(r);
    }
 
-   private static BigInteger calculateE(BigInteger n, byte[] message) {
+   static BigInteger calculateE(BigInteger n, byte[] message) {
       if (n.bitLength() > message.length * 8) {
          return new BigInteger(1, message);
       } else {
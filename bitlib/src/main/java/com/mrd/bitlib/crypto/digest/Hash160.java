@@ -0,0 +1,164 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.digest;
+
+/**
+ * RIPEMD-160 of the SHA-256 of a message, as used for Bitcoin addresses and
+ * script hashes.
+ * <p>
+ * The SHA-256 result is handed to RIPEMD-160 as words, without converting it
+ * to bytes. It always fills exactly one RIPEMD-160 block, so RIPEMD-160 is a
+ * single compression with fixed padding. The compression is written as five
+ * short loops per line, which the JIT compiles much better than the fully
+ * unrolled {@link RIPEMD160Digest}. Hashing allocates nothing but the
+ * result. Hash many public keys at once with
+ * {@link #hashAll(byte[][], byte[], int)}.
+ * <p>
+ * An instance is not thread safe.
+ */
+public class Hash160 {
+   public static final int HASH_LENGTH = 20;
+
+   // message word order and rotation amounts of the left and right lines
+   private static final int[] RL = { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 7, 4, 13, 1, 10, 6, 15, 3,
+         12, 0, 9, 5, 2, 14, 11, 8, 3, 10, 14, 4, 9, 15, 8, 1, 2, 7, 0, 6, 13, 11, 5, 12, 1, 9, 11, 10, 0, 8, 12, 4,
+         13, 3, 7, 15, 14, 5, 6, 2, 4, 0, 5, 9, 7, 12, 2, 10, 14, 1, 3, 8, 11, 6, 15, 13 };
+   private static final int[] RR = { 5, 14, 7, 0, 9, 2, 11, 4, 13, 6, 15, 8, 1, 10, 3, 12, 6, 11, 3, 7, 0, 13, 5, 10,
+         14, 15, 8, 12, 4, 9, 1, 2, 15, 5, 1, 3, 7, 14, 6, 9, 11, 8, 12, 2, 10, 0, 4, 13, 8, 6, 4, 1, 3, 11, 15, 0, 5,
+         12, 2, 13, 9, 7, 10, 14, 12, 15, 10, 4, 1, 5, 8, 7, 6, 2, 13, 14, 0, 3, 9, 11 };
+   private static final int[] SL = { 11, 14, 15, 12, 5, 8, 7, 9, 11, 13, 14, 15, 6, 7, 9, 8, 7, 6, 8, 13, 11, 9, 7, 15,
+         7, 12, 15, 9, 11, 7, 13, 12, 11, 13, 6, 7, 14, 9, 13, 15, 14, 8, 13, 6, 5, 12, 7, 5, 11, 12, 14, 15, 14, 15, 9,
+         8, 9, 14, 5, 6, 8, 6, 5, 12, 9, 15, 5, 11, 6, 8, 13, 12, 5, 12, 13, 14, 11, 8, 5, 6 };
+   private static final int[] SR = { 8, 9, 9, 11, 13, 15, 15, 5, 7, 7, 8, 11, 14, 14, 12, 6, 9, 13, 15, 7, 12, 8, 9, 11,
+         7, 7, 12, 7, 6, 15, 13, 11, 9, 7, 15, 11, 8, 6, 6, 14, 12, 13, 5, 14, 13, 13, 7, 5, 15, 5, 8, 11, 14, 14, 6,
+         14, 6, 9, 12, 9, 12, 5, 15, 8, 8, 5, 12, 9, 12, 5, 14, 6, 8, 13, 6, 5, 15, 13, 11, 11 };
+
+   private final SHA256Digest _sha256 = new SHA256Digest();
+   private final int[] _sha256Words = new int[8];
+   private final int[] _ripemd160Block = new int[16];
+
+   /**
+    * Hash a range of bytes and write the 20 byte result into a buffer
+    *
+    * @return the number of bytes written
+    */
+   public int hash(byte[] in, int inOff, int len, byte[] out, int outOff) {
+      _sha256.reset();
+      _sha256.update(in, inOff, len);
+      _sha256.doFinal(_sha256Words);
+      ripemd160(_sha256Words, out, outOff);
+      return HASH_LENGTH;
+   }
+
+   public byte[] hash(byte[] in) {
+      byte[] out = new byte[HASH_LENGTH];
+      hash(in, 0, in.length, out, 0);
+      return out;
+   }
+
+   /**
+    * Hash many messages, for instance public keys, and write the results one
+    * after another into a buffer
+    *
+    * @param out    the buffer to write 20 bytes per message to
+    * @param outOff the offset to write the hash of the first message at
+    */
+   public void hashAll(byte[][] in, byte[] out, int outOff) {
+      for (byte[] message : in) {
+         outOff += hash(message, 0, message.length, out, outOff);
+      }
+   }
+
+   /**
+    * Hash many messages, for instance public keys
+    *
+    * @return the hash of each message
+    */
+   public byte[][] hashAll(byte[][] in) {
+      byte[] flat = new byte[in.length * HASH_LENGTH];
+      hashAll(in, flat, 0);
+      byte[][] out = new byte[in.length][];
+      for (int i = 0; i < in.length; i++) {
+         out[i] = new byte[HASH_LENGTH];
+         System.arraycopy(flat, i * HASH_LENGTH, out[i], 0, HASH_LENGTH);
+      }
+      return out;
+   }
+
+   /**
+    * RIPEMD-160 of a 32 byte message given as eight big endian words
+    */
+   private void ripemd160(int[] message, byte[] out, int outOff) {
+      // RIPEMD-160 reads little endian words. The message is followed by the
+      // padding and the bit length 256.
+      int[] X = _ripemd160Block;
+      for (int i = 0; i < 8; i++) {
+         X[i] = Integer.reverseBytes(message[i]);
+      }
+      X[8] = 0x80;
+      X[14] = 256;
+
+      int h0 = 0x67452301, h1 = 0xefcdab89, h2 = 0x98badcfe, h3 = 0x10325476, h4 = 0xc3d2e1f0;
+      int al = h0, bl = h1, cl = h2, dl = h3, el = h4;
+      int ar = h0, br = h1, cr = h2, dr = h3, er = h4;
+      int t;
+      int j = 0;
+      for (; j < 16; j++) {
+         t = Integer.rotateLeft(al + (bl ^ cl ^ dl) + X[RL[j]], SL[j]) + el;
+         al = el; el = dl; dl = Integer.rotateLeft(cl, 10); cl = bl; bl = t;
+         t = Integer.rotateLeft(ar + (br ^ (cr | ~dr)) + X[RR[j]] + 0x50a28be6, SR[j]) + er;
+         ar = er; er = dr; dr = Integer.rotateLeft(cr, 10); cr = br; br = t;
+      }
+      for (; j < 32; j++) {
+         t = Integer.rotateLeft(al + ((bl & cl) | (~bl & dl)) + X[RL[j]] + 0x5a827999, SL[j]) + el;
+         al = el; el = dl; dl = Integer.rotateLeft(cl, 10); cl = bl; bl = t;
+         t = Integer.rotateLeft(ar + ((br & dr) | (cr & ~dr)) + X[RR[j]] + 0x5c4dd124, SR[j]) + er;
+         ar = er; er = dr; dr = Integer.rotateLeft(cr, 10); cr = br; br = t;
+      }
+      for (; j < 48; j++) {
+         t = Integer.rotateLeft(al + ((bl | ~cl) ^ dl) + X[RL[j]] + 0x6ed9eba1, SL[j]) + el;
+         al = el; el = dl; dl = Integer.rotateLeft(cl, 10); cl = bl; bl = t;
+         t = Integer.rotateLeft(ar + ((br | ~cr) ^ dr) + X[RR[j]] + 0x6d703ef3, SR[j]) + er;
+         ar = er; er = dr; dr = Integer.rotateLeft(cr, 10); cr = br; br = t;
+      }
+      for (; j < 64; j++) {
+         t = Integer.rotateLeft(al + ((bl & dl) | (cl & ~dl)) + X[RL[j]] + 0x8f1bbcdc, SL[j]) + el;
+         al = el; el = dl; dl = Integer.rotateLeft(cl, 10); cl = bl; bl = t;
+         t = Integer.rotateLeft(ar + ((br & cr) | (~br & dr)) + X[RR[j]] + 0x7a6d76e9, SR[j]) + er;
+         ar = er; er = dr; dr = Integer.rotateLeft(cr, 10); cr = br; br = t;
+      }
+      for (; j < 80; j++) {
+         t = Integer.rotateLeft(al + (bl ^ (cl | ~dl)) + X[RL[j]] + 0xa953fd4e, SL[j]) + el;
+         al = el; el = dl; dl = Integer.rotateLeft(cl, 10); cl = bl; bl = t;
+         t = Integer.rotateLeft(ar + (br ^ cr ^ dr) + X[RR[j]], SR[j]) + er;
+         ar = er; er = dr; dr = Integer.rotateLeft(cr, 10); cr = br; br = t;
+      }
+
+      putIntLE(h1 + cl + dr, out, outOff);
+      putIntLE(h2 + dl + er, out, outOff + 4);
+      putIntLE(h3 + el + ar, out, outOff + 8);
+      putIntLE(h4 + al + br, out, outOff + 12);
+      putIntLE(h0 + bl + cr, out, outOff + 16);
+   }
+
+   private static void putIntLE(int value, byte[] out, int outOff) {
+      out[outOff] = (byte) value;
+      out[outOff + 1] = (byte) (value >>> 8);
+      out[outOff + 2] = (byte) (value >>> 16);
+      out[outOff + 3] = (byte) (value >>> 24);
+   }
+}
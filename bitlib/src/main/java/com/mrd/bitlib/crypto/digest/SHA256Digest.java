@@ -0,0 +1,379 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.digest;
+
+/**
+ * SHA-256 implementation as described in FIPS 180-4.
+ * <p>
+ * Unlike the platform MessageDigest the state of a digest can be copied
+ * without allocating, so a prefix that many messages have in common only has
+ * to be hashed once: hash the prefix, keep the digest as a midstate and copy
+ * it into a working digest for every message with {@link #copyFrom}.
+ * {@link #doubleDigest} calculates SHA-256(SHA-256(data)) and writes the
+ * result into a caller supplied buffer.
+ * <p>
+ * A digest is not thread safe.
+ */
+public class SHA256Digest {
+   public static final int DIGEST_LENGTH = 32;
+   private static final int BLOCK_LENGTH = 64;
+
+   private static final int[] K = { 0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1,
+         0x923f82a4, 0xab1c5ed5, 0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7,
+         0xc19bf174, 0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+         0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967, 0x27b70a85,
+         0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85, 0xa2bfe8a1, 0xa81a664b,
+         0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070, 0x19a4c116, 0x1e376c08, 0x2748774c,
+         0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3, 0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208,
+         0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2 };
+
+   private int H0, H1, H2, H3, H4, H5, H6, H7;
+   private final int[] W = new int[64];
+   private final byte[] buf = new byte[BLOCK_LENGTH];
+   private int bufOff;
+   private long byteCount;
+
+   /**
+    * Standard constructor
+    */
+   public SHA256Digest() {
+      reset();
+   }
+
+   /**
+    * Copy constructor. This will copy the state of the provided message digest.
+    */
+   public SHA256Digest(SHA256Digest t) {
+      copyFrom(t);
+   }
+
+   /**
+    * Replace the state of this digest with the state of another one, for
+    * instance a midstate that has hashed a common prefix
+    */
+   public void copyFrom(SHA256Digest t) {
+      H0 = t.H0;
+      H1 = t.H1;
+      H2 = t.H2;
+      H3 = t.H3;
+      H4 = t.H4;
+      H5 = t.H5;
+      H6 = t.H6;
+      H7 = t.H7;
+      System.arraycopy(t.buf, 0, buf, 0, t.bufOff);
+      bufOff = t.bufOff;
+      byteCount = t.byteCount;
+   }
+
+   /**
+    * Write the chaining variables as eight words. Only possible at a block
+    * boundary, for instance after hashing a padded HMAC key.
+    */
+   public void getMidstate(int[] state) {
+      if (bufOff != 0) {
+         throw new IllegalStateException("not at a block boundary");
+      }
+      state[0] = H0;
+      state[1] = H1;
+      state[2] = H2;
+      state[3] = H3;
+      state[4] = H4;
+      state[5] = H5;
+      state[6] = H6;
+      state[7] = H7;
+   }
+
+   /**
+    * Continue from chaining variables written by {@link #getMidstate} after
+    * hashing byteCount bytes. Data passed to update before is discarded.
+    */
+   public void setMidstate(int[] state, long byteCount) {
+      H0 = state[0];
+      H1 = state[1];
+      H2 = state[2];
+      H3 = state[3];
+      H4 = state[4];
+      H5 = state[5];
+      H6 = state[6];
+      H7 = state[7];
+      bufOff = 0;
+      this.byteCount = byteCount;
+   }
+
+   public String getAlgorithmName() {
+      return "SHA-256";
+   }
+
+   public int getDigestSize() {
+      return DIGEST_LENGTH;
+   }
+
+   public void update(byte in) {
+      buf[bufOff++] = in;
+      byteCount++;
+      if (bufOff == BLOCK_LENGTH) {
+         processBlock(buf, 0);
+         bufOff = 0;
+      }
+   }
+
+   public void update(byte[] in) {
+      update(in, 0, in.length);
+   }
+
+   public void update(byte[] in, int inOff, int len) {
+      if (inOff < 0 || len < 0 || in.length - inOff < len) {
+         throw new IndexOutOfBoundsException();
+      }
+      byteCount += len;
+
+      // fill a partial block first
+      if (bufOff != 0) {
+         int n = Math.min(len, BLOCK_LENGTH - bufOff);
+         System.arraycopy(in, inOff, buf, bufOff, n);
+         bufOff += n;
+         inOff += n;
+         len -= n;
+         if (bufOff < BLOCK_LENGTH) {
+            return;
+         }
+         processBlock(buf, 0);
+         bufOff = 0;
+      }
+
+      // process whole blocks straight from the input
+      while (len >= BLOCK_LENGTH) {
+         processBlock(in, inOff);
+         inOff += BLOCK_LENGTH;
+         len -= BLOCK_LENGTH;
+      }
+
+      // keep the remainder
+      System.arraycopy(in, inOff, buf, 0, len);
+      bufOff = len;
+   }
+
+   /**
+    * Write the hash of the data passed to update and reset the digest
+    *
+    * @return the number of bytes written
+    */
+   public int doFinal(byte[] out, int outOff) {
+      finish();
+      writeState(out, outOff);
+      reset();
+      return DIGEST_LENGTH;
+   }
+
+   /**
+    * Write the hash of the data passed to update as eight big endian words and
+    * reset the digest. Used for chaining into another hash function without
+    * converting to bytes.
+    */
+   void doFinal(int[] out) {
+      finish();
+      out[0] = H0;
+      out[1] = H1;
+      out[2] = H2;
+      out[3] = H3;
+      out[4] = H4;
+      out[5] = H5;
+      out[6] = H6;
+      out[7] = H7;
+      reset();
+   }
+
+   /**
+    * Write the SHA-256 of the SHA-256 of the data passed to update and reset
+    * the digest. The second hash needs no allocation as the first hash and its
+    * padding fit into a single block.
+    *
+    * @return the number of bytes written
+    */
+   public int doubleDigest(byte[] out, int outOff) {
+      finish();
+      W[0] = H0;
+      W[1] = H1;
+      W[2] = H2;
+      W[3] = H3;
+      W[4] = H4;
+      W[5] = H5;
+      W[6] = H6;
+      W[7] = H7;
+      W[8] = 0x80000000;
+      for (int i = 9; i < 15; i++) {
+         W[i] = 0;
+      }
+      W[15] = DIGEST_LENGTH * 8;
+      resetState();
+      compress();
+      writeState(out, outOff);
+      reset();
+      return DIGEST_LENGTH;
+   }
+
+   /**
+    * reset the chaining variables to the IV values.
+    */
+   public void reset() {
+      resetState();
+      bufOff = 0;
+      byteCount = 0;
+   }
+
+   private void resetState() {
+      H0 = 0x6a09e667;
+      H1 = 0xbb67ae85;
+      H2 = 0x3c6ef372;
+      H3 = 0xa54ff53a;
+      H4 = 0x510e527f;
+      H5 = 0x9b05688c;
+      H6 = 0x1f83d9ab;
+      H7 = 0x5be0cd19;
+   }
+
+   private void finish() {
+      long bitLength = byteCount << 3;
+      buf[bufOff++] = (byte) 0x80;
+      if (bufOff > BLOCK_LENGTH - 8) {
+         while (bufOff < BLOCK_LENGTH) {
+            buf[bufOff++] = 0;
+         }
+         processBlock(buf, 0);
+         bufOff = 0;
+      }
+      while (bufOff < BLOCK_LENGTH - 8) {
+         buf[bufOff++] = 0;
+      }
+      for (int i = 7; i >= 0; i--) {
+         buf[bufOff++] = (byte) (bitLength >>> (i * 8));
+      }
+      processBlock(buf, 0);
+      bufOff = 0;
+   }
+
+   private void writeState(byte[] out, int outOff) {
+      packWord(H0, out, outOff);
+      packWord(H1, out, outOff + 4);
+      packWord(H2, out, outOff + 8);
+      packWord(H3, out, outOff + 12);
+      packWord(H4, out, outOff + 16);
+      packWord(H5, out, outOff + 20);
+      packWord(H6, out, outOff + 24);
+      packWord(H7, out, outOff + 28);
+   }
+
+   private static void packWord(int word, byte[] out, int outOff) {
+      out[outOff] = (byte) (word >>> 24);
+      out[outOff + 1] = (byte) (word >>> 16);
+      out[outOff + 2] = (byte) (word >>> 8);
+      out[outOff + 3] = (byte) word;
+   }
+
+   private void processBlock(byte[] in, int inOff) {
+      for (int i = 0; i < 16; i++) {
+         W[i] = (in[inOff] << 24) | ((in[inOff + 1] & 0xff) << 16) | ((in[inOff + 2] & 0xff) << 8)
+               | (in[inOff + 3] & 0xff);
+         inOff += 4;
+      }
+      compress();
+   }
+
+   /**
+    * Compress the block in W[0..15] into the chaining variables
+    */
+   private void compress() {
+      int[] w = W;
+      for (int t = 16; t < 64; t++) {
+         int x = w[t - 2];
+         int y = w[t - 15];
+         int s1 = ((x >>> 17) | (x << 15)) ^ ((x >>> 19) | (x << 13)) ^ (x >>> 10);
+         int s0 = ((y >>> 7) | (y << 25)) ^ ((y >>> 18) | (y << 14)) ^ (y >>> 3);
+         w[t] = s1 + w[t - 7] + s0 + w[t - 16];
+      }
+
+      int a = H0;
+      int b = H1;
+      int c = H2;
+      int d = H3;
+      int e = H4;
+      int f = H5;
+      int g = H6;
+      int h = H7;
+
+      // eight rounds per iteration, so that the working variables rotate by
+      // renaming instead of moving
+      for (int t = 0; t < 64; t += 8) {
+         h += sum1(e) + ch(e, f, g) + K[t] + w[t];
+         d += h;
+         h += sum0(a) + maj(a, b, c);
+
+         g += sum1(d) + ch(d, e, f) + K[t + 1] + w[t + 1];
+         c += g;
+         g += sum0(h) + maj(h, a, b);
+
+         f += sum1(c) + ch(c, d, e) + K[t + 2] + w[t + 2];
+         b += f;
+         f += sum0(g) + maj(g, h, a);
+
+         e += sum1(b) + ch(b, c, d) + K[t + 3] + w[t + 3];
+         a += e;
+         e += sum0(f) + maj(f, g, h);
+
+         d += sum1(a) + ch(a, b, c) + K[t + 4] + w[t + 4];
+         h += d;
+         d += sum0(e) + maj(e, f, g);
+
+         c += sum1(h) + ch(h, a, b) + K[t + 5] + w[t + 5];
+         g += c;
+         c += sum0(d) + maj(d, e, f);
+
+         b += sum1(g) + ch(g, h, a) + K[t + 6] + w[t + 6];
+         f += b;
+         b += sum0(c) + maj(c, d, e);
+
+         a += sum1(f) + ch(f, g, h) + K[t + 7] + w[t + 7];
+         e += a;
+         a += sum0(b) + maj(b, c, d);
+      }
+
+      H0 += a;
+      H1 += b;
+      H2 += c;
+      H3 += d;
+      H4 += e;
+      H5 += f;
+      H6 += g;
+      H7 += h;
+   }
+
+   private static int ch(int x, int y, int z) {
+      return (x & y) ^ (~x & z);
+   }
+
+   private static int maj(int x, int y, int z) {
+      return (x & y) ^ (x & z) ^ (y & z);
+   }
+
+   private static int sum0(int x) {
+      return ((x >>> 2) | (x << 30)) ^ ((x >>> 13) | (x << 19)) ^ ((x >>> 22) | (x << 10));
+   }
+
+   private static int sum1(int x) {
+      return ((x >>> 6) | (x << 26)) ^ ((x >>> 11) | (x << 21)) ^ ((x >>> 25) | (x << 7));
+   }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.digest;
+
+/**
+ * SHA-512 implementation as described in FIPS 180-4.
+ * <p>
+ * Like {@link SHA256Digest} the chaining variables can be saved at a block
+ * boundary and restored without allocating, see {@link #getMidstate} and
+ * {@link #setMidstate}. The compression function is also available on its
+ * own for callers that work on words.
+ * <p>
+ * A digest is not thread safe.
+ */
+public class SHA512Digest {
+   public static final int DIGEST_LENGTH = 64;
+   public static final int BLOCK_LENGTH = 128;
+
+   private static final long[] IV = { 0x6a09e667f3bcc908L, 0xbb67ae8584caa73bL, 0x3c6ef372fe94f82bL,
+         0xa54ff53a5f1d36f1L, 0x510e527fade682d1L, 0x9b05688c2b3e6c1fL, 0x1f83d9abfb41bd6bL, 0x5be0cd19137e2179L };
+
+   private static final long[] K = { 0x428a2f98d728ae22L, 0x7137449123ef65cdL, 0xb5c0fbcfec4d3b2fL,
+         0xe9b5dba58189dbbcL, 0x3956c25bf348b538L, 0x59f111f1b605d019L, 0x923f82a4af194f9bL, 0xab1c5ed5da6d8118L,
+         0xd807aa98a3030242L, 0x12835b0145706fbeL, 0x243185be4ee4b28cL, 0x550c7dc3d5ffb4e2L, 0x72be5d74f27b896fL,
+         0x80deb1fe3b1696b1L, 0x9bdc06a725c71235L, 0xc19bf174cf692694L, 0xe49b69c19ef14ad2L, 0xefbe4786384f25e3L,
+         0x0fc19dc68b8cd5b5L, 0x240ca1cc77ac9c65L, 0x2de92c6f592b0275L, 0x4a7484aa6ea6e483L, 0x5cb0a9dcbd41fbd4L,
+         0x76f988da831153b5L, 0x983e5152ee66dfabL, 0xa831c66d2db43210L, 0xb00327c898fb213fL, 0xbf597fc7beef0ee4L,
+         0xc6e00bf33da88fc2L, 0xd5a79147930aa725L, 0x06ca6351e003826fL, 0x142929670a0e6e70L, 0x27b70a8546d22ffcL,
+         0x2e1b21385c26c926L, 0x4d2c6dfc5ac42aedL, 0x53380d139d95b3dfL, 0x650a73548baf63deL, 0x766a0abb3c77b2a8L,
+         0x81c2c92e47edaee6L, 0x92722c851482353bL, 0xa2bfe8a14cf10364L, 0xa81a664bbc423001L, 0xc24b8b70d0f89791L,
+         0xc76c51a30654be30L, 0xd192e819d6ef5218L, 0xd69906245565a910L, 0xf40e35855771202aL, 0x106aa07032bbd1b8L,
+         0x19a4c116b8d2d0c8L, 0x1e376c085141ab53L, 0x2748774cdf8eeb99L, 0x34b0bcb5e19b48a8L, 0x391c0cb3c5c95a63L,
+         0x4ed8aa4ae3418acbL, 0x5b9cca4f7763e373L, 0x682e6ff3d6b2b8a3L, 0x748f82ee5defb2fcL, 0x78a5636f43172f60L,
+         0x84c87814a1f0ab72L, 0x8cc702081a6439ecL, 0x90befffa23631e28L, 0xa4506cebde82bde9L, 0xbef9a3f7b2c67915L,
+         0xc67178f2e372532bL, 0xca273eceea26619cL, 0xd186b8c721c0c207L, 0xeada7dd6cde0eb1eL, 0xf57d4f7fee6ed178L,
+         0x06f067aa72176fbaL, 0x0a637dc5a2c898a6L, 0x113f9804bef90daeL, 0x1b710b35131c471bL, 0x28db77f523047d84L,
+         0x32caab7b40c72493L, 0x3c9ebe0a15c9bebcL, 0x431d67c49c100d4cL, 0x4cc5d4becb3e42b6L, 0x597f299cfc657e2aL,
+         0x5fcb6fab3ad6faecL, 0x6c44198c4a475817L };
+
+   private final long[] H = new long[8];
+   private final long[] W = new long[80];
+   private final byte[] buf = new byte[BLOCK_LENGTH];
+   private int bufOff;
+   private long byteCount;
+
+   public SHA512Digest() {
+      reset();
+   }
+
+   public int getDigestSize() {
+      return DIGEST_LENGTH;
+   }
+
+   /**
+    * Write the chaining variables as eight words. Only possible at a block
+    * boundary, for instance after hashing a padded HMAC key.
+    */
+   public void getMidstate(long[] state) {
+      if (bufOff != 0) {
+         throw new IllegalStateException("not at a block boundary");
+      }
+      System.arraycopy(H, 0, state, 0, 8);
+   }
+
+   /**
+    * Continue from chaining variables written by {@link #getMidstate} after
+    * hashing byteCount bytes. Data passed to update before is discarded.
+    */
+   public void setMidstate(long[] state, long byteCount) {
+      System.arraycopy(state, 0, H, 0, 8);
+      bufOff = 0;
+      this.byteCount = byteCount;
+   }
+
+   public void update(byte in) {
+      buf[bufOff++] = in;
+      byteCount++;
+      if (bufOff == BLOCK_LENGTH) {
+         processBlock(buf, 0);
+         bufOff = 0;
+      }
+   }
+
+   public void update(byte[] in, int inOff, int len) {
+      if (inOff < 0 || len < 0 || in.length - inOff < len) {
+         throw new IndexOutOfBoundsException();
+      }
+      byteCount += len;
+
+      // fill a partial block first
+      if (bufOff != 0) {
+         int n = Math.min(len, BLOCK_LENGTH - bufOff);
+         System.arraycopy(in, inOff, buf, bufOff, n);
+         bufOff += n;
+         inOff += n;
+         len -= n;
+         if (bufOff < BLOCK_LENGTH) {
+            return;
+         }
+         processBlock(buf, 0);
+         bufOff = 0;
+      }
+
+      // process whole blocks straight from the input
+      while (len >= BLOCK_LENGTH) {
+         processBlock(in, inOff);
+         inOff += BLOCK_LENGTH;
+         len -= BLOCK_LENGTH;
+      }
+
+      // keep the remainder
+      System.arraycopy(in, inOff, buf, 0, len);
+      bufOff = len;
+   }
+
+   /**
+    * Write the hash of the data passed to update and reset the digest
+    *
+    * @return the number of bytes written
+    */
+   public int doFinal(byte[] out, int outOff) {
+      buf[bufOff++] = (byte) 0x80;
+      if (bufOff > BLOCK_LENGTH - 16) {
+         while (bufOff < BLOCK_LENGTH) {
+            buf[bufOff++] = 0;
+         }
+         processBlock(buf, 0);
+         bufOff = 0;
+      }
+      while (bufOff < BLOCK_LENGTH - 16) {
+         buf[bufOff++] = 0;
+      }
+      // the length in bits as a 128 bit number
+      putLong(byteCount >>> 61, buf, bufOff);
+      putLong(byteCount << 3, buf, bufOff + 8);
+      processBlock(buf, 0);
+
+      for (int i = 0; i < 8; i++) {
+         putLong(H[i], out, outOff + i * 8);
+      }
+      reset();
+      return DIGEST_LENGTH;
+   }
+
+   public void reset() {
+      System.arraycopy(IV, 0, H, 0, 8);
+      bufOff = 0;
+      byteCount = 0;
+   }
+
+   private void processBlock(byte[] in, int inOff) {
+      for (int i = 0; i < 16; i++) {
+         long word = 0;
+         for (int j = 0; j < 8; j++) {
+            word = (word << 8) | (in[inOff++] & 0xFF);
+         }
+         W[i] = word;
+      }
+      compress(H, W, H);
+   }
+
+   private static void putLong(long word, byte[] out, int outOff) {
+      for (int i = 0; i < 8; i++) {
+         out[outOff + i] = (byte) (word >>> (56 - i * 8));
+      }
+   }
+
+   /**
+    * The SHA-512 compression function. The first 16 words of w hold the
+    * message block, the rest is used for the message schedule. The result is
+    * written to out, which may be the same array as state.
+    */
+   public static void compress(long[] state, long[] w, long[] out) {
+      for (int i = 16; i < 80; i++) {
+         long w15 = w[i - 15];
+         long w2 = w[i - 2];
+         long s0 = Long.rotateRight(w15, 1) ^ Long.rotateRight(w15, 8) ^ (w15 >>> 7);
+         long s1 = Long.rotateRight(w2, 19) ^ Long.rotateRight(w2, 61) ^ (w2 >>> 6);
+         w[i] = w[i - 16] + s0 + w[i - 7] + s1;
+      }
+
+      long a = state[0];
+      long b = state[1];
+      long c = state[2];
+      long d = state[3];
+      long e = state[4];
+      long f = state[5];
+      long g = state[6];
+      long h = state[7];
+      for (int i = 0; i < 80; i++) {
+         long s1 = Long.rotateRight(e, 14) ^ Long.rotateRight(e, 18) ^ Long.rotateRight(e, 41);
+         long ch = (e & f) ^ (~e & g);
+         long t1 = h + s1 + ch + K[i] + w[i];
+         long s0 = Long.rotateRight(a, 28) ^ Long.rotateRight(a, 34) ^ Long.rotateRight(a, 39);
+         long maj = (a & b) ^ (a & c) ^ (b & c);
+         long t2 = s0 + maj;
+         h = g;
+         g = f;
+         f = e;
+         e = d + t1;
+         d = c;
+         c = b;
+         b = a;
+         a = t1 + t2;
+      }
+
+      out[0] = state[0] + a;
+      out[1] = state[1] + b;
+      out[2] = state[2] + c;
+      out[3] = state[3] + d;
+      out[4] = state[4] + e;
+      out[5] = state[5] + f;
+      out[6] = state[6] + g;
+      out[7] = state[7] + h;
+   }
+}
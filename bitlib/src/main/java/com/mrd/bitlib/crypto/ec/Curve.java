@@ -36,7 +36,14 @@ public class Curve implements Serializable {
    private BigInteger _q;
    private Point _infinity;
 
+   /**
+    * Only curves over the secp256k1 base field with a = 0 are supported, as
+    * the field and point arithmetic is specialized for secp256k1
+    */
    public Curve(BigInteger q, BigInteger a, BigInteger b) {
+      if (a.signum() != 0) {
+         throw new IllegalArgumentException("Only curves with a = 0 are supported");
+      }
       this._q = q;
       this._a = fromBigInteger(a);
       this._b = fromBigInteger(b);
@@ -89,11 +96,11 @@ public class Curve implements Serializable {
          if (beta == null) {
             throw new RuntimeException("Invalid compression");
          }
-         int bit0 = (beta.toBigInteger().testBit(0) ? 1 : 0);
+         int bit0 = (beta.isOdd() ? 1 : 0);
          if (bit0 == ytilde) {
             p = new Point(this, x, beta, true);
          } else {
-            p = new Point(this, x, new FieldElement(this._q, _q.subtract(beta.toBigInteger())), true);
+            p = new Point(this, x, beta.negate(), true);
          }
          break;
       case 0x04:
@@ -27,6 +27,12 @@ import java.math.BigInteger;
  */
 public class EcTools {
 
+   /**
+    * wNAF width used for points that have no precomputed table. The table for
+    * this width holds 8 points.
+    */
+   static final int WNAF_WIDTH = 5;
+
    /**
     * Get the length of the byte encoding of a field element
     */
@@ -58,50 +64,146 @@ public class EcTools {
 
    /**
     * Multiply a point with a big integer
+    * <p>
+    * The intermediate results are kept in Jacobian coordinates, the result is
+    * only converted to affine coordinates when its coordinates are needed.
+    * Multiples of G use a precomputed table. For other points on secp256k1
+    * the scalar is split in two halves with the GLV endomorphism which are
+    * processed with interleaved wNAF.
     */
    public static Point multiply(Point p, BigInteger k) {
+      if (p == Parameters.G && GeneratorTable.canMultiply(k)) {
+         return GeneratorTable.multiply(k);
+      }
+      if (GlvEndomorphism.canMultiply(p, k)) {
+         WNaf.Table[] tables = new WNaf.Table[2];
+         BigInteger[] scalars = new BigInteger[2];
+         splitForGlv(p, k, tables, scalars, 0);
+         return multiplyInterleaved(tables, scalars);
+      }
+      p = p.normalize();
       BigInteger e = k;
       BigInteger h = e.multiply(BigInteger.valueOf(3));
 
       Point neg = p.negate();
-      Point R = p;
+      MutablePoint R = new MutablePoint(p.getCurve());
+      R.set(p);
 
       for (int i = h.bitLength() - 2; i > 0; --i) {
-         R = R.twice();
+         R.twice();
 
          boolean hBit = h.testBit(i);
          boolean eBit = e.testBit(i);
 
          if (hBit != eBit) {
-            R = R.add(hBit ? p : neg);
+            R.addAffine(hBit ? p : neg);
          }
       }
 
-      return R;
+      return R.toPoint();
    }
 
+   /**
+    * Convert all points to affine coordinates using a single modular inversion
+    * (Montgomery's simultaneous inversion trick)
+    */
+   public static Point[] normalizeAll(Point[] points) {
+      Point[] result = new Point[points.length];
+      // products[i] is the product of the Z coordinates of all Jacobian points
+      // before index i
+      FieldElement[] products = new FieldElement[points.length];
+      FieldElement product = null;
+      for (int i = 0; i < points.length; i++) {
+         Point p = points[i];
+         if (p.isInfinity() || p.isNormalized()) {
+            result[i] = p;
+            continue;
+         }
+         products[i] = product;
+         product = product == null ? p.getZ() : product.multiply(p.getZ());
+      }
+      if (product == null) {
+         return result;
+      }
+      FieldElement inverse = product.invert();
+      for (int i = points.length - 1; i >= 0; i--) {
+         if (result[i] != null) {
+            continue;
+         }
+         Point p = points[i];
+         FieldElement zInv = products[i] == null ? inverse : inverse.multiply(products[i]);
+         inverse = inverse.multiply(p.getZ());
+         result[i] = p.normalize(zInv);
+      }
+      return result;
+   }
+
+   /**
+    * Calculate k * P + l * Q
+    * <p>
+    * Both scalars are converted to wNAF and processed together (Straus'
+    * interleaving) so that they share one chain of doublings. For the
+    * generator a shared precomputed table is used, for any other point the
+    * table of odd multiples is calculated on the fly. On secp256k1 both
+    * scalars are additionally split with the GLV endomorphism, which halves
+    * the number of doublings.
+    */
    public static Point sumOfTwoMultiplies(Point P, BigInteger k, Point Q, BigInteger l) {
-      int m = Math.max(k.bitLength(), l.bitLength());
-      Point Z = P.add(Q);
-      Point R = P.getCurve().getInfinity();
-
-      for (int i = m - 1; i >= 0; --i) {
-         R = R.twice();
-
-         if (k.testBit(i)) {
-            if (l.testBit(i)) {
-               R = R.add(Z);
-            } else {
-               R = R.add(P);
-            }
-         } else {
-            if (l.testBit(i)) {
-               R = R.add(Q);
+      if (k.signum() < 0) {
+         return sumOfTwoMultiplies(P.negate(), k.negate(), Q, l);
+      }
+      if (l.signum() < 0) {
+         return sumOfTwoMultiplies(P, k, Q.negate(), l.negate());
+      }
+      if (GlvEndomorphism.canMultiply(P, k) && GlvEndomorphism.canMultiply(Q, l)) {
+         WNaf.Table[] tables = new WNaf.Table[4];
+         BigInteger[] scalars = new BigInteger[4];
+         splitForGlv(P, k, tables, scalars, 0);
+         splitForGlv(Q, l, tables, scalars, 2);
+         return multiplyInterleaved(tables, scalars);
+      }
+      return multiplyInterleaved(new WNaf.Table[] { tableFor(P), tableFor(Q) }, new BigInteger[] { k, l });
+   }
+
+   private static void splitForGlv(Point p, BigInteger k, WNaf.Table[] tables, BigInteger[] scalars, int offset) {
+      if (p == Parameters.G) {
+         GlvEndomorphism.split(GeneratorTable.getWNafTable(), GeneratorTable.getPhiWNafTable(), k, tables, scalars,
+               offset);
+      } else {
+         GlvEndomorphism.split(p.getWNafTable(), p.getPhiWNafTable(), k, tables, scalars, offset);
+      }
+   }
+
+   private static WNaf.Table tableFor(Point p) {
+      if (p == Parameters.G) {
+         return GeneratorTable.getWNafTable();
+      }
+      return p.getWNafTable();
+   }
+
+   /**
+    * Calculate the sum of scalars[i] * P[i] where tables[i] holds the odd
+    * multiples of P[i]. All scalars must be non-negative.
+    */
+   static Point multiplyInterleaved(WNaf.Table[] tables, BigInteger[] scalars) {
+      byte[][] nafs = new byte[scalars.length][];
+      int length = 0;
+      for (int i = 0; i < scalars.length; i++) {
+         nafs[i] = WNaf.encode(scalars[i], tables[i].getWidth());
+         length = Math.max(length, nafs[i].length);
+      }
+
+      MutablePoint R = new MutablePoint(Parameters.curve);
+      for (int bit = length - 1; bit >= 0; --bit) {
+         R.twice();
+         for (int i = 0; i < nafs.length; i++) {
+            byte[] naf = nafs[i];
+            if (bit < naf.length && naf[bit] != 0) {
+               R.addAffine(tables[i].get(naf[bit]));
             }
          }
       }
-
-      return R;
+      return R.toPoint();
    }
 
    //ported from BitcoinJ
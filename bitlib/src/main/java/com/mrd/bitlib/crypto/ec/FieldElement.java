@@ -21,69 +21,130 @@
  */
 package com.mrd.bitlib.crypto.ec;
 
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.math.BigInteger;
-import java.util.Random;
+import java.util.Arrays;
 
 /**
- * This class represents an elliptic field element.
+ * This class represents an element of the secp256k1 base field.
+ * <p>
+ * The value is kept in the limb representation of {@link Secp256k1Field}.
+ * Instances are immutable, the mutable in-place operations used by the point
+ * arithmetic work on the limbs directly.
  */
 public class FieldElement implements Serializable {
 
    private static final long serialVersionUID = 1L;
 
-   private static final BigInteger TWO = BigInteger.valueOf(2);
+   // The serialized form is the value and the field size as big integers, as
+   // it has always been
+   private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("_x", BigInteger.class),
+         new ObjectStreamField("_q", BigInteger.class) };
 
-   private BigInteger _x;
-   private BigInteger _q;
+   // Not final, as readObject has to set it
+   private int[] _n;
 
    public FieldElement(BigInteger q, BigInteger x) {
-      this._x = x;
+      if (!Secp256k1Field.P.equals(q)) {
+         throw new IllegalArgumentException("Only the secp256k1 field is supported");
+      }
       if (x.compareTo(q) >= 0) {
          throw new IllegalArgumentException("x value too large in field element");
       }
-      this._q = q;
+      _n = Secp256k1Field.create();
+      Secp256k1Field.fromBigInteger(_n, x);
+   }
+
+   /**
+    * Create a field element from limbs, which are not copied
+    */
+   FieldElement(int[] limbs) {
+      _n = limbs;
+   }
+
+   /**
+    * Get the limbs of this element. They must not be modified.
+    */
+   int[] limbs() {
+      return _n;
    }
 
    public BigInteger toBigInteger() {
-      return _x;
+      return Secp256k1Field.toBigInteger(_n);
+   }
+
+   /**
+    * Write this element as 32 bytes big endian
+    */
+   public void toBytes(byte[] out, int offset) {
+      Secp256k1Field.toBytes(_n, out, offset);
+   }
+
+   public boolean isZero() {
+      return Secp256k1Field.isZero(_n);
+   }
+
+   /**
+    * Is the integer representation of this element odd
+    */
+   public boolean isOdd() {
+      return Secp256k1Field.isOdd(_n);
    }
 
    public int getFieldSize() {
-      return _q.bitLength();
+      return 256;
    }
 
    public BigInteger getQ() {
-      return _q;
+      return Secp256k1Field.P;
    }
 
    public FieldElement add(FieldElement b) {
-      return new FieldElement(_q, _x.add(b.toBigInteger()).mod(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.add(r, _n, b._n);
+      return new FieldElement(r);
    }
 
    public FieldElement subtract(FieldElement b) {
-      return new FieldElement(_q, _x.subtract(b.toBigInteger()).mod(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.sub(r, _n, b._n);
+      return new FieldElement(r);
    }
 
    public FieldElement multiply(FieldElement b) {
-      return new FieldElement(_q, _x.multiply(b.toBigInteger()).mod(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.mul(r, _n, b._n);
+      return new FieldElement(r);
    }
 
-   // TODO: optimize. much time is spent here. (13% total)
    public FieldElement divide(FieldElement b) {
-      return new FieldElement(_q, _x.multiply(b.toBigInteger().modInverse(_q)).mod(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.inv(r, b._n);
+      Secp256k1Field.mul(r, _n, r);
+      return new FieldElement(r);
    }
 
    public FieldElement negate() {
-      return new FieldElement(_q, _x.negate().mod(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.negate(r, _n);
+      return new FieldElement(r);
    }
 
    public FieldElement square() {
-      return new FieldElement(_q, _x.multiply(_x).mod(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.sqr(r, _n);
+      return new FieldElement(r);
    }
 
    public FieldElement invert() {
-      return new FieldElement(_q, _x.modInverse(_q));
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.inv(r, _n);
+      return new FieldElement(r);
    }
 
    @Override
@@ -91,102 +152,18 @@ public class FieldElement implements Serializable {
       return this.toBigInteger().toString(2);
    }
 
+   /**
+    * Get a square root of this element, or null if there is none
+    */
    public FieldElement sqrt() {
-      if (!_q.testBit(0)) {
-         throw new RuntimeException("not done yet");
-      }
-
-      if (_q.testBit(1)) {
-         // z = g^(u+1) + p, p = 4u + 3
-         FieldElement z = new FieldElement(_q, _x.modPow(_q.shiftRight(2).add(BigInteger.ONE), _q));
-
-         return z.square().equals(this) ? z : null;
-      }
-
-      // p mod 4 == 1
-      BigInteger qMinusOne = _q.subtract(BigInteger.ONE);
-
-      BigInteger legendreExponent = qMinusOne.shiftRight(1);
-      if (!(_x.modPow(legendreExponent, _q).equals(BigInteger.ONE))) {
+      int[] r = Secp256k1Field.create();
+      if (!Secp256k1Field.sqrt(r, _n)) {
          return null;
       }
-
-      BigInteger u = qMinusOne.shiftRight(2);
-      BigInteger k = u.shiftLeft(1).add(BigInteger.ONE);
-
-      BigInteger Q = this._x;
-      BigInteger fourQ = Q.shiftLeft(2).mod(_q);
-
-      BigInteger U, V;
-      Random rand = new Random();
-      do {
-         BigInteger P;
-         do {
-            P = new BigInteger(_q.bitLength(), rand);
-         } while (P.compareTo(_q) >= 0
-               || !(P.multiply(P).subtract(fourQ).modPow(legendreExponent, _q).equals(qMinusOne)));
-
-         BigInteger[] result = lucasSequence(_q, P, Q, k);
-         U = result[0];
-         V = result[1];
-
-         if (V.multiply(V).mod(_q).equals(fourQ)) {
-            // Integer division by 2, mod q
-            if (V.testBit(0)) {
-               V = V.add(_q);
-            }
-
-            V = V.shiftRight(1);
-
-            return new FieldElement(_q, V);
-         }
-      } while (U.equals(BigInteger.ONE) || U.equals(qMinusOne));
-
-      return null;
-
-   }
-
-   private static BigInteger[] lucasSequence(BigInteger p, BigInteger P, BigInteger Q, BigInteger k) {
-      int n = k.bitLength();
-      int s = k.getLowestSetBit();
-
-      BigInteger Uh = BigInteger.ONE;
-      BigInteger Vl = TWO;
-      BigInteger Vh = P;
-      BigInteger Ql = BigInteger.ONE;
-      BigInteger Qh = BigInteger.ONE;
-
-      for (int j = n - 1; j >= s + 1; --j) {
-         Ql = Ql.multiply(Qh).mod(p);
-
-         if (k.testBit(j)) {
-            Qh = Ql.multiply(Q).mod(p);
-            Uh = Uh.multiply(Vh).mod(p);
-            Vl = Vh.multiply(Vl).subtract(P.multiply(Ql)).mod(p);
-            Vh = Vh.multiply(Vh).subtract(Qh.shiftLeft(1)).mod(p);
-         } else {
-            Qh = Ql;
-            Uh = Uh.multiply(Vl).subtract(Ql).mod(p);
-            Vh = Vh.multiply(Vl).subtract(P.multiply(Ql)).mod(p);
-            Vl = Vl.multiply(Vl).subtract(Ql.shiftLeft(1)).mod(p);
-         }
-      }
-
-      Ql = Ql.multiply(Qh).mod(p);
-      Qh = Ql.multiply(Q).mod(p);
-      Uh = Uh.multiply(Vl).subtract(Ql).mod(p);
-      Vl = Vh.multiply(Vl).subtract(P.multiply(Ql)).mod(p);
-      Ql = Ql.multiply(Qh).mod(p);
-
-      for (int j = 1; j <= s; ++j) {
-         Uh = Uh.multiply(Vl).mod(p);
-         Vl = Vl.multiply(Vl).subtract(Ql.shiftLeft(1)).mod(p);
-         Ql = Ql.multiply(Ql).mod(p);
-      }
-
-      return new BigInteger[] { Uh, Vl };
+      return new FieldElement(r);
    }
 
+   @Override
    public boolean equals(Object other) {
       if (other == this) {
          return true;
@@ -197,10 +174,29 @@ public class FieldElement implements Serializable {
       }
 
       FieldElement o = (FieldElement) other;
-      return _q.equals(o._q) && _x.equals(o._x);
+      return Secp256k1Field.equals(_n, o._n);
    }
 
+   @Override
    public int hashCode() {
-      return _q.hashCode() ^ _x.hashCode();
+      return Arrays.hashCode(_n);
+   }
+
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      ObjectOutputStream.PutField fields = out.putFields();
+      fields.put("_x", toBigInteger());
+      fields.put("_q", Secp256k1Field.P);
+      out.writeFields();
+   }
+
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = in.readFields();
+      BigInteger x = (BigInteger) fields.get("_x", null);
+      BigInteger q = (BigInteger) fields.get("_q", null);
+      if (x == null || !Secp256k1Field.P.equals(q) || x.signum() < 0 || x.compareTo(q) >= 0) {
+         throw new InvalidObjectException("Not an element of the secp256k1 field");
+      }
+      _n = Secp256k1Field.create();
+      Secp256k1Field.fromBigInteger(_n, x);
    }
 }
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+/**
+ * Fixed-base windowed precomputation for multiplying the generator point G.
+ * <p>
+ * The scalar is split into 4-bit windows. For window i the table holds the
+ * affine points d * 16^i * G for d = 1..15, so that k * G is the sum of one
+ * table entry per non-zero window. This replaces the 256 doublings and ~85
+ * additions of the generic method with at most 64 mixed additions.
+ * <p>
+ * For {@link EcTools#sumOfTwoMultiplies} tables of the odd multiples of G and
+ * of its endomorphism image phi(G) for a wNAF of width {@value #WNAF_WIDTH}
+ * are kept as well.
+ * <p>
+ * The tables are built on first use and shared by all threads.
+ */
+final class GeneratorTable {
+   private static final int WINDOW_BITS = 4;
+   private static final int WINDOW_SIZE = 1 << WINDOW_BITS;
+   private static final int WINDOW_MASK = WINDOW_SIZE - 1;
+   private static final int SCALAR_BITS = 256;
+   private static final int WINDOWS = SCALAR_BITS / WINDOW_BITS;
+   private static final int WNAF_WIDTH = 8;
+
+   private GeneratorTable() {
+   }
+
+   // Lazy holder, the table is built when Holder is first accessed
+   private static class Holder {
+      private static final Point[][] TABLE = buildTable();
+   }
+
+   private static class WNafHolder {
+      private static final WNaf.Table TABLE = WNaf.Table.of(Parameters.G, WNAF_WIDTH);
+      private static final WNaf.Table PHI_TABLE = TABLE.mapX(Parameters.curve
+            .fromBigInteger(GlvEndomorphism.BETA));
+   }
+
+   /**
+    * Get the table of odd multiples of G for wNAF multiplication
+    */
+   static WNaf.Table getWNafTable() {
+      return WNafHolder.TABLE;
+   }
+
+   /**
+    * Get the table of odd multiples of phi(G), the image of G under the GLV
+    * endomorphism
+    */
+   static WNaf.Table getPhiWNafTable() {
+      return WNafHolder.PHI_TABLE;
+   }
+
+   private static Point[][] buildTable() {
+      Point[] points = new Point[WINDOWS * (WINDOW_SIZE - 1)];
+      Point base = Parameters.G;
+      for (int window = 0; window < WINDOWS; window++) {
+         Point p = base;
+         for (int d = 1; d < WINDOW_SIZE; d++) {
+            points[window * (WINDOW_SIZE - 1) + d - 1] = p;
+            p = p.add(base);
+         }
+         // p is now 16 * base
+         base = p.normalize();
+      }
+      points = EcTools.normalizeAll(points);
+      Point[][] table = new Point[WINDOWS][];
+      for (int window = 0; window < WINDOWS; window++) {
+         table[window] = new Point[WINDOW_SIZE - 1];
+         System.arraycopy(points, window * (WINDOW_SIZE - 1), table[window], 0, WINDOW_SIZE - 1);
+      }
+      return table;
+   }
+
+   /**
+    * Can this table be used for multiplying G by k
+    */
+   static boolean canMultiply(BigInteger k) {
+      return k.signum() >= 0 && k.bitLength() <= SCALAR_BITS;
+   }
+
+   /**
+    * Calculate k * G where 0 <= k < 2^256
+    */
+   static Point multiply(BigInteger k) {
+      Point[][] table = Holder.TABLE;
+      MutablePoint R = new MutablePoint(Parameters.curve);
+      byte[] bytes = k.toByteArray();
+      // Walk the scalar from the least significant byte, two windows per byte
+      for (int i = 0, window = 0; i < bytes.length && window < WINDOWS; i++, window += 2) {
+         int b = bytes[bytes.length - 1 - i] & 0xFF;
+         int low = b & WINDOW_MASK;
+         int high = b >>> WINDOW_BITS;
+         if (low != 0) {
+            R.addAffine(table[window][low - 1]);
+         }
+         if (high != 0) {
+            R.addAffine(table[window + 1][high - 1]);
+         }
+      }
+      return R.toPoint();
+   }
+}
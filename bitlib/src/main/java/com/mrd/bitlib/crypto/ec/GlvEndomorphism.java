@@ -0,0 +1,83 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+import com.mrd.bitlib.util.HexUtils;
+
+/**
+ * The GLV endomorphism of secp256k1.
+ * <p>
+ * The map phi(x, y) = (beta * x, y) equals the multiplication with lambda,
+ * where beta is a cube root of unity mod p and lambda a cube root of unity
+ * mod n. Any scalar k can be written as k1 + k2 * lambda with k1 and k2 of
+ * about 128 bits, so k * P = k1 * P + k2 * phi(P) can be computed with half
+ * the doublings by interleaving the two multiplications.
+ */
+final class GlvEndomorphism {
+   static final BigInteger BETA = new BigInteger(1,
+         HexUtils.toBytes("7AE96A2B657C07106E64479EAC3434E99CF0497512F58995C1396C28719501EE"));
+   static final BigInteger LAMBDA = new BigInteger(1,
+         HexUtils.toBytes("5363AD4CC05C30E0A5261C028812645A122E22EA20816678DF02967C1B23BD72"));
+
+   // A short basis {(a1, b1), (a2, b2)} of the lattice of (x, y) with
+   // x + y * lambda = 0 mod n
+   private static final BigInteger A1 = new BigInteger("3086D221A7D46BCDE86C90E49284EB15", 16);
+   private static final BigInteger B1 = new BigInteger("-E4437ED6010E88286F547FA90ABFE4C3", 16);
+   private static final BigInteger A2 = new BigInteger("114CA50F7A8E2F3F657C1108D9D44CFD8", 16);
+   private static final BigInteger B2 = A1;
+
+   private static final BigInteger HALF_N = Parameters.n.shiftRight(1);
+
+   private GlvEndomorphism() {
+   }
+
+   /**
+    * Split a scalar 0 <= k < n into k1 and k2 with k = k1 + k2 * lambda mod n.
+    * Both halves are at most 129 bits long and may be negative.
+    */
+   static BigInteger[] decompose(BigInteger k) {
+      BigInteger n = Parameters.n;
+      BigInteger c1 = B2.multiply(k).add(HALF_N).divide(n);
+      BigInteger c2 = B1.negate().multiply(k).add(HALF_N).divide(n);
+      BigInteger k1 = k.subtract(c1.multiply(A1)).subtract(c2.multiply(A2));
+      BigInteger k2 = c1.multiply(B1).add(c2.multiply(B2)).negate();
+      return new BigInteger[] { k1, k2 };
+   }
+
+   /**
+    * Can k * p be calculated using the endomorphism
+    */
+   static boolean canMultiply(Point p, BigInteger k) {
+      return p.getCurve() == Parameters.curve && !p.isInfinity() && k.signum() >= 0 && k.compareTo(Parameters.n) < 0;
+   }
+
+   /**
+    * Add the wNAF tables and scalars for k * P to the given arrays at index
+    * offset and offset + 1, where table holds the odd multiples of P and
+    * phiTable those of phi(P)
+    */
+   static void split(WNaf.Table table, WNaf.Table phiTable, BigInteger k, WNaf.Table[] tables, BigInteger[] scalars,
+         int offset) {
+      BigInteger[] halves = decompose(k);
+      tables[offset] = halves[0].signum() < 0 ? table.negate() : table;
+      scalars[offset] = halves[0].abs();
+      tables[offset + 1] = halves[1].signum() < 0 ? phiTable.negate() : phiTable;
+      scalars[offset + 1] = halves[1].abs();
+   }
+}
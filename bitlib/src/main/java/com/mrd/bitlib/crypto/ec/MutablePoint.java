@@ -0,0 +1,257 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.copy;
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.create;
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.isZero;
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.mul;
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.setOne;
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.sqr;
+import static com.mrd.bitlib.crypto.ec.Secp256k1Field.sub;
+
+/**
+ * A secp256k1 point in Jacobian coordinates that is updated in place.
+ * <p>
+ * This is the accumulator of the scalar multiplication loops. Doublings and
+ * additions only use the scratch space allocated with the instance, so a
+ * whole multiplication allocates nothing until the result is converted to a
+ * {@link Point}. Instances are not thread safe.
+ */
+final class MutablePoint {
+   private final Curve _curve;
+   private final int[] _x = create();
+   private final int[] _y = create();
+   private final int[] _z = create();
+   private boolean _infinity = true;
+
+   private final int[] _t0 = create();
+   private final int[] _t1 = create();
+   private final int[] _t2 = create();
+   private final int[] _t3 = create();
+   private final int[] _t4 = create();
+   private final int[] _t5 = create();
+   private final int[] _t6 = create();
+
+   MutablePoint(Curve curve) {
+      _curve = curve;
+   }
+
+   boolean isInfinity() {
+      return _infinity;
+   }
+
+   void setInfinity() {
+      _infinity = true;
+   }
+
+   void set(Point p) {
+      if (p.isInfinity()) {
+         _infinity = true;
+         return;
+      }
+      copy(_x, p.getRawX().limbs());
+      copy(_y, p.getRawY().limbs());
+      if (p.isNormalized()) {
+         setOne(_z);
+      } else {
+         copy(_z, p.getZ().limbs());
+      }
+      _infinity = false;
+   }
+
+   // dbl-2009-l for a = 0
+   void twice() {
+      if (_infinity) {
+         return;
+      }
+      if (isZero(_y)) {
+         _infinity = true;
+         return;
+      }
+
+      // Z3 = 2 * Y1 * Z1
+      mul(_z, _y, _z);
+      Secp256k1Field.add(_z, _z, _z);
+
+      int[] A = _t0;
+      int[] B = _t1;
+      int[] C = _t2;
+      int[] D = _t3;
+      int[] E = _t4;
+      int[] F = _t5;
+      sqr(A, _x);
+      sqr(B, _y);
+      sqr(C, B);
+
+      // D = 2 * ((X1 + B)^2 - A - C)
+      Secp256k1Field.add(D, _x, B);
+      sqr(D, D);
+      sub(D, D, A);
+      sub(D, D, C);
+      Secp256k1Field.add(D, D, D);
+
+      // E = 3 * A, F = E^2
+      Secp256k1Field.mulInt(E, A, 3);
+      sqr(F, E);
+
+      // X3 = F - 2 * D
+      sub(_x, F, D);
+      sub(_x, _x, D);
+
+      // Y3 = E * (D - X3) - 8 * C
+      sub(D, D, _x);
+      mul(_y, E, D);
+      Secp256k1Field.mulInt(C, C, 8);
+      sub(_y, _y, C);
+   }
+
+   /**
+    * Add a point which is normalized (madd-2007-bl without the factors of 2)
+    */
+   void addAffine(Point q) {
+      if (q.isInfinity()) {
+         return;
+      }
+      int[] x2 = q.getRawX().limbs();
+      int[] y2 = q.getRawY().limbs();
+      if (_infinity) {
+         copy(_x, x2);
+         copy(_y, y2);
+         setOne(_z);
+         _infinity = false;
+         return;
+      }
+
+      int[] Z1Z1 = _t0;
+      int[] H = _t1;
+      int[] r = _t2;
+      sqr(Z1Z1, _z);
+      // H = X2 * Z1Z1 - X1
+      mul(H, x2, Z1Z1);
+      sub(H, H, _x);
+      // r = Y2 * Z1 * Z1Z1 - Y1
+      mul(r, y2, _z);
+      mul(r, r, Z1Z1);
+      sub(r, r, _y);
+
+      if (isZero(H)) {
+         if (isZero(r)) {
+            twice();
+         } else {
+            _infinity = true;
+         }
+         return;
+      }
+      finishAddition(_x, _y, H, r);
+      mul(_z, _z, H);
+   }
+
+   /**
+    * Add a point in any representation (add-2007-bl)
+    */
+   void add(Point q) {
+      if (q.isInfinity()) {
+         return;
+      }
+      if (q.isNormalized()) {
+         addAffine(q);
+         return;
+      }
+      if (_infinity) {
+         set(q);
+         return;
+      }
+      int[] x2 = q.getRawX().limbs();
+      int[] y2 = q.getRawY().limbs();
+      int[] z2 = q.getZ().limbs();
+
+      int[] U1 = _t0;
+      int[] S1 = _t1;
+      int[] H = _t2;
+      int[] r = _t3;
+      int[] ZZ = _t4;
+      // U1 = X1 * Z2^2, S1 = Y1 * Z2^3
+      sqr(ZZ, z2);
+      mul(U1, _x, ZZ);
+      mul(S1, _y, z2);
+      mul(S1, S1, ZZ);
+      // H = X2 * Z1^2 - U1, r = Y2 * Z1^3 - S1
+      sqr(ZZ, _z);
+      mul(H, x2, ZZ);
+      sub(H, H, U1);
+      mul(r, y2, _z);
+      mul(r, r, ZZ);
+      sub(r, r, S1);
+
+      if (isZero(H)) {
+         if (isZero(r)) {
+            twice();
+         } else {
+            _infinity = true;
+         }
+         return;
+      }
+      finishAddition(U1, S1, H, r);
+      mul(_z, _z, z2);
+      mul(_z, _z, H);
+   }
+
+   /**
+    * X3 = r^2 - H^3 - 2 * U1 * H^2, Y3 = r * (U1 * H^2 - X3) - S1 * H^3. U1 and
+    * S1 may be the current coordinates.
+    */
+   private void finishAddition(int[] U1, int[] S1, int[] H, int[] r) {
+      int[] HHH = _t4;
+      int[] V = _t5;
+      int[] W = _t6;
+      sqr(V, H);
+      mul(HHH, H, V);
+      mul(V, U1, V);
+      // S1 * H^3 before S1 is overwritten
+      mul(W, S1, HHH);
+
+      sqr(_x, r);
+      sub(_x, _x, HHH);
+      sub(_x, _x, V);
+      sub(_x, _x, V);
+
+      sub(V, V, _x);
+      mul(_y, r, V);
+      sub(_y, _y, W);
+   }
+
+   /**
+    * Get the current value as an immutable point in Jacobian coordinates
+    */
+   Point toPoint() {
+      if (_infinity) {
+         return _curve.getInfinity();
+      }
+      int[] x = create();
+      int[] y = create();
+      copy(x, _x);
+      copy(y, _y);
+      FieldElement z = null;
+      if (!Secp256k1Field.isOne(_z)) {
+         int[] zLimbs = create();
+         copy(zLimbs, _z);
+         z = new FieldElement(zLimbs);
+      }
+      return new Point(_curve, new FieldElement(x), new FieldElement(y), z, false);
+   }
+}
@@ -26,37 +26,67 @@ import java.math.BigInteger;
 
 /**
  * This class represents an elliptic curve point.
+ * <p>
+ * The arithmetic is specialized for secp256k1 (a = 0) and done by
+ * {@link MutablePoint}. Internally the point is kept in Jacobian coordinates (X, Y, Z) which
+ * represent the affine point (X / Z^2, Y / Z^3). This allows additions and
+ * doublings without a modular inversion. The affine coordinates are only
+ * calculated when they are asked for, for instance by {@link #getX()},
+ * {@link #getY()} or {@link #getEncoded()}. Points with a null Z coordinate
+ * are affine.
  */
 public class Point implements Serializable {
 
    private static final long serialVersionUID = 1L;
-   
-   private Curve _curve;
-   private FieldElement _x;
-   private FieldElement _y;
-   private boolean _compressed;
+
+   private final Curve _curve;
+   private final FieldElement _x;
+   private final FieldElement _y;
+   // Only affine coordinates are serialized, see writeReplace
+   private final transient FieldElement _z;
+   private final boolean _compressed;
+   private transient Point _normalized;
+   private transient WNaf.Table _wNafTable;
+   private transient WNaf.Table _phiWNafTable;
 
    public Point(Curve curve, FieldElement x, FieldElement y) {
       this(curve, x, y, false);
    }
 
    public Point(Curve curve, FieldElement x, FieldElement y, boolean compressed) {
+      this(curve, x, y, null, compressed);
+   }
+
+   Point(Curve curve, FieldElement x, FieldElement y, FieldElement z, boolean compressed) {
       this._curve = curve;
       this._x = x;
       this._y = y;
+      this._z = z;
       this._compressed = compressed;
    }
 
+   // Serialize the affine point, which has the same form as before points
+   // had a Z coordinate
+   private Object writeReplace() {
+      return normalize();
+   }
+
    public Curve getCurve() {
       return _curve;
    }
 
+   /**
+    * Get the affine x coordinate of this point
+    */
    public FieldElement getX() {
-      return _x;
+      return normalize()._x;
    }
 
+   /**
+    * Get the affine y coordinate of this point
+    */
    public FieldElement getY() {
-      return _y;
+      return normalize()._y;
    }
 
    public boolean isInfinity() {
@@ -67,6 +97,87 @@ public class Point implements Serializable {
       return _compressed;
    }
 
+   /**
+    * Is this point represented by its affine coordinates
+    */
+   public boolean isNormalized() {
+      return _z == null;
+   }
+
+   /**
+    * Get the affine representation of this point. This costs one modular
+    * inversion the first time it is called on a point in Jacobian coordinates.
+    */
+   public Point normalize() {
+      if (isInfinity() || isNormalized()) {
+         return this;
+      }
+      Point normalized = _normalized;
+      if (normalized == null) {
+         normalized = normalize(_z.invert());
+      }
+      return normalized;
+   }
+
+   /**
+    * Get the affine representation of this point given the inverse of its Z
+    * coordinate. Used for normalizing many points with a single inversion.
+    */
+   Point normalize(FieldElement zInv) {
+      FieldElement zInv2 = zInv.square();
+      Point normalized = new Point(_curve, _x.multiply(zInv2), _y.multiply(zInv2.multiply(zInv)), _compressed);
+      _normalized = normalized;
+      return normalized;
+   }
+
+   /**
+    * Get the table of odd multiples of this point used for wNAF
+    * multiplication. It is calculated on first use and kept with the point,
+    * so that points which are multiplied repeatedly, like the public key of a
+    * {@link com.mrd.bitlib.crypto.PublicKey}, only calculate it once.
+    */
+   WNaf.Table getWNafTable() {
+      WNaf.Table table = _wNafTable;
+      if (table == null) {
+         table = WNaf.Table.of(this, EcTools.WNAF_WIDTH);
+         _wNafTable = table;
+      }
+      return table;
+   }
+
+   /**
+    * Get the table of odd multiples of the endomorphism image of this point
+    */
+   WNaf.Table getPhiWNafTable() {
+      WNaf.Table table = _phiWNafTable;
+      if (table == null) {
+         table = getWNafTable().mapX(_curve.fromBigInteger(GlvEndomorphism.BETA));
+         _phiWNafTable = table;
+      }
+      return table;
+   }
+
+   /**
+    * Get the Jacobian X coordinate
+    */
+   FieldElement getRawX() {
+      return _x;
+   }
+
+   /**
+    * Get the Jacobian Y coordinate
+    */
+   FieldElement getRawY() {
+      return _y;
+   }
+
+   /**
+    * Get the Jacobian Z coordinate, null for affine points
+    */
+   FieldElement getZ() {
+      return _z;
+   }
+
    /**
     * return the field element encoded with point compression. (S 4.3.6)
     */
@@ -75,38 +186,23 @@ public class Point implements Serializable {
          return new byte[1];
       }
 
-      int length = EcTools.getByteLength(_x.getFieldSize());
+      Point affine = normalize();
 
       if (_compressed) {
-         byte PC;
-
-         if (this.getY().toBigInteger().testBit(0)) {
-            PC = 0x03;
-         } else {
-            PC = 0x02;
-         }
-
-         byte[] X = EcTools.integerToBytes(this.getX().toBigInteger(), length);
-         byte[] PO = new byte[X.length + 1];
-
-         PO[0] = PC;
-         System.arraycopy(X, 0, PO, 1, X.length);
-
+         byte[] PO = new byte[33];
+         PO[0] = (byte) (affine._y.isOdd() ? 0x03 : 0x02);
+         affine._x.toBytes(PO, 1);
          return PO;
       } else {
-         byte[] X = EcTools.integerToBytes(this.getX().toBigInteger(), length);
-         byte[] Y = EcTools.integerToBytes(this.getY().toBigInteger(), length);
-         byte[] PO = new byte[X.length + Y.length + 1];
-
+         byte[] PO = new byte[65];
          PO[0] = 0x04;
-         System.arraycopy(X, 0, PO, 1, X.length);
-         System.arraycopy(Y, 0, PO, X.length + 1, Y.length);
-
+         affine._x.toBytes(PO, 1);
+         affine._y.toBytes(PO, 33);
          return PO;
       }
    }
 
-   // B.3 pg 62
+   // add-2007-bl, or madd-2007-bl when b is affine
    public Point add(Point b) {
       if (this.isInfinity()) {
          return b;
@@ -116,46 +212,27 @@ public class Point implements Serializable {
          return this;
       }
 
-      // Check if b = this or b = -this
-      if (this._x.equals(b._x)) {
-         if (this._y.equals(b._y)) {
-            // this = b, i.e. this must be doubled
-            return this.twice();
-         }
-
-         // this = -b, i.e. the result is the point at infinity
-         return this._curve.getInfinity();
-      }
-
-      FieldElement gamma = b._y.subtract(this._y).divide(b._x.subtract(this._x));
-
-      FieldElement x3 = gamma.square().subtract(this._x).subtract(b._x);
-      FieldElement y3 = gamma.multiply(this._x.subtract(x3)).subtract(this._y);
-
-      return new Point(_curve, x3, y3);
+      MutablePoint R = new MutablePoint(_curve);
+      R.set(this);
+      R.add(b);
+      return R.toPoint();
    }
 
-   // B.3 pg 62
+   // dbl-2009-l
    public Point twice() {
       if (this.isInfinity()) {
          // Twice identity element (point at infinity) is identity
          return this;
       }
 
-      if (this._y.toBigInteger().signum() == 0) {
-         // if y1 == 0, then (x1, y1) == (x1, -y1)
-         // and hence this = -this and thus 2(x1, y1) == infinity
-         return this._curve.getInfinity();
+      MutablePoint R = new MutablePoint(_curve);
+      R.set(this);
+      R.twice();
+      Point result = R.toPoint();
+      if (result.isInfinity() || !_compressed) {
+         return result;
       }
-
-      FieldElement TWO = this._curve.fromBigInteger(BigInteger.valueOf(2));
-      FieldElement THREE = this._curve.fromBigInteger(BigInteger.valueOf(3));
-      FieldElement gamma = this._x.square().multiply(THREE).add(_curve.getA()).divide(_y.multiply(TWO));
-
-      FieldElement x3 = gamma.square().subtract(this._x.multiply(TWO));
-      FieldElement y3 = gamma.multiply(this._x.subtract(x3)).subtract(this._y);
-
-      return new Point(_curve, x3, y3, this._compressed);
+      return new Point(_curve, result._x, result._y, result._z, true);
    }
 
    // D.3.2 pg 102 (see Note:)
@@ -169,7 +246,10 @@ public class Point implements Serializable {
    }
 
    public Point negate() {
-      return new Point(_curve, this._x, this._y.negate(), this._compressed);
+      if (isInfinity()) {
+         return this;
+      }
+      return new Point(_curve, this._x, this._y.negate(), this._z, this._compressed);
    }
 
    @Override
@@ -188,7 +268,13 @@ public class Point implements Serializable {
          return o.isInfinity();
       }
 
-      return _x.equals(o._x) && _y.equals(o._y);
+      if (o.isInfinity()) {
+         return false;
+      }
+
+      Point a = this.normalize();
+      Point b = o.normalize();
+      return a._x.equals(b._x) && a._y.equals(b._y);
    }
 
    @Override
@@ -197,7 +283,8 @@ public class Point implements Serializable {
          return 0;
       }
 
-      return _x.hashCode() ^ _y.hashCode();
+      Point a = normalize();
+      return a._x.hashCode() ^ a._y.hashCode();
    }
 
    public Point multiply(BigInteger n) {
@@ -0,0 +1,499 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+import com.mrd.bitlib.util.HexUtils;
+
+/**
+ * Arithmetic in the secp256k1 base field, p = 2^256 - 2^32 - 977.
+ * <p>
+ * An element is an int[10] holding ten 26-bit limbs, least significant first
+ * (the top limb holds the remaining 22 bits). All operations write into a
+ * caller supplied array, which may be one of the inputs, and always leave a
+ * fully reduced result in [0, p). Products are accumulated in longs and
+ * reduced using 2^256 = 2^32 + 977 (mod p), so nothing is allocated except in
+ * {@link #inv} and {@link #sqrt} which need a few temporaries.
+ */
+final class Secp256k1Field {
+   static final BigInteger P = new BigInteger(1,
+         HexUtils.toBytes("FFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFFEFFFFFC2F"));
+
+   static final int LIMBS = 10;
+
+   private static final long M26 = 0x3FFFFFFL;
+   private static final long M22 = 0x3FFFFFL;
+
+   // 2^260 = 2^36 + 15632 (mod p), and 2^36 is 2^10 in the next limb
+   private static final long R0 = 15632L;
+
+   // The limbs of 2 * p, used to keep subtractions non-negative
+   private static final long P2_0 = 0x3FFFC2FL << 1;
+   private static final long P2_1 = 0x3FFFFBFL << 1;
+   private static final long P2_M = M26 << 1;
+   private static final long P2_9 = M22 << 1;
+
+   private Secp256k1Field() {
+   }
+
+   static int[] create() {
+      return new int[LIMBS];
+   }
+
+   static void setZero(int[] r) {
+      for (int i = 0; i < LIMBS; i++) {
+         r[i] = 0;
+      }
+   }
+
+   static void setOne(int[] r) {
+      setZero(r);
+      r[0] = 1;
+   }
+
+   static void copy(int[] r, int[] a) {
+      System.arraycopy(a, 0, r, 0, LIMBS);
+   }
+
+   static boolean isZero(int[] a) {
+      int bits = 0;
+      for (int i = 0; i < LIMBS; i++) {
+         bits |= a[i];
+      }
+      return bits == 0;
+   }
+
+   static boolean isOne(int[] a) {
+      int bits = a[0] ^ 1;
+      for (int i = 1; i < LIMBS; i++) {
+         bits |= a[i];
+      }
+      return bits == 0;
+   }
+
+   static boolean isOdd(int[] a) {
+      return (a[0] & 1) != 0;
+   }
+
+   static boolean equals(int[] a, int[] b) {
+      int bits = 0;
+      for (int i = 0; i < LIMBS; i++) {
+         bits |= a[i] ^ b[i];
+      }
+      return bits == 0;
+   }
+
+   /**
+    * Set r to a value in [0, p)
+    */
+   static void fromBigInteger(int[] r, BigInteger x) {
+      if (x.signum() < 0 || x.compareTo(P) >= 0) {
+         throw new IllegalArgumentException("Value out of field range");
+      }
+      byte[] bytes = x.toByteArray();
+      setZero(r);
+      for (int j = 0; j < 32 && j < bytes.length; j++) {
+         int b = bytes[bytes.length - 1 - j] & 0xFF;
+         int bit = j * 8;
+         int limb = bit / 26;
+         int shift = bit % 26;
+         r[limb] |= (b << shift) & M26;
+         if (shift > 18 && limb + 1 < LIMBS) {
+            r[limb + 1] |= b >>> (26 - shift);
+         }
+      }
+   }
+
+   /**
+    * Write a as 32 bytes big endian
+    */
+   static void toBytes(int[] a, byte[] out, int offset) {
+      for (int j = 0; j < 32; j++) {
+         int bit = j * 8;
+         int limb = bit / 26;
+         int shift = bit % 26;
+         int b = a[limb] >>> shift;
+         if (shift > 18 && limb + 1 < LIMBS) {
+            b |= a[limb + 1] << (26 - shift);
+         }
+         out[offset + 31 - j] = (byte) b;
+      }
+   }
+
+   static BigInteger toBigInteger(int[] a) {
+      byte[] bytes = new byte[32];
+      toBytes(a, bytes, 0);
+      return new BigInteger(1, bytes);
+   }
+
+   static void add(int[] r, int[] a, int[] b) {
+      reduce(r, (long) a[0] + b[0], (long) a[1] + b[1], (long) a[2] + b[2], (long) a[3] + b[3], (long) a[4] + b[4],
+            (long) a[5] + b[5], (long) a[6] + b[6], (long) a[7] + b[7], (long) a[8] + b[8], (long) a[9] + b[9]);
+   }
+
+   static void sub(int[] r, int[] a, int[] b) {
+      reduce(r, a[0] + P2_0 - b[0], a[1] + P2_1 - b[1], a[2] + P2_M - b[2], a[3] + P2_M - b[3], a[4] + P2_M - b[4],
+            a[5] + P2_M - b[5], a[6] + P2_M - b[6], a[7] + P2_M - b[7], a[8] + P2_M - b[8], a[9] + P2_9 - b[9]);
+   }
+
+   static void negate(int[] r, int[] a) {
+      reduce(r, P2_0 - a[0], P2_1 - a[1], P2_M - a[2], P2_M - a[3], P2_M - a[4], P2_M - a[5], P2_M - a[6],
+            P2_M - a[7], P2_M - a[8], P2_9 - a[9]);
+   }
+
+   /**
+    * r = a * k for a small non-negative factor k
+    */
+   static void mulInt(int[] r, int[] a, int k) {
+      reduce(r, (long) a[0] * k, (long) a[1] * k, (long) a[2] * k, (long) a[3] * k, (long) a[4] * k,
+            (long) a[5] * k, (long) a[6] * k, (long) a[7] * k, (long) a[8] * k, (long) a[9] * k);
+   }
+
+   static void mul(int[] r, int[] a, int[] b) {
+      long a0 = a[0];
+      long a1 = a[1];
+      long a2 = a[2];
+      long a3 = a[3];
+      long a4 = a[4];
+      long a5 = a[5];
+      long a6 = a[6];
+      long a7 = a[7];
+      long a8 = a[8];
+      long a9 = a[9];
+      long b0 = b[0];
+      long b1 = b[1];
+      long b2 = b[2];
+      long b3 = b[3];
+      long b4 = b[4];
+      long b5 = b[5];
+      long b6 = b[6];
+      long b7 = b[7];
+      long b8 = b[8];
+      long b9 = b[9];
+
+      long c0 = a0 * b0;
+      long c1 = a0 * b1 + a1 * b0;
+      long c2 = a0 * b2 + a1 * b1 + a2 * b0;
+      long c3 = a0 * b3 + a1 * b2 + a2 * b1 + a3 * b0;
+      long c4 = a0 * b4 + a1 * b3 + a2 * b2 + a3 * b1 + a4 * b0;
+      long c5 = a0 * b5 + a1 * b4 + a2 * b3 + a3 * b2 + a4 * b1 + a5 * b0;
+      long c6 = a0 * b6 + a1 * b5 + a2 * b4 + a3 * b3 + a4 * b2 + a5 * b1 + a6 * b0;
+      long c7 = a0 * b7 + a1 * b6 + a2 * b5 + a3 * b4 + a4 * b3 + a5 * b2 + a6 * b1 + a7 * b0;
+      long c8 = a0 * b8 + a1 * b7 + a2 * b6 + a3 * b5 + a4 * b4 + a5 * b3 + a6 * b2 + a7 * b1 + a8 * b0;
+      long c9 = a0 * b9 + a1 * b8 + a2 * b7 + a3 * b6 + a4 * b5 + a5 * b4 + a6 * b3 + a7 * b2 + a8 * b1 + a9 * b0;
+      long c10 = a1 * b9 + a2 * b8 + a3 * b7 + a4 * b6 + a5 * b5 + a6 * b4 + a7 * b3 + a8 * b2 + a9 * b1;
+      long c11 = a2 * b9 + a3 * b8 + a4 * b7 + a5 * b6 + a6 * b5 + a7 * b4 + a8 * b3 + a9 * b2;
+      long c12 = a3 * b9 + a4 * b8 + a5 * b7 + a6 * b6 + a7 * b5 + a8 * b4 + a9 * b3;
+      long c13 = a4 * b9 + a5 * b8 + a6 * b7 + a7 * b6 + a8 * b5 + a9 * b4;
+      long c14 = a5 * b9 + a6 * b8 + a7 * b7 + a8 * b6 + a9 * b5;
+      long c15 = a6 * b9 + a7 * b8 + a8 * b7 + a9 * b6;
+      long c16 = a7 * b9 + a8 * b8 + a9 * b7;
+      long c17 = a8 * b9 + a9 * b8;
+      long c18 = a9 * b9;
+
+      reduceWide(r, c0, c1, c2, c3, c4, c5, c6, c7, c8, c9, c10, c11, c12, c13, c14, c15, c16, c17, c18);
+   }
+
+   static void sqr(int[] r, int[] a) {
+      long a0 = a[0];
+      long a1 = a[1];
+      long a2 = a[2];
+      long a3 = a[3];
+      long a4 = a[4];
+      long a5 = a[5];
+      long a6 = a[6];
+      long a7 = a[7];
+      long a8 = a[8];
+      long a9 = a[9];
+
+      long c0 = a0 * a0;
+      long c1 = (a0 * a1 << 1);
+      long c2 = (a0 * a2 << 1) + a1 * a1;
+      long c3 = (a0 * a3 << 1) + (a1 * a2 << 1);
+      long c4 = (a0 * a4 << 1) + (a1 * a3 << 1) + a2 * a2;
+      long c5 = (a0 * a5 << 1) + (a1 * a4 << 1) + (a2 * a3 << 1);
+      long c6 = (a0 * a6 << 1) + (a1 * a5 << 1) + (a2 * a4 << 1) + a3 * a3;
+      long c7 = (a0 * a7 << 1) + (a1 * a6 << 1) + (a2 * a5 << 1) + (a3 * a4 << 1);
+      long c8 = (a0 * a8 << 1) + (a1 * a7 << 1) + (a2 * a6 << 1) + (a3 * a5 << 1) + a4 * a4;
+      long c9 = (a0 * a9 << 1) + (a1 * a8 << 1) + (a2 * a7 << 1) + (a3 * a6 << 1) + (a4 * a5 << 1);
+      long c10 = (a1 * a9 << 1) + (a2 * a8 << 1) + (a3 * a7 << 1) + (a4 * a6 << 1) + a5 * a5;
+      long c11 = (a2 * a9 << 1) + (a3 * a8 << 1) + (a4 * a7 << 1) + (a5 * a6 << 1);
+      long c12 = (a3 * a9 << 1) + (a4 * a8 << 1) + (a5 * a7 << 1) + a6 * a6;
+      long c13 = (a4 * a9 << 1) + (a5 * a8 << 1) + (a6 * a7 << 1);
+      long c14 = (a5 * a9 << 1) + (a6 * a8 << 1) + a7 * a7;
+      long c15 = (a6 * a9 << 1) + (a7 * a8 << 1);
+      long c16 = (a7 * a9 << 1) + a8 * a8;
+      long c17 = (a8 * a9 << 1);
+      long c18 = a9 * a9;
+
+      reduceWide(r, c0, c1, c2, c3, c4, c5, c6, c7, c8, c9, c10, c11, c12, c13, c14, c15, c16, c17, c18);
+   }
+
+   /**
+    * r = a^(2^n)
+    */
+   static void sqrN(int[] r, int[] a, int n) {
+      sqr(r, a);
+      for (int i = 1; i < n; i++) {
+         sqr(r, r);
+      }
+   }
+
+   /**
+    * Reduce the 19 limb product of two field elements
+    */
+   private static void reduceWide(int[] r, long c0, long c1, long c2, long c3, long c4, long c5, long c6, long c7,
+         long c8, long c9, long c10, long c11, long c12, long c13, long c14, long c15, long c16, long c17, long c18) {
+      c1 += c0 >>> 26;
+      c0 &= M26;
+      c2 += c1 >>> 26;
+      c1 &= M26;
+      c3 += c2 >>> 26;
+      c2 &= M26;
+      c4 += c3 >>> 26;
+      c3 &= M26;
+      c5 += c4 >>> 26;
+      c4 &= M26;
+      c6 += c5 >>> 26;
+      c5 &= M26;
+      c7 += c6 >>> 26;
+      c6 &= M26;
+      c8 += c7 >>> 26;
+      c7 &= M26;
+      c9 += c8 >>> 26;
+      c8 &= M26;
+      c10 += c9 >>> 26;
+      c9 &= M26;
+      c11 += c10 >>> 26;
+      c10 &= M26;
+      c12 += c11 >>> 26;
+      c11 &= M26;
+      c13 += c12 >>> 26;
+      c12 &= M26;
+      c14 += c13 >>> 26;
+      c13 &= M26;
+      c15 += c14 >>> 26;
+      c14 &= M26;
+      c16 += c15 >>> 26;
+      c15 &= M26;
+      c17 += c16 >>> 26;
+      c16 &= M26;
+      c18 += c17 >>> 26;
+      c17 &= M26;
+      long c19 = c18 >>> 26;
+      c18 &= M26;
+
+      // Fold limb k >= 10 into limbs k - 10 and k - 9 using 2^260 = 2^36 + 15632
+      c9 += c19 * R0;
+      c10 += c19 << 10;
+      c8 += c18 * R0;
+      c9 += c18 << 10;
+      c7 += c17 * R0;
+      c8 += c17 << 10;
+      c6 += c16 * R0;
+      c7 += c16 << 10;
+      c5 += c15 * R0;
+      c6 += c15 << 10;
+      c4 += c14 * R0;
+      c5 += c14 << 10;
+      c3 += c13 * R0;
+      c4 += c13 << 10;
+      c2 += c12 * R0;
+      c3 += c12 << 10;
+      c1 += c11 * R0;
+      c2 += c11 << 10;
+      c0 += c10 * R0;
+      c1 += c10 << 10;
+
+      reduce(r, c0, c1, c2, c3, c4, c5, c6, c7, c8, c9);
+   }
+
+   /**
+    * Reduce ten non-negative limbs of up to 62 bits each into [0, p)
+    */
+   private static void reduce(int[] r, long c0, long c1, long c2, long c3, long c4, long c5, long c6, long c7, long c8, long c9) {
+      // Two rounds of carrying, folding what exceeds 2^256 back using
+      // 2^256 = 2^32 + 977. After the first round the value is below 2^256 plus
+      // a small multiple of 2^32 + 977, after the second it is below 2^256.
+      for (int round = 0; round < 2; round++) {
+         c1 += c0 >>> 26;
+         c0 &= M26;
+         c2 += c1 >>> 26;
+         c1 &= M26;
+         c3 += c2 >>> 26;
+         c2 &= M26;
+         c4 += c3 >>> 26;
+         c3 &= M26;
+         c5 += c4 >>> 26;
+         c4 &= M26;
+         c6 += c5 >>> 26;
+         c5 &= M26;
+         c7 += c6 >>> 26;
+         c6 &= M26;
+         c8 += c7 >>> 26;
+         c7 &= M26;
+         c9 += c8 >>> 26;
+         c8 &= M26;
+         long t = c9 >>> 22;
+         c9 &= M22;
+         c0 += t * 977;
+         c1 += t << 6;
+      }
+      c1 += c0 >>> 26;
+      c0 &= M26;
+      c2 += c1 >>> 26;
+      c1 &= M26;
+
+      // The value is now below 2^256. If it is at least p, subtract p by adding
+      // 2^32 + 977 and dropping the 2^256 bit.
+      long u0 = c0 + 977;
+      long u1 = c1 + 64 + (u0 >>> 26);
+      u0 &= M26;
+      long u2 = c2 + (u1 >>> 26);
+      u1 &= M26;
+      long u3 = c3 + (u2 >>> 26);
+      u2 &= M26;
+      long u4 = c4 + (u3 >>> 26);
+      u3 &= M26;
+      long u5 = c5 + (u4 >>> 26);
+      u4 &= M26;
+      long u6 = c6 + (u5 >>> 26);
+      u5 &= M26;
+      long u7 = c7 + (u6 >>> 26);
+      u6 &= M26;
+      long u8 = c8 + (u7 >>> 26);
+      u7 &= M26;
+      long u9 = c9 + (u8 >>> 26);
+      u8 &= M26;
+      if ((u9 >>> 22) != 0) {
+         r[0] = (int) u0;
+         r[1] = (int) u1;
+         r[2] = (int) u2;
+         r[3] = (int) u3;
+         r[4] = (int) u4;
+         r[5] = (int) u5;
+         r[6] = (int) u6;
+         r[7] = (int) u7;
+         r[8] = (int) u8;
+         r[9] = (int) (u9 & M22);
+      } else {
+         r[0] = (int) c0;
+         r[1] = (int) c1;
+         r[2] = (int) c2;
+         r[3] = (int) c3;
+         r[4] = (int) c4;
+         r[5] = (int) c5;
+         r[6] = (int) c6;
+         r[7] = (int) c7;
+         r[8] = (int) c8;
+         r[9] = (int) c9;
+      }
+   }
+
+   /**
+    * Calculate x2 = a^(2^2 - 1), x3 = a^(2^3 - 1), x22 = a^(2^22 - 1) and
+    * x223 = a^(2^223 - 1). These are the blocks of ones in the exponents p - 2
+    * and (p + 1) / 4.
+    */
+   private static void powerBlocks(int[] a, int[] x2, int[] x3, int[] x22, int[] x223) {
+      int[] t = create();
+      int[] x11 = create();
+      int[] x44 = create();
+
+      sqr(x2, a);
+      mul(x2, x2, a);
+
+      sqr(x3, x2);
+      mul(x3, x3, a);
+
+      // x6 and x9 in t
+      sqrN(t, x3, 3);
+      mul(t, t, x3);
+      sqrN(t, t, 3);
+      mul(t, t, x3);
+
+      sqrN(x11, t, 2);
+      mul(x11, x11, x2);
+
+      sqrN(x22, x11, 11);
+      mul(x22, x22, x11);
+
+      sqrN(x44, x22, 22);
+      mul(x44, x44, x22);
+
+      // x88, x176 and x220 in t
+      sqrN(t, x44, 44);
+      mul(t, t, x44);
+      int[] x88 = x11;
+      copy(x88, t);
+      sqrN(t, t, 88);
+      mul(t, t, x88);
+      sqrN(t, t, 44);
+      mul(t, t, x44);
+
+      sqrN(x223, t, 3);
+      mul(x223, x223, x3);
+   }
+
+   /**
+    * r = 1 / a using Fermat's little theorem, r = a^(p - 2). The inverse of
+    * zero is zero.
+    */
+   static void inv(int[] r, int[] a) {
+      int[] x2 = create();
+      int[] x3 = create();
+      int[] x22 = create();
+      int[] t = create();
+      powerBlocks(a, x2, x3, x22, t);
+
+      sqrN(t, t, 23);
+      mul(t, t, x22);
+      sqrN(t, t, 5);
+      mul(t, t, a);
+      sqrN(t, t, 3);
+      mul(t, t, x2);
+      sqrN(t, t, 2);
+      mul(r, t, a);
+   }
+
+   /**
+    * Calculate a square root of a, r = a^((p + 1) / 4), which works as
+    * p = 3 mod 4.
+    *
+    * @return true if a is a square, otherwise r is undefined
+    */
+   static boolean sqrt(int[] r, int[] a) {
+      int[] x2 = create();
+      int[] x3 = create();
+      int[] x22 = create();
+      int[] t = create();
+      powerBlocks(a, x2, x3, x22, t);
+
+      sqrN(t, t, 23);
+      mul(t, t, x22);
+      sqrN(t, t, 6);
+      mul(t, t, x2);
+      sqrN(t, t, 2);
+
+      // Check the result before writing it, a and r may be the same
+      sqr(x2, t);
+      boolean isSquare = equals(x2, a);
+      copy(r, t);
+      return isSquare;
+   }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.crypto.ec;
+
+import java.math.BigInteger;
+
+/**
+ * Width-w non-adjacent form (wNAF) of scalars and the tables of odd multiples
+ * used with it.
+ * <p>
+ * In wNAF every non-zero digit is odd, lies in (-2^(w-1), 2^(w-1)) and is
+ * followed by at least w-1 zero digits. Multiplying with a scalar in wNAF
+ * therefore needs a table of the points P, 3P, ..., (2^(w-1)-1)P and on
+ * average one addition every w+1 doublings.
+ */
+final class WNaf {
+
+   private WNaf() {
+   }
+
+   /**
+    * Calculate the wNAF digits of a non-negative scalar, least significant
+    * digit first
+    */
+   static byte[] encode(BigInteger k, int width) {
+      int bitLength = k.bitLength();
+      byte[] digits = new byte[bitLength + width + 1];
+      int pow = 1 << width;
+      int mask = pow - 1;
+      int half = pow >>> 1;
+      int carry = 0;
+      int length = 0;
+      int j = 0;
+      while (j <= bitLength || carry != 0) {
+         int bit = k.testBit(j) ? 1 : 0;
+         if (bit == carry) {
+            // bit + carry is even, the digit is zero
+            j++;
+            continue;
+         }
+         int word = carry;
+         for (int b = 0; b < width; b++) {
+            if (k.testBit(j + b)) {
+               word += 1 << b;
+            }
+         }
+         int digit = word & mask;
+         if (digit >= half) {
+            digit -= pow;
+            carry = 1;
+         } else {
+            carry = 0;
+         }
+         digits[j] = (byte) digit;
+         length = j + 1;
+         j += width;
+      }
+      byte[] result = new byte[length];
+      System.arraycopy(digits, 0, result, 0, length);
+      return result;
+   }
+
+   /**
+    * The affine odd multiples P, 3P, 5P, ... of a point and their negations
+    */
+   static class Table {
+      private final int _width;
+      private final Point[] _positive;
+      private final Point[] _negative;
+
+      private Table(int width, Point[] positive) {
+         _width = width;
+         _positive = positive;
+         _negative = new Point[positive.length];
+         for (int i = 0; i < positive.length; i++) {
+            _negative[i] = positive[i].negate();
+         }
+      }
+
+      private Table(int width, Point[] positive, Point[] negative) {
+         _width = width;
+         _positive = positive;
+         _negative = negative;
+      }
+
+      /**
+       * Build the table for the given point and width. The points are
+       * normalized using a single inversion.
+       */
+      static Table of(Point p, int width) {
+         Point[] points = new Point[1 << (width - 2)];
+         points[0] = p.normalize();
+         Point twice = points[0].twice();
+         for (int i = 1; i < points.length; i++) {
+            points[i] = points[i - 1].add(twice);
+         }
+         return new Table(width, EcTools.normalizeAll(points));
+      }
+
+      /**
+       * Get the table of -P
+       */
+      Table negate() {
+         return new Table(_width, _negative, _positive);
+      }
+
+      /**
+       * Get the table of the point (factor * x, y). For the endomorphism
+       * factor beta this is the table of phi(P).
+       */
+      Table mapX(FieldElement factor) {
+         Point[] mapped = new Point[_positive.length];
+         for (int i = 0; i < mapped.length; i++) {
+            Point p = _positive[i];
+            mapped[i] = new Point(p.getCurve(), p.getX().multiply(factor), p.getY());
+         }
+         return new Table(_width, mapped);
+      }
+
+      int getWidth() {
+         return _width;
+      }
+
+      /**
+       * Get digit * P for an odd digit of a wNAF of this table's width
+       */
+      Point get(int digit) {
+         return digit > 0 ? _positive[digit >>> 1] : _negative[(-digit) >>> 1];
+      }
+   }
+}
@@ -6,6 +6,15 @@ import static java.lang.Integer.MAX_VALUE;
 import static java.lang.System.arraycopy;
 
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -20,9 +29,22 @@ import javax.crypto.spec.SecretKeySpec;
  *         for use with BCCAPI
  */
 public class SCrypt {
+   // Progress is reported, and termination checked, after this many mixing
+   // iterations of a lane
+   private static final int PROGRESS_INTERVAL = 256;
+   // The original SCrypt implementation uses one big V array with N * 128 *
+   // r bytes. We have observed that this may cause problems on some android
+   // devices due to memory fragmentation. Instead we allocate V in segments
+   // of at most this many ints (1 MB).
+   private static final int SEGMENT_INTS = 1 << 18;
+
    /**
     * Pure Java implementation of the <a
     * href="http://www.tarsnap.com/scrypt/scrypt.pdf"/>scrypt KDF</a>.
+    * <p>
+    * Independent lanes (the p parameter) are mixed on separate threads, as
+    * many as there are processors and as long as their memory uses at most a
+    * quarter of the maximum heap size.
     * 
     * @param passwd
     *           Password.
@@ -45,6 +67,39 @@ public class SCrypt {
     */
    public static byte[] scrypt(byte[] passwd, byte[] salt, int N, int r, int p, int dkLen,
                                  SCryptProgress progressTracker) throws GeneralSecurityException, InterruptedException {
+      return scrypt(passwd, salt, N, r, p, dkLen, progressTracker, defaultThreads(N, r, p));
+   }
+
+   /**
+    * Pure Java implementation of the <a
+    * href="http://www.tarsnap.com/scrypt/scrypt.pdf"/>scrypt KDF</a> using
+    * at most the given number of threads for mixing independent lanes. Each
+    * thread needs 128 * r * N bytes of memory.
+    */
+   public static byte[] scrypt(byte[] passwd, byte[] salt, int N, int r, int p, int dkLen,
+                               SCryptProgress progressTracker, int maxThreads)
+         throws GeneralSecurityException, InterruptedException {
+      return scrypt(passwd, salt, N, r, p, dkLen, progressTracker, maxThreads, null);
+   }
+
+   /**
+    * Pure Java implementation of the <a
+    * href="http://www.tarsnap.com/scrypt/scrypt.pdf"/>scrypt KDF</a> mixing
+    * all lanes in the calling thread using the given scratch space. Use this
+    * to avoid allocating the memory again for every calculation when running
+    * many calculations with the same parameters on a thread.
+    */
+   public static byte[] scrypt(byte[] passwd, byte[] salt, int N, int r, int p, int dkLen,
+                               SCryptProgress progressTracker, Scratch scratch)
+         throws GeneralSecurityException, InterruptedException {
+      if (scratch._n != N || scratch._r != r)
+         throw new IllegalArgumentException("Scratch space does not match N and r");
+      return scrypt(passwd, salt, N, r, p, dkLen, progressTracker, 1, scratch);
+   }
+
+   private static byte[] scrypt(byte[] passwd, byte[] salt, int N, int r, int p, int dkLen,
+                                SCryptProgress progressTracker, int maxThreads, Scratch scratch)
+         throws GeneralSecurityException, InterruptedException {
       if (N == 0 || (N & (N - 1)) != 0)
          throw new IllegalArgumentException("N must be > 0 and a power of 2");
 
@@ -59,160 +114,281 @@ public class SCrypt {
       byte[] DK = new byte[dkLen];
 
       byte[] B = new byte[128 * r * p];
-      byte[] XY = new byte[256 * r];
-      // The original SCrypt implementation uses one big V array with N * 128 *
-      // r bytes. We have observed that this may cause problems on some android
-      // devices due to memory fragmentation. Instead we allocate N arrays of
-      // size 128 * r.
-      byte[][] V = new byte[N][];
-      for (int i = 0; i < N; i++) {
-         V[i] = new byte[128 * r];
-      }
-      
-      int i;
-
       PBKDF.pbkdf2(mac, salt, 1, B, p * 128 * r);
 
-      for (i = 0; i < p; i++) {
-         smix(B, i * 128 * r, r, N, V, XY, progressTracker);
-         if (progressTracker != null) {
-            progressTracker.setProgressP(i+1);
+      // Salsa20/8 works on little endian words, convert once
+      int[] B32 = new int[32 * r * p];
+      for (int i = 0; i < B32.length; i++) {
+         B32[i] = (B[i * 4] & 0xff) | (B[i * 4 + 1] & 0xff) << 8 | (B[i * 4 + 2] & 0xff) << 16 | (B[i * 4 + 3] & 0xff) << 24;
+      }
+
+      int threads = Math.max(1, Math.min(maxThreads, p));
+      if (scratch != null || threads == 1) {
+         if (scratch == null) {
+            scratch = new Scratch(N, r);
          }
+         for (int i = 0; i < p; i++) {
+            scratch.smix(B32, i * 32 * r, progressTracker, new AtomicBoolean());
+         }
+      } else {
+         smixParallel(B32, N, r, p, threads, progressTracker);
+      }
+
+      for (int i = 0; i < B32.length; i++) {
+         B[i * 4] = (byte) B32[i];
+         B[i * 4 + 1] = (byte) (B32[i] >>> 8);
+         B[i * 4 + 2] = (byte) (B32[i] >>> 16);
+         B[i * 4 + 3] = (byte) (B32[i] >>> 24);
       }
       PBKDF.pbkdf2(mac, B, 1, DK, dkLen);
 
       return DK;
    }
 
-   private static void smix(byte[] B, int Bi, int r, int N, byte[][] V, byte[] XY, SCryptProgress progressTracker)
-         throws InterruptedException {
-      int Xi = 0;
-      int Yi = 128 * r;
-      int i;
-
-      arraycopy(B, Bi, XY, Xi, 128 * r);
+   private static int defaultThreads(int N, int r, int p) {
+      // Every lane mixed in parallel needs its own V
+      long laneMemory = 128L * r * N;
+      long byMemory = Runtime.getRuntime().maxMemory() / 4 / laneMemory;
+      int byProcessors = Runtime.getRuntime().availableProcessors();
+      return (int) Math.max(1, Math.min(Math.min(p, byProcessors), byMemory));
+   }
 
-      for (i = 0; i < N; i++) {
-         arraycopy(XY, Xi, V[i], 0, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
-         if (progressTracker != null) {
-            progressTracker.setProgressN1(i);
+   private static void smixParallel(int[] B, int N, int r, int p, int threads, SCryptProgress progressTracker)
+         throws InterruptedException {
+      AtomicInteger nextLane = new AtomicInteger();
+      // Tells the other threads to give up when one fails
+      AtomicBoolean abort = new AtomicBoolean();
+      LaneWorker worker = new LaneWorker(B, N, r, p, progressTracker, nextLane, abort);
+
+      ExecutorService executor = Executors.newFixedThreadPool(threads - 1);
+      boolean success = false;
+      try {
+         List<Future<Void>> futures = new ArrayList<Future<Void>>(threads - 1);
+         for (int i = 0; i < threads - 1; i++) {
+            futures.add(executor.submit(worker));
          }
-      }
-
-      for (i = 0; i < N; i++) {
-         int j = integerify(XY, Xi, r) & (N - 1);
-         blockxor(V[j], 0, XY, Xi, 128 * r);
-         blockmix_salsa8(XY, Xi, Yi, r);
-         if (progressTracker != null) {
-            progressTracker.setProgressN2(i);
+         // The calling thread mixes lanes too
+         worker.call();
+         for (Future<Void> future : futures) {
+            future.get();
          }
+         success = true;
+      } catch (ExecutionException e) {
+         Throwable cause = e.getCause();
+         if (cause instanceof InterruptedException) {
+            throw (InterruptedException) cause;
+         } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+         } else if (cause instanceof Error) {
+            throw (Error) cause;
+         }
+         throw new RuntimeException(cause);
+      } finally {
+         if (!success) {
+            abort.set(true);
+         }
+         executor.shutdown();
       }
-
-      arraycopy(XY, Xi, B, Bi, 128 * r);
    }
 
-   private static void blockmix_salsa8(byte[] BY, int Bi, int Yi, int r) {
-      byte[] X = new byte[64];
-      int i;
-
-      arraycopy(BY, Bi + (2 * r - 1) * 64, X, 0, 64);
-
-      for (i = 0; i < 2 * r; i++) {
-         blockxor(BY, i * 64, X, 0, 64);
-         salsa20_8(X);
-         arraycopy(X, 0, BY, Yi + (i * 64), 64);
+   /**
+    * Mixes lanes until there are none left. All workers of a calculation share
+    * the lane counter, every call uses its own scratch space.
+    */
+   private static class LaneWorker implements Callable<Void> {
+      private final int[] _b;
+      private final int _n;
+      private final int _r;
+      private final int _p;
+      private final SCryptProgress _progressTracker;
+      private final AtomicInteger _nextLane;
+      private final AtomicBoolean _abort;
+
+      private LaneWorker(int[] B, int N, int r, int p, SCryptProgress progressTracker, AtomicInteger nextLane,
+                         AtomicBoolean abort) {
+         _b = B;
+         _n = N;
+         _r = r;
+         _p = p;
+         _progressTracker = progressTracker;
+         _nextLane = nextLane;
+         _abort = abort;
       }
 
-      for (i = 0; i < r; i++) {
-         arraycopy(BY, Yi + (i * 2) * 64, BY, Bi + (i * 64), 64);
+      @Override
+      public Void call() throws InterruptedException {
+         Scratch scratch = new Scratch(_n, _r);
+         for (int i = _nextLane.getAndIncrement(); i < _p; i = _nextLane.getAndIncrement()) {
+            scratch.smix(_b, i * 32 * _r, _progressTracker, _abort);
+         }
+         return null;
       }
+   }
 
-      for (i = 0; i < r; i++) {
-         arraycopy(BY, Yi + (i * 2 + 1) * 64, BY, Bi + (i + r) * 64, 64);
+   /**
+    * The scratch space for mixing one lane at a time, about 128 * r * N bytes.
+    * Mixing works in place on its int arrays and allocates nothing.
+    * <p>
+    * A scratch space may be reused for any number of calculations with the
+    * same N and r, but only by one thread at a time.
+    */
+   public static class Scratch {
+      private final int _n;
+      private final int _r;
+      private final int _blockInts;
+      private final int _segmentShift;
+      private final int _segmentMask;
+      private final int[][] _v;
+      private final int[] _xy;
+      private final int[] _x;
+
+      public Scratch(int N, int r) {
+         if (N == 0 || (N & (N - 1)) != 0)
+            throw new IllegalArgumentException("N must be > 0 and a power of 2");
+         if (N > MAX_VALUE / 128 / r)
+            throw new IllegalArgumentException("Parameter N is too large");
+
+         _n = N;
+         _r = r;
+         _blockInts = 32 * r;
+         int blocksPerSegment = Math.min(N, Integer.highestOneBit(Math.max(1, SEGMENT_INTS / _blockInts)));
+         _segmentShift = Integer.numberOfTrailingZeros(blocksPerSegment);
+         _segmentMask = blocksPerSegment - 1;
+         _v = new int[N / blocksPerSegment][blocksPerSegment * _blockInts];
+         _xy = new int[2 * _blockInts];
+         _x = new int[16];
       }
-   }
 
-   public static int R(int a, int b) {
-      return (a << b) | (a >>> (32 - b));
-   }
+      private void smix(int[] B, int Bi, SCryptProgress progressTracker, AtomicBoolean abort)
+            throws InterruptedException {
+         int N = _n;
+         int blockInts = _blockInts;
+         int[] XY = _xy;
+         int step = Math.min(PROGRESS_INTERVAL, N);
+         int i;
+
+         arraycopy(B, Bi, XY, 0, blockInts);
+
+         for (i = 0; i < N; i++) {
+            arraycopy(XY, 0, _v[i >>> _segmentShift], (i & _segmentMask) * blockInts, blockInts);
+            blockmix_salsa8();
+            if ((i & (step - 1)) == step - 1) {
+               reportProgress(step, progressTracker, abort);
+            }
+         }
 
-   private static void salsa20_8(byte[] B) {
-      int[] B32 = new int[16];
-      int[] x = new int[16];
-      int i;
+         for (i = 0; i < N; i++) {
+            int j = XY[(2 * _r - 1) * 16] & (N - 1);
+            int[] V = _v[j >>> _segmentShift];
+            int Vi = (j & _segmentMask) * blockInts;
+            for (int k = 0; k < blockInts; k++) {
+               XY[k] ^= V[Vi + k];
+            }
+            blockmix_salsa8();
+            if ((i & (step - 1)) == step - 1) {
+               reportProgress(step, progressTracker, abort);
+            }
+         }
 
-      for (i = 0; i < 16; i++) {
-         B32[i] = (B[i * 4 + 0] & 0xff) << 0;
-         B32[i] |= (B[i * 4 + 1] & 0xff) << 8;
-         B32[i] |= (B[i * 4 + 2] & 0xff) << 16;
-         B32[i] |= (B[i * 4 + 3] & 0xff) << 24;
+         arraycopy(XY, 0, B, Bi, blockInts);
       }
 
-      arraycopy(B32, 0, x, 0, 16);
-
-      for (i = 8; i > 0; i -= 2) {
-         x[4] ^= R(x[0] + x[12], 7);
-         x[8] ^= R(x[4] + x[0], 9);
-         x[12] ^= R(x[8] + x[4], 13);
-         x[0] ^= R(x[12] + x[8], 18);
-         x[9] ^= R(x[5] + x[1], 7);
-         x[13] ^= R(x[9] + x[5], 9);
-         x[1] ^= R(x[13] + x[9], 13);
-         x[5] ^= R(x[1] + x[13], 18);
-         x[14] ^= R(x[10] + x[6], 7);
-         x[2] ^= R(x[14] + x[10], 9);
-         x[6] ^= R(x[2] + x[14], 13);
-         x[10] ^= R(x[6] + x[2], 18);
-         x[3] ^= R(x[15] + x[11], 7);
-         x[7] ^= R(x[3] + x[15], 9);
-         x[11] ^= R(x[7] + x[3], 13);
-         x[15] ^= R(x[11] + x[7], 18);
-         x[1] ^= R(x[0] + x[3], 7);
-         x[2] ^= R(x[1] + x[0], 9);
-         x[3] ^= R(x[2] + x[1], 13);
-         x[0] ^= R(x[3] + x[2], 18);
-         x[6] ^= R(x[5] + x[4], 7);
-         x[7] ^= R(x[6] + x[5], 9);
-         x[4] ^= R(x[7] + x[6], 13);
-         x[5] ^= R(x[4] + x[7], 18);
-         x[11] ^= R(x[10] + x[9], 7);
-         x[8] ^= R(x[11] + x[10], 9);
-         x[9] ^= R(x[8] + x[11], 13);
-         x[10] ^= R(x[9] + x[8], 18);
-         x[12] ^= R(x[15] + x[14], 7);
-         x[13] ^= R(x[12] + x[15], 9);
-         x[14] ^= R(x[13] + x[12], 13);
-         x[15] ^= R(x[14] + x[13], 18);
+      private static void reportProgress(int iterations, SCryptProgress progressTracker, AtomicBoolean abort)
+            throws InterruptedException {
+         if (abort.get()) {
+            throw new InterruptedException();
+         }
+         if (progressTracker != null) {
+            progressTracker.addWork(iterations);
+         }
       }
 
-      for (i = 0; i < 16; ++i)
-         B32[i] = x[i] + B32[i];
+      private void blockmix_salsa8() {
+         int[] BY = _xy;
+         int[] X = _x;
+         int r = _r;
+         int Yi = _blockInts;
+         int i;
+
+         arraycopy(BY, (2 * r - 1) * 16, X, 0, 16);
+
+         for (i = 0; i < 2 * r; i++) {
+            int Bi = i * 16;
+            for (int k = 0; k < 16; k++) {
+               X[k] ^= BY[Bi + k];
+            }
+            salsa20_8(X);
+            arraycopy(X, 0, BY, Yi + Bi, 16);
+         }
 
-      for (i = 0; i < 16; i++) {
-         B[i * 4 + 0] = (byte) (B32[i] >> 0 & 0xff);
-         B[i * 4 + 1] = (byte) (B32[i] >> 8 & 0xff);
-         B[i * 4 + 2] = (byte) (B32[i] >> 16 & 0xff);
-         B[i * 4 + 3] = (byte) (B32[i] >> 24 & 0xff);
-      }
-   }
+         for (i = 0; i < r; i++) {
+            arraycopy(BY, Yi + (i * 2) * 16, BY, i * 16, 16);
+         }
 
-   private static void blockxor(byte[] S, int Si, byte[] D, int Di, int len) {
-      for (int i = 0; i < len; i++) {
-         D[Di + i] ^= S[Si + i];
+         for (i = 0; i < r; i++) {
+            arraycopy(BY, Yi + (i * 2 + 1) * 16, BY, (i + r) * 16, 16);
+         }
       }
    }
 
-   private static int integerify(byte[] B, int Bi, int r) {
-      int n;
-
-      Bi += (2 * r - 1) * 64;
+   public static int R(int a, int b) {
+      return (a << b) | (a >>> (32 - b));
+   }
 
-      n = (B[Bi + 0] & 0xff) << 0;
-      n |= (B[Bi + 1] & 0xff) << 8;
-      n |= (B[Bi + 2] & 0xff) << 16;
-      n |= (B[Bi + 3] & 0xff) << 24;
+   private static void salsa20_8(int[] B) {
+      int x0 = B[0], x1 = B[1], x2 = B[2], x3 = B[3], x4 = B[4], x5 = B[5], x6 = B[6], x7 = B[7];
+      int x8 = B[8], x9 = B[9], x10 = B[10], x11 = B[11], x12 = B[12], x13 = B[13], x14 = B[14], x15 = B[15];
+
+      for (int i = 8; i > 0; i -= 2) {
+         x4 ^= R(x0 + x12, 7);
+         x8 ^= R(x4 + x0, 9);
+         x12 ^= R(x8 + x4, 13);
+         x0 ^= R(x12 + x8, 18);
+         x9 ^= R(x5 + x1, 7);
+         x13 ^= R(x9 + x5, 9);
+         x1 ^= R(x13 + x9, 13);
+         x5 ^= R(x1 + x13, 18);
+         x14 ^= R(x10 + x6, 7);
+         x2 ^= R(x14 + x10, 9);
+         x6 ^= R(x2 + x14, 13);
+         x10 ^= R(x6 + x2, 18);
+         x3 ^= R(x15 + x11, 7);
+         x7 ^= R(x3 + x15, 9);
+         x11 ^= R(x7 + x3, 13);
+         x15 ^= R(x11 + x7, 18);
+         x1 ^= R(x0 + x3, 7);
+         x2 ^= R(x1 + x0, 9);
+         x3 ^= R(x2 + x1, 13);
+         x0 ^= R(x3 + x2, 18);
+         x6 ^= R(x5 + x4, 7);
+         x7 ^= R(x6 + x5, 9);
+         x4 ^= R(x7 + x6, 13);
+         x5 ^= R(x4 + x7, 18);
+         x11 ^= R(x10 + x9, 7);
+         x8 ^= R(x11 + x10, 9);
+         x9 ^= R(x8 + x11, 13);
+         x10 ^= R(x9 + x8, 18);
+         x12 ^= R(x15 + x14, 7);
+         x13 ^= R(x12 + x15, 9);
+         x14 ^= R(x13 + x12, 13);
+         x15 ^= R(x14 + x13, 18);
+      }
 
-      return n;
+      B[0] += x0;
+      B[1] += x1;
+      B[2] += x2;
+      B[3] += x3;
+      B[4] += x4;
+      B[5] += x5;
+      B[6] += x6;
+      B[7] += x7;
+      B[8] += x8;
+      B[9] += x9;
+      B[10] += x10;
+      B[11] += x11;
+      B[12] += x12;
+      B[13] += x13;
+      B[14] += x14;
+      B[15] += x15;
    }
 }
@@ -1,48 +1,35 @@
 package com.mrd.bitlib.lambdaworks.crypto;
 
 import java.io.Serializable;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class SCryptProgress implements Serializable{
-   private static final long serialVersionUID = 1L;
+   private static final long serialVersionUID = 2L;
    
-   private int n;
-   private long totalWork;
-   private int progressN1;
-   private int progressN2;
-   private int progressP;
+   private final long totalWork;
+   // Number of finished mixing iterations over all lanes. Lanes may run in
+   // parallel, so this is shared between threads
+   private final AtomicLong work;
    private volatile boolean _terminate;
 
    public SCryptProgress(int n, int r, int p) {
-      this.n = n;
       totalWork = ((long) n * 2) * (long) p;
-      progressN1 = 0;
-      progressN2 = 0;
-      progressP = 0;
+      work = new AtomicLong();
       _terminate = false;
    }
 
-   public void setProgressN1(int n1) throws InterruptedException {
-      // Don't synchronize due to performance. There will be a microscopic
-      // change of getting a progress that is off by one
-      progressN1 = n1;
-      if (_terminate) {
-         throw new InterruptedException();
-      }
-   }
-
-   public void setProgressN2(int n2) throws InterruptedException {
-      // Don't synchronize due to performance. There will be a microscopic
-      // change of getting a progress that is off by one
-      progressN2 = n2;
-      if (_terminate) {
-         throw new InterruptedException();
-      }
+   /**
+    * Report a number of finished mixing iterations. SCrypt calls this in
+    * batches rather than for every iteration.
+    *
+    * @throws InterruptedException if the calculation has been terminated
+    */
+   public void addWork(int iterations) throws InterruptedException {
+      work.addAndGet(iterations);
+      checkTerminated();
    }
 
-   public synchronized void setProgressP(int p) throws InterruptedException {
-      progressP = p;
-      progressN1 = 0;
-      progressN2 = 0;
+   public void checkTerminated() throws InterruptedException {
       if (_terminate) {
          throw new InterruptedException();
       }
@@ -52,9 +39,8 @@ public class SCryptProgress implements Serializable{
       _terminate = true;
    }
 
-   public synchronized double getProgress() {
-      long work = (long) progressP * ((long) n * 2) + (long) progressN1 + (long) progressN2;
-      return (double) work / totalWork;
+   public double getProgress() {
+      return (double) work.get() / totalWork;
    }
 
 }
@@ -16,6 +16,10 @@
 
 package com.mrd.bitlib.model;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.LinkedList;
@@ -24,13 +28,34 @@ import java.util.List;
 import com.mrd.bitlib.bitcoinj.Base58;
 
 import com.google.common.base.Function;
-import com.mrd.bitlib.util.BitUtils;
-import com.mrd.bitlib.util.HashUtils;
-import com.mrd.bitlib.util.Sha256Hash;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 
+/**
+ * A Bitcoin address: a one byte version followed by a 20 byte hash.
+ * <p>
+ * The hash is kept in two longs and an int rather than in an array, and the
+ * hash code is calculated once, so that addresses are small and cheap to look
+ * up in maps. Addresses are immutable. The Base58 string is calculated the
+ * first time it is needed and then kept.
+ * <p>
+ * Wallets hold on to many equal addresses, for instance in their transaction
+ * history. {@link #intern} returns a canonical instance for an address, so that
+ * these can share one object.
+ */
 public class Address implements Serializable, Comparable<Address> {
    private static final long serialVersionUID = 1L;
    public static final int NUM_ADDRESS_BYTES = 21;
+
+   // Serialized as the 21 address bytes and the string like before the
+   // address bytes were split into fields
+   private static final ObjectStreamField[] serialPersistentFields = {
+         new ObjectStreamField("_bytes", byte[].class), new ObjectStreamField("_address", String.class) };
+
+   // Weak, so that addresses nobody refers to anymore are dropped from the pool
+   private static final Interner<Address> INTERNER = Interners.newWeakInterner();
+
    public static final Function<? super String,Address> FROM_STRING = new Function<String, Address>() {
       @Override
       public Address apply(String input) {
@@ -38,7 +63,12 @@ public class Address implements Serializable, Comparable<Address> {
       }
    };
 
-   private byte[] _bytes;
+   // Not final, as readObject has to set them
+   private byte _version;
+   private long _hash0;
+   private long _hash1;
+   private int _hash2;
+   private int _hashCode;
    private String _address;
 
    public static Collection<Address> fromStrings(Collection<String> addresses, NetworkParameters network) {
@@ -127,8 +157,7 @@ public class Address implements Serializable, Comparable<Address> {
     * @param bytes containing the full address representation 1 + 20 bytes.
     */
    public Address(byte[] bytes) {
-      _bytes = bytes;
-      _address = null;
+      this(bytes, null);
    }
 
    /**
@@ -143,18 +172,49 @@ public class Address implements Serializable, Comparable<Address> {
     * @param stringAddress the string representation of a Bitcoin address
     */
    public Address(byte[] bytes, String stringAddress) {
-      _bytes = bytes;
+      setBytes(bytes);
       _address = stringAddress;
    }
 
+   /**
+    * Construct a copy of an address, including its string representation if
+    * it has been calculated
+    */
+   protected Address(Address address) {
+      _version = address._version;
+      _hash0 = address._hash0;
+      _hash1 = address._hash1;
+      _hash2 = address._hash2;
+      _hashCode = address._hashCode;
+      _address = address._address;
+   }
+
+   private void setBytes(byte[] bytes) {
+      Preconditions.checkArgument(bytes.length == NUM_ADDRESS_BYTES, "an address has %s bytes", NUM_ADDRESS_BYTES);
+      _version = bytes[0];
+      _hash0 = toLong(bytes, 1);
+      _hash1 = toLong(bytes, 9);
+      _hash2 = toInt(bytes, 17);
+      int hash = (int) (_hash0 ^ (_hash0 >>> 32));
+      hash = 31 * hash + (int) (_hash1 ^ (_hash1 >>> 32));
+      hash = 31 * hash + _hash2;
+      _hashCode = 31 * hash + _version;
+   }
+
+   /**
+    * Get the canonical instance of this address. Equal addresses that are
+    * interned are the same object, as long as one of them is referenced.
+    */
+   public Address intern() {
+      // Pool plain addresses only, subclasses may carry more data
+      return INTERNER.intern(getClass() == Address.class ? this : new Address(this));
+   }
+
    /**
     * Validate that an address is a valid address on the specified network
     */
    public boolean isValidAddress(NetworkParameters network) {
       byte version = getVersion();
-      if (getAllAddressBytes().length != NUM_ADDRESS_BYTES) {
-         return false;
-      }
       return ((byte) (network.getStandardAddressHeader() & 0xFF)) == version
             || ((byte) (network.getMultisigAddressHeader() & 0xFF)) == version;
    }
@@ -164,7 +224,7 @@ public class Address implements Serializable, Comparable<Address> {
    }
 
    public byte getVersion() {
-      return _bytes[0];
+      return _version;
    }
 
    /**
@@ -174,24 +234,28 @@ public class Address implements Serializable, Comparable<Address> {
     * @return The address as an array of 21 bytes.
     */
    public byte[] getAllAddressBytes() {
-      return _bytes;
+      byte[] bytes = new byte[NUM_ADDRESS_BYTES];
+      bytes[0] = _version;
+      writeHash(bytes, 1);
+      return bytes;
    }
 
    public byte[] getTypeSpecificBytes() {
       byte[] result = new byte[20];
-      System.arraycopy(_bytes, 1, result, 0, 20);
+      writeHash(result, 0);
       return result;
    }
 
+   private void writeHash(byte[] out, int offset) {
+      putLong(_hash0, out, offset);
+      putLong(_hash1, out, offset + 8);
+      putInt(_hash2, out, offset + 16);
+   }
+
    @Override
    public String toString() {
       if (_address == null) {
-         byte[] addressBytes = new byte[1 + 20 + 4];
-         addressBytes[0] = _bytes[0];
-         System.arraycopy(_bytes, 0, addressBytes, 0, NUM_ADDRESS_BYTES);
-         Sha256Hash checkSum = HashUtils.doubleSha256(addressBytes, 0, NUM_ADDRESS_BYTES);
-         System.arraycopy(checkSum.getBytes(), 0, addressBytes, NUM_ADDRESS_BYTES, 4);
-         _address = Base58.encode(addressBytes);
+         _address = Base58.encodeWithChecksum(getAllAddressBytes());
       }
       return _address;
    }
@@ -207,8 +271,7 @@ public class Address implements Serializable, Comparable<Address> {
 
    @Override
    public int hashCode() {
-      return ((_bytes[16] & 0xFF) /* << 0 */) | ((_bytes[17] & 0xFF) << 8) | ((_bytes[18] & 0xFF) << 16)
-            | ((_bytes[19] & 0xFF) << 24);
+      return _hashCode;
    }
 
    @Override
@@ -219,7 +282,9 @@ public class Address implements Serializable, Comparable<Address> {
       if (!(obj instanceof Address)) {
          return false;
       }
-      return BitUtils.areEqual(_bytes, ((Address) obj)._bytes);
+      Address other = (Address) obj;
+      return _hashCode == other._hashCode && _hash0 == other._hash0 && _hash1 == other._hash1
+            && _hash2 == other._hash2 && _version == other._version;
    }
 
    public static Address getNullAddress(NetworkParameters network) {
@@ -230,19 +295,26 @@ public class Address implements Serializable, Comparable<Address> {
 
    @Override
    public int compareTo(Address other) {
-      // We sort on the actual address bytes.
+      // We sort on the actual address bytes, each compared as a signed byte.
       // We wish to achieve consistent sorting, the exact order is not
       // important.
-      for (int i = 0; i < NUM_ADDRESS_BYTES; i++) {
-         byte a = _bytes[i];
-         byte b = other._bytes[i];
-         if (a < b) {
-            return -1;
-         } else if (a > b) {
-            return 1;
-         }
+      if (_version != other._version) {
+         return _version < other._version ? -1 : 1;
+      }
+      // Flipping the sign bit of every byte but the first makes comparing the
+      // words the same as comparing their bytes one by one
+      int result = compare(_hash0 ^ 0x0080808080808080L, other._hash0 ^ 0x0080808080808080L);
+      if (result == 0) {
+         result = compare(_hash1 ^ 0x0080808080808080L, other._hash1 ^ 0x0080808080808080L);
+      }
+      if (result == 0) {
+         result = compare(_hash2 ^ 0x00808080, other._hash2 ^ 0x00808080);
       }
-      return 0;
+      return result;
+   }
+
+   private static int compare(long a, long b) {
+      return a < b ? -1 : (a == b ? 0 : 1);
    }
 
    public String toMultiLineString() {
@@ -276,4 +348,38 @@ public class Address implements Serializable, Comparable<Address> {
    private boolean matchesNetwork(NetworkParameters network, byte version) {
       return ((byte) (network.getStandardAddressHeader() & 0xFF)) == version || ((byte) (network.getMultisigAddressHeader() & 0xFF)) == version;
    }
+
+   private static long toLong(byte[] buf, int offset) {
+      return ((long) toInt(buf, offset) << 32) | (toInt(buf, offset + 4) & 0xFFFFFFFFL);
+   }
+
+   private static int toInt(byte[] buf, int offset) {
+      return (buf[offset] << 24) | ((buf[offset + 1] & 0xFF) << 16) | ((buf[offset + 2] & 0xFF) << 8)
+            | (buf[offset + 3] & 0xFF);
+   }
+
+   private static void putLong(long value, byte[] out, int offset) {
+      putInt((int) (value >>> 32), out, offset);
+      putInt((int) value, out, offset + 4);
+   }
+
+   private static void putInt(int value, byte[] out, int offset) {
+      out[offset] = (byte) (value >>> 24);
+      out[offset + 1] = (byte) (value >>> 16);
+      out[offset + 2] = (byte) (value >>> 8);
+      out[offset + 3] = (byte) value;
+   }
+
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      ObjectOutputStream.PutField fields = out.putFields();
+      fields.put("_bytes", getAllAddressBytes());
+      fields.put("_address", _address);
+      out.writeFields();
+   }
+
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = in.readFields();
+      setBytes((byte[]) fields.get("_bytes", null));
+      _address = (String) fields.get("_address", null);
+   }
 }
@@ -16,7 +16,7 @@ public class HdDerivedAddress extends Address {
    }
 
    public HdDerivedAddress(Address address, HdKeyPath path) {
-      super(address.getAllAddressBytes());
+      super(address);
       this.path = path;
    }
 
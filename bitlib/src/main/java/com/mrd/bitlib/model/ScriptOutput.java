@@ -16,33 +16,167 @@
 
 package com.mrd.bitlib.model;
 
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.mrd.bitlib.util.BitUtils;
+
+/**
+ * An output script, classified by the standard template it matches.
+ * <p>
+ * {@link #fromScriptBytes} classifies a script in a single pass over its bytes
+ * without splitting it into chunks, and only copies the hash, key or data the
+ * resulting output keeps. Short scripts are also kept in a small cache, as the
+ * same outputs get classified again and again while a wallet is synchronized
+ * and coins are selected. Outputs returned from the cache are shared and must
+ * not be modified.
+ */
 public abstract class ScriptOutput extends Script {
    private static final long serialVersionUID = 1L;
 
+   // Must be a power of two
+   private static final int CACHE_SIZE = 1024;
+   // Standard scripts are much shorter, and we do not want the cache to keep
+   // large scripts alive
+   private static final int MAX_CACHED_SCRIPT_LENGTH = 128;
+   private static final AtomicReferenceArray<ScriptOutput> CACHE = new AtomicReferenceArray<ScriptOutput>(CACHE_SIZE);
+
+   // Templates are identified by at most this many chunks
+   private static final int MAX_TEMPLATE_CHUNKS = 6;
+
    public static ScriptOutput fromScriptBytes(byte[] scriptBytes) {
-      byte[][] chunks;
-      try {
-         chunks = Script.chunksFromScriptBytes(scriptBytes);
-      } catch (ScriptParsingException e) {
-         return new ScriptOutputError(scriptBytes);
+      if (scriptBytes.length > MAX_CACHED_SCRIPT_LENGTH) {
+         return classify(scriptBytes);
       }
-      if (chunks == null) {
-         return null;
+      int slot = cacheSlot(scriptBytes);
+      ScriptOutput cached = CACHE.get(slot);
+      if (cached != null && Arrays.equals(cached._scriptBytes, scriptBytes)) {
+         return cached;
       }
-      if (ScriptOutputStandard.isScriptOutputStandard(chunks)) {
-         return new ScriptOutputStandard(chunks, scriptBytes);
-      } else if (ScriptOutputPubkey.isScriptOutputPubkey(chunks)) {
-         return new ScriptOutputPubkey(chunks, scriptBytes);
-      } else if (ScriptOutputP2SH.isScriptOutputP2SH(chunks)) {
-         return new ScriptOutputP2SH(chunks, scriptBytes);
-      } else if (ScriptOutputMsg.isScriptOutputMsg(chunks)) {
-         return new ScriptOutputMsg(chunks, scriptBytes);
-      } else if (ScriptOutputOpReturn.isScriptOutputOpReturn(chunks)) {
-         return new ScriptOutputOpReturn(chunks, scriptBytes);
+      // Classify a copy, so callers reusing their array cannot change a cached
+      // entry
+      ScriptOutput output = classify(scriptBytes.clone());
+      CACHE.set(slot, output);
+      return output;
+   }
+
+   // Standard scripts have a hash or a public key in the middle, which is
+   // random enough to pick a slot from
+   private static int cacheSlot(byte[] script) {
+      int hash = script.length;
+      int from = Math.max(0, script.length / 2 - 2);
+      int to = Math.min(script.length, from + 4);
+      for (int i = from; i < to; i++) {
+         hash = 31 * hash + script[i];
+      }
+      hash ^= hash >>> 16;
+      return hash & (CACHE_SIZE - 1);
+   }
+
+   /**
+    * Classify a script without looking at the cache. Chunks are found the
+    * same way as {@link Script#chunksFromScriptBytes} does, and a script that
+    * it cannot parse is a {@link ScriptOutputError}.
+    */
+   static ScriptOutput classify(byte[] script) {
+      int length = script.length;
+      int count = 0;
+      // The first three chunks are where templates keep their data
+      int start0 = 0, length0 = 0, start1 = 0, length1 = 0, start2 = 0;
+      int length2 = 0;
+      // Which of the first chunks are a single byte, and the values of those
+      int singleByteChunks = 0;
+      long singleBytes = 0;
+
+      int index = 0;
+      while (index < length) {
+         // Like chunksFromScriptBytes the opcode is read as a signed byte, so
+         // opcodes above 127 are single byte chunks
+         int opcode = script[index++];
+         int start;
+         int size;
+         if (opcode > 0 && opcode < OP_PUSHDATA1) {
+            start = index;
+            size = opcode;
+         } else if (opcode == OP_PUSHDATA1) {
+            if (length - index < 1) {
+               return new ScriptOutputError(script);
+            }
+            start = index + 1;
+            size = script[index] & 0xFF;
+         } else if (opcode == OP_PUSHDATA2) {
+            if (length - index < 2) {
+               return new ScriptOutputError(script);
+            }
+            start = index + 2;
+            size = (script[index] & 0xFF) | ((script[index + 1] & 0xFF) << 8);
+         } else if (opcode == OP_PUSHDATA4) {
+            if (length - index < 4) {
+               return new ScriptOutputError(script);
+            }
+            start = index + 4;
+            size = (int) BitUtils.uint32ToLong(script, index);
+            if (size < 0) {
+               return new ScriptOutputError(script);
+            }
+         } else {
+            start = index - 1;
+            size = 1;
+         }
+         if (size > length - start) {
+            return new ScriptOutputError(script);
+         }
+         index = start + size;
+
+         if (count < MAX_TEMPLATE_CHUNKS && size == 1) {
+            singleByteChunks |= 1 << count;
+            singleBytes |= (long) (script[start] & 0xFF) << (8 * count);
+         }
+         if (count == 0) {
+            start0 = start;
+            length0 = size;
+         } else if (count == 1) {
+            start1 = start;
+            length1 = size;
+         } else if (count == 2) {
+            start2 = start;
+            length2 = size;
+         }
+         count++;
+      }
+
+      // Same order as the templates have always been tried in
+      if ((count == 5 || count == 6) && isOp(singleByteChunks, singleBytes, 0, OP_DUP)
+            && isOp(singleByteChunks, singleBytes, 1, OP_HASH160) && length2 == 20
+            && isOp(singleByteChunks, singleBytes, 3, OP_EQUALVERIFY)
+            && isOp(singleByteChunks, singleBytes, 4, OP_CHECKSIG)
+            && (count == 5 || isOp(singleByteChunks, singleBytes, 5, OP_NOP))) {
+         // Possibly the variant that has a NOP at the end
+         return new ScriptOutputStandard(script, copy(script, start2, length2));
+      } else if (count == 2 && isOp(singleByteChunks, singleBytes, 1, OP_CHECKSIG)) {
+         return new ScriptOutputPubkey(script, copy(script, start0, length0));
+      } else if (count == 3 && isOp(singleByteChunks, singleBytes, 0, OP_HASH160) && length1 == 20
+            && isOp(singleByteChunks, singleBytes, 2, OP_EQUAL)) {
+         return new ScriptOutputP2SH(script, copy(script, start1, length1));
+      } else if (count == 4 && isOp(singleByteChunks, singleBytes, 1, OP_DROP)
+            && isOp(singleByteChunks, singleBytes, 3, OP_CHECKSIG)) {
+         return new ScriptOutputMsg(script, copy(script, start0, length0), copy(script, start2, length2));
+      } else if (count == 2 && isOp(singleByteChunks, singleBytes, 0, OP_RETURN) && length1 != 0) {
+         return new ScriptOutputOpReturn(script, copy(script, start1, length1));
       } else {
-         return new ScriptOutputStrange(chunks, scriptBytes);
+         // Bare multisig and everything else we do not have a type for
+         return new ScriptOutputStrange(script);
       }
+   }
+
+   // Like Script.isOP, a single byte chunk matches an opcode whether it was
+   // pushed or not
+   private static boolean isOp(int singleByteChunks, long singleBytes, int chunk, int op) {
+      return (singleByteChunks & (1 << chunk)) != 0 && ((singleBytes >>> (8 * chunk)) & 0xFF) == op;
+   }
 
+   private static byte[] copy(byte[] script, int start, int length) {
+      return BitUtils.copyOfRange(script, start, start + length);
    }
 
    protected ScriptOutput(byte[] scriptBytes) {
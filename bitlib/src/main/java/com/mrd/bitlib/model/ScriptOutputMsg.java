@@ -27,10 +27,10 @@ public class ScriptOutputMsg extends ScriptOutput implements Serializable {
    private byte[] _messageBytes;
    private byte[] _publicKeyBytes;
 
-   protected ScriptOutputMsg(byte[][] chunks, byte[] scriptBytes) {
+   protected ScriptOutputMsg(byte[] scriptBytes, byte[] messageBytes, byte[] publicKeyBytes) {
       super(scriptBytes);
-      _messageBytes = chunks[0];
-      _publicKeyBytes = chunks[2];
+      _messageBytes = messageBytes;
+      _publicKeyBytes = publicKeyBytes;
    }
 
    protected static boolean isScriptOutputMsg(byte[][] chunks) {
@@ -24,9 +24,9 @@ public class ScriptOutputOpReturn extends ScriptOutput implements Serializable {
 
    private byte[] dataBytes;
 
-   protected ScriptOutputOpReturn(byte[][] chunks, byte[] scriptBytes) {
+   protected ScriptOutputOpReturn(byte[] scriptBytes, byte[] dataBytes) {
       super(scriptBytes);
-      dataBytes = chunks[1];
+      this.dataBytes = dataBytes;
    }
 
    protected static boolean isScriptOutputOpReturn(byte[][] chunks) {
@@ -21,9 +21,9 @@ import java.io.Serializable;
 public class ScriptOutputP2SH extends ScriptOutput implements Serializable {
    private static final long serialVersionUID = 1L;
 
-   protected ScriptOutputP2SH(byte[][] chunks, byte[] scriptBytes) {
+   protected ScriptOutputP2SH(byte[] scriptBytes, byte[] p2shAddressBytes) {
       super(scriptBytes);
-      _p2shAddressBytes = chunks[1];
+      _p2shAddressBytes = p2shAddressBytes;
    }
 
    private byte[] _p2shAddressBytes;
@@ -25,9 +25,9 @@ public class ScriptOutputPubkey extends ScriptOutput implements Serializable {
 
    private byte[] _publicKeyBytes;
 
-   protected ScriptOutputPubkey(byte[][] chunks, byte[] scriptBytes) {
+   protected ScriptOutputPubkey(byte[] scriptBytes, byte[] publicKeyBytes) {
       super(scriptBytes);
-      _publicKeyBytes = chunks[0];
+      _publicKeyBytes = publicKeyBytes;
    }
 
    protected static boolean isScriptOutputPubkey(byte[][] chunks) {
@@ -23,9 +23,9 @@ public class ScriptOutputStandard extends ScriptOutput implements Serializable {
 
    private byte[] _addressBytes;
 
-   protected ScriptOutputStandard(byte[][] chunks, byte[] scriptBytes) {
+   protected ScriptOutputStandard(byte[] scriptBytes, byte[] addressBytes) {
       super(scriptBytes);
-      _addressBytes = chunks[2];
+      _addressBytes = addressBytes;
    }
 
    protected static boolean isScriptOutputStandard(byte[][] chunks) {
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.model.TransactionInput.TransactionInputParsingException;
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+
+/**
+ * A read-only view of a serialized transaction.
+ * <p>
+ * Creating a view only walks the bytes once to find where the inputs and
+ * outputs start. Nothing is copied, and inputs, outputs and their scripts are
+ * only parsed when asked for. Use it for looking at stored transactions, and
+ * {@link #toTransaction} where a full {@link Transaction} is needed for
+ * signing or changing it.
+ * <p>
+ * The bytes must not be modified while the view is in use.
+ */
+public class TransactionView {
+   private static final int OUT_POINT_LENGTH = Sha256Hash.HASH_LENGTH + 4;
+
+   private final byte[] _bytes;
+   private final int _version;
+   private final int _lockTime;
+   // Where each input starts, followed by where the outputs start
+   private final int[] _inputOffsets;
+   private final int[] _inputScriptOffsets;
+   // Where each output starts, followed by where the lock time starts
+   private final int[] _outputOffsets;
+   private final int[] _outputScriptOffsets;
+   private Sha256Hash _hash;
+
+   public static TransactionView fromBytes(byte[] transaction) throws TransactionParsingException {
+      return fromBytes(transaction, null);
+   }
+
+   // use this if you already know the transaction hash to save hashing the transaction
+   public static TransactionView fromBytes(byte[] transaction, Sha256Hash knownTransactionHash)
+         throws TransactionParsingException {
+      try {
+         return new TransactionView(transaction, knownTransactionHash);
+      } catch (InsufficientBytesException e) {
+         throw new TransactionParsingException(e.getMessage());
+      }
+   }
+
+   private TransactionView(byte[] bytes, Sha256Hash knownTransactionHash) throws InsufficientBytesException {
+      _bytes = bytes;
+      _hash = knownTransactionHash;
+      ByteReader reader = new ByteReader(bytes);
+      _version = reader.getIntLE();
+
+      int numInputs = getLength(reader);
+      _inputOffsets = new int[numInputs + 1];
+      _inputScriptOffsets = new int[numInputs];
+      for (int i = 0; i < numInputs; i++) {
+         _inputOffsets[i] = reader.getPosition();
+         reader.skip(OUT_POINT_LENGTH);
+         int scriptSize = getLength(reader);
+         _inputScriptOffsets[i] = reader.getPosition();
+         reader.skip(scriptSize);
+         // sequence
+         reader.skip(4);
+      }
+      _inputOffsets[numInputs] = reader.getPosition();
+
+      int numOutputs = getLength(reader);
+      _outputOffsets = new int[numOutputs + 1];
+      _outputScriptOffsets = new int[numOutputs];
+      for (int i = 0; i < numOutputs; i++) {
+         _outputOffsets[i] = reader.getPosition();
+         // value
+         reader.skip(8);
+         int scriptSize = getLength(reader);
+         _outputScriptOffsets[i] = reader.getPosition();
+         reader.skip(scriptSize);
+      }
+      _outputOffsets[numOutputs] = reader.getPosition();
+
+      _lockTime = reader.getIntLE();
+   }
+
+   // A count or size can not be larger than what is left, as every element
+   // takes at least a byte
+   private static int getLength(ByteReader reader) throws InsufficientBytesException {
+      long length = reader.getCompactInt();
+      if (length < 0 || length > reader.available()) {
+         throw new InsufficientBytesException();
+      }
+      return (int) length;
+   }
+
+   public int getVersion() {
+      return _version;
+   }
+
+   public int getLockTime() {
+      return _lockTime;
+   }
+
+   public int getInputCount() {
+      return _inputScriptOffsets.length;
+   }
+
+   public int getOutputCount() {
+      return _outputScriptOffsets.length;
+   }
+
+   /**
+    * Get the outpoint that an input spends
+    */
+   public OutPoint getOutPoint(int input) {
+      int offset = _inputOffsets[input];
+      Sha256Hash hash = Sha256Hash.copyOf(_bytes, offset).reverse();
+      return new OutPoint(hash, (int) BitUtils.uint32ToLong(_bytes, offset + Sha256Hash.HASH_LENGTH));
+   }
+
+   public int getSequence(int input) {
+      return (int) BitUtils.uint32ToLong(_bytes, _inputOffsets[input + 1] - 4);
+   }
+
+   public byte[] getInputScriptBytes(int input) {
+      int from = _inputScriptOffsets[input];
+      return BitUtils.copyOfRange(_bytes, from, _inputOffsets[input + 1] - 4);
+   }
+
+   /**
+    * Parse an input, including its script
+    */
+   public TransactionInput getInput(int input) throws TransactionParsingException {
+      try {
+         return TransactionInput.fromByteReader(new ByteReader(_bytes, _inputOffsets[input]));
+      } catch (TransactionInputParsingException e) {
+         throw new TransactionParsingException("Unable to parse transaction input at index " + input + ": "
+               + e.getMessage(), e);
+      }
+   }
+
+   public long getOutputValue(int output) {
+      return BitUtils.uint64ToLong(_bytes, _outputOffsets[output]);
+   }
+
+   public byte[] getOutputScriptBytes(int output) {
+      return BitUtils.copyOfRange(_bytes, _outputScriptOffsets[output], _outputOffsets[output + 1]);
+   }
+
+   public ScriptOutput getOutputScript(int output) {
+      return ScriptOutput.fromScriptBytes(getOutputScriptBytes(output));
+   }
+
+   /**
+    * Parse an output, including its script
+    */
+   public TransactionOutput getOutput(int output) {
+      return new TransactionOutput(getOutputValue(output), getOutputScript(output));
+   }
+
+   /**
+    * A coinbase transaction has an input that spends the zero hash, which is
+    * what makes {@link Transaction#isCoinbase} true as well
+    */
+   public boolean isCoinbase() {
+      for (int i = 0; i < getInputCount(); i++) {
+         if (isZeroHash(_inputOffsets[i])) {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   private boolean isZeroHash(int offset) {
+      for (int i = offset; i < offset + Sha256Hash.HASH_LENGTH; i++) {
+         if (_bytes[i] != 0) {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   public Sha256Hash getHash() {
+      if (_hash == null) {
+         _hash = HashUtils.doubleSha256(_bytes, 0, getTxRawSize()).reverse();
+      }
+      return _hash;
+   }
+
+   public int getTxRawSize() {
+      return _outputOffsets[getOutputCount()] + 4;
+   }
+
+   /**
+    * Parse the whole transaction
+    */
+   public Transaction toTransaction() throws TransactionParsingException {
+      return Transaction.fromByteReader(new ByteReader(_bytes), _hash);
+   }
+
+   @Override
+   public String toString() {
+      return String.valueOf(getHash()) + " in: " + getInputCount() + " out: " + getOutputCount();
+   }
+}
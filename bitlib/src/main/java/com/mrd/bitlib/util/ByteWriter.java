@@ -115,14 +115,18 @@ final public class ByteWriter {
    }
 
    public void putSha256Hash(Sha256Hash hash) {
-      putBytes(hash.getBytes());
+      ensureCapacity(Sha256Hash.HASH_LENGTH);
+      hash.copyTo(_buf, _index);
+      _index += Sha256Hash.HASH_LENGTH;
    }
 
    public void putSha256Hash(Sha256Hash hash, boolean reverse) {
       if (reverse) {
-         putBytes(BitUtils.reverseBytes(hash.getBytes()));
+         ensureCapacity(Sha256Hash.HASH_LENGTH);
+         hash.copyReversedTo(_buf, _index);
+         _index += Sha256Hash.HASH_LENGTH;
       } else {
-         putBytes(hash.getBytes());
+         putSha256Hash(hash);
       }
    }
 
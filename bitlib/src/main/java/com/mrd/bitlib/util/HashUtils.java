@@ -16,41 +16,56 @@
 
 package com.mrd.bitlib.util;
 
-import com.mrd.bitlib.crypto.digest.RIPEMD160Digest;
+import com.mrd.bitlib.crypto.digest.Hash160;
+import com.mrd.bitlib.crypto.digest.SHA256Digest;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 /**
  * Various hashing utilities used in the Bitcoin system.
+ * <p>
+ * SHA-256 is calculated with a {@link SHA256Digest} kept per thread, so
+ * hashing allocates nothing but the result. Callers that hash many messages
+ * with a common prefix can hash the prefix once into a digest of their own
+ * and pass it as midstate.
  */
 public class HashUtils {
 
-   private static final String SHA256 = "SHA-256";
    private static final String SHA512 = "SHA-512";
 
+   private static final ThreadLocal<SHA256Digest> SHA256_DIGEST = new ThreadLocal<SHA256Digest>() {
+      @Override
+      protected SHA256Digest initialValue() {
+         return new SHA256Digest();
+      }
+   };
+
+   private static final ThreadLocal<Hash160> HASH160 = new ThreadLocal<Hash160>() {
+      @Override
+      protected Hash160 initialValue() {
+         return new Hash160();
+      }
+   };
+
+   private static SHA256Digest getSha256Digest() {
+      SHA256Digest digest = SHA256_DIGEST.get();
+      // a previous caller may have failed half way
+      digest.reset();
+      return digest;
+   }
+
    public static Sha256Hash sha256(byte[] data) {
-      MessageDigest digest;
-      digest = getSha256Digest();
-      digest.update(data, 0, data.length);
-      return Sha256Hash.of(digest.digest());
+      return sha256(data, 0, data.length);
    }
 
    public static Sha256Hash sha256(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      SHA256Digest digest = getSha256Digest();
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
-      return new Sha256Hash(digest.digest());
-
-   }
-
-   private static MessageDigest getSha256Digest() {
-      try {
-         return MessageDigest.getInstance(SHA256);
-      } catch (NoSuchAlgorithmException e) {
-         throw new RuntimeException(e); //cannot happen
-      }
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      digest.doFinal(hash, 0);
+      return new Sha256Hash(hash);
    }
 
    public static Sha256Hash doubleSha256(byte[] data) {
@@ -58,19 +73,47 @@ public class HashUtils {
    }
 
    public static Sha256Hash doubleSha256TwoBuffers(byte[] data1, byte[] data2) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      SHA256Digest digest = getSha256Digest();
       digest.update(data1, 0, data1.length);
       digest.update(data2, 0, data2.length);
-      return new Sha256Hash(digest.digest(digest.digest()));
-
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      digest.doubleDigest(hash, 0);
+      return new Sha256Hash(hash);
    }
 
    public static Sha256Hash doubleSha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      doubleSha256(data, offset, length, hash, 0);
+      return new Sha256Hash(hash);
+   }
+
+   /**
+    * Calculate the double SHA-256 of a range of bytes and write it into a
+    * buffer
+    *
+    * @param out       the buffer to write the 32 byte hash to
+    * @param outOffset the offset in the buffer to write the hash at
+    */
+   public static void doubleSha256(byte[] data, int offset, int length, byte[] out, int outOffset) {
+      SHA256Digest digest = getSha256Digest();
+      digest.update(data, offset, length);
+      digest.doubleDigest(out, outOffset);
+   }
+
+   /**
+    * Calculate the double SHA-256 of a message that starts with a prefix that
+    * has already been hashed
+    *
+    * @param midstate a digest that has hashed the prefix. It is not modified.
+    * @param data     the message after the prefix
+    */
+   public static Sha256Hash doubleSha256(SHA256Digest midstate, byte[] data, int offset, int length) {
+      SHA256Digest digest = SHA256_DIGEST.get();
+      digest.copyFrom(midstate);
       digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest(digest.digest()));
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      digest.doubleDigest(hash, 0);
+      return new Sha256Hash(hash);
    }
 
    public static Sha512Hash sha512(byte[] data) {
@@ -81,10 +124,11 @@ public class HashUtils {
    }
 
    public static Sha256Hash sha256(byte[] data, int offset, int length) {
-      MessageDigest digest;
-      digest = getSha256Digest();
+      SHA256Digest digest = getSha256Digest();
       digest.update(data, offset, length);
-      return new Sha256Hash(digest.digest());
+      byte[] hash = new byte[Sha256Hash.HASH_LENGTH];
+      digest.doFinal(hash, 0);
+      return new Sha256Hash(hash);
    }
 
    public static Sha512Hash sha512(byte[] data1, byte[] data2) {
@@ -112,12 +156,16 @@ public class HashUtils {
     * @return The Bitcoin address as an array of bytes.
     */
    public static byte[] addressHash(byte[] pubkeyBytes) {
-      byte[] sha256 = getSha256Digest().digest(pubkeyBytes);
-      byte[] out = new byte[20];
-      RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
-      ripeMD160.update(sha256, 0, sha256.length);
-      ripeMD160.doFinal(out, 0); // This also resets the hash function for
-      // next use
-      return out;
+      return HASH160.get().hash(pubkeyBytes);
+   }
+
+   /**
+    * Calculate the RipeMd160 value of the SHA-256 of many public keys
+    *
+    * @param pubkeys Bitcoin public keys as arrays of bytes.
+    * @return The address bytes of each public key.
+    */
+   public static byte[][] addressHashes(byte[][] pubkeys) {
+      return HASH160.get().hashAll(pubkeys);
    }
 }
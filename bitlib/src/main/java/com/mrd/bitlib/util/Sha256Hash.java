@@ -17,15 +17,24 @@
 package com.mrd.bitlib.util;
 
 import com.google.common.base.Preconditions;
-import com.google.common.primitives.Ints;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.math.BigInteger;
-import java.util.Arrays;
 
 /**
  * represents the result of a SHA256 hashing operation prefer to use the static
  * factory methods.
+ * <p>
+ * The hash is kept as four big endian longs, so equals, hashCode and compareTo
+ * do not touch any array. The bytes are only put into an array when
+ * {@link #getBytes} is called, or are kept if the hash was created from an
+ * array it may keep. Use {@link #copyTo} or
+ * {@link ByteWriter#putSha256Hash(Sha256Hash)} to write a hash without an
+ * array.
  */
 public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
    private static final long serialVersionUID = 1L;
@@ -33,13 +42,33 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
    public static final int HASH_LENGTH = 32;
    public static final Sha256Hash ZERO_HASH = of(new byte[HASH_LENGTH]);
 
-   final private byte[] _bytes;
-   private int _hash;
+   // Serialized as the 32 bytes and the hash code like before the bytes were
+   // split into fields
+   private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField("_bytes", byte[].class),
+         new ObjectStreamField("_hash", int.class) };
 
+   // Not final, as readObject has to set them
+   private long _w0;
+   private long _w1;
+   private long _w2;
+   private long _w3;
+   private transient volatile byte[] _bytes;
+
+   /**
+    * Create a hash from 32 bytes. The array is kept and returned by
+    * {@link #getBytes}, so it must not be modified afterwards.
+    */
    public Sha256Hash(byte[] bytes) {
       Preconditions.checkArgument(bytes.length == HASH_LENGTH);
-      this._bytes = bytes;
-      _hash = -1;
+      setWords(bytes, 0);
+      _bytes = bytes;
+   }
+
+   private Sha256Hash(long w0, long w1, long w2, long w3) {
+      _w0 = w0;
+      _w1 = w1;
+      _w2 = w2;
+      _w3 = w3;
    }
 
    public static Sha256Hash fromString(String hexString) {
@@ -71,10 +100,16 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
    }
 
    private Sha256Hash(byte[] bytes, int offset) {
-      // defensive copy, since incoming bytes is of arbitrary length
-      _bytes = new byte[HASH_LENGTH];
-      System.arraycopy(bytes, offset, _bytes, 0, HASH_LENGTH);
-      _hash = -1;
+      // no reference to the incoming bytes is kept, since it is of arbitrary
+      // length and may be reused by the caller
+      setWords(bytes, offset);
+   }
+
+   private void setWords(byte[] bytes, int offset) {
+      _w0 = toLong(bytes, offset);
+      _w1 = toLong(bytes, offset + 8);
+      _w2 = toLong(bytes, offset + 16);
+      _w3 = toLong(bytes, offset + 24);
    }
 
    @Override
@@ -84,20 +119,14 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
       }
       if (!(other instanceof Sha256Hash))
          return false;
-      return Arrays.equals(_bytes, ((Sha256Hash) other)._bytes);
+      Sha256Hash o = (Sha256Hash) other;
+      return _w3 == o._w3 && _w0 == o._w0 && _w1 == o._w1 && _w2 == o._w2;
    }
 
    @Override
    public int hashCode() {
-      if (_hash == -1) {
-         final int offset = _bytes.length - 4;
-         _hash = 0;
-         for (int i = 0; i < 4; i++) {
-            _hash <<= 8;
-            _hash |= (((int) _bytes[offset + i]) & 0xFF);
-         }
-      }
-      return _hash;
+      // the last four bytes
+      return (int) _w3;
    }
 
    @Override
@@ -106,24 +135,59 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
    }
 
    public byte[] getBytes() {
-      return _bytes;
+      byte[] bytes = _bytes;
+      if (bytes == null) {
+         bytes = new byte[HASH_LENGTH];
+         copyTo(bytes, 0);
+         _bytes = bytes;
+      }
+      return bytes;
+   }
+
+   /**
+    * Write the 32 bytes of the hash into an array
+    */
+   public void copyTo(byte[] out, int offset) {
+      putLong(_w0, out, offset);
+      putLong(_w1, out, offset + 8);
+      putLong(_w2, out, offset + 16);
+      putLong(_w3, out, offset + 24);
+   }
+
+   /**
+    * Write the 32 bytes of the hash into an array in reverse order
+    */
+   public void copyReversedTo(byte[] out, int offset) {
+      putLong(Long.reverseBytes(_w3), out, offset);
+      putLong(Long.reverseBytes(_w2), out, offset + 8);
+      putLong(Long.reverseBytes(_w1), out, offset + 16);
+      putLong(Long.reverseBytes(_w0), out, offset + 24);
    }
 
    @Override
    public int compareTo(Sha256Hash o) {
-      for (int i = 0; i < HASH_LENGTH; i++) {
-         byte myByte = _bytes[i];
-         byte otherByte = o._bytes[i];
-
-         final int compare = Ints.compare(myByte, otherByte);
-         if (compare != 0)
-            return compare;
+      // Compare byte by byte as signed bytes. Flipping the sign bit of every
+      // byte but the first makes comparing the words the same.
+      int compare = compare(_w0 ^ 0x0080808080808080L, o._w0 ^ 0x0080808080808080L);
+      if (compare == 0) {
+         compare = compare(_w1 ^ 0x0080808080808080L, o._w1 ^ 0x0080808080808080L);
+      }
+      if (compare == 0) {
+         compare = compare(_w2 ^ 0x0080808080808080L, o._w2 ^ 0x0080808080808080L);
+      }
+      if (compare == 0) {
+         compare = compare(_w3 ^ 0x0080808080808080L, o._w3 ^ 0x0080808080808080L);
       }
-      return 0;
+      return compare;
+   }
+
+   private static int compare(long a, long b) {
+      return a < b ? -1 : (a == b ? 0 : 1);
    }
 
    public Sha256Hash reverse() {
-      return new Sha256Hash(BitUtils.reverseBytes(_bytes));
+      return new Sha256Hash(Long.reverseBytes(_w3), Long.reverseBytes(_w2), Long.reverseBytes(_w1),
+            Long.reverseBytes(_w0));
    }
 
    public int length() {
@@ -131,13 +195,14 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
    }
 
    public BigInteger toPositiveBigInteger() {
-      return new BigInteger(1, _bytes);
+      return new BigInteger(1, getBytes());
    }
 
    public boolean startsWith(byte[] checksum) {
       Preconditions.checkArgument(checksum.length < HASH_LENGTH); // typcially 4
+      byte[] bytes = getBytes();
       for (int i = 0, checksumLength = checksum.length; i < checksumLength; i++) {
-         if (_bytes[i] != checksum[i]) {
+         if (bytes[i] != checksum[i]) {
             return false;
          }
       }
@@ -146,18 +211,54 @@ public class Sha256Hash implements Serializable, Comparable<Sha256Hash> {
 
    public byte[] firstFourBytes() {
       byte[] ret = new byte[4];
-      System.arraycopy(_bytes, 0, ret, 0, 4);
+      putInt((int) (_w0 >>> 32), ret, 0);
       return ret;
    }
 
    public byte[] firstNBytes(int n) {
       byte[] ret = new byte[n];
-      System.arraycopy(_bytes, 0, ret, 0, n);
+      System.arraycopy(getBytes(), 0, ret, 0, n);
       return ret;
    }
 
    public String toHex() {
-      return HexUtils.toHex(_bytes);
+      return HexUtils.toHex(getBytes());
+   }
+
+   private static long toLong(byte[] buf, int offset) {
+      return ((long) toInt(buf, offset) << 32) | (toInt(buf, offset + 4) & 0xFFFFFFFFL);
+   }
+
+   private static int toInt(byte[] buf, int offset) {
+      return (buf[offset] << 24) | ((buf[offset + 1] & 0xFF) << 16) | ((buf[offset + 2] & 0xFF) << 8)
+            | (buf[offset + 3] & 0xFF);
+   }
+
+   private static void putLong(long value, byte[] out, int offset) {
+      putInt((int) (value >>> 32), out, offset);
+      putInt((int) value, out, offset + 4);
+   }
+
+   private static void putInt(int value, byte[] out, int offset) {
+      out[offset] = (byte) (value >>> 24);
+      out[offset + 1] = (byte) (value >>> 16);
+      out[offset + 2] = (byte) (value >>> 8);
+      out[offset + 3] = (byte) value;
+   }
+
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      ObjectOutputStream.PutField fields = out.putFields();
+      fields.put("_bytes", getBytes());
+      fields.put("_hash", hashCode());
+      out.writeFields();
+   }
+
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      ObjectInputStream.GetField fields = in.readFields();
+      byte[] bytes = (byte[]) fields.get("_bytes", null);
+      Preconditions.checkArgument(bytes.length == HASH_LENGTH);
+      setWords(bytes, 0);
+      _bytes = bytes;
    }
 
 }
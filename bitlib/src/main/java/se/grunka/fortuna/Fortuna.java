@@ -9,10 +9,28 @@ import se.grunka.fortuna.accumulator.Accumulator;
 import se.grunka.fortuna.accumulator.EntropySource;
 import se.grunka.fortuna.entropy.*;
 
+/**
+ * The Fortuna random number generator. Entropy is collected into 32 pools by
+ * an {@link Accumulator}, and a {@link Generator} is reseeded from the pools
+ * at most every {@value #RESEED_INTERVAL_MILLIS} ms.
+ * <p>
+ * An instance from {@link #createInstance()} serves all threads from one
+ * generator behind a lock. An instance from {@link #createShardedInstance()}
+ * gives every thread a generator of its own. The shared generator is then
+ * only used to seed the thread generators, and every thread generator is
+ * reseeded from it at most every {@value #RESEED_INTERVAL_MILLIS} ms, so
+ * threads only contend for the lock when reseeding. As every generator
+ * replaces its key after each request, the output of a thread cannot be
+ * reconstructed from the later state of any generator.
+ */
 public class Fortuna extends Random {
    private static final long serialVersionUID = 1L;
    
    private static final int MIN_POOL_SIZE = 64;
+   private static final long RESEED_INTERVAL_MILLIS = 100;
+   private static final int SHARD_SEED_LENGTH = 32;
+   // The most a generator produces per request
+   private static final int MAX_REQUEST_LENGTH = 1048576;
    private static final int[] POWERS_OF_TWO = initializePowersOfTwo();
 
    private static int[] initializePowersOfTwo() {
@@ -28,11 +46,20 @@ public class Fortuna extends Random {
    private final Generator generator;
    private final Pool[] pools;
    private final ReentrantLock lock = new ReentrantLock();
+   // The generators of the threads, null if all threads share one generator
+   private final ThreadLocal<Shard> shards;
 
    public static Fortuna createInstance() {
       return createInstance(defaultSources());
    }
 
+   /**
+    * Create an instance that gives every thread a generator of its own
+    */
+   public static Fortuna createShardedInstance() {
+      return createShardedInstance(defaultSources());
+   }
+
    private static Iterable<EntropySource> defaultSources() {
       ImmutableList.Builder<EntropySource> b = ImmutableList.builder();
       b.add(new SchedulingEntropySource()
@@ -49,6 +76,17 @@ public class Fortuna extends Random {
    }
 
    public static Fortuna createInstance(Iterable<EntropySource> sources) {
+      return new Fortuna(new Generator(), createPools(sources), false);
+   }
+
+   /**
+    * Create an instance that gives every thread a generator of its own
+    */
+   public static Fortuna createShardedInstance(Iterable<EntropySource> sources) {
+      return new Fortuna(new Generator(), createPools(sources), true);
+   }
+
+   private static Pool[] createPools(Iterable<EntropySource> sources) {
       Pool[] pools = new Pool[32];
       for (int pool = 0; pool < pools.length; pool++) {
          pools[pool] = new Pool();
@@ -64,19 +102,43 @@ public class Fortuna extends Random {
             throw new Error("Interrupted while waiting for initialization", e);
          }
       }
-      return new Fortuna(new Generator(), pools);
+      return pools;
    }
 
-   private Fortuna(Generator generator, Pool[] pools) {
+   private Fortuna(Generator generator, Pool[] pools, boolean sharded) {
       this.generator = generator;
       this.pools = pools;
+      if (sharded) {
+         shards = new ThreadLocal<Shard>() {
+            @Override
+            protected Shard initialValue() {
+               return new Shard();
+            }
+         };
+      } else {
+         shards = null;
+      }
+   }
+
+   /**
+    * Determine whether every thread has a generator of its own
+    */
+   public boolean isSharded() {
+      return shards != null;
    }
 
    private byte[] randomData(int bytes) {
+      if (shards != null) {
+         return shards.get().randomData(bytes);
+      }
+      return sharedRandomData(bytes);
+   }
+
+   private byte[] sharedRandomData(int bytes) {
       lock.lock();
       try {
          long now = System.currentTimeMillis();
-         if (pools[0].size() >= MIN_POOL_SIZE && now - lastReseedTime > 100) {
+         if (pools[0].size() >= MIN_POOL_SIZE && now - lastReseedTime > RESEED_INTERVAL_MILLIS) {
             lastReseedTime = now;
             reseedCount++;
             byte[] seed = new byte[pools.length * 32]; // Maximum potential length
@@ -99,6 +161,26 @@ public class Fortuna extends Random {
       }
    }
 
+   /**
+    * The generator of one thread, seeded from the shared generator
+    */
+   private class Shard {
+      private final Generator shardGenerator = new Generator();
+      private long lastReseedTime;
+      private boolean seeded;
+
+      byte[] randomData(int bytes) {
+         long now = System.currentTimeMillis();
+         if (!seeded || now - lastReseedTime > RESEED_INTERVAL_MILLIS) {
+            // The shared generator reseeds itself from the pools when due
+            shardGenerator.reseed(sharedRandomData(SHARD_SEED_LENGTH));
+            lastReseedTime = now;
+            seeded = true;
+         }
+         return shardGenerator.pseudoRandomData(bytes);
+      }
+   }
+
    @Override
    protected int next(int bits) {
       byte[] bytes = randomData(Util.ceil(bits, 8));
@@ -110,6 +192,18 @@ public class Fortuna extends Random {
       return result >>> (bytes.length * 8 - bits);
    }
 
+   /**
+    * Fill an array with random bytes, requesting them from the generator in as
+    * few requests as possible rather than four bytes at a time
+    */
+   @Override
+   public void nextBytes(byte[] bytes) {
+      for (int offset = 0; offset < bytes.length; offset += MAX_REQUEST_LENGTH) {
+         int length = Math.min(MAX_REQUEST_LENGTH, bytes.length - offset);
+         System.arraycopy(randomData(length), 0, bytes, offset, length);
+      }
+   }
+
    @Override
    public synchronized void setSeed(long seed) {
       // Does not do anything
@@ -35,11 +35,19 @@
 package com.mrd.bitlib;
 
 import com.mrd.bitlib.bitcoinj.Base58;
+import com.mrd.bitlib.crypto.HdKeyNode;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.HashUtils;
 
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Random;
+
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 
 public class Base58Test {
    private static final byte[] BYTES = new byte[]{0, 13, -101};
@@ -56,4 +64,213 @@ public class Base58Test {
    public void testNull() {
       Base58.decode(null);
    }
+
+   @Test
+   public void testMatchesReferenceEncoding() {
+      Random random = new Random(1);
+      for (int i = 0; i < 5000; i++) {
+         byte[] bytes = randomBytes(random);
+         String encoded = ReferenceBase58.encode(bytes);
+         assertEquals(encoded, Base58.encode(bytes));
+         assertArrayEquals(bytes, Base58.decode(encoded));
+         assertEquals(ReferenceBase58.encodeWithChecksum(bytes), Base58.encodeWithChecksum(bytes));
+      }
+   }
+
+   @Test
+   public void testMatchesReferenceDecoding() {
+      Random random = new Random(2);
+      for (int i = 0; i < 5000; i++) {
+         // Random strings decode to values that need not be the encoding of any byte array
+         char[] chars = new char[random.nextInt(60)];
+         int ones = random.nextInt(4);
+         for (int j = 0; j < chars.length; j++) {
+            chars[j] = j < ones ? '1' : Base58.ALPHABET[random.nextInt(58)];
+         }
+         String string = new String(chars);
+         assertArrayEquals(ReferenceBase58.decode(string), Base58.decode(string));
+         assertArrayEquals(ReferenceBase58.decodeChecked(string), Base58.decodeChecked(string));
+      }
+   }
+
+   @Test
+   public void testDecodeChecked() {
+      Random random = new Random(3);
+      for (int i = 0; i < 1000; i++) {
+         byte[] bytes = randomBytes(random);
+         String encoded = Base58.encodeWithChecksum(bytes);
+         assertArrayEquals(bytes, Base58.decodeChecked(encoded));
+         // Changing any digit breaks the checksum
+         char[] chars = encoded.toCharArray();
+         int position = random.nextInt(chars.length);
+         chars[position] = chars[position] == 'z' ? 'y' : 'z';
+         String corrupted = new String(chars);
+         assertArrayEquals(ReferenceBase58.decodeChecked(corrupted), Base58.decodeChecked(corrupted));
+      }
+      assertNull(Base58.decodeChecked("111"));
+      assertNull(Base58.decodeChecked(""));
+   }
+
+   @Test
+   public void testInvalidCharacters() {
+      for (String string : new String[] { "0", "O", "I", "l", "12 3", "abc+", "\u00e41", "1\uFEFF" }) {
+         assertNull(Base58.decode(string));
+         assertNull(Base58.decodeChecked(string));
+      }
+      assertArrayEquals(BYTES, Base58.decode("\uFEFF1234"));
+      assertArrayEquals(EMPTY, Base58.decode("\uFEFF"));
+   }
+
+   @Test
+   public void testAddressRoundTrip() {
+      Random random = new Random(4);
+      for (int i = 0; i < 1000; i++) {
+         byte[] bytes = new byte[Address.NUM_ADDRESS_BYTES];
+         random.nextBytes(bytes);
+         if (i % 10 == 0) {
+            bytes[0] = 0;
+            bytes[1] = 0;
+         }
+         Address address = new Address(bytes);
+         String expected = ReferenceBase58.encodeWithChecksum(bytes);
+         assertEquals(expected, address.toString());
+         assertArrayEquals(bytes, Address.fromString(expected).getAllAddressBytes());
+      }
+   }
+
+   @Test
+   public void testHdKeyNodeRoundTrip() {
+      Random random = new Random(5);
+      for (int i = 0; i < 20; i++) {
+         byte[] seed = new byte[32];
+         random.nextBytes(seed);
+         HdKeyNode node = HdKeyNode.fromSeed(seed);
+         for (HdKeyNode n : new HdKeyNode[] { node, node.getPublicNode() }) {
+            for (NetworkParameters network : new NetworkParameters[] { NetworkParameters.productionNetwork,
+                  NetworkParameters.testNetwork }) {
+               String serialized = n.serialize(network);
+               assertArrayEquals(ReferenceBase58.decodeChecked(serialized), Base58.decodeChecked(serialized));
+               assertEquals(n, HdKeyNode.parse(serialized, network));
+            }
+         }
+      }
+   }
+
+   private static byte[] randomBytes(Random random) {
+      byte[] bytes = new byte[random.nextInt(100)];
+      random.nextBytes(bytes);
+      // Leading zeros are encoded separately
+      int zeros = Math.min(bytes.length, random.nextInt(4));
+      for (int i = 0; i < zeros; i++) {
+         bytes[i] = 0;
+      }
+      return bytes;
+   }
+
+   /**
+    * The byte at a time implementation that Base58 used to have
+    */
+   private static class ReferenceBase58 {
+      private static final int[] INDEXES = new int[128];
+      static {
+         Arrays.fill(INDEXES, -1);
+         for (int i = 0; i < Base58.ALPHABET.length; i++) {
+            INDEXES[Base58.ALPHABET[i]] = i;
+         }
+      }
+
+      static String encode(byte[] input) {
+         if (input.length == 0) {
+            return "";
+         }
+         input = Arrays.copyOf(input, input.length);
+         int zeroCount = 0;
+         while (zeroCount < input.length && input[zeroCount] == 0) {
+            ++zeroCount;
+         }
+         char[] temp = new char[input.length * 2];
+         int j = temp.length;
+         int startAt = zeroCount;
+         while (startAt < input.length) {
+            int mod = divmod(input, startAt, 256, 58);
+            if (input[startAt] == 0) {
+               ++startAt;
+            }
+            temp[--j] = Base58.ALPHABET[mod];
+         }
+         while (j < temp.length && temp[j] == Base58.ALPHABET[0]) {
+            ++j;
+         }
+         while (--zeroCount >= 0) {
+            temp[--j] = Base58.ALPHABET[0];
+         }
+         return new String(temp, j, temp.length - j);
+      }
+
+      static String encodeWithChecksum(byte[] input) {
+         byte[] b = Arrays.copyOf(input, input.length + 4);
+         System.arraycopy(HashUtils.doubleSha256(input).getBytes(), 0, b, input.length, 4);
+         return encode(b);
+      }
+
+      static byte[] decode(String input) {
+         if (input.length() == 0) {
+            return new byte[0];
+         }
+         if (input.charAt(0) == '\uFEFF') {
+            input = input.substring(1);
+         }
+         byte[] input58 = new byte[input.length()];
+         for (int i = 0; i < input.length(); ++i) {
+            char c = input.charAt(i);
+            int digit58 = c < 128 ? INDEXES[c] : -1;
+            if (digit58 < 0) {
+               return null;
+            }
+            input58[i] = (byte) digit58;
+         }
+         int zeroCount = 0;
+         while (zeroCount < input58.length && input58[zeroCount] == 0) {
+            ++zeroCount;
+         }
+         byte[] temp = new byte[input.length()];
+         int j = temp.length;
+         int startAt = zeroCount;
+         while (startAt < input58.length) {
+            int mod = divmod(input58, startAt, 58, 256);
+            if (input58[startAt] == 0) {
+               ++startAt;
+            }
+            temp[--j] = (byte) mod;
+         }
+         while (j < temp.length && temp[j] == 0) {
+            ++j;
+         }
+         return Arrays.copyOfRange(temp, j - zeroCount, temp.length);
+      }
+
+      static byte[] decodeChecked(String input) {
+         byte[] tmp = decode(input);
+         if (tmp == null || tmp.length < 4) {
+            return null;
+         }
+         byte[] bytes = Arrays.copyOfRange(tmp, 0, tmp.length - 4);
+         byte[] checksum = Arrays.copyOfRange(tmp, tmp.length - 4, tmp.length);
+         if (!Arrays.equals(checksum, HashUtils.doubleSha256(bytes).firstFourBytes())) {
+            return null;
+         }
+         return bytes;
+      }
+
+      // number -> number / divisor in base, returns number % divisor
+      private static int divmod(byte[] number, int startAt, int base, int divisor) {
+         int remainder = 0;
+         for (int i = startAt; i < number.length; i++) {
+            int temp = remainder * base + (number[i] & 0xFF);
+            number[i] = (byte) (temp / divisor);
+            remainder = temp % divisor;
+         }
+         return remainder;
+      }
+   }
 }
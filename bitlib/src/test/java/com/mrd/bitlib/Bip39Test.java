@@ -40,6 +40,10 @@ import com.mrd.bitlib.util.HexUtils;
 import org.junit.Test;
 
 import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
@@ -167,6 +171,25 @@ public class Bip39Test {
         }
     }
 
+    @Test
+    public void testEnglishVectorsWordsToSeedsBatch() {
+        TestVector tv = TEST_VECTORS[TEST_VECTORS.length - 1];
+        List<String> passphrases = Arrays.asList(tv.passphrase, "", null, "another passphrase");
+        List<Bip39.MasterSeed> masterSeeds;
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            masterSeeds = Bip39.generateSeedsFromWordList(Arrays.asList(tv.wordList), passphrases, executor);
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(masterSeeds, Bip39.generateSeedsFromWordList(Arrays.asList(tv.wordList), passphrases));
+        assertEquals(passphrases.size(), masterSeeds.size());
+        assertEquals("seed should match test vector", tv.bip32seed, HexUtils.toHex(masterSeeds.get(0).getBip32Seed()));
+        for (int i = 0; i < passphrases.size(); i++) {
+            assertEquals(Bip39.generateSeedFromWordList(tv.wordList, passphrases.get(i)), masterSeeds.get(i));
+        }
+    }
+
     @Test
     public void testEnglishVectors_WordListChecksum() {
         for (TestVector tv : TEST_VECTORS) {
@@ -0,0 +1,99 @@
+package com.mrd.bitlib.crypto;
+
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signature verification throughput, single versus batched. The scores are
+ * signatures per second for a batch of {@value #BATCH_SIZE} signatures of
+ * {@value #KEY_COUNT} keys.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchSignatureVerifierBenchmark {
+   private static final int BATCH_SIZE = 100;
+   private static final int KEY_COUNT = 10;
+
+   private PublicKey[] publicKeys = new PublicKey[BATCH_SIZE];
+   private Sha256Hash[] hashes = new Sha256Hash[BATCH_SIZE];
+   private byte[][] signatures = new byte[BATCH_SIZE][];
+   private int threads;
+   private ExecutorService executor;
+
+   @Setup
+   public void setup() {
+      for (int i = 0; i < BATCH_SIZE; i++) {
+         InMemoryPrivateKey key = new InMemoryPrivateKey(HashUtils.sha256(("key" + i % KEY_COUNT).getBytes()), true);
+         // A fresh public key instance, so that nothing is cached before the
+         // first verification
+         publicKeys[i] = new PublicKey(key.getPublicKey().getPublicKeyBytes());
+         hashes[i] = HashUtils.sha256(("message" + i).getBytes());
+         signatures[i] = key.makeStandardBitcoinSignature(hashes[i]);
+      }
+      threads = Runtime.getRuntime().availableProcessors();
+      executor = Executors.newFixedThreadPool(threads);
+   }
+
+   @TearDown
+   public void tearDown() {
+      executor.shutdown();
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(BATCH_SIZE)
+   public boolean single() {
+      boolean valid = true;
+      for (int i = 0; i < BATCH_SIZE; i++) {
+         valid &= publicKeys[i].verifyStandardBitcoinSignature(hashes[i], signatures[i], true);
+      }
+      return valid;
+   }
+
+   private BatchSignatureVerifier createBatch() {
+      BatchSignatureVerifier verifier = new BatchSignatureVerifier();
+      for (int i = 0; i < BATCH_SIZE; i++) {
+         verifier.addStandardBitcoinSignature(hashes[i], signatures[i], publicKeys[i], true);
+      }
+      return verifier;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(BATCH_SIZE)
+   public boolean[] batch() {
+      return createBatch().verify();
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(BATCH_SIZE)
+   public boolean[] batchParallel() {
+      return createBatch().verify(executor, threads);
+   }
+
+   public static void main(String[] args) throws RunnerException {
+      new Runner(new OptionsBuilder().include(BatchSignatureVerifierBenchmark.class.getSimpleName()).build()).run();
+   }
+}
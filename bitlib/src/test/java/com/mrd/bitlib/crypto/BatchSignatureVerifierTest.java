@@ -0,0 +1,102 @@
+package com.mrd.bitlib.crypto;
+
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchSignatureVerifierTest {
+   private static final int COUNT = 40;
+   private static final InMemoryPrivateKey[] KEYS = new InMemoryPrivateKey[4];
+   private static final Sha256Hash[] HASHES = new Sha256Hash[COUNT];
+   private static final byte[][] SIGNATURES = new byte[COUNT][];
+
+   @BeforeClass
+   public static void createFixtures() {
+      for (int i = 0; i < KEYS.length; i++) {
+         KEYS[i] = new InMemoryPrivateKey(HashUtils.sha256(("key" + i).getBytes()), i % 2 == 0);
+      }
+      for (int i = 0; i < COUNT; i++) {
+         HASHES[i] = HashUtils.sha256(("message" + i).getBytes());
+         SIGNATURES[i] = KEYS[i % KEYS.length].makeStandardBitcoinSignature(HASHES[i]);
+      }
+   }
+
+   private static BatchSignatureVerifier createBatch(boolean[] expected) {
+      BatchSignatureVerifier verifier = new BatchSignatureVerifier();
+      for (int i = 0; i < COUNT; i++) {
+         PublicKey publicKey = KEYS[i % KEYS.length].getPublicKey();
+         switch (i % 5) {
+         case 1:
+            // Wrong key
+            publicKey = KEYS[(i + 1) % KEYS.length].getPublicKey();
+            break;
+         case 3:
+            // Wrong message
+            assertEquals(i, verifier.addStandardBitcoinSignature(HASHES[0], SIGNATURES[i], publicKey, true));
+            expected[i] = publicKey.verifyStandardBitcoinSignature(HASHES[0], SIGNATURES[i], true);
+            continue;
+         default:
+            break;
+         }
+         assertEquals(i, verifier.addStandardBitcoinSignature(HASHES[i], SIGNATURES[i], publicKey, true));
+         expected[i] = publicKey.verifyStandardBitcoinSignature(HASHES[i], SIGNATURES[i], true);
+      }
+      return verifier;
+   }
+
+   @Test
+   public void testMatchesSingleVerification() {
+      boolean[] expected = new boolean[COUNT];
+      BatchSignatureVerifier verifier = createBatch(expected);
+      assertTrue(expected[0]);
+      assertFalse(expected[1]);
+      assertFalse(expected[3]);
+      assertArrayEquals(expected, verifier.verify());
+   }
+
+   @Test
+   public void testParallel() {
+      boolean[] expected = new boolean[COUNT];
+      BatchSignatureVerifier verifier = createBatch(expected);
+      ExecutorService executor = Executors.newFixedThreadPool(4);
+      try {
+         assertArrayEquals(expected, verifier.verify(executor, 4));
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void testMalformedSignatures() {
+      BatchSignatureVerifier verifier = new BatchSignatureVerifier();
+      PublicKey publicKey = KEYS[0].getPublicKey();
+      verifier.addStandardBitcoinSignature(HASHES[0], new byte[] { 1, 2, 3 }, publicKey, false);
+      verifier.addDerEncodedSignature(HASHES[0], SIGNATURES[0], publicKey);
+      verifier.add(HASHES[0].getBytes(), new Signature(BigInteger.ZERO, BigInteger.ONE), publicKey, false);
+      assertEquals(3, verifier.size());
+      // The DER signature has a trailing hash type, which is ignored here
+      assertArrayEquals(new boolean[] { false, true, false }, verifier.verify());
+      assertEquals(0, new BatchSignatureVerifier().verify().length);
+   }
+
+   @Test
+   public void testInvertAll() {
+      BigInteger p = BigInteger.valueOf(1000003);
+      BigInteger[] values = { BigInteger.valueOf(2), null, BigInteger.valueOf(999), BigInteger.ONE };
+      BatchSignatureVerifier.invertAll(values, p);
+      assertEquals(BigInteger.valueOf(2).modInverse(p), values[0]);
+      assertEquals(null, values[1]);
+      assertEquals(BigInteger.valueOf(999).modInverse(p), values[2]);
+      assertEquals(BigInteger.ONE, values[3]);
+   }
+}
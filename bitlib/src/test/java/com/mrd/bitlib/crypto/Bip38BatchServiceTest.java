@@ -0,0 +1,89 @@
+package com.mrd.bitlib.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.junit.Test;
+
+import com.mrd.bitlib.model.NetworkParameters;
+
+public class Bip38BatchServiceTest {
+
+   private static final NetworkParameters NETWORK = NetworkParameters.productionNetwork;
+
+   @Test
+   public void decryptWithPassphrasePerKey() throws InterruptedException {
+      List<String> keys = Arrays.asList("6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+            "6PYLtMnXvfG3oJde97zRyLYFZCYizPU5T3LwgdYJz1fRhh16bU7u6PPmY7",
+            "6PgNBNNzDkKdhkT6uJntUXwwzQV8Rr2tZcbkDcuC9DZRsS6AtHts4Ypo1j",
+            "6PYLtMnXvfG3oJde97zRyLYFZCYizPU5T3LwgdYJz1fRhh16bU7u6PPmY7", "not a key");
+      List<String> passphrases = Arrays.asList("TestingOneTwoThree", "Satoshi", "MOLON LABE", "wrong", "Satoshi");
+      final ConcurrentMap<Integer, String> notified = new ConcurrentHashMap<Integer, String>();
+      Bip38BatchService service = new Bip38BatchService(2);
+      Bip38BatchService.Job job = service.decrypt(keys, passphrases, NETWORK, new Bip38BatchService.Listener() {
+         @Override
+         public void onResult(int index, String input, String result) {
+            notified.put(index, result == null ? "" : result);
+         }
+      });
+      List<String> results = job.awaitResults();
+      service.shutdown();
+
+      assertEquals(Arrays.asList("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR",
+            "KwYgW8gcxj1JWJXhPSu4Fqwzfhp5Yfi42mdYmMa4XqK7NJxXUSK7",
+            "5JLdxTtcTHcfYcmJsNVy1v2PMDx432JPoYcBTVVRHpPaxUrdtf8", null, null), results);
+      assertEquals(keys.size(), notified.size());
+      for (int i = 0; i < results.size(); i++) {
+         assertEquals(results.get(i) == null ? "" : results.get(i), notified.get(i));
+      }
+      assertTrue(job.isDone());
+      // The keys that could not be parsed or decrypted count as done
+      assertEquals(1.0, job.getProgress(), 1e-9);
+   }
+
+   @Test
+   public void encryptAndDecrypt() throws InterruptedException {
+      List<String> keys = Arrays.asList("5KN7MzqK5wt2TP1fQCYyHBtDrXdJuXbUzm4A9rKAteGu3Qi5CVR",
+            "L44B5gGEpqEDRS9vVPz7QT35jcBG2r3CZwSwQ4fCewXAhAhqGVpP");
+      Bip38BatchService service = new Bip38BatchService(1);
+      List<String> encrypted = service.encrypt(keys, "TestingOneTwoThree", NETWORK, null).awaitResults();
+      assertEquals(Arrays.asList("6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+            "6PYNKZ1EAgYgmQfmNVamxyXVWHzK5s6DGhwP4J5o44cvXdoY7sRzhtpUeo"), encrypted);
+      assertEquals(keys, service.decrypt(encrypted, "TestingOneTwoThree", NETWORK, null).awaitResults());
+      service.shutdown();
+   }
+
+   @Test
+   public void cancel() {
+      List<String> keys = Arrays.asList("6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+            "6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg",
+            "6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg");
+      Bip38BatchService service = new Bip38BatchService(1);
+      Bip38BatchService.Job job = service.decrypt(keys, "TestingOneTwoThree", NETWORK, null);
+      job.cancel();
+      try {
+         job.awaitResults();
+         fail("cancelled batch returned results");
+      } catch (InterruptedException e) {
+         // expected
+      }
+      assertTrue(job.getProgress() < 1);
+      service.shutdown();
+   }
+
+   @Test
+   public void wrongNetwork() throws InterruptedException {
+      Bip38BatchService service = new Bip38BatchService(1);
+      List<String> results = service.decrypt(Arrays.asList("6PRVWUbkzzsbcVac2qwfssoUJAN1Xhrg6bNk8J7Nzm5H7kxEbn2Nh2ZoGg"),
+            "TestingOneTwoThree", NetworkParameters.testNetwork, null).awaitResults();
+      assertNull(results.get(0));
+      service.shutdown();
+   }
+}
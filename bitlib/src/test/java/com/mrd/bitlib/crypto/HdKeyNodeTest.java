@@ -6,8 +6,12 @@ import com.mrd.bitlib.util.HexUtils;
 
 import org.junit.Test;
 
+import java.util.List;
+
 import static com.mrd.bitlib.model.NetworkParameters.productionNetwork;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class HdKeyNodeTest {
@@ -106,6 +110,32 @@ public class HdKeyNodeTest {
         assertEquals(tv.xpriv, node.serialize(productionNetwork));
     }
 
+    @Test
+    public void createChildNodesMatchesCreateChildNodeTest() {
+        HdKeyNode xpriv = HdKeyNode.fromSeed(TEST_VECTORS[0].seed).createChildNode(HdKeyPath.valueOf("m/44'/0'/0'/0"));
+        HdKeyNode xpub = xpriv.getPublicNode();
+        for (HdKeyNode parent : new HdKeyNode[]{xpriv, xpub}) {
+            List<HdKeyNode> children = parent.createChildNodes(5, 25);
+            assertEquals(20, children.size());
+            for (int i = 0; i < children.size(); i++) {
+                HdKeyNode expected = parent.createChildNode(5 + i);
+                assertEquals(expected.serialize(productionNetwork), children.get(i).serialize(productionNetwork));
+                assertArrayEquals(expected.getPublicKey().getPublicKeyBytes(),
+                        children.get(i).getPublicKey().getPublicKeyBytes());
+            }
+        }
+        List<PublicKey> publicKeys = xpub.createChildPublicKeys(0, 3);
+        for (int i = 0; i < publicKeys.size(); i++) {
+            assertEquals(xpub.createChildPublicKey(i), publicKeys.get(i));
+        }
+        assertTrue(xpub.createChildNodes(7, 7).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failOnHardenedChildNodesTest() {
+        HdKeyNode.fromSeed(TEST_VECTORS[0].seed).createChildNodes(HdKeyNode.HARDENED_MARKER, 0);
+    }
+
     private static class TestVector {
         byte[] seed;
         HdKeyPath derivation;
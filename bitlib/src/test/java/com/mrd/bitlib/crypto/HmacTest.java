@@ -34,9 +34,11 @@
 
 package com.mrd.bitlib.crypto;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
+import java.util.Random;
 
 import org.junit.Test;
 
@@ -71,4 +73,50 @@ public class HmacTest {
       assertTrue(Arrays.equals(TEST_3_RESULT, Hmac.hmacSha512(TEST_3_KEY, TEST_3_DATA)));
    }
 
+   @Test
+   public void hmacContextTest() {
+      HmacContext context = HmacContext.hmacSha512(TEST_3_KEY);
+      assertEquals(64, context.getMacLength());
+      // Reuse the context, feed the data in pieces and write into an offset
+      for (int i = 0; i < 3; i++) {
+         byte[] out = new byte[70];
+         context.update(TEST_3_DATA, 0, 10);
+         context.update(TEST_3_DATA[10]);
+         context.update(Arrays.copyOfRange(TEST_3_DATA, 11, TEST_3_DATA.length));
+         context.doFinal(out, 3);
+         assertTrue(Arrays.equals(TEST_3_RESULT, Arrays.copyOfRange(out, 3, 67)));
+      }
+      context.update(TEST_1_DATA);
+      context.reset();
+      assertTrue(Arrays.equals(TEST_3_RESULT, context.doFinal(TEST_3_DATA)));
+
+      // Keys longer than the block size are hashed first
+      byte[] longKey = new byte[131];
+      Arrays.fill(longKey, (byte) 0xaa);
+      byte[] data = "Test Using Larger Than Block-Size Key - Hash Key First".getBytes();
+      assertTrue(Arrays.equals(HexUtils.toBytes("60e431591ee0b67f0d8a26aacbf5b77f8e0bc6213728c5140546040f0ee37f54"),
+            HmacContext.hmacSha256(longKey).doFinal(data)));
+      assertTrue(Arrays.equals(HexUtils.toBytes("80b24263c7c1a3ebb71493c1dd7be8b49b46d1f41b4aeec1121b013783f8f352"
+            + "6b56d037e05f2598bd0fd2215d6a1e5295e64f73f63f0aec8b915a985d786598"),
+            HmacContext.hmacSha512(longKey).doFinal(data)));
+      assertTrue(Hmac.testTestVectors());
+   }
+
+   @Test
+   public void hmacContextMatchesHmac() {
+      Random random = new Random(1);
+      byte[] message = new byte[100];
+      random.nextBytes(message);
+      for (int keyLength = 0; keyLength < 200; keyLength += 7) {
+         byte[] key = new byte[keyLength];
+         random.nextBytes(key);
+         HmacContext sha256 = HmacContext.hmacSha256(key);
+         HmacContext sha512 = HmacContext.hmacSha512(key);
+         for (int i = 0; i < 2; i++) {
+            assertTrue(Arrays.equals(Hmac.hmacSha256(key, message), sha256.doFinal(message)));
+            assertTrue(Arrays.equals(Hmac.hmacSha512(key, message), sha512.doFinal(message)));
+         }
+      }
+   }
+
 }
@@ -34,6 +34,7 @@
 
 package com.mrd.bitlib.crypto;
 
+import com.google.common.base.Optional;
 import com.mrd.bitlib.crypto.MrdExport.DecodingException;
 import com.mrd.bitlib.crypto.MrdExport.V1.*;
 import com.mrd.bitlib.model.NetworkParameters;
@@ -42,6 +43,12 @@ import org.junit.Assert;
 import org.junit.Ignore;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import static org.junit.Assert.*;
 
 public class MrdExportTest {
@@ -214,6 +221,67 @@ public class MrdExportTest {
       assertEquals(masterSeed, decryptedSeed);
    }
 
+   @Test
+   public void batchEncryption() throws DecodingException, InterruptedException {
+      KdfParameters kdfParameters = new KdfParameters(TEST_PASSWORD_1, TEST_SALT_1, MrdExport.V1.ScryptParameters.DEFAULT_PARAMS);
+      Batch batch = Batch.generate(kdfParameters);
+      List<String> encrypted = new ArrayList<String>();
+      for (String e : batch.encryptPrivateKeys(Arrays.asList(TEST_KEY_BASE58_UNCOMPRESSED, TEST_KEY_BASE58_COMPRESSED),
+            NetworkParameters.productionNetwork)) {
+         encrypted.add(e);
+      }
+      assertEquals(Arrays.asList(TEST_KEY_UNCOMPRESSED_ENCRYPTED, TEST_KEY_COMPRESSED_ENCRYPTED), encrypted);
+
+      Bip39.MasterSeed masterSeed = Bip39.generateSeedFromWordList(TEST_SEED.split(" "), "");
+      assertEquals(TEST_SEED_ENCRYPTED, batch.encryptMasterSeed(masterSeed, NetworkParameters.productionNetwork));
+      assertEquals(masterSeed, batch.decryptMasterSeed(TEST_SEED_ENCRYPTED, NetworkParameters.productionNetwork));
+
+      List<String> entries = Arrays.asList(TEST_KEY_COMPRESSED_ENCRYPTED, TEST_KEY_COMPRESSED_ENCRYPTED_LOW_MEM,
+            "garbage", TEST_KEY_UNCOMPRESSED_ENCRYPTED);
+      List<Optional<String>> decrypted = batch.decryptPrivateKeys(entries, NetworkParameters.productionNetwork);
+      assertEquals(Arrays.asList(Optional.of(TEST_KEY_BASE58_COMPRESSED), Optional.<String>absent(),
+            Optional.<String>absent(), Optional.of(TEST_KEY_BASE58_UNCOMPRESSED)), decrypted);
+
+      // Enough entries to be split into chunks
+      List<String> manyEntries = new ArrayList<String>();
+      List<Optional<String>> expected = new ArrayList<Optional<String>>();
+      for (int i = 0; i < 10; i++) {
+         manyEntries.addAll(entries);
+         expected.addAll(decrypted);
+      }
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+         assertEquals(expected, batch.decryptPrivateKeys(manyEntries, NetworkParameters.productionNetwork, executor));
+      } finally {
+         executor.shutdown();
+      }
+   }
+
+   @Test
+   public void decryptManyBackups() {
+      List<String> passwords = Arrays.asList(TEST_PASSWORD_1, TEST_PASSWORD_1, TEST_PASSWORD_1, TEST_PASSWORD_2,
+            TEST_PASSWORD_1);
+      List<String> entries = Arrays.asList(TEST_KEY_UNCOMPRESSED_ENCRYPTED, TEST_KEY_COMPRESSED_ENCRYPTED,
+            TEST_KEY_COMPRESSED_ENCRYPTED_LOW_MEM, TEST_KEY_COMPRESSED_ENCRYPTED, "garbage");
+      List<Optional<String>> expected = Arrays.asList(Optional.of(TEST_KEY_BASE58_UNCOMPRESSED),
+            Optional.of(TEST_KEY_BASE58_COMPRESSED), Optional.of(TEST_KEY_BASE58_COMPRESSED),
+            Optional.<String>absent(), Optional.<String>absent());
+      ExecutorService executor = Executors.newFixedThreadPool(2);
+      try {
+         assertEquals(expected, MrdExport.V1.decryptPrivateKeys(passwords, entries,
+               NetworkParameters.productionNetwork, executor));
+      } finally {
+         executor.shutdown();
+      }
+      assertEquals(expected, MrdExport.V1.decryptPrivateKeys(passwords, entries,
+            NetworkParameters.productionNetwork));
+
+      // Wrong network
+      List<Optional<String>> decrypted = MrdExport.V1.decryptPrivateKeys(TEST_PASSWORD_1, entries.subList(0, 1),
+            NetworkParameters.testNetwork);
+      assertEquals(Arrays.asList(Optional.<String>absent()), decrypted);
+   }
+
    @Test
    public void wrongAesKeyInParameters() throws DecodingException, InterruptedException {
       KdfParameters kdfParameters = new KdfParameters(TEST_PASSWORD_1, TEST_SALT_1, MrdExport.V1.ScryptParameters.DEFAULT_PARAMS);
@@ -0,0 +1,71 @@
+package com.mrd.bitlib.crypto;
+
+import com.mrd.bitlib.lambdaworks.crypto.PBKDF;
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Pbkdf2HmacSha512Test {
+
+   private static byte[] randomBytes(Random random, int length) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      return bytes;
+   }
+
+   @Test
+   public void testVector() {
+      // PBKDF2-HMAC-SHA512 test vector with "password" and "salt"
+      assertArrayEquals(HexUtils.toBytes("d197b1b33db0143e018b12f3d1d1479e6cdebdcc97c5c0f87f6902e072f457b5"
+                  + "143f30602641b3d55cd335988cb36b84376060ecd532e039b742a239434af2d5"),
+            Pbkdf2HmacSha512.derive("password".getBytes(), "salt".getBytes(), 4096, 64));
+   }
+
+   @Test
+   public void testMatchesJce() throws GeneralSecurityException {
+      Random random = new Random(1);
+      // Passwords shorter and longer than the block size, and keys that are not a multiple of the hash length
+      int[][] parameters = { { 1, 0, 1, 64 }, { 20, 8, 2, 64 }, { 127, 30, 3, 100 }, { 128, 130, 5, 17 },
+            { 129, 12, 10, 128 }, { 300, 64, 2048, 64 } };
+      for (int[] p : parameters) {
+         byte[] password = randomBytes(random, p[0]);
+         byte[] salt = randomBytes(random, p[1]);
+         assertArrayEquals(PBKDF.pbkdf2("HmacSHA512", password, salt, p[2], p[3]),
+               Pbkdf2HmacSha512.derive(password, salt, p[2], p[3]));
+      }
+   }
+
+   @Test
+   public void testDeriveAll() {
+      Random random = new Random(2);
+      List<byte[]> passwords = new ArrayList<byte[]>();
+      List<byte[]> salts = new ArrayList<byte[]>();
+      for (int i = 0; i < 7; i++) {
+         passwords.add(randomBytes(random, 10 + i));
+         salts.add(randomBytes(random, 20 + i));
+      }
+      List<byte[]> sequential = Pbkdf2HmacSha512.deriveAll(passwords, salts, 100, 64);
+      List<byte[]> parallel;
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try {
+         parallel = Pbkdf2HmacSha512.deriveAll(passwords, salts, 100, 64, executor);
+      } finally {
+         executor.shutdown();
+      }
+      assertEquals(passwords.size(), parallel.size());
+      for (int i = 0; i < passwords.size(); i++) {
+         byte[] expected = Pbkdf2HmacSha512.derive(passwords.get(i), salts.get(i), 100, 64);
+         assertArrayEquals(expected, sequential.get(i));
+         assertArrayEquals(expected, parallel.get(i));
+      }
+   }
+}
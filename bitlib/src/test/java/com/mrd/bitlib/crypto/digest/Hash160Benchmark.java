@@ -0,0 +1,84 @@
+package com.mrd.bitlib.crypto.digest;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.util.HashUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * HASH160 throughput for compressed public keys: the previous path through a
+ * new MessageDigest and RIPEMD160Digest per key, against the reused engine.
+ * The scores are public keys per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Hash160Benchmark {
+   private static final int KEY_COUNT = 100;
+
+   private byte[][] publicKeys = new byte[KEY_COUNT][];
+   private byte[] out = new byte[KEY_COUNT * Hash160.HASH_LENGTH];
+   private Hash160 hash160 = new Hash160();
+
+   @Setup
+   public void setup() {
+      for (int i = 0; i < KEY_COUNT; i++) {
+         InMemoryPrivateKey key = new InMemoryPrivateKey(HashUtils.sha256(("key" + i).getBytes()), true);
+         publicKeys[i] = key.getPublicKey().getPublicKeyBytes();
+      }
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(KEY_COUNT)
+   public byte[] legacy() throws NoSuchAlgorithmException {
+      byte[] last = null;
+      for (byte[] publicKey : publicKeys) {
+         byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(publicKey);
+         last = new byte[20];
+         RIPEMD160Digest ripeMD160 = new RIPEMD160Digest();
+         ripeMD160.update(sha256, 0, sha256.length);
+         ripeMD160.doFinal(last, 0);
+      }
+      return last;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(KEY_COUNT)
+   public byte[] addressHash() {
+      byte[] last = null;
+      for (byte[] publicKey : publicKeys) {
+         last = HashUtils.addressHash(publicKey);
+      }
+      return last;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(KEY_COUNT)
+   public byte[] hashAll() {
+      hash160.hashAll(publicKeys, out, 0);
+      return out;
+   }
+
+   public static void main(String[] args) throws RunnerException {
+      new Runner(new OptionsBuilder().include(Hash160Benchmark.class.getSimpleName()).build()).run();
+   }
+}
@@ -0,0 +1,68 @@
+package com.mrd.bitlib.crypto.digest;
+
+import com.mrd.bitlib.crypto.InMemoryPrivateKey;
+import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.NetworkParameters;
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class Hash160Test {
+
+   private static byte[] legacyHash160(byte[] data) throws NoSuchAlgorithmException {
+      byte[] sha256 = MessageDigest.getInstance("SHA-256").digest(data);
+      RIPEMD160Digest ripemd160 = new RIPEMD160Digest();
+      ripemd160.update(sha256, 0, sha256.length);
+      byte[] out = new byte[20];
+      ripemd160.doFinal(out, 0);
+      return out;
+   }
+
+   @Test
+   public void testAddress() {
+      // Public key of private key 1
+      byte[] publicKey = HexUtils.toBytes("0279be667ef9dcbbac55a06295ce870b07029bfcdb2dce28d959f2815b16f81798");
+      assertEquals("751e76e8199196d454941c45d1b3a323f1433bd6", HexUtils.toHex(new Hash160().hash(publicKey)));
+   }
+
+   @Test
+   public void testMatchesLegacy() throws NoSuchAlgorithmException {
+      Random random = new Random(1);
+      Hash160 hash160 = new Hash160();
+      for (int length = 0; length < 200; length++) {
+         byte[] data = new byte[length];
+         random.nextBytes(data);
+         assertArrayEquals(legacyHash160(data), hash160.hash(data));
+         assertArrayEquals(legacyHash160(data), HashUtils.addressHash(data));
+      }
+   }
+
+   @Test
+   public void testHashAll() throws NoSuchAlgorithmException {
+      byte[][] publicKeys = new byte[10][];
+      for (int i = 0; i < publicKeys.length; i++) {
+         InMemoryPrivateKey key = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{(byte) i}), i % 2 == 0);
+         publicKeys[i] = key.getPublicKey().getPublicKeyBytes();
+      }
+      byte[] flat = new byte[3 + publicKeys.length * Hash160.HASH_LENGTH];
+      new Hash160().hashAll(publicKeys, flat, 3);
+      byte[][] hashes = HashUtils.addressHashes(publicKeys);
+      for (int i = 0; i < publicKeys.length; i++) {
+         byte[] expected = legacyHash160(publicKeys[i]);
+         assertArrayEquals(expected, hashes[i]);
+         int from = 3 + i * Hash160.HASH_LENGTH;
+         assertArrayEquals(expected, Arrays.copyOfRange(flat, from, from + Hash160.HASH_LENGTH));
+         InMemoryPrivateKey key = new InMemoryPrivateKey(HashUtils.sha256(new byte[]{(byte) i}), i % 2 == 0);
+         assertEquals(key.getPublicKey().toAddress(NetworkParameters.productionNetwork),
+               Address.fromStandardBytes(hashes[i], NetworkParameters.productionNetwork));
+      }
+   }
+}
@@ -0,0 +1,100 @@
+package com.mrd.bitlib.crypto.digest;
+
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SHA256DigestTest {
+
+   private static byte[] hash(byte[] data) {
+      SHA256Digest digest = new SHA256Digest();
+      digest.update(data, 0, data.length);
+      byte[] out = new byte[SHA256Digest.DIGEST_LENGTH];
+      digest.doFinal(out, 0);
+      return out;
+   }
+
+   @Test
+   public void testVectors() {
+      assertEquals("e3b0c44298fc1c149afbf4c8996fb92427ae41e4649b934ca495991b7852b855",
+            HexUtils.toHex(hash(new byte[0])));
+      assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+            HexUtils.toHex(hash("abc".getBytes())));
+      assertEquals("248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1",
+            HexUtils.toHex(hash("abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq".getBytes())));
+      byte[] million = new byte[1000000];
+      Arrays.fill(million, (byte) 'a');
+      assertEquals("cdc76e5c9914fb9281a1c7e284d73e67f1809a48a497200e046d39ccc7112cd0",
+            HexUtils.toHex(hash(million)));
+   }
+
+   @Test
+   public void testMatchesPlatform() throws NoSuchAlgorithmException {
+      Random random = new Random(1);
+      MessageDigest platform = MessageDigest.getInstance("SHA-256");
+      SHA256Digest digest = new SHA256Digest();
+      for (int length = 0; length < 300; length++) {
+         byte[] data = new byte[length];
+         random.nextBytes(data);
+         // feed the data in uneven pieces
+         int split = length == 0 ? 0 : random.nextInt(length);
+         digest.update(data, 0, split);
+         if (split < length) {
+            digest.update(data[split]);
+            digest.update(data, split + 1, length - split - 1);
+         }
+         byte[] out = new byte[SHA256Digest.DIGEST_LENGTH];
+         digest.doFinal(out, 0);
+         assertArrayEquals(platform.digest(data), out);
+      }
+   }
+
+   @Test
+   public void testDoubleDigest() throws NoSuchAlgorithmException {
+      Random random = new Random(2);
+      MessageDigest platform = MessageDigest.getInstance("SHA-256");
+      for (int length : new int[]{0, 1, 55, 56, 64, 100, 1000}) {
+         byte[] data = new byte[length];
+         random.nextBytes(data);
+         byte[] expected = platform.digest(platform.digest(data));
+         SHA256Digest digest = new SHA256Digest();
+         digest.update(data);
+         byte[] out = new byte[40];
+         digest.doubleDigest(out, 8);
+         assertArrayEquals(expected, Arrays.copyOfRange(out, 8, 40));
+         assertArrayEquals(expected, HashUtils.doubleSha256(data).getBytes());
+      }
+   }
+
+   @Test
+   public void testMidstate() throws NoSuchAlgorithmException {
+      Random random = new Random(3);
+      MessageDigest platform = MessageDigest.getInstance("SHA-256");
+      byte[] prefix = new byte[150];
+      random.nextBytes(prefix);
+      SHA256Digest midstate = new SHA256Digest();
+      midstate.update(prefix);
+      for (int length = 0; length < 100; length += 7) {
+         byte[] message = new byte[length];
+         random.nextBytes(message);
+         platform.update(prefix);
+         platform.update(message);
+         byte[] expected = platform.digest(platform.digest());
+         assertArrayEquals(expected, HashUtils.doubleSha256(midstate, message, 0, length).getBytes());
+
+         SHA256Digest copy = new SHA256Digest(midstate);
+         copy.update(message);
+         byte[] out = new byte[SHA256Digest.DIGEST_LENGTH];
+         copy.doubleDigest(out, 0);
+         assertArrayEquals(expected, out);
+      }
+   }
+}
@@ -0,0 +1,66 @@
+package com.mrd.bitlib.crypto.digest;
+
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SHA512DigestTest {
+
+   private static byte[] hash(byte[] data) {
+      SHA512Digest digest = new SHA512Digest();
+      digest.update(data, 0, data.length);
+      byte[] out = new byte[SHA512Digest.DIGEST_LENGTH];
+      digest.doFinal(out, 0);
+      return out;
+   }
+
+   @Test
+   public void testVectors() {
+      assertEquals("ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a"
+            + "2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f", HexUtils.toHex(hash("abc".getBytes())));
+   }
+
+   @Test
+   public void testMatchesPlatform() throws NoSuchAlgorithmException {
+      Random random = new Random(1);
+      MessageDigest platform = MessageDigest.getInstance("SHA-512");
+      SHA512Digest digest = new SHA512Digest();
+      for (int length = 0; length < 400; length++) {
+         byte[] data = new byte[length];
+         random.nextBytes(data);
+         // feed the data in uneven pieces
+         int split = length == 0 ? 0 : random.nextInt(length);
+         digest.update(data, 0, split);
+         if (split < length) {
+            digest.update(data[split]);
+            digest.update(data, split + 1, length - split - 1);
+         }
+         byte[] out = new byte[SHA512Digest.DIGEST_LENGTH];
+         digest.doFinal(out, 0);
+         assertArrayEquals(platform.digest(data), out);
+      }
+   }
+
+   @Test
+   public void testMidstate() throws NoSuchAlgorithmException {
+      byte[] data = new byte[300];
+      new Random(2).nextBytes(data);
+      SHA512Digest digest = new SHA512Digest();
+      digest.update(data, 0, SHA512Digest.BLOCK_LENGTH);
+      long[] midstate = new long[8];
+      digest.getMidstate(midstate);
+      byte[] out = new byte[SHA512Digest.DIGEST_LENGTH];
+      for (int i = 0; i < 2; i++) {
+         digest.update(data, SHA512Digest.BLOCK_LENGTH, data.length - SHA512Digest.BLOCK_LENGTH);
+         digest.doFinal(out, 0);
+         assertArrayEquals(MessageDigest.getInstance("SHA-512").digest(data), out);
+         digest.setMidstate(midstate, SHA512Digest.BLOCK_LENGTH);
+      }
+   }
+}
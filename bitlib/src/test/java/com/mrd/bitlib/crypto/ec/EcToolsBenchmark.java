@@ -0,0 +1,83 @@
+package com.mrd.bitlib.crypto.ec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmarks for the point multiplications used when signing and
+ * verifying. Run with the main method from the test class path.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EcToolsBenchmark {
+   private BigInteger u1;
+   private BigInteger u2;
+   private Point Q;
+
+   @Setup
+   public void setup() {
+      Random random = new Random(42);
+      u1 = new BigInteger(256, random).mod(Parameters.n);
+      u2 = new BigInteger(256, random).mod(Parameters.n);
+      Q = EcTools.multiply(Parameters.G, new BigInteger(256, random).mod(Parameters.n)).normalize();
+   }
+
+   /**
+    * The plain binary method used by sumOfTwoMultiplies before wNAF, as a
+    * reference
+    */
+   @Benchmark
+   public Point sumOfTwoMultipliesBinary() {
+      int m = Math.max(u1.bitLength(), u2.bitLength());
+      Point P = Parameters.G;
+      Point Z = P.add(Q).normalize();
+      Point R = P.getCurve().getInfinity();
+      for (int i = m - 1; i >= 0; --i) {
+         R = R.twice();
+         if (u1.testBit(i)) {
+            R = R.add(u2.testBit(i) ? Z : P);
+         } else if (u2.testBit(i)) {
+            R = R.add(Q);
+         }
+      }
+      return R.normalize();
+   }
+
+   @Benchmark
+   public Point sumOfTwoMultiplies() {
+      return EcTools.sumOfTwoMultiplies(Parameters.G, u1, Q, u2).normalize();
+   }
+
+   @Benchmark
+   public Point multiplyGenerator() {
+      return EcTools.multiply(Parameters.G, u1).normalize();
+   }
+
+   @Benchmark
+   public Point multiply() {
+      return EcTools.multiply(Q, u1).normalize();
+   }
+
+   public static void main(String[] args) throws RunnerException {
+      new Runner(new OptionsBuilder().include(EcToolsBenchmark.class.getSimpleName()).build()).run();
+   }
+}
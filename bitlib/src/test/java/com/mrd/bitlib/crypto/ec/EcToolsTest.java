@@ -0,0 +1,212 @@
+package com.mrd.bitlib.crypto.ec;
+
+import com.mrd.bitlib.util.HexUtils;
+import org.bitcoinj.core.ECKey;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EcToolsTest {
+   private static final int ROUNDS = 50;
+
+   private static BigInteger randomScalar(Random random) {
+      BigInteger k;
+      do {
+         k = new BigInteger(256, random);
+      } while (k.signum() == 0 || k.compareTo(Parameters.n) >= 0);
+      return k;
+   }
+
+   @Test
+   public void testMultiplyMatchesBitcoinJ() {
+      Random random = new Random(1);
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger k = randomScalar(random);
+         byte[] expected = ECKey.publicPointFromPrivate(k).getEncoded(false);
+         assertArrayEquals(expected, EcTools.multiply(Parameters.G, k).getEncoded());
+      }
+   }
+
+   @Test
+   public void testSmallMultiples() {
+      Point sum = Parameters.curve.getInfinity();
+      for (int i = 1; i < 20; i++) {
+         sum = sum.add(Parameters.G);
+         assertEquals(EcTools.multiply(Parameters.G, BigInteger.valueOf(i)), sum);
+      }
+      assertEquals(Parameters.G.twice(), Parameters.G.add(Parameters.G));
+      assertTrue(Parameters.G.add(Parameters.G.negate()).isInfinity());
+      assertTrue(EcTools.multiply(Parameters.G, Parameters.n.subtract(BigInteger.ONE)).add(Parameters.G).isInfinity());
+   }
+
+   @Test
+   public void testJacobianPointsNormalizeOnDemand() {
+      Point p = Parameters.G.twice().add(Parameters.G);
+      assertFalse(p.isNormalized());
+      assertTrue(p.normalize().isNormalized());
+      assertEquals(p, p.normalize());
+      assertEquals(p.hashCode(), p.normalize().hashCode());
+      assertEquals(p, Parameters.curve.decodePoint(p.getEncoded()));
+   }
+
+   @Test
+   public void testSumOfTwoMultiplies() {
+      Random random = new Random(2);
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger k = randomScalar(random);
+         BigInteger l = randomScalar(random);
+         Point Q = EcTools.multiply(Parameters.G, randomScalar(random));
+         Point expected = EcTools.multiply(Parameters.G, k).add(EcTools.multiply(Q, l));
+         assertEquals(expected, EcTools.sumOfTwoMultiplies(Parameters.G, k, Q, l));
+      }
+   }
+
+   @Test
+   public void testGeneratorTableMatchesGenericMultiply() {
+      // A copy of G which is not the instance the table is used for
+      Point g = new Point(Parameters.curve, Parameters.G.getX(), Parameters.G.getY());
+      Random random = new Random(3);
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger k = randomScalar(random);
+         assertEquals(EcTools.multiply(g, k), EcTools.multiply(Parameters.G, k));
+      }
+      BigInteger max = BigInteger.ONE.shiftLeft(256).subtract(BigInteger.ONE);
+      assertEquals(EcTools.multiply(g, max), EcTools.multiply(Parameters.G, max));
+      assertTrue(EcTools.multiply(Parameters.G, Parameters.n).isInfinity());
+   }
+
+   @Test
+   public void testNormalizeAll() {
+      Point[] points = new Point[10];
+      Point p = Parameters.curve.getInfinity();
+      for (int i = 0; i < points.length; i++) {
+         points[i] = p;
+         p = p.twice().add(Parameters.G);
+      }
+      Point[] normalized = EcTools.normalizeAll(points);
+      for (int i = 0; i < points.length; i++) {
+         assertTrue(normalized[i].isNormalized());
+         assertEquals(points[i], normalized[i]);
+      }
+   }
+
+   @Test
+   public void testWNaf() {
+      Random random = new Random(4);
+      for (int width = 2; width <= 8; width++) {
+         for (int i = 0; i < ROUNDS; i++) {
+            BigInteger k = new BigInteger(256, random);
+            byte[] naf = WNaf.encode(k, width);
+            BigInteger sum = BigInteger.ZERO;
+            int lastNonZero = -width;
+            for (int j = 0; j < naf.length; j++) {
+               if (naf[j] == 0) {
+                  continue;
+               }
+               assertTrue(naf[j] % 2 != 0);
+               assertTrue(Math.abs(naf[j]) < 1 << (width - 1));
+               assertTrue(j - lastNonZero >= width);
+               lastNonZero = j;
+               sum = sum.add(BigInteger.valueOf(naf[j]).shiftLeft(j));
+            }
+            assertEquals(k, sum);
+         }
+      }
+      assertEquals(0, WNaf.encode(BigInteger.ZERO, 5).length);
+   }
+
+   @Test
+   public void testGlvDecomposition() {
+      Random random = new Random(5);
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger k = randomScalar(random);
+         BigInteger[] halves = GlvEndomorphism.decompose(k);
+         assertTrue(halves[0].abs().bitLength() <= 129);
+         assertTrue(halves[1].abs().bitLength() <= 129);
+         assertEquals(k, halves[0].add(halves[1].multiply(GlvEndomorphism.LAMBDA)).mod(Parameters.n));
+      }
+   }
+
+   @Test
+   public void testGlvEndomorphism() {
+      // phi(G) = lambda * G
+      Point g = Parameters.G;
+      Point phi = new Point(g.getCurve(), g.getX().multiply(g.getCurve().fromBigInteger(GlvEndomorphism.BETA)), g.getY());
+      assertEquals(phi, EcTools.multiply(Parameters.G, GlvEndomorphism.LAMBDA));
+   }
+
+   @Test
+   public void testVariableBaseMultiplyMatchesBitcoinJ() {
+      Random random = new Random(6);
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger a = randomScalar(random);
+         BigInteger b = randomScalar(random);
+         Point Q = EcTools.multiply(Parameters.G, a);
+         byte[] expected = ECKey.publicPointFromPrivate(a.multiply(b).mod(Parameters.n)).getEncoded(false);
+         assertArrayEquals(expected, EcTools.multiply(Q, b).getEncoded());
+      }
+   }
+
+   // A compressed point serialized before field elements were kept as limbs
+   // and points had a Z coordinate
+   private static final String SERIALIZED_POINT = "aced00057372001e636f6d2e6d72642e6269746c69622e63727970746f2e65632e506f696e7400000000000000010200045a"
+         + "000b5f636f6d707265737365644c00065f63757276657400204c636f6d2f6d72642f6269746c69622f63727970746f2f6563"
+         + "2f43757276653b4c00025f787400274c636f6d2f6d72642f6269746c69622f63727970746f2f65632f4669656c64456c656d"
+         + "656e743b4c00025f7971007e00027870017372001e636f6d2e6d72642e6269746c69622e63727970746f2e65632e43757276"
+         + "6500000000000000010200044c00025f6171007e00024c00025f6271007e00024c00095f696e66696e6974797400204c636f"
+         + "6d2f6d72642f6269746c69622f63727970746f2f65632f506f696e743b4c00025f717400164c6a6176612f6d6174682f4269"
+         + "67496e74656765723b787073720025636f6d2e6d72642e6269746c69622e63727970746f2e65632e4669656c64456c656d65"
+         + "6e7400000000000000010200024c00025f7171007e00064c00025f7871007e00067870737200146a6176612e6d6174682e42"
+         + "6967496e74656765728cfc9f1fa93bfb1d030006490008626974436f756e744900096269744c656e67746849001366697273"
+         + "744e6f6e7a65726f427974654e756d49000c6c6f776573745365744269744900067369676e756d5b00096d61676e69747564"
+         + "657400025b42787200106a6176612e6c616e672e4e756d62657286ac951d0b94e08b0200007870ffffffffffffffffffffff"
+         + "fefffffffe00000001757200025b42acf317f8060854e0020000787000000020ffffffffffffffffffffffffffffffffffff"
+         + "fffffffffffffffffffefffffc2f787371007e000afffffffffffffffffffffffefffffffe000000007571007e000e000000"
+         + "00787371007e000871007e000d7371007e000afffffffffffffffffffffffefffffffe000000017571007e000e0000000107"
+         + "787371007e00000071007e0007707071007e000d7371007e000871007e000d7371007e000afffffffffffffffffffffffeff"
+         + "fffffe000000017571007e000e0000002054df56fd5663610ce8370a8af0aa9e3e8bc1befd176554f35575769aec249d1678"
+         + "7371007e000871007e000d7371007e000afffffffffffffffffffffffefffffffe000000017571007e000e000000208fbe00"
+         + "a2e624f1ebfac26be46bce9bbfe643f87597ea81127584fe3df75e052478";
+
+   @Test
+   public void testSerialization() throws IOException, ClassNotFoundException {
+      Point decoded = Parameters.curve.decodePoint(HexUtils.toBytes("0254df56fd5663610ce8370a8af0aa9e3e8bc1befd176554f35575769aec249d16"));
+      Point old = deserialize(HexUtils.toBytes(SERIALIZED_POINT));
+      assertEquals(decoded, old);
+      assertTrue(old.isCompressed());
+      assertArrayEquals(decoded.getEncoded(), old.getEncoded());
+
+      Point jacobian = Parameters.G.twice().add(Parameters.G);
+      assertFalse(jacobian.isNormalized());
+      Point copy = deserialize(serialize(jacobian));
+      assertTrue(copy.isNormalized());
+      assertEquals(jacobian, copy);
+      assertEquals(jacobian.getX(), copy.getX());
+      // the curve and its point at infinity come along
+      assertTrue(copy.getCurve().getInfinity().isInfinity());
+      assertEquals(copy, deserialize(serialize(copy)));
+   }
+
+   private static byte[] serialize(Point point) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(point);
+      out.close();
+      return bytes.toByteArray();
+   }
+
+   private static Point deserialize(byte[] serialized) throws IOException, ClassNotFoundException {
+      return (Point) new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+   }
+}
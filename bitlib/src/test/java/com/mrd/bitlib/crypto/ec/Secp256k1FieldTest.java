@@ -0,0 +1,100 @@
+package com.mrd.bitlib.crypto.ec;
+
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class Secp256k1FieldTest {
+   private static final BigInteger P = Secp256k1Field.P;
+   private static final int ROUNDS = 1000;
+
+   private static BigInteger random(Random random) {
+      switch (random.nextInt(4)) {
+      case 0:
+         // Values close to p exercise the final reduction
+         return P.subtract(BigInteger.valueOf(random.nextInt(1000) + 1));
+      case 1:
+         return BigInteger.valueOf(random.nextInt(1000));
+      default:
+         return new BigInteger(256, random).mod(P);
+      }
+   }
+
+   private static int[] limbs(BigInteger x) {
+      int[] r = Secp256k1Field.create();
+      Secp256k1Field.fromBigInteger(r, x);
+      return r;
+   }
+
+   @Test
+   public void testArithmeticMatchesBigInteger() {
+      Random random = new Random(1);
+      int[] r = Secp256k1Field.create();
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger a = random(random);
+         BigInteger b = random(random);
+         assertEquals(a, Secp256k1Field.toBigInteger(limbs(a)));
+
+         Secp256k1Field.add(r, limbs(a), limbs(b));
+         assertEquals(a.add(b).mod(P), Secp256k1Field.toBigInteger(r));
+         Secp256k1Field.sub(r, limbs(a), limbs(b));
+         assertEquals(a.subtract(b).mod(P), Secp256k1Field.toBigInteger(r));
+         Secp256k1Field.negate(r, limbs(a));
+         assertEquals(a.negate().mod(P), Secp256k1Field.toBigInteger(r));
+         Secp256k1Field.mul(r, limbs(a), limbs(b));
+         assertEquals(a.multiply(b).mod(P), Secp256k1Field.toBigInteger(r));
+         Secp256k1Field.sqr(r, limbs(a));
+         assertEquals(a.multiply(a).mod(P), Secp256k1Field.toBigInteger(r));
+         Secp256k1Field.mulInt(r, limbs(a), 8);
+         assertEquals(a.shiftLeft(3).mod(P), Secp256k1Field.toBigInteger(r));
+         if (a.signum() != 0) {
+            Secp256k1Field.inv(r, limbs(a));
+            assertEquals(a.modInverse(P), Secp256k1Field.toBigInteger(r));
+         }
+      }
+   }
+
+   @Test
+   public void testInPlace() {
+      Random random = new Random(2);
+      for (int i = 0; i < ROUNDS; i++) {
+         BigInteger a = random(random);
+         int[] r = limbs(a);
+         Secp256k1Field.mul(r, r, r);
+         Secp256k1Field.add(r, r, r);
+         assertEquals(a.multiply(a).shiftLeft(1).mod(P), Secp256k1Field.toBigInteger(r));
+      }
+   }
+
+   @Test
+   public void testSqrt() {
+      Random random = new Random(3);
+      int[] r = Secp256k1Field.create();
+      for (int i = 0; i < ROUNDS / 10; i++) {
+         BigInteger a = random(random);
+         BigInteger square = a.multiply(a).mod(P);
+         assertTrue(Secp256k1Field.sqrt(r, limbs(square)));
+         BigInteger root = Secp256k1Field.toBigInteger(r);
+         assertTrue(root.equals(a) || root.equals(P.subtract(a).mod(P)));
+      }
+      // -1 is not a square as p = 3 mod 4
+      assertFalse(Secp256k1Field.sqrt(r, limbs(P.subtract(BigInteger.ONE))));
+   }
+
+   @Test
+   public void testFieldElement() {
+      FieldElement a = new FieldElement(P, BigInteger.valueOf(7));
+      FieldElement b = new FieldElement(P, P.subtract(BigInteger.ONE));
+      assertEquals(BigInteger.valueOf(6), a.add(b).toBigInteger());
+      assertEquals(a, a.multiply(b).divide(b));
+      assertEquals(a, new FieldElement(P, BigInteger.valueOf(7)));
+      assertEquals(a.hashCode(), new FieldElement(P, BigInteger.valueOf(7)).hashCode());
+      assertTrue(a.isOdd());
+      assertTrue(a.subtract(a).isZero());
+   }
+}
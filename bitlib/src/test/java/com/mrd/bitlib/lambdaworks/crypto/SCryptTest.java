@@ -0,0 +1,56 @@
+package com.mrd.bitlib.lambdaworks.crypto;
+
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class SCryptTest {
+
+   @Test
+   public void testVectors() throws Exception {
+      // Test vectors from RFC 7914
+      assertArrayEquals(HexUtils.toBytes("fdbabe1c9d3472007856e7190d01e9fe7c6ad7cbc8237830e77376634b373162"
+                  + "2eaf30d92e22a3886ff109279d9830dac727afb94a83ee6d8360cbdfa2cc0640"),
+            SCrypt.scrypt("password".getBytes(), "NaCl".getBytes(), 1024, 8, 16, 64, null));
+      assertArrayEquals(HexUtils.toBytes("7023bdcb3afd7348461c06cd81fd38ebfda8fbba904f8e3ea9b543f6545da1f2"
+                  + "d5432955613f0fcf62d49705242a9af9e61e85dc0d651e40dfcf017b45575887"),
+            SCrypt.scrypt("pleaseletmein".getBytes(), "SodiumChloride".getBytes(), 16384, 8, 1, 64, null));
+   }
+
+   @Test
+   public void testThreadsGiveSameResult() throws Exception {
+      Random random = new Random(1);
+      byte[] password = new byte[20];
+      byte[] salt = new byte[8];
+      random.nextBytes(password);
+      random.nextBytes(salt);
+      SCryptProgress progress = new SCryptProgress(512, 2, 5);
+      byte[] expected = SCrypt.scrypt(password, salt, 512, 2, 5, 48, progress, 1);
+      assertEquals(1.0, progress.getProgress(), 0.0);
+      for (int threads = 2; threads <= 6; threads++) {
+         progress = new SCryptProgress(512, 2, 5);
+         assertArrayEquals(expected, SCrypt.scrypt(password, salt, 512, 2, 5, 48, progress, threads));
+         assertEquals(1.0, progress.getProgress(), 0.0);
+      }
+      // Small N, less than one progress interval
+      assertArrayEquals(SCrypt.scrypt(password, salt, 2, 1, 3, 32, null, 1),
+            SCrypt.scrypt(password, salt, 2, 1, 3, 32, null, 3));
+   }
+
+   @Test
+   public void testTerminate() throws Exception {
+      SCryptProgress progress = new SCryptProgress(1024, 1, 4);
+      progress.terminate();
+      try {
+         SCrypt.scrypt("password".getBytes(), "salt".getBytes(), 1024, 1, 4, 32, progress, 2);
+         fail("terminated calculation should be interrupted");
+      } catch (InterruptedException e) {
+         // Expected
+      }
+   }
+}
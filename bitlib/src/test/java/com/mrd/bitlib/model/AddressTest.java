@@ -34,7 +34,13 @@
 
 package com.mrd.bitlib.model;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.security.SecureRandom;
+import java.util.Random;
 
 import com.mrd.bitlib.util.HexUtils;
 import org.junit.Assert;
@@ -43,6 +49,7 @@ import org.junit.Test;
 import com.mrd.bitlib.crypto.InMemoryPrivateKey;
 import com.mrd.bitlib.crypto.PublicKey;
 import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.model.hdpath.HdKeyPath;
 
 public class AddressTest {
    private static final RandomSource RANDOM_SOURCE = new RandomSource() {
@@ -93,4 +100,98 @@ public class AddressTest {
       Assert.assertTrue(pAddr.getNetwork().isProdnet());
    }
 
+   @Test
+   public void bytesRoundTrip() {
+      byte[] bytes = HexUtils.toBytes("00B169F2B0B866DB05900B93A5D76345F18D3AFB24");
+      Address address = new Address(bytes);
+      Assert.assertArrayEquals(bytes, address.getAllAddressBytes());
+      Assert.assertArrayEquals(HexUtils.toBytes("B169F2B0B866DB05900B93A5D76345F18D3AFB24"),
+            address.getTypeSpecificBytes());
+      Assert.assertEquals(0, address.getVersion());
+      // Returned arrays are copies
+      address.getAllAddressBytes()[1] = 0;
+      Assert.assertArrayEquals(bytes, address.getAllAddressBytes());
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void wrongLength() {
+      new Address(new byte[20]);
+   }
+
+   @Test
+   public void equalsAndCompareToMatchBytes() {
+      Random random = new Random(1);
+      for (int i = 0; i < 2000; i++) {
+         byte[] a = new byte[Address.NUM_ADDRESS_BYTES];
+         random.nextBytes(a);
+         byte[] b = a.clone();
+         // Differ in a single byte, or not at all
+         int position = random.nextInt(Address.NUM_ADDRESS_BYTES + 1);
+         if (position < Address.NUM_ADDRESS_BYTES) {
+            b[position] = (byte) random.nextInt(256);
+         }
+         Address addressA = new Address(a);
+         Address addressB = new Address(b);
+         int expected = compareSignedBytes(a, b);
+         Assert.assertEquals(expected, Integer.signum(addressA.compareTo(addressB)));
+         Assert.assertEquals(-expected, Integer.signum(addressB.compareTo(addressA)));
+         Assert.assertEquals(expected == 0, addressA.equals(addressB));
+         if (expected == 0) {
+            Assert.assertEquals(addressA.hashCode(), addressB.hashCode());
+         }
+      }
+   }
+
+   private static int compareSignedBytes(byte[] a, byte[] b) {
+      for (int i = 0; i < a.length; i++) {
+         if (a[i] != b[i]) {
+            return a[i] < b[i] ? -1 : 1;
+         }
+      }
+      return 0;
+   }
+
+   @Test
+   public void intern() {
+      Address a = Address.fromString("1HB5XMLmzFVj8ALj6mfBsbifRoD4miY36v");
+      Address b = Address.fromString("1HB5XMLmzFVj8ALj6mfBsbifRoD4miY36v");
+      Assert.assertNotSame(a, b);
+      Assert.assertSame(a.intern(), b.intern());
+      Assert.assertSame(a.intern(), a.intern().intern());
+
+      // Subclasses are pooled as plain addresses
+      HdDerivedAddress derived = new HdDerivedAddress(Address.fromString("1NiKrdcsiat3NVRu5XCmGkzZhZDTGXabU5"),
+            HdKeyPath.valueOf("m/44'/0'/0'/0/0"));
+      Address interned = derived.intern();
+      Assert.assertEquals(Address.class, interned.getClass());
+      Assert.assertEquals(derived, interned);
+      Assert.assertSame(interned, Address.fromString("1NiKrdcsiat3NVRu5XCmGkzZhZDTGXabU5").intern());
+   }
+
+   // An address serialized when it still kept its bytes in an array
+   private static final String SERIALIZED_ADDRESS = "aced00057372001c636f6d2e6d72642e6269746c69622e6d6f64656c2e4164647265737300000000000000010200024c0008"
+         + "5f616464726573737400124c6a6176612f6c616e672f537472696e673b5b00065f62797465737400025b4278707400223331"
+         + "716833476b4d33524c50664d793836586a6973533762566b7a37507a38776565757200025b42acf317f8060854e002000078"
+         + "70000000150501a3fae78070525fd64ea3b8ab6bf5b70f1da297";
+
+   @Test
+   public void serialization() throws IOException, ClassNotFoundException {
+      Address address = Address.fromString("31qh3GkM3RLPfMy86XjisS7bVkz7Pz8wee");
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(address);
+      out.close();
+      assertDeserializesTo(address, bytes.toByteArray());
+      assertDeserializesTo(address, HexUtils.toBytes(SERIALIZED_ADDRESS));
+   }
+
+   private static void assertDeserializesTo(Address expected, byte[] serialized) throws IOException,
+         ClassNotFoundException {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+      Address copy = (Address) in.readObject();
+      Assert.assertEquals(expected, copy);
+      Assert.assertEquals(expected.hashCode(), copy.hashCode());
+      Assert.assertEquals(expected.toString(), copy.toString());
+   }
+
 }
@@ -0,0 +1,134 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.util.HexUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Classifying output scripts the way a wallet sees them: mostly P2PKH and
+ * P2SH, some P2PK, OP_RETURN and bare multisig, and the scripts of its own
+ * outputs over and over. Every script is a separate array, as scripts come
+ * from parsed transactions. The scores are scripts per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptOutputBenchmark {
+   private static final int SCRIPT_COUNT = 10000;
+   // The outputs of a wallet with a few hundred addresses
+   private static final int DISTINCT_SCRIPT_COUNT = 500;
+
+   private byte[][] scripts;
+
+   @Setup
+   public void setup() {
+      Random random = new Random(1);
+      byte[][] distinct = new byte[DISTINCT_SCRIPT_COUNT][];
+      for (int i = 0; i < DISTINCT_SCRIPT_COUNT; i++) {
+         distinct[i] = randomScript(random);
+      }
+      scripts = new byte[SCRIPT_COUNT][];
+      for (int i = 0; i < SCRIPT_COUNT; i++) {
+         scripts[i] = distinct[random.nextInt(DISTINCT_SCRIPT_COUNT)].clone();
+      }
+   }
+
+   private static byte[] randomScript(Random random) {
+      int kind = random.nextInt(100);
+      if (kind < 70) {
+         return new ScriptOutputStandard(randomBytes(random, 20)).getScriptBytes();
+      } else if (kind < 90) {
+         return new ScriptOutputP2SH(randomBytes(random, 20)).getScriptBytes();
+      } else if (kind < 95) {
+         return HexUtils.toBytes("21" + HexUtils.toHex(randomBytes(random, 33)) + "ac");
+      } else if (kind < 98) {
+         return HexUtils.toBytes("6a28" + HexUtils.toHex(randomBytes(random, 40)));
+      } else {
+         return HexUtils.toBytes("5121" + HexUtils.toHex(randomBytes(random, 33)) + "21"
+               + HexUtils.toHex(randomBytes(random, 33)) + "52ae");
+      }
+   }
+
+   private static byte[] randomBytes(Random random, int length) {
+      byte[] bytes = new byte[length];
+      random.nextBytes(bytes);
+      return bytes;
+   }
+
+   /**
+    * Splitting the script into chunks and trying each template on them, which
+    * is how scripts used to be classified
+    */
+   @Benchmark
+   @OperationsPerInvocation(SCRIPT_COUNT)
+   public int chunks() throws Script.ScriptParsingException {
+      int matched = 0;
+      for (byte[] script : scripts) {
+         byte[][] chunks = Script.chunksFromScriptBytes(script);
+         ScriptOutput output;
+         if (ScriptOutputStandard.isScriptOutputStandard(chunks)) {
+            output = new ScriptOutputStandard(script, chunks[2]);
+         } else if (ScriptOutputPubkey.isScriptOutputPubkey(chunks)) {
+            output = new ScriptOutputPubkey(script, chunks[0]);
+         } else if (ScriptOutputP2SH.isScriptOutputP2SH(chunks)) {
+            output = new ScriptOutputP2SH(script, chunks[1]);
+         } else if (ScriptOutputMsg.isScriptOutputMsg(chunks)) {
+            output = new ScriptOutputMsg(script, chunks[0], chunks[2]);
+         } else if (ScriptOutputOpReturn.isScriptOutputOpReturn(chunks)) {
+            output = new ScriptOutputOpReturn(script, chunks[1]);
+         } else {
+            output = new ScriptOutputStrange(script);
+         }
+         if (!(output instanceof ScriptOutputStrange)) {
+            matched++;
+         }
+      }
+      return matched;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(SCRIPT_COUNT)
+   public int classify() {
+      int matched = 0;
+      for (byte[] script : scripts) {
+         if (!(ScriptOutput.classify(script) instanceof ScriptOutputStrange)) {
+            matched++;
+         }
+      }
+      return matched;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(SCRIPT_COUNT)
+   public int cached() {
+      int matched = 0;
+      for (byte[] script : scripts) {
+         if (!(ScriptOutput.fromScriptBytes(script) instanceof ScriptOutputStrange)) {
+            matched++;
+         }
+      }
+      return matched;
+   }
+
+   public static void main(String[] args) throws RunnerException {
+      new Runner(new OptionsBuilder().include(ScriptOutputBenchmark.class.getSimpleName()).build()).run();
+   }
+}
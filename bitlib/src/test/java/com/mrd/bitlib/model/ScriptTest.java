@@ -35,10 +35,13 @@
 package com.mrd.bitlib.model;
 
 import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.ByteWriter;
 import com.mrd.bitlib.util.HexUtils;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Random;
+
 public class ScriptTest {
    private final String TEST_SCRIPT="5321033e20dea007b39688c6e97427a65aeedd0b47fde14e96631bb0330a403663150c2103b5058635d91ae26306140b90673b89616062c59a80301622f4ed6f8050c65a7f2103c04f34973eee8485e21a014268908d36510ed6f149c0ec3331aa521c6cc3929c2103d87a6d71ab19fda40947450ed2f2240dedc728f9bd373a28a43a93db1677159f54ae";
 
@@ -57,4 +60,98 @@ public class ScriptTest {
       Assert.assertEquals(transaction.outputs[0].script.getAddress(NetworkParameters.productionNetwork).toString(), OUTPUT_ADDRESS);
       Transaction.fromByteReader(new ByteReader(HexUtils.toBytes(FUNDING)));
    }
+
+   @Test
+   public void classifyTemplates() {
+      assertClassified(ScriptOutputStandard.class, "76a914f679b8239ffdf39987d7c5ca8e5fd44475a795e188ac");
+      assertClassified(ScriptOutputStandard.class, "76a914f679b8239ffdf39987d7c5ca8e5fd44475a795e188ac61");
+      assertClassified(ScriptOutputP2SH.class, "a9147e76c2468a8d453bfbc130e0ca86b6821b24c7b387");
+      assertClassified(ScriptOutputPubkey.class, "210254df56fd5663610ce8370a8af0aa9e3e8bc1befd176554f35575769aec249d16ac");
+      assertClassified(ScriptOutputOpReturn.class, "6a0548656c6c6f");
+      assertClassified(ScriptOutputMsg.class, "0548656c6c6f75210254df56fd5663610ce8370a8af0aa9e3e8bc1befd176554f35575769aec249d16ac");
+      // bare multisig has no type of its own
+      assertClassified(ScriptOutputStrange.class, TEST_SCRIPT);
+      assertClassified(ScriptOutputStrange.class, "");
+      assertClassified(ScriptOutputStrange.class, "6a4c00");
+      assertClassified(ScriptOutputError.class, "76a914f679b8239ffdf39987d7c5ca8e5fd44475a7");
+      assertClassified(ScriptOutputError.class, "4effffffff00");
+   }
+
+   @Test
+   public void classifyLikeChunks() {
+      // Scripts made of pieces of the templates, which often almost match one
+      byte[][] pieces = {{(byte) Script.OP_DUP}, {(byte) Script.OP_HASH160}, {(byte) Script.OP_EQUALVERIFY},
+            {(byte) Script.OP_CHECKSIG}, {(byte) Script.OP_EQUAL}, {(byte) Script.OP_NOP}, {(byte) Script.OP_DROP},
+            {(byte) Script.OP_RETURN}, {(byte) Script.OP_CHECKMULTISIG}, {0}, {1, (byte) Script.OP_CHECKSIG},
+            {20}, {33}, {Script.OP_PUSHDATA1, 20}, {Script.OP_PUSHDATA1, 0}, {Script.OP_PUSHDATA2, 1, 0},
+            {Script.OP_PUSHDATA4, 2, 0, 0, 0}, {Script.OP_PUSHDATA4, 0, 0, 0, (byte) 0x80}, {(byte) 0xf0}};
+      Random random = new Random(1);
+      for (int i = 0; i < 20000; i++) {
+         ByteWriter writer = new ByteWriter(64);
+         int count = random.nextInt(8);
+         for (int j = 0; j < count; j++) {
+            writer.putBytes(pieces[random.nextInt(pieces.length)]);
+            // data for the pushes, which may run out
+            byte[] data = new byte[random.nextInt(3) == 0 ? random.nextInt(40) : 0];
+            random.nextBytes(data);
+            writer.putBytes(data);
+         }
+         byte[] script = writer.toBytes();
+         assertSameAsChunks(script, ScriptOutput.classify(script));
+      }
+   }
+
+   @Test
+   public void cached() {
+      byte[] script = HexUtils.toBytes("76a914f679b8239ffdf39987d7c5ca8e5fd44475a795e188ac");
+      ScriptOutput output = ScriptOutput.fromScriptBytes(script);
+      Assert.assertSame(output, ScriptOutput.fromScriptBytes(script.clone()));
+      Assert.assertNotSame(output, ScriptOutput.classify(script));
+   }
+
+   @Test
+   public void cachedOwnsScript() {
+      String hex = "a914e9c3dd0c07aac76179ebc76a6c78d4d67c6c160a87";
+      byte[] script = HexUtils.toBytes(hex);
+      ScriptOutput output = ScriptOutput.fromScriptBytes(script);
+      // The caller reuses its array for another script
+      script[2] ^= 1;
+      Assert.assertEquals(hex, HexUtils.toHex(output.getScriptBytes()));
+      Assert.assertSame(output, ScriptOutput.fromScriptBytes(HexUtils.toBytes(hex)));
+      Assert.assertNotSame(output, ScriptOutput.fromScriptBytes(script));
+   }
+
+   private static void assertClassified(Class<? extends ScriptOutput> expected, String hex) {
+      byte[] script = HexUtils.toBytes(hex);
+      ScriptOutput output = ScriptOutput.fromScriptBytes(script);
+      Assert.assertEquals(hex, expected, output.getClass());
+      Assert.assertArrayEquals(script, output.getScriptBytes());
+      assertSameAsChunks(script, output);
+   }
+
+   // How scripts were classified by splitting them into chunks first
+   private static void assertSameAsChunks(byte[] script, ScriptOutput output) {
+      String hex = HexUtils.toHex(script);
+      byte[][] chunks;
+      try {
+         chunks = Script.chunksFromScriptBytes(script);
+      } catch (Script.ScriptParsingException e) {
+         Assert.assertEquals(hex, ScriptOutputError.class, output.getClass());
+         return;
+      }
+      if (ScriptOutputStandard.isScriptOutputStandard(chunks)) {
+         Assert.assertArrayEquals(hex, chunks[2], ((ScriptOutputStandard) output).getAddressBytes());
+      } else if (ScriptOutputPubkey.isScriptOutputPubkey(chunks)) {
+         Assert.assertArrayEquals(hex, chunks[0], ((ScriptOutputPubkey) output).getPublicKeyBytes());
+      } else if (ScriptOutputP2SH.isScriptOutputP2SH(chunks)) {
+         Assert.assertArrayEquals(hex, chunks[1], ((ScriptOutputP2SH) output).getP2SHAddressBytes());
+      } else if (ScriptOutputMsg.isScriptOutputMsg(chunks)) {
+         Assert.assertArrayEquals(hex, chunks[0], ((ScriptOutputMsg) output).getMessageBytes());
+         Assert.assertArrayEquals(hex, chunks[2], ((ScriptOutputMsg) output).getPublicKeyBytes());
+      } else if (ScriptOutputOpReturn.isScriptOutputOpReturn(chunks)) {
+         Assert.assertArrayEquals(hex, chunks[1], ((ScriptOutputOpReturn) output).getDataBytes());
+      } else {
+         Assert.assertEquals(hex, ScriptOutputStrange.class, output.getClass());
+      }
+   }
 }
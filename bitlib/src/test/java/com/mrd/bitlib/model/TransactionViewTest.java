@@ -0,0 +1,97 @@
+package com.mrd.bitlib.model;
+
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.util.BitUtils;
+import com.mrd.bitlib.util.HexUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TransactionViewTest {
+   private static final String STANDARD = "010000000190F55E38240AB795F7E11DF5E272D699B525C0E50AF69733FDA1B583C4273C23000000008A47304402206A945B"
+         + "64AE1478F1ED1374D3F1BD0B9DB66B424804EFB3CE59B38293A25F5CAF022037695FE1B04A07569E0F6C019AA40649229415"
+         + "1F3A0E88CAE2C53ED713D5C6D50141048FD4539156A8AD9EF7E885CEAD013BF5377DE67E05AA34B662C6431F684C1D61D83B"
+         + "690FB8FEEEB69C305B4043F8D3DBB4F2847FEAF767E8EAC1E51E9C4425B2FFFFFFFF025E31920B000000001976A914152E9F"
+         + "6874A0768ADA32F1C8C5FC80337FD7EE5988AC00E1F505000000001976A914D3F9702528B302DBADCBBE26E91001C2E45381"
+         + "4088ACB4270600";
+   private static final String MULTISIG_OP_RETURN = "0100000002f8c106b44b3cf45946848a8d4b62f87813202ff9d4a320a00d24803edbebd8b700000000fdfd00004730440220"
+         + "11805e1400dbea6039c340eb4e19488432e7852c859ccb7be40e4f86e5671d0302205c561335fee1f336d975e87519b9dd55"
+         + "08035df7c63d6ce42d420d76b29f7c9d01483045022100f4eb9014aee7bcfb8fd9fb84ca61692a86a1a32bf80c91da8dde32"
+         + "d06aef131a022029f58d1831d03ceeda3918ad1be1fb531eff2082fd5a47b53f4b113077dc2f0e014c6952210315f2a4e2a1"
+         + "df0391dabfb605aca1e3c0d5b4ed7ad2857b752c26a656223a8fd021031e45f9ea24c00ccdba4ca386dc39473acfc8870ac5"
+         + "5ca0b61dc88f201f1822382102f5af92ca47e95786b67d3787a05cafef65896a31555cc72b82ecdb7b0c43777d53aeffffff"
+         + "ffaa553d7c79f15321ad55f9a5bbcfa9a2c24f5e09b4e173d27fd49419cbfdf49900000000fc00473044022070f68f0bcd17"
+         + "7ca92e25942ef5cd66582d960e5145c4bd425da6d586e7050a14022022836890e3e25679e137c7370d2508a731d17ba89eef"
+         + "d1475f09387bbe7374ae014730440220647aedfcf96b4ceb278818c8632bfc36bbd6a899c166163ba34e2a007b41537d0220"
+         + "163620e2db8e559480dc4e6884b92a42c18e316b22376ac3c63a2ba393a179c3014c6952210315f2a4e2a1df0391dabfb605"
+         + "aca1e3c0d5b4ed7ad2857b752c26a656223a8fd021031e45f9ea24c00ccdba4ca386dc39473acfc8870ac55ca0b61dc88f20"
+         + "1f1822382102f5af92ca47e95786b67d3787a05cafef65896a31555cc72b82ecdb7b0c43777d53aeffffffff03b80b000000"
+         + "00000017a914ff90cb7560f7351d59638f56d317e0896994eb91870000000000000000096a0743430215002014b80b000000"
+         + "00000017a914027ef0e2a14e64c697ac0b1680de04af59129e9a8700000000";
+   private static final String GENESIS_COINBASE = "01000000010000000000000000000000000000000000000000000000000000000000000000ffffffff4d04ffff001d010445"
+         + "5468652054696d65732030332f4a616e2f32303039204368616e63656c6c6f72206f6e206272696e6b206f66207365636f6e"
+         + "64206261696c6f757420666f722062616e6b73ffffffff0100f2052a01000000434104678afdb0fe5548271967f1a67130b7"
+         + "105cd6a828e03909a67962e0ea1f61deb649f6bc3f4cef38c4f35504e51ec112de5c384df7ba0b8d578a4c702b6bf11d5fac"
+         + "00000000";
+
+   @Test
+   public void testMatchesTransaction() throws Exception {
+      for (String hex : new String[] { STANDARD, MULTISIG_OP_RETURN, GENESIS_COINBASE }) {
+         byte[] bytes = HexUtils.toBytes(hex);
+         Transaction tx = Transaction.fromBytes(bytes);
+         TransactionView view = TransactionView.fromBytes(bytes);
+
+         assertEquals(tx.version, view.getVersion());
+         assertEquals(tx.lockTime, view.getLockTime());
+         assertEquals(tx.getHash(), view.getHash());
+         assertEquals(tx.isCoinbase(), view.isCoinbase());
+         assertEquals(tx.getTxRawSize(), view.getTxRawSize());
+         assertEquals(tx.inputs.length, view.getInputCount());
+         for (int i = 0; i < tx.inputs.length; i++) {
+            assertEquals(tx.inputs[i].outPoint, view.getOutPoint(i));
+            assertEquals(tx.inputs[i].sequence, view.getSequence(i));
+            assertArrayEquals(tx.inputs[i].script.getScriptBytes(), view.getInputScriptBytes(i));
+            TransactionInput input = view.getInput(i);
+            assertEquals(tx.inputs[i].outPoint, input.outPoint);
+            assertEquals(tx.inputs[i].script.getClass(), input.script.getClass());
+         }
+         assertEquals(tx.outputs.length, view.getOutputCount());
+         for (int i = 0; i < tx.outputs.length; i++) {
+            assertEquals(tx.outputs[i].value, view.getOutputValue(i));
+            assertArrayEquals(tx.outputs[i].script.getScriptBytes(), view.getOutputScriptBytes(i));
+            assertEquals(tx.outputs[i].script.getClass(), view.getOutputScript(i).getClass());
+            assertArrayEquals(tx.outputs[i].toBytes(), view.getOutput(i).toBytes());
+         }
+         assertArrayEquals(bytes, view.toTransaction().toBytes());
+      }
+   }
+
+   @Test
+   public void testKnownHash() throws Exception {
+      byte[] bytes = HexUtils.toBytes(GENESIS_COINBASE);
+      Sha256Hash txid = Sha256Hash.fromString("4a5e1e4baab89f3a32518a88c31bc87f618f76673e2cc77ab2127b7afdeda33b");
+      assertEquals(txid, TransactionView.fromBytes(bytes).getHash());
+      assertSame(txid, TransactionView.fromBytes(bytes, txid).getHash());
+      assertSame(txid, TransactionView.fromBytes(bytes, txid).toTransaction().getHash());
+   }
+
+   @Test
+   public void testTruncated() {
+      byte[] bytes = HexUtils.toBytes(MULTISIG_OP_RETURN);
+      for (int length = 0; length < bytes.length; length += 7) {
+         try {
+            TransactionView.fromBytes(BitUtils.copyOf(bytes, length));
+            fail("parsed a transaction cut at " + length);
+         } catch (TransactionParsingException e) {
+            // expected
+         }
+      }
+   }
+
+   @Test(expected = TransactionParsingException.class)
+   public void testTooManyInputs() throws Exception {
+      // version, then a count of 2^32 - 1 inputs
+      TransactionView.fromBytes(HexUtils.toBytes("01000000feffffffff0000"));
+   }
+}
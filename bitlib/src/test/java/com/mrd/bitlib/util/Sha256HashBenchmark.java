@@ -0,0 +1,96 @@
+package com.mrd.bitlib.util;
+
+import com.mrd.bitlib.model.OutPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The hash map work of a wallet sync: parse the outpoints of transaction
+ * inputs, look them up among the unspent outputs, collect the transaction ids
+ * and serialize the outpoints again. The scores are inputs per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class Sha256HashBenchmark {
+   private static final int INPUT_COUNT = 10000;
+
+   private byte[] inputs;
+   private Map<OutPoint, Long> unspent = new HashMap<OutPoint, Long>();
+   private Map<Sha256Hash, Integer> heights = new HashMap<Sha256Hash, Integer>();
+
+   @Setup
+   public void setup() {
+      Random random = new Random(1);
+      ByteWriter writer = new ByteWriter(INPUT_COUNT * 33);
+      for (int i = 0; i < INPUT_COUNT; i++) {
+         byte[] txid = new byte[Sha256Hash.HASH_LENGTH];
+         random.nextBytes(txid);
+         OutPoint outPoint = new OutPoint(Sha256Hash.of(txid), random.nextInt(3));
+         outPoint.toByteWriter(writer);
+         // Half of the inputs spend an output of the wallet
+         if (i % 2 == 0) {
+            unspent.put(outPoint, (long) i);
+            heights.put(outPoint.hash, i);
+         }
+      }
+      inputs = writer.toBytes();
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INPUT_COUNT)
+   public int sync() throws ByteReader.InsufficientBytesException {
+      ByteReader reader = new ByteReader(inputs);
+      ByteWriter writer = new ByteWriter(inputs.length);
+      Set<Sha256Hash> txids = new HashSet<Sha256Hash>();
+      long value = 0;
+      for (int i = 0; i < INPUT_COUNT; i++) {
+         OutPoint outPoint = new OutPoint(reader);
+         Long funding = unspent.get(outPoint);
+         if (funding != null && heights.containsKey(outPoint.hash)) {
+            value += funding;
+            txids.add(outPoint.hash);
+         }
+         outPoint.toByteWriter(writer);
+      }
+      return txids.size() + (int) value + writer.length();
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(INPUT_COUNT)
+   public int sort() throws ByteReader.InsufficientBytesException {
+      ByteReader reader = new ByteReader(inputs);
+      TreeSet<Sha256Hash> sorted = new TreeSet<Sha256Hash>();
+      for (int i = 0; i < INPUT_COUNT; i++) {
+         sorted.add(new OutPoint(reader).hash);
+      }
+      return sorted.size();
+   }
+
+   public static void main(String[] args) throws RunnerException {
+      new Runner(new OptionsBuilder().include(Sha256HashBenchmark.class.getSimpleName()).build()).run();
+   }
+}
@@ -0,0 +1,128 @@
+package com.mrd.bitlib.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class Sha256HashTest {
+   private static final String HEX = "6fe28c0ab6f1b372c1a6a246ae63f74f931e8365e15a089c68d6190000000000";
+
+   // A hash serialized when it still kept its bytes in an array
+   private static final String SERIALIZED_HASH = "aced00057372001e636f6d2e6d72642e6269746c69622e7574696c2e53686132353648617368000000000000000102000249"
+         + "00055f686173685b00065f62797465737400025b42787000000000757200025b42acf317f8060854e0020000787000000020"
+         + "6fe28c0ab6f1b372c1a6a246ae63f74f931e8365e15a089c68d6190000000000";
+
+   @Test
+   public void bytes() {
+      byte[] bytes = HexUtils.toBytes(HEX);
+      Sha256Hash hash = Sha256Hash.of(bytes);
+      assertSame(bytes, hash.getBytes());
+      assertEquals(HEX, hash.toHex());
+      assertEquals(HEX, hash.toString());
+      assertArrayEquals(HexUtils.toBytes("6fe28c0a"), hash.firstFourBytes());
+      assertArrayEquals(HexUtils.toBytes("6fe28c0ab6"), hash.firstNBytes(5));
+      assertTrue(hash.startsWith(HexUtils.toBytes("6fe28c0a")));
+      assertFalse(hash.startsWith(HexUtils.toBytes("6fe28c0b")));
+
+      // A copy materializes its bytes once
+      byte[] padded = new byte[40];
+      System.arraycopy(bytes, 0, padded, 5, bytes.length);
+      Sha256Hash copy = Sha256Hash.copyOf(padded, 5);
+      assertEquals(hash, copy);
+      assertArrayEquals(bytes, copy.getBytes());
+      assertSame(copy.getBytes(), copy.getBytes());
+      assertEquals(hash.toPositiveBigInteger(), copy.toPositiveBigInteger());
+   }
+
+   @Test
+   public void reverse() {
+      Random random = new Random(1);
+      for (int i = 0; i < 100; i++) {
+         byte[] bytes = new byte[Sha256Hash.HASH_LENGTH];
+         random.nextBytes(bytes);
+         Sha256Hash hash = Sha256Hash.of(bytes);
+         assertArrayEquals(BitUtils.reverseBytes(bytes), hash.reverse().getBytes());
+         assertEquals(hash, hash.reverse().reverse());
+      }
+   }
+
+   @Test
+   public void equalsHashCodeAndCompareToMatchBytes() {
+      Random random = new Random(2);
+      for (int i = 0; i < 2000; i++) {
+         byte[] a = new byte[Sha256Hash.HASH_LENGTH];
+         random.nextBytes(a);
+         byte[] b = a.clone();
+         // Differ in a single byte, or not at all
+         int position = random.nextInt(Sha256Hash.HASH_LENGTH + 1);
+         if (position < Sha256Hash.HASH_LENGTH) {
+            b[position] = (byte) random.nextInt(256);
+         }
+         Sha256Hash hashA = Sha256Hash.of(a);
+         Sha256Hash hashB = Sha256Hash.copyOf(b, 0);
+         int expected = compareSignedBytes(a, b);
+         assertEquals(expected, Integer.signum(hashA.compareTo(hashB)));
+         assertEquals(-expected, Integer.signum(hashB.compareTo(hashA)));
+         assertEquals(expected == 0, hashA.equals(hashB));
+         // The hash code is the last four bytes, as it used to be
+         assertEquals((int) BitUtils.uint32ToLong(BitUtils.reverseBytes(a), 0), hashA.hashCode());
+      }
+   }
+
+   private static int compareSignedBytes(byte[] a, byte[] b) {
+      for (int i = 0; i < a.length; i++) {
+         if (a[i] != b[i]) {
+            return a[i] < b[i] ? -1 : 1;
+         }
+      }
+      return 0;
+   }
+
+   @Test
+   public void byteWriterAndReader() throws ByteReader.InsufficientBytesException {
+      Sha256Hash hash = Sha256Hash.fromString(HEX);
+      ByteWriter writer = new ByteWriter(1);
+      writer.put((byte) 7);
+      writer.putSha256Hash(hash);
+      writer.putSha256Hash(hash, true);
+      byte[] bytes = writer.toBytes();
+      assertEquals(1 + 2 * Sha256Hash.HASH_LENGTH, bytes.length);
+
+      ByteReader reader = new ByteReader(bytes);
+      assertEquals(7, reader.get());
+      assertEquals(hash, reader.getSha256Hash());
+      assertEquals(hash.reverse(), reader.getSha256Hash());
+      assertEquals(0, reader.available());
+   }
+
+   @Test
+   public void serialization() throws IOException, ClassNotFoundException {
+      Sha256Hash hash = Sha256Hash.fromString(HEX);
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(hash);
+      out.close();
+      assertDeserializesTo(hash, bytes.toByteArray());
+      assertDeserializesTo(hash, HexUtils.toBytes(SERIALIZED_HASH));
+   }
+
+   private static void assertDeserializesTo(Sha256Hash expected, byte[] serialized) throws IOException,
+         ClassNotFoundException {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized));
+      Sha256Hash copy = (Sha256Hash) in.readObject();
+      assertEquals(expected, copy);
+      assertEquals(expected.hashCode(), copy.hashCode());
+      assertArrayEquals(expected.getBytes(), copy.getBytes());
+   }
+}
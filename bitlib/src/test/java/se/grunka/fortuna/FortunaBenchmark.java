@@ -0,0 +1,61 @@
+package se.grunka.fortuna;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of 32 byte requests, as for private keys and nonces, from four
+ * threads sharing one instance. The scores are requests per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class FortunaBenchmark {
+    private Fortuna shared;
+    private Fortuna sharded;
+
+    @State(Scope.Thread)
+    public static class Buffer {
+        byte[] bytes = new byte[32];
+    }
+
+    @Setup
+    public void setup() {
+        shared = Fortuna.createInstance();
+        sharded = Fortuna.createShardedInstance();
+    }
+
+    @Benchmark
+    public byte[] shared(Buffer buffer) {
+        shared.nextBytes(buffer.bytes);
+        return buffer.bytes;
+    }
+
+    @Benchmark
+    public byte[] sharded(Buffer buffer) {
+        sharded.nextBytes(buffer.bytes);
+        return buffer.bytes;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(FortunaBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -1,11 +1,17 @@
 package se.grunka.fortuna;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.Ignore;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class FortunaTest {
@@ -19,6 +25,48 @@ public class FortunaTest {
         }
     }
 
+    @Test
+    public void shouldGiveEveryThreadItsOwnGenerator() throws Exception {
+        final Fortuna fortuna = Fortuna.createShardedInstance();
+        assertTrue(fortuna.isSharded());
+        assertFalse(Fortuna.createInstance().isSharded());
+        final Set<String> values = new HashSet<String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 100; i++) {
+                        byte[] bytes = new byte[32];
+                        fortuna.nextBytes(bytes);
+                        synchronized (values) {
+                            values.add(Arrays.toString(bytes));
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(400, values.size());
+    }
+
+    @Test
+    public void shouldReseedThreadGenerators() throws Exception {
+        Fortuna fortuna = Fortuna.createShardedInstance();
+        byte[] first = new byte[16];
+        fortuna.nextBytes(first);
+        Thread.sleep(150);
+        byte[] second = new byte[16];
+        fortuna.nextBytes(second);
+        assertFalse(Arrays.equals(first, second));
+        fortuna.nextInt(42);
+    }
+
     @Ignore
     @Test
     public void shouldProduceEvenDistribution() throws Exception {
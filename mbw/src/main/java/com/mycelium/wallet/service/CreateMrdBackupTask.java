@@ -38,7 +38,6 @@ import android.content.Context;
 import com.google.common.base.Optional;
 import com.mrd.bitlib.crypto.Bip39;
 import com.mrd.bitlib.crypto.MrdExport;
-import com.mrd.bitlib.crypto.MrdExport.V1.EncryptionParameters;
 import com.mrd.bitlib.crypto.MrdExport.V1.KdfParameters;
 import com.mrd.bitlib.model.Address;
 import com.mrd.bitlib.model.NetworkParameters;
@@ -147,9 +146,9 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
    protected Boolean doTask(Context context) throws UserFacingException {
       try {
          // Generate Encryption parameters by doing key stretching
-         EncryptionParameters encryptionParameters;
+         MrdExport.V1.Batch batch;
          try {
-            encryptionParameters = EncryptionParameters.generate(_kdfParameters);
+            batch = MrdExport.V1.Batch.generate(_kdfParameters);
          } catch (InterruptedException e) {
             return false;
          }
@@ -163,20 +162,20 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
          if (_masterSeed == null) {
             encryptedMasterSeed = Optional.absent();
          } else {
-            String e = MrdExport.V1.encryptMasterSeed(encryptionParameters, _masterSeed, _network);
+            String e = batch.encryptMasterSeed(_masterSeed, _network);
              encryptedMasterSeed = Optional.of(new ExportEntry(null, null, e, null));
          }
 
          // Encrypt active
          List<ExportEntry> encryptedActiveKeys = new LinkedList<ExportEntry>();
          for (EntryToExport e : _active) {
-            encryptedActiveKeys.add(createExportEntry(e, encryptionParameters, _network));
+            encryptedActiveKeys.add(createExportEntry(e, batch, _network));
             _encryptionProgress += increment;
          }
          // Encrypt archived
          List<ExportEntry> encryptedArchivedKeys = new LinkedList<ExportEntry>();
          for (EntryToExport e : _archived) {
-            encryptedArchivedKeys.add(createExportEntry(e, encryptionParameters, _network));
+            encryptedArchivedKeys.add(createExportEntry(e, batch, _network));
             _encryptionProgress += increment;
          }
 
@@ -201,11 +200,11 @@ public class CreateMrdBackupTask extends ServiceTask<Boolean> {
       _kdfParameters.terminate();
    }
 
-   private static ExportEntry createExportEntry(EntryToExport toExport, EncryptionParameters parameters,
+   private static ExportEntry createExportEntry(EntryToExport toExport, MrdExport.V1.Batch batch,
                                                 NetworkParameters network) {
       String encrypted = null;
       if (toExport.base58PrivateKey != null) {
-         encrypted = MrdExport.V1.encryptPrivateKey(parameters, toExport.base58PrivateKey, network);
+         encrypted = batch.encryptPrivateKey(toExport.base58PrivateKey, network);
       }
       return new ExportEntry(toExport.address, encrypted, null, toExport.label);
    }
@@ -396,6 +396,30 @@ public class SqliteWalletManagerBacking implements WalletManagerBacking {
       return (int) _getMaxSubId.simpleQueryForLong();
    }
 
+   @Override
+   public List<byte[]> getIds() {
+      return getIds(DEFAULT_SUB_ID);
+   }
+
+   @Override
+   public List<byte[]> getIds(int subId) {
+      Cursor cursor = null;
+      List<byte[]> ids = new ArrayList<>();
+      try {
+         SQLiteQueryWithBlobs blobQuery = new SQLiteQueryWithBlobs(_database);
+         blobQuery.bindLong(1, (long) subId);
+         cursor = blobQuery.query(false, TABLE_KV, new String[]{"k"}, "subId = ?", null, null, null, null, null);
+         while (cursor.moveToNext()) {
+            ids.add(cursor.getBlob(0));
+         }
+         return ids;
+      } finally {
+         if (cursor != null) {
+            cursor.close();
+         }
+      }
+   }
+
    @Override
    public void setValue(byte[] key, int subId, byte[] value) {
       _insertOrReplaceKeyValue.bindBlob(1, key);
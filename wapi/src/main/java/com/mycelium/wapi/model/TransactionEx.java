@@ -20,7 +20,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.mrd.bitlib.model.OutPoint;
 import com.mrd.bitlib.model.Transaction;
 import com.mrd.bitlib.model.Transaction.TransactionParsingException;
-import com.mrd.bitlib.model.TransactionOutput;
+import com.mrd.bitlib.model.TransactionView;
 import com.mrd.bitlib.util.ByteReader;
 import com.mrd.bitlib.util.HashUtils;
 import com.mrd.bitlib.util.Sha256Hash;
@@ -95,20 +95,34 @@ public class TransactionEx implements Serializable, Comparable<TransactionEx> {
       }
    }
 
+   /**
+    * Get a view on the transaction that only parses the inputs and outputs that
+    * are looked at
+    */
+   public static TransactionView toTransactionView(TransactionEx tex) {
+      if (tex == null) {
+         return null;
+      }
+      try {
+         return TransactionView.fromBytes(tex.binary, tex.txid);
+      } catch (TransactionParsingException e) {
+         return null;
+      }
+   }
+
    public static TransactionOutputEx getTransactionOutput(TransactionEx tex, int index) {
       if (index < 0) {
          return null;
       }
-      Transaction t = toTransaction(tex);
+      TransactionView t = toTransactionView(tex);
       if (t == null) {
          return null;
       }
-      if (index >= t.outputs.length) {
+      if (index >= t.getOutputCount()) {
          return null;
       }
-      TransactionOutput output = t.outputs[index];
-      return new TransactionOutputEx(new OutPoint(tex.txid, index), tex.height, output.value,
-            output.script.getScriptBytes(), t.isCoinbase());
+      return new TransactionOutputEx(new OutPoint(tex.txid, index), tex.height, t.getOutputValue(index),
+            t.getOutputScriptBytes(index), t.isCoinbase());
    }
 
    public int calculateConfirmations(int blockHeight) {
@@ -73,6 +73,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    protected Balance _cachedBalance;
 
    private EventHandler _eventHandler;
+   private TransactionCache _transactionCache = new TransactionCache();
    private AccountBacking _backing;
 
    protected AbstractAccount(AccountBacking backing, NetworkParameters network, Wapi wapi) {
@@ -96,6 +97,19 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       _eventHandler = eventHandler;
    }
 
+   /**
+    * Set the cache of parsed transactions, which is shared by the accounts of
+    * a wallet manager
+    */
+   void setTransactionCache(TransactionCache transactionCache) {
+      _transactionCache = transactionCache;
+   }
+
+   private void deleteTransactionFromBacking(Sha256Hash txid) {
+      _backing.deleteTransaction(txid);
+      _transactionCache.invalidate(txid);
+   }
+
    protected void postEvent(Event event) {
       if (_eventHandler != null) {
          _eventHandler.onEvent(this.getId(), event);
@@ -113,8 +127,16 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
     * addresses
     */
    protected boolean isFromMe(Sha256Hash txid) {
-      Transaction t = TransactionEx.toTransaction(_backing.getTransaction(txid));
-      return t != null && isFromMe(t);
+      TransactionView t = TransactionEx.toTransactionView(_backing.getTransaction(txid));
+      if (t == null) {
+         return false;
+      }
+      for (int i = 0; i < t.getInputCount(); i++) {
+         if (isFromMe(t.getOutPoint(i))) {
+            return true;
+         }
+      }
+      return false;
    }
 
    /**
@@ -129,19 +151,23 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
     */
    protected boolean isFromMe(Transaction t) {
       for (TransactionInput input : t.inputs) {
-         TransactionOutputEx funding = _backing.getParentTransactionOutput(input.outPoint);
-         if (funding == null || funding.isCoinBase) {
-            continue;
-         }
-         ScriptOutput fundingScript = ScriptOutput.fromScriptBytes(funding.script);
-         Address fundingAddress = fundingScript.getAddress(_network);
-         if (isMine(fundingAddress)) {
+         if (isFromMe(input.outPoint)) {
             return true;
          }
       }
       return false;
    }
 
+   private boolean isFromMe(OutPoint outPoint) {
+      TransactionOutputEx funding = _backing.getParentTransactionOutput(outPoint);
+      if (funding == null || funding.isCoinBase) {
+         return false;
+      }
+      ScriptOutput fundingScript = ScriptOutput.fromScriptBytes(funding.script);
+      Address fundingAddress = fundingScript.getAddress(_network);
+      return isMine(fundingAddress);
+   }
+
    /**
     * Determine whether a transaction output was sent from one of our own
     * addresses
@@ -359,7 +385,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       ArrayList<Transaction> txArray = new ArrayList<>(transactions.size());
       for (TransactionEx tex : transactions) {
          try {
-            txArray.add(Transaction.fromByteReader(new ByteReader(tex.binary)));
+            txArray.add(_transactionCache.get(tex));
             texArray.add(tex);
          } catch (TransactionParsingException e) {
             // We hit a transaction that we cannot parse. Log but otherwise ignore it
@@ -495,28 +521,28 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       //
 
       // Get the current set of unconfirmed transactions
-      List<Transaction> unconfirmed = new ArrayList<>();
+      List<TransactionView> unconfirmed = new ArrayList<>();
       for (TransactionEx tex : _backing.getUnconfirmedTransactions()) {
-         try {
-            Transaction t = Transaction.fromByteReader(new ByteReader(tex.binary));
+         TransactionView t = TransactionEx.toTransactionView(tex);
+         if (t != null) {
             unconfirmed.add(t);
-         } catch (TransactionParsingException e) {
-            // never happens, we have parsed it before
          }
+         // else never happens, we have parsed it before
       }
 
-      for (Transaction t : unconfirmed) {
+      for (TransactionView t : unconfirmed) {
          // For each input figure out if WE are sending it by fetching the
          // parent transaction and looking at the address
          boolean weSend = false;
-         for (TransactionInput input : t.inputs) {
+         for (int i = 0; i < t.getInputCount(); i++) {
+            OutPoint outPoint = t.getOutPoint(i);
             // Find the parent transaction
-            if (input.outPoint.hash.equals(Sha256Hash.ZERO_HASH)) {
+            if (outPoint.hash.equals(Sha256Hash.ZERO_HASH)) {
                continue;
             }
-            TransactionOutputEx parent = _backing.getParentTransactionOutput(input.outPoint);
+            TransactionOutputEx parent = _backing.getParentTransactionOutput(outPoint);
             if (parent == null) {
-               _logger.logError("Unable to find parent transaction output: " + input.outPoint);
+               _logger.logError("Unable to find parent transaction output: " + outPoint);
                continue;
             }
             TransactionOutput parentOutput = transform(parent);
@@ -530,8 +556,8 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
 
          // Now look at the outputs and if it contains change for us, then subtract that from the sending amount
          // if it is already spent in another transaction
-         for (int i = 0; i < t.outputs.length; i++) {
-            TransactionOutput output = t.outputs[i];
+         for (int i = 0; i < t.getOutputCount(); i++) {
+            TransactionOutput output = t.getOutput(i);
             Address destination = output.script.getAddress(_network);
             if (weSend && isMine(destination)) {
                // The funds are sent from us to us
@@ -702,11 +728,25 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       if (!isValidEncryptionKey(cipher)) {
          throw new InvalidKeyCipher();
       }
-      // Make all signatures, this is the CPU intensive part
-      List<byte[]> signatures = StandardTransactionBuilder.generateSignatures(
-            unsigned.getSignatureInfo(),
-            new PrivateKeyRing(cipher)
-      );
+      // Keep the key encryption key decrypted while the private keys are looked up, instead of decrypting it for
+      // every input. A session that was already open is left to whoever opened it.
+      SecureKeyValueStore keyStore = getSecureKeyValueStore();
+      boolean unlocked = keyStore != null && !keyStore.isUnlocked();
+      if (unlocked) {
+         keyStore.unlock(cipher);
+      }
+      List<byte[]> signatures;
+      try {
+         // Make all signatures, this is the CPU intensive part
+         signatures = StandardTransactionBuilder.generateSignatures(
+               unsigned.getSignatureInfo(),
+               new PrivateKeyRing(cipher)
+         );
+      } finally {
+         if (unlocked) {
+            keyStore.lock();
+         }
+      }
 
       // Apply signatures and finalize transaction
       return StandardTransactionBuilder.finalizeTransaction(unsigned, signatures);
@@ -727,7 +767,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       if (tex == null) {
          return false;
       }
-      Transaction tx = TransactionEx.toTransaction(tex);
+      Transaction tx = _transactionCache.getOrNull(tex);
       _backing.beginTransaction();
       try {
          // See if any of the outputs are stored locally and remove them
@@ -739,7 +779,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             }
          }
          // remove it from the backing
-         _backing.deleteTransaction(transactionId);
+         deleteTransactionFromBacking(transactionId);
          _backing.setTransactionSuccessful();
       } finally {
          _backing.endTransaction();
@@ -779,7 +819,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
          _backing.removeOutgoingTransaction(transaction);
 
          // remove it from the backing
-         _backing.deleteTransaction(transaction);
+         deleteTransactionFromBacking(transaction);
          _backing.setTransactionSuccessful();
       } finally {
          _backing.endTransaction();
@@ -798,7 +838,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       _backing.beginTransaction();
       final Transaction parsedTransaction;
       try {
-         parsedTransaction = Transaction.fromBytes(transaction.binary);
+         parsedTransaction = _transactionCache.get(transaction);
       } catch (TransactionParsingException e) {
          _logger.logInfo(String.format("Unable to parse transaction %s: %s", transaction.txid, e.getMessage()));
          return;
@@ -949,6 +989,13 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    protected abstract InMemoryPrivateKey getPrivateKeyForAddress(Address address, KeyCipher cipher)
          throws InvalidKeyCipher;
 
+   /**
+    * The store holding the encrypted private keys of this account, or null if the account has none
+    */
+   protected SecureKeyValueStore getSecureKeyValueStore() {
+      return null;
+   }
+
    protected abstract PublicKey getPublicKeyForAddress(Address address);
 
    @Override
@@ -1091,10 +1138,8 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
    }
 
    private TransactionSummary transform(TransactionEx tex, int blockChainHeight) {
-      Transaction tx;
-      try {
-         tx = Transaction.fromByteReader(new ByteReader(tex.binary));
-      } catch (TransactionParsingException e) {
+      TransactionView tx = TransactionEx.toTransactionView(tex);
+      if (tx == null) {
          // Should not happen as we have parsed the transaction earlier
          _logger.logError("Unable to parse ");
          return null;
@@ -1104,8 +1149,13 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       long satoshis = 0;
       List<Address> toAddresses = new ArrayList<>();
       Address destAddress = null;
-      for (TransactionOutput output : tx.outputs) {
-         final Address address = output.script.getAddress(_network);
+      for (int i = 0; i < tx.getOutputCount(); i++) {
+         TransactionOutput output = tx.getOutput(i);
+         Address address = output.script.getAddress(_network);
+         if (address != null) {
+            // Summaries of the whole history are held, share their addresses
+            address = address.intern();
+         }
          if (isMine(output.script)) {
             satoshis += output.value;
          } else {
@@ -1118,11 +1168,12 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
 
       // Inputs
       if (!tx.isCoinbase()) {
-         for (TransactionInput input : tx.inputs) {
+         for (int i = 0; i < tx.getInputCount(); i++) {
             // find parent output
-            TransactionOutputEx funding = _backing.getParentTransactionOutput(input.outPoint);
+            OutPoint outPoint = tx.getOutPoint(i);
+            TransactionOutputEx funding = _backing.getParentTransactionOutput(outPoint);
             if (funding == null) {
-               _logger.logError("Unable to find parent output for: " + input.outPoint);
+               _logger.logError("Unable to find parent output for: " + outPoint);
                continue;
             }
             if (isMine(funding)) {
@@ -1221,16 +1272,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       }
       for (TransactionStatus t : result.transactions) {
          TransactionEx localTransactionEx = _backing.getTransaction(t.txid);
-         Transaction parsedTransaction;
-         if (localTransactionEx != null) {
-            try {
-               parsedTransaction = Transaction.fromBytes(localTransactionEx.binary);
-            } catch (TransactionParsingException ignore) {
-               parsedTransaction = null;
-            }
-         } else {
-            parsedTransaction = null;
-         }
+         Transaction parsedTransaction = _transactionCache.getOrNull(localTransactionEx);
 
          // check if this transaction is unconfirmed and spends any inputs that got already spend
          // by any other transaction we know
@@ -1262,7 +1304,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
                queueTransaction(localTransactionEx);
             } else {
                // we haven't found it locally (shouldn't happen here) - so delete it to be sure
-               _backing.deleteTransaction(t.txid);
+               deleteTransactionFromBacking(t.txid);
             }
             continue;
          } else {
@@ -1280,7 +1322,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
             TransactionEx newTex = new TransactionEx(localTransactionEx.txid, t.height, t.time, localTransactionEx.binary);
             _logger.logInfo(String.format("Replacing: %s With: %s", localTransactionEx.toString(), newTex.toString()));
             postEvent(Event.TRANSACTION_HISTORY_CHANGED);
-            _backing.deleteTransaction(localTransactionEx.txid);
+            deleteTransactionFromBacking(localTransactionEx.txid);
             _backing.putTransaction(newTex);
          }
       }
@@ -1346,7 +1388,7 @@ public abstract class AbstractAccount extends SynchronizeAbleWalletAccount {
       // accounts. That should be ok as we write to the DB in a sane order.
 
       TransactionEx tex = _backing.getTransaction(txid);
-      Transaction tx = TransactionEx.toTransaction(tex);
+      Transaction tx = _transactionCache.getOrNull(tex);
       if (tx == null) {
          throw new RuntimeException();
       }
@@ -18,10 +18,19 @@ package com.mycelium.wapi.wallet;
 
 import Rijndael.Rijndael;
 import com.google.common.base.Preconditions;
+import com.mrd.bitlib.model.CompactInt;
 import com.mrd.bitlib.util.*;
 import com.mrd.bitlib.util.ByteReader.InsufficientBytesException;
 
 import java.io.UnsupportedEncodingException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
 
 // XXX This needs proper testing.
 
@@ -31,6 +40,10 @@ import java.io.UnsupportedEncodingException;
 public class AesKeyCipher implements KeyCipher {
 
    public static final int AES_KEY_BYTE_LENGTH = 16;
+   // Payloads from this size on are encrypted with the platform AES
+   private static final int PLATFORM_AES_THRESHOLD = 1024;
+   // Decrypted plaintext is hashed in chunks of this size
+   private static final int CHUNK_SIZE = 4096;
    private final byte[] _keyBytes;
    private final Rijndael _aes;
    private final long _thumbprint;
@@ -88,99 +101,143 @@ public class AesKeyCipher implements KeyCipher {
       // checksum
       Preconditions.checkArgument(data.length >= Rijndael.BLOCK_SIZE);
       Preconditions.checkArgument(data.length % Rijndael.BLOCK_SIZE == 0);
-
-      // Decrypt
-      ByteWriter writer = new ByteWriter(data.length - Rijndael.BLOCK_SIZE);
-      ByteReader reader = new ByteReader(BitUtils.copyOf(data, data.length - Rijndael.BLOCK_SIZE));
-      byte[] IV = new byte[Rijndael.BLOCK_SIZE];
-      byte[] plainBlock = new byte[Rijndael.BLOCK_SIZE];
-      while (reader.available() > 0) {
-         byte[] cipherBlock;
-         try {
-            cipherBlock = reader.getBytes(Rijndael.BLOCK_SIZE);
-         } catch (InsufficientBytesException e) {
-            // Does not happen as we already checked that the input is a whole
-            // number of blocks
-            throw new RuntimeException(e);
-         }
-         _aes.decrypt(cipherBlock, plainBlock);
-         xorBytes(IV, plainBlock);
-         writer.putBytes(plainBlock);
-         IV = cipherBlock;
+      int cipherLength = data.length - Rijndael.BLOCK_SIZE;
+      if (cipherLength == 0) {
+         throw new InvalidKeyCipher();
       }
 
-      // Strip padding
-      byte[] plaintext = writer.toBytes();
+      // The first block starts with the plaintext length
+      byte[] first = new byte[Rijndael.BLOCK_SIZE];
+      _aes.decrypt(data, 0, first, 0);
+      ByteReader reader = new ByteReader(first);
+      long length;
       try {
-         plaintext = stripPadding(plaintext);
+         length = CompactInt.fromByteReader(reader);
       } catch (InsufficientBytesException e) {
          throw new InvalidKeyCipher();
       }
+      int start = reader.getPosition();
+      if (length < 0 || length > cipherLength - start) {
+         throw new InvalidKeyCipher();
+      }
+      int end = start + (int) length;
+      int needed = end + (Rijndael.BLOCK_SIZE - end % Rijndael.BLOCK_SIZE) % Rijndael.BLOCK_SIZE;
 
-      // Calculate checksum
-      byte[] checksum = HashUtils.sha256(plaintext).getBytes();
+      // Decrypt in chunks and hash the plaintext of each chunk while it is
+      // still in the cache. The padding after the plaintext is not decrypted.
+      byte[] padded = new byte[needed];
+      MessageDigest digest = getSha256Digest();
+      Cipher cipher = needed >= PLATFORM_AES_THRESHOLD ? getPlatformCipher(Cipher.DECRYPT_MODE) : null;
+      int decrypted = 0;
+      int hashed = start;
+      try {
+         for (int from = 0; from < needed; from += CHUNK_SIZE) {
+            int to = Math.min(from + CHUNK_SIZE, needed);
+            if (cipher != null) {
+               decrypted += cipher.update(data, from, to - from, padded, decrypted);
+            } else {
+               for (int i = from; i < to; i += Rijndael.BLOCK_SIZE) {
+                  _aes.decrypt(data, i, padded, i);
+                  if (i > 0) {
+                     xorBytes(data, i - Rijndael.BLOCK_SIZE, padded, i);
+                  }
+               }
+               decrypted = to;
+            }
+            hashed = hashDecrypted(digest, padded, hashed, Math.min(decrypted, end));
+         }
+         if (cipher != null) {
+            decrypted += cipher.doFinal(padded, decrypted);
+            hashDecrypted(digest, padded, hashed, Math.min(decrypted, end));
+         }
+      } catch (GeneralSecurityException e) {
+         // Cannot happen as the output buffer has room for all blocks
+         throw new RuntimeException(e);
+      }
+      Preconditions.checkState(decrypted == needed);
 
       // Verify checksum
+      byte[] checksum = digest.digest();
       for (int i = 0; i < Rijndael.BLOCK_SIZE; i++) {
-         if (checksum[i] != data[data.length - Rijndael.BLOCK_SIZE + i]) {
+         if (checksum[i] != data[cipherLength + i]) {
             throw new InvalidKeyCipher();
          }
       }
-      return plaintext;
-   }
-
-   private byte[] addPadding(byte[] data) {
-      ByteWriter writer = new ByteWriter(data.length + 1 + Rijndael.BLOCK_SIZE);
-      writer.putCompactInt(data.length);
-      writer.putBytes(data);
-      int excess = writer.length() % Rijndael.BLOCK_SIZE;
-      if (excess == 0) {
-         return writer.toBytes();
-      }
-      return BitUtils.copyOf(writer.toBytes(), writer.length() + Rijndael.BLOCK_SIZE - excess);
+      return Arrays.copyOfRange(padded, start, end);
    }
 
-   private byte[] stripPadding(byte[] data) throws InsufficientBytesException {
-      ByteReader reader = new ByteReader(data);
-      int length = (int) reader.getCompactInt();
-      if (length < 0) {
-         throw new InsufficientBytesException();
+   private static int hashDecrypted(MessageDigest digest, byte[] padded, int hashed, int decrypted) {
+      if (decrypted > hashed) {
+         digest.update(padded, hashed, decrypted - hashed);
+         return decrypted;
       }
-      return reader.getBytes(length);
+      return hashed;
    }
 
    @Override
    public byte[] encrypt(byte[] data) {
-      // Data to encrypt must be a whole number of blocks, add padding
-      byte[] plaintext = addPadding(data);
-
-      ByteWriter writer = new ByteWriter(plaintext.length + Rijndael.BLOCK_SIZE);
-      ByteReader reader = new ByteReader(plaintext);
-      byte[] IV = new byte[Rijndael.BLOCK_SIZE];
-      byte[] cipherBlock = new byte[Rijndael.BLOCK_SIZE];
-      while (reader.available() > 0) {
-         byte[] plainBlock;
+      // Data to encrypt must be a whole number of blocks. It is prefixed with
+      // its length and zero padded
+      byte[] length = CompactInt.toBytes(data.length);
+      int paddedLength = length.length + data.length;
+      paddedLength += (Rijndael.BLOCK_SIZE - paddedLength % Rijndael.BLOCK_SIZE) % Rijndael.BLOCK_SIZE;
+
+      // Lay out the plaintext in the result and encrypt it in place
+      byte[] result = new byte[paddedLength + Rijndael.BLOCK_SIZE];
+      System.arraycopy(length, 0, result, 0, length.length);
+      System.arraycopy(data, 0, result, length.length, data.length);
+      Cipher cipher = paddedLength >= PLATFORM_AES_THRESHOLD ? getPlatformCipher(Cipher.ENCRYPT_MODE) : null;
+      if (cipher != null) {
          try {
-            plainBlock = reader.getBytes(Rijndael.BLOCK_SIZE);
-         } catch (InsufficientBytesException e) {
-            // Does not happen as we already checked that the input is a whole
-            // number of blocks
+            Preconditions.checkState(cipher.doFinal(result, 0, paddedLength, result, 0) == paddedLength);
+         } catch (GeneralSecurityException e) {
+            // Cannot happen as the input is a whole number of blocks
             throw new RuntimeException(e);
          }
-         xorBytes(IV, plainBlock);
-         _aes.encrypt(plainBlock, cipherBlock);
-         writer.putBytes(cipherBlock);
-         IV = cipherBlock;
+      } else {
+         for (int i = 0; i < paddedLength; i += Rijndael.BLOCK_SIZE) {
+            if (i > 0) {
+               xorBytes(result, i - Rijndael.BLOCK_SIZE, result, i);
+            }
+            _aes.encrypt(result, i, result, i);
+         }
       }
-      // Calculate checksum
-      byte[] checksum = HashUtils.sha256(data).getBytes();
-      writer.putBytes(checksum, 0, Rijndael.BLOCK_SIZE);
-      return writer.toBytes();
+
+      // Append checksum
+      byte[] checksum = getSha256Digest().digest(data);
+      System.arraycopy(checksum, 0, result, paddedLength, Rijndael.BLOCK_SIZE);
+      return result;
    }
 
-   private static void xorBytes(byte[] toApply, byte[] target) {
-      for (int i = 0; i < toApply.length; i++) {
-         target[i] = (byte) (target[i] ^ toApply[i]);
+   /**
+    * Get the platform implementation of AES in CBC mode with a zero IV, which
+    * produces the same output as our own. It is often hardware accelerated,
+    * but setting it up costs more than encrypting a key with our own.
+    *
+    * @return the initialized cipher, or null if the platform does not have it
+    */
+   private Cipher getPlatformCipher(int mode) {
+      try {
+         Cipher cipher = Cipher.getInstance("AES/CBC/NoPadding");
+         cipher.init(mode, new SecretKeySpec(_keyBytes, "AES"), new IvParameterSpec(new byte[Rijndael.BLOCK_SIZE]));
+         return cipher;
+      } catch (GeneralSecurityException e) {
+         return null;
+      }
+   }
+
+   private static void xorBytes(byte[] toApply, int offset, byte[] target, int targetOffset) {
+      for (int i = 0; i < Rijndael.BLOCK_SIZE; i++) {
+         target[targetOffset + i] ^= toApply[offset + i];
+      }
+   }
+
+   private static MessageDigest getSha256Digest() {
+      try {
+         return MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+         // Cannot happen
+         throw new RuntimeException(e);
       }
    }
 
@@ -193,4 +250,12 @@ public class AesKeyCipher implements KeyCipher {
       return _keyBytes;
    }
 
+   /**
+    * Overwrite the key material of this cipher. It cannot be used afterwards.
+    */
+   void destroy() {
+      Arrays.fill(_keyBytes, (byte) 0);
+      _aes.clearKey();
+   }
+
 }
@@ -142,6 +142,29 @@ public class InMemoryWalletManagerBacking implements WalletManagerBacking {
       return  maxSubId;
    }
 
+   @Override
+   public List<byte[]> getIds() {
+      List<byte[]> ids = new ArrayList<>();
+      for (String key : _values.keySet()) {
+         if (!key.startsWith("sub")) {
+            ids.add(HexUtils.toBytes(key));
+         }
+      }
+      return ids;
+   }
+
+   @Override
+   public List<byte[]> getIds(int subId) {
+      String prefix = "sub" + subId + ".";
+      List<byte[]> ids = new ArrayList<>();
+      for (String key : _values.keySet()) {
+         if (key.startsWith(prefix)) {
+            ids.add(HexUtils.toBytes(key.substring(prefix.length())));
+         }
+      }
+      return ids;
+   }
+
    @Override
    public void deleteValue(byte[] id) {
       _values.remove(idToString(id));
@@ -18,8 +18,25 @@ package com.mycelium.wapi.wallet;
 
 import com.google.common.base.Preconditions;
 import com.mrd.bitlib.crypto.RandomSource;
+import com.mrd.bitlib.util.BitUtils;
 import com.mycelium.wapi.wallet.KeyCipher.InvalidKeyCipher;
 
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
 /**
  * Secure encrypted storage and plaintext storage for arbitrary binary values using a user defined encryption key.
  * <p/>
@@ -30,19 +47,34 @@ import com.mycelium.wapi.wallet.KeyCipher.InvalidKeyCipher;
  * <p/>Note that the same user defined encryption key is used for all values inserted. The encryption key can be
  * replaced by calling {@link #replaceEncryptionKey(KeyCipher, KeyCipher)}
  * <p/>Note that for every ID an encrypted and a plaintext component can be stored.
+ * <p/>Every encrypted access decrypts the key encryption key with the user defined key. When many encrypted values are
+ * needed in a row, for instance when signing a transaction with many inputs, call {@link #unlock(KeyCipher)} first.
+ * The decrypted key encryption key is then kept until {@link #lock()} is called or it has not been used for a while.
+ * A store and its sub stores share the same session.
+ * <p/>To replace the key encryption key itself, which requires re-encrypting every value, use
+ * {@link #rotateKeyEncryptionKey(KeyCipher, KeyCipher)}.
  */
 public class SecureKeyValueStore {
    private static final byte[] KEK_ID = new byte[]{(byte) 0};
    private static final byte PLAIN_PREFIX = 1;
    private static final byte CIPHER_PREFIX = 2;
+   // Re-encrypting a value is cheap, so parallel key rotation hands out chunks of values
+   private static final int RE_ENCRYPT_CHUNK_SIZE = 16;
+   public static final long DEFAULT_UNLOCK_TIMEOUT_MILLIS = 2 * 60 * 1000;
 
    protected final SecureKeyValueStoreBacking _backing;
    private final RandomSource _randomSource;
+   private final KekSession _session;
    public static final byte[] SUB_STORAGE_ID_BASE = new byte[]{0x73, 0x75, 0x62, 0x69, 0x64};
 
    public SecureKeyValueStore(SecureKeyValueStoreBacking backing, RandomSource randomSource) {
+      this(backing, randomSource, new KekSession());
+   }
+
+   SecureKeyValueStore(SecureKeyValueStoreBacking backing, RandomSource randomSource, KekSession session) {
       _backing = backing;
       this._randomSource = randomSource;
+      _session = session;
       // Initialize key encryption key if necessary
       if (getEncryptedKeyEncryptionKey() == null) {
          byte[] kek = new byte[AesKeyCipher.AES_KEY_BYTE_LENGTH];
@@ -59,11 +91,17 @@ public class SecureKeyValueStore {
     * @param id The ID to get the value for
     * @return The plaintext value associated with the ID or null if no plaintext value was associated
     */
-   public synchronized byte[] getPlaintextValue(byte[] id) {
+   public byte[] getPlaintextValue(byte[] id) {
       if (id.length == 0) {
          throw new RuntimeException("IDs cannot have zero length");
       }
-      return getValue(getRealId(id, false));
+      Lock lock = _session.readLock();
+      lock.lock();
+      try {
+         return getValue(getRealId(id, false));
+      } finally {
+         lock.unlock();
+      }
    }
 
    /**
@@ -74,11 +112,44 @@ public class SecureKeyValueStore {
     * @param id             The id to store a value under
     * @param plaintextValue The value to store
     */
-   public synchronized void storePlaintextValue(byte[] id, byte[] plaintextValue) {
+   public void storePlaintextValue(byte[] id, byte[] plaintextValue) {
       if (id.length == 0) {
          throw new RuntimeException("IDs cannot have zero length");
       }
-      setValue(getRealId(id, false), plaintextValue);
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         setValue(getRealId(id, false), plaintextValue);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Store the plaintext values for a list of IDs in one transaction of the backing.
+    * <p/>
+    * Use this instead of calling {@link #storePlaintextValue(byte[], byte[])} repeatedly when storing many values.
+    *
+    * @param ids             The ids to store values under
+    * @param plaintextValues The values to store, in the same order as the ids
+    */
+   public void storePlaintextValues(List<byte[]> ids, List<byte[]> plaintextValues) {
+      Preconditions.checkArgument(ids.size() == plaintextValues.size());
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         _backing.beginTransaction();
+         try {
+            for (int i = 0; i < ids.size(); i++) {
+               storePlaintextValue(ids.get(i), plaintextValues.get(i));
+            }
+            _backing.setTransactionSuccessful();
+         } finally {
+            _backing.endTransaction();
+         }
+      } finally {
+         lock.unlock();
+      }
    }
 
    /**
@@ -87,7 +158,13 @@ public class SecureKeyValueStore {
     * @param id the ID of the plain text value to delete
     */
    public void deletePlaintextValue(byte[] id) {
-      _backing.deleteValue(getRealId(id, false));
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         _backing.deleteValue(getRealId(id, false));
+      } finally {
+         lock.unlock();
+      }
    }
 
    /**
@@ -95,11 +172,73 @@ public class SecureKeyValueStore {
     * decrypting keys.
     */
    public boolean isValidEncryptionKey(KeyCipher userCipher) {
+      Lock lock = _session.readLock();
+      lock.lock();
       try {
          getKeyEncryptionKey(userCipher);
          return true;
       } catch (InvalidKeyCipher invalidKeyCipher) {
          return false;
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Keep the decrypted key encryption key in memory, so that encrypted values can be accessed with the user cipher
+    * without decrypting the key encryption key every time. The session ends when {@link #lock()} is called or when
+    * the key has not been used for {@link #DEFAULT_UNLOCK_TIMEOUT_MILLIS}.
+    *
+    * @param userCipher the user defined encryption key
+    * @throws InvalidKeyCipher if the user defined encryption key is invalid
+    */
+   public void unlock(KeyCipher userCipher) throws InvalidKeyCipher {
+      unlock(userCipher, DEFAULT_UNLOCK_TIMEOUT_MILLIS);
+   }
+
+   /**
+    * Keep the decrypted key encryption key in memory until {@link #lock()} is called or until it has not been used
+    * for the given time.
+    *
+    * @param userCipher        the user defined encryption key
+    * @param idleTimeoutMillis the time after the last use at which the session ends
+    * @throws InvalidKeyCipher if the user defined encryption key is invalid
+    */
+   public void unlock(KeyCipher userCipher, long idleTimeoutMillis) throws InvalidKeyCipher {
+      Preconditions.checkArgument(idleTimeoutMillis > 0);
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         _session.start(userCipher, decryptKeyEncryptionKey(userCipher), idleTimeoutMillis);
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * End the session started with {@link #unlock(KeyCipher)} and overwrite the key encryption key in memory.
+    * Afterwards every encrypted access decrypts the key encryption key again.
+    */
+   public void lock() {
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         _session.end();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Determine whether a session started with {@link #unlock(KeyCipher)} is active
+    */
+   public boolean isUnlocked() {
+      Lock lock = _session.readLock();
+      lock.lock();
+      try {
+         return _session.isActive();
+      } finally {
+         lock.unlock();
       }
    }
 
@@ -111,14 +250,182 @@ public class SecureKeyValueStore {
     * @throws com.mycelium.wapi.wallet.KeyCipher.InvalidKeyCipher if the key cipher specified as the current user
     *                                                             encryption key cipher is invalid.
     */
-   public synchronized void replaceEncryptionKey(KeyCipher currentUserCipher, KeyCipher newUserCipher)
+   public void replaceEncryptionKey(KeyCipher currentUserCipher, KeyCipher newUserCipher)
          throws InvalidKeyCipher {
-      // Decrypt the key encryption key using the current user key. If the current user cipher is invalid, this will 
-      // throw
-      AesKeyCipher kekCipher = getKeyEncryptionKey(currentUserCipher);
-      // Encrypt the key encryption key using the new user key
-      byte[] newEncryptedKek = newUserCipher.encrypt(kekCipher.getKeyBytes());
-      storeEncryptedKeyEncryptionKey(newEncryptedKek);
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         // Decrypt the key encryption key using the current user key. If the current user cipher is invalid, this
+         // will throw
+         AesKeyCipher kekCipher = getKeyEncryptionKey(currentUserCipher);
+         // Encrypt the key encryption key using the new user key
+         byte[] newEncryptedKek = newUserCipher.encrypt(kekCipher.getKeyBytes());
+         storeEncryptedKeyEncryptionKey(newEncryptedKek);
+         // The session was opened with the old user key
+         _session.end();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Replace the key encryption key with a new random key and re-encrypt all encrypted values of this store and all
+    * sub stores with it.
+    * <p/>
+    * All values are decrypted and re-encrypted before anything is written, and the values are written together with
+    * the new key encryption key in one transaction of the backing. If anything fails, the store is left as it was.
+    *
+    * @param currentUserCipher the current user encryption key
+    * @param newUserCipher     the user encryption key to encrypt the new key encryption key with, which may be the
+    *                          current one
+    * @throws InvalidKeyCipher if the current user encryption key is invalid or a value cannot be decrypted
+    */
+   public void rotateKeyEncryptionKey(KeyCipher currentUserCipher, KeyCipher newUserCipher) throws InvalidKeyCipher {
+      rotateKeyEncryptionKey(currentUserCipher, newUserCipher, null);
+   }
+
+   /**
+    * Replace the key encryption key with a new random key and re-encrypt all encrypted values of this store and all
+    * sub stores with it, using an executor to re-encrypt the values in parallel.
+    *
+    * @param executor the executor to re-encrypt chunks of values on, or null to re-encrypt them in the calling thread
+    * @see #rotateKeyEncryptionKey(KeyCipher, KeyCipher)
+    */
+   public void rotateKeyEncryptionKey(KeyCipher currentUserCipher, KeyCipher newUserCipher, ExecutorService executor)
+         throws InvalidKeyCipher {
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         AesKeyCipher oldKek = getKeyEncryptionKey(currentUserCipher); // may throw InvalidKeyCipher
+         List<EncryptedEntry> entries = getEncryptedEntries();
+
+         byte[] rawKek = new byte[AesKeyCipher.AES_KEY_BYTE_LENGTH];
+         _randomSource.nextBytes(rawKek);
+         AesKeyCipher newKek = new AesKeyCipher(rawKek);
+         byte[] newEncryptedKek = newUserCipher.encrypt(rawKek);
+         Arrays.fill(rawKek, (byte) 0);
+
+         if (executor == null) {
+            reEncrypt(entries, oldKek, newKek, 0, entries.size());
+         } else {
+            reEncrypt(entries, oldKek, newKek, executor);
+         }
+         newKek.destroy();
+         for (EncryptedEntry entry : entries) {
+            if (entry.newValue == null) {
+               throw new InvalidKeyCipher();
+            }
+         }
+
+         _backing.beginTransaction();
+         try {
+            for (EncryptedEntry entry : entries) {
+               if (entry.subId == null) {
+                  _backing.setValue(entry.realId, entry.newValue);
+               } else {
+                  _backing.setValue(entry.realId, entry.subId, entry.newValue);
+               }
+            }
+            storeEncryptedKeyEncryptionKey(newEncryptedKek);
+            _backing.setTransactionSuccessful();
+         } finally {
+            _backing.endTransaction();
+         }
+         // The session holds the old key encryption key
+         _session.end();
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   private List<EncryptedEntry> getEncryptedEntries() {
+      List<EncryptedEntry> entries = new ArrayList<EncryptedEntry>();
+      for (byte[] realId : _backing.getIds()) {
+         if (realId.length > 0 && realId[0] == CIPHER_PREFIX) {
+            byte[] value = _backing.getValue(realId);
+            if (value != null) {
+               entries.add(new EncryptedEntry(null, realId, value));
+            }
+         }
+      }
+      // The root store uses subId 0 in some backings, sub stores start at 1
+      for (int subId = 1; subId <= _backing.getMaxSubId(); subId++) {
+         for (byte[] realId : _backing.getIds(subId)) {
+            if (realId.length > 0 && realId[0] == CIPHER_PREFIX) {
+               byte[] value = _backing.getValue(realId, subId);
+               if (value != null) {
+                  entries.add(new EncryptedEntry(subId, realId, value));
+               }
+            }
+         }
+      }
+      return entries;
+   }
+
+   private static class EncryptedEntry {
+      // null for the root store
+      private final Integer subId;
+      private final byte[] realId;
+      private final byte[] value;
+      private byte[] newValue;
+
+      private EncryptedEntry(Integer subId, byte[] realId, byte[] value) {
+         this.subId = subId;
+         this.realId = realId;
+         this.value = value;
+      }
+   }
+
+   /**
+    * Re-encrypts a range of entries, leaving the new value null for entries that cannot be decrypted
+    */
+   private static void reEncrypt(List<EncryptedEntry> entries, AesKeyCipher oldKek, AesKeyCipher newKek, int from,
+                                 int to) {
+      for (int i = from; i < to; i++) {
+         EncryptedEntry entry = entries.get(i);
+         try {
+            byte[] plaintext = oldKek.decrypt(entry.value);
+            entry.newValue = newKek.encrypt(plaintext);
+            Arrays.fill(plaintext, (byte) 0);
+         } catch (InvalidKeyCipher e) {
+            entry.newValue = null;
+         }
+      }
+   }
+
+   /**
+    * Re-encrypts all entries on an executor, in chunks of {@link #RE_ENCRYPT_CHUNK_SIZE} entries
+    */
+   private static void reEncrypt(final List<EncryptedEntry> entries, final AesKeyCipher oldKek,
+                                 final AesKeyCipher newKek, ExecutorService executor) {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int from = 0; from < entries.size(); from += RE_ENCRYPT_CHUNK_SIZE) {
+         final int chunkFrom = from;
+         final int chunkTo = Math.min(entries.size(), from + RE_ENCRYPT_CHUNK_SIZE);
+         futures.add(executor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+               reEncrypt(entries, oldKek, newKek, chunkFrom, chunkTo);
+               return null;
+            }
+         }));
+      }
+      try {
+         for (Future<Void> future : futures) {
+            future.get();
+         }
+      } catch (InterruptedException e) {
+         for (Future<Void> future : futures) {
+            future.cancel(true);
+         }
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      }
    }
 
    /**
@@ -128,7 +435,13 @@ public class SecureKeyValueStore {
     * @return true iff a value is defined for the specified ID
     */
    public boolean hasCiphertextValue(byte[] id) {
-      return getValue(getRealId(id, true)) != null;
+      Lock lock = _session.readLock();
+      lock.lock();
+      try {
+         return getValue(getRealId(id, true)) != null;
+      } finally {
+         lock.unlock();
+      }
    }
 
    /**
@@ -139,16 +452,22 @@ public class SecureKeyValueStore {
     * @return The value associated with the specified ID, or null of no value was found
     * @throws InvalidKeyCipher if the specified encryption key is invalid
     */
-   public synchronized byte[] getEncryptedValue(byte[] id, KeyCipher userCipher) throws InvalidKeyCipher {
+   public byte[] getEncryptedValue(byte[] id, KeyCipher userCipher) throws InvalidKeyCipher {
       if (id.length == 0) {
          throw new RuntimeException("IDs cannot have zero length");
       }
-      AesKeyCipher kekCipher = getKeyEncryptionKey(userCipher); // may throw InvalidKeyCipher
-      byte[] encryptedValue = getValue(getRealId(id, true));
-      if (encryptedValue == null) {
-         return null;
+      Lock lock = _session.readLock();
+      lock.lock();
+      try {
+         AesKeyCipher kekCipher = getKeyEncryptionKey(userCipher); // may throw InvalidKeyCipher
+         byte[] encryptedValue = getValue(getRealId(id, true));
+         if (encryptedValue == null) {
+            return null;
+         }
+         return kekCipher.decrypt(encryptedValue);
+      } finally {
+         lock.unlock();
       }
-      return kekCipher.decrypt(encryptedValue);
    }
 
    /**
@@ -159,23 +478,49 @@ public class SecureKeyValueStore {
     * @param userCipher     the user defined encryption key
     * @throws InvalidKeyCipher if the user defined encryption key is invalid
     */
-   public synchronized void encryptAndStoreValue(byte[] id, byte[] plaintextValue, KeyCipher userCipher) throws InvalidKeyCipher {
+   public void encryptAndStoreValue(byte[] id, byte[] plaintextValue, KeyCipher userCipher) throws InvalidKeyCipher {
       if (id.length == 0) {
          throw new RuntimeException("IDs cannot have zero length");
       }
-      AesKeyCipher kekCipher = getKeyEncryptionKey(userCipher); // may throw InvalidKeyCipher
-      byte[] encryptedValue = kekCipher.encrypt(plaintextValue);
-      setValue(getRealId(id, true), encryptedValue);
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         AesKeyCipher kekCipher = getKeyEncryptionKey(userCipher); // may throw InvalidKeyCipher
+         byte[] encryptedValue = kekCipher.encrypt(plaintextValue);
+         setValue(getRealId(id, true), encryptedValue);
+      } finally {
+         lock.unlock();
+      }
    }
 
    public void deleteEncryptedValue(byte[] id, KeyCipher userCipher) throws InvalidKeyCipher {
-      AesKeyCipher kekCipher = getKeyEncryptionKey(userCipher); // may throw InvalidKeyCipher
-      _backing.deleteValue(getRealId(id, true));
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         getKeyEncryptionKey(userCipher); // may throw InvalidKeyCipher
+         _backing.deleteValue(getRealId(id, true));
+      } finally {
+         lock.unlock();
+      }
+   }
+
+   /**
+    * Get the key encryption key from the session if it was unlocked with the same user key, or decrypt it. Call with
+    * the read or the write lock held.
+    */
+   private AesKeyCipher getKeyEncryptionKey(KeyCipher userCipher) throws InvalidKeyCipher {
+      AesKeyCipher kek = _session.get(userCipher);
+      if (kek != null) {
+         return kek;
+      }
+      return decryptKeyEncryptionKey(userCipher);
    }
 
-   private synchronized AesKeyCipher getKeyEncryptionKey(KeyCipher userCipher) throws InvalidKeyCipher {
+   private AesKeyCipher decryptKeyEncryptionKey(KeyCipher userCipher) throws InvalidKeyCipher {
       byte[] rawKek = userCipher.decrypt(getEncryptedKeyEncryptionKey());
-      return new AesKeyCipher(rawKek);
+      AesKeyCipher kek = new AesKeyCipher(rawKek);
+      Arrays.fill(rawKek, (byte) 0);
+      return kek;
    }
 
    private byte[] getEncryptedKeyEncryptionKey() {
@@ -199,26 +544,157 @@ public class SecureKeyValueStore {
    }
 
    public SecureSubKeyValueStore getSubKeyStore(int forSubId){
-      return new SecureSubKeyValueStore(_backing, _randomSource, forSubId);
+      return new SecureSubKeyValueStore(_backing, _randomSource, forSubId, _session);
    }
 
-   public synchronized SecureSubKeyValueStore createNewSubKeyStore(){
-      int maxSubId = _backing.getMaxSubId();
+   public SecureSubKeyValueStore createNewSubKeyStore(){
+      Lock lock = _session.writeLock();
+      lock.lock();
+      try {
+         int maxSubId = _backing.getMaxSubId();
 
-      SecureSubKeyValueStore subKeyValueStore = new SecureSubKeyValueStore(_backing, _randomSource, maxSubId + 1);
+         SecureSubKeyValueStore subKeyValueStore = new SecureSubKeyValueStore(_backing, _randomSource, maxSubId + 1,
+               _session);
 
-      // make a default entry to reserve this subId - this constant id does not start with 1 or 2 - so it is safe
-      // that it wont collide with any other entry
-      subKeyValueStore.setValue(SUB_STORAGE_ID_BASE,new byte[]{1});
+         // make a default entry to reserve this subId - this constant id does not start with 1 or 2 - so it is safe
+         // that it wont collide with any other entry
+         subKeyValueStore.setValue(SUB_STORAGE_ID_BASE,new byte[]{1});
 
-      return subKeyValueStore;
+         return subKeyValueStore;
+      } finally {
+         lock.unlock();
+      }
    }
 
-   protected synchronized byte[] getValue(byte[] realId){
+   /**
+    * Read a value from the backing. Call with the read or the write lock held.
+    */
+   protected byte[] getValue(byte[] realId){
       return _backing.getValue(realId);
    }
 
-   protected synchronized void setValue(byte[] realId, byte[] value){
+   /**
+    * Write a value to the backing. Call with the write lock held.
+    */
+   protected void setValue(byte[] realId, byte[] value){
       _backing.setValue(realId, value);
    }
+
+   /**
+    * The lock shared by a store and its sub stores, and the key encryption key kept while the store is unlocked.
+    * <p/>
+    * Readers hold the read lock while they use the key encryption key, so it is only overwritten once nobody uses it.
+    * Starting and ending the session requires the write lock.
+    */
+   static class KekSession {
+      private final ReentrantReadWriteLock _lock = new ReentrantReadWriteLock();
+      private AesKeyCipher _kek;
+      private KeyCipher _userCipher;
+      private byte[] _userKeyBytes;
+      private long _idleTimeoutMillis;
+      private volatile long _lastUse;
+      private ScheduledFuture<?> _expiry;
+
+      Lock readLock() {
+         return _lock.readLock();
+      }
+
+      Lock writeLock() {
+         return _lock.writeLock();
+      }
+
+      void start(KeyCipher userCipher, AesKeyCipher kek, long idleTimeoutMillis) {
+         end();
+         _kek = kek;
+         _userCipher = userCipher;
+         if (userCipher instanceof AesKeyCipher) {
+            _userKeyBytes = BitUtils.copyByteArray(((AesKeyCipher) userCipher).getKeyBytes());
+         }
+         _idleTimeoutMillis = idleTimeoutMillis;
+         _lastUse = System.currentTimeMillis();
+         scheduleExpiry(idleTimeoutMillis);
+      }
+
+      void end() {
+         if (_expiry != null) {
+            _expiry.cancel(false);
+            _expiry = null;
+         }
+         if (_kek != null) {
+            _kek.destroy();
+            _kek = null;
+         }
+         if (_userKeyBytes != null) {
+            Arrays.fill(_userKeyBytes, (byte) 0);
+            _userKeyBytes = null;
+         }
+         _userCipher = null;
+      }
+
+      boolean isActive() {
+         return _kek != null && System.currentTimeMillis() - _lastUse < _idleTimeoutMillis;
+      }
+
+      /**
+       * Get the key encryption key if the session is active and was started with the same user key
+       *
+       * @return the key encryption key, or null
+       */
+      AesKeyCipher get(KeyCipher userCipher) {
+         if (!isActive() || !isSameUserKey(userCipher)) {
+            return null;
+         }
+         _lastUse = System.currentTimeMillis();
+         return _kek;
+      }
+
+      private boolean isSameUserKey(KeyCipher userCipher) {
+         if (userCipher == _userCipher) {
+            return true;
+         }
+         return _userKeyBytes != null && userCipher instanceof AesKeyCipher
+               && MessageDigest.isEqual(_userKeyBytes, ((AesKeyCipher) userCipher).getKeyBytes());
+      }
+
+      private void scheduleExpiry(long delayMillis) {
+         _expiry = ExpiryTimerHolder.TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+               expire();
+            }
+         }, delayMillis, TimeUnit.MILLISECONDS);
+      }
+
+      private void expire() {
+         _lock.writeLock().lock();
+         try {
+            if (_kek == null) {
+               return;
+            }
+            long idle = System.currentTimeMillis() - _lastUse;
+            if (idle >= _idleTimeoutMillis) {
+               end();
+            } else {
+               // Used in the meantime, check again when it would expire
+               scheduleExpiry(_idleTimeoutMillis - idle);
+            }
+         } finally {
+            _lock.writeLock().unlock();
+         }
+      }
+   }
+
+   private static class ExpiryTimerHolder {
+      private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactory() {
+               private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+               @Override
+               public Thread newThread(Runnable r) {
+                  Thread thread = delegate.newThread(r);
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+   }
 }
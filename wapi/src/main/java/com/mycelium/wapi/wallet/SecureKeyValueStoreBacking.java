@@ -16,10 +16,18 @@
 
 package com.mycelium.wapi.wallet;
 
+import java.util.List;
+
 /**
  * Backing for a {@link com.mycelium.wapi.wallet.SecureKeyValueStore}
  */
 public interface SecureKeyValueStoreBacking {
+   void beginTransaction();
+
+   void setTransactionSuccessful();
+
+   void endTransaction();
+
    /**
     * Get the plaintext value of a specified id.
     *
@@ -42,6 +50,18 @@ public interface SecureKeyValueStoreBacking {
 
    int getMaxSubId();
 
+   /**
+    * Get the IDs of all values stored without a subId
+    */
+   List<byte[]> getIds();
+
+   /**
+    * Get the IDs of all values stored under a subId
+    *
+    * @param subId the subId to list the values of
+    */
+   List<byte[]> getIds(int subId);
+
    void setValue(byte[] key, int subId, byte[] value);
 
    /**
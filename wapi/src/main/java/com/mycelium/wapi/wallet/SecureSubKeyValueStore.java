@@ -12,13 +12,19 @@ public class SecureSubKeyValueStore extends SecureKeyValueStore {
       this.subId = subId;
    }
 
+   SecureSubKeyValueStore(SecureKeyValueStoreBacking backing, RandomSource randomSource, int subId,
+                          KekSession session) {
+      super(backing, randomSource, session);
+      this.subId = subId;
+   }
+
    @Override
-   protected synchronized byte[] getValue(byte[] realId){
+   protected byte[] getValue(byte[] realId){
       return _backing.getValue(realId, subId);
    }
 
    @Override
-   protected synchronized void setValue(byte[] realId, byte[] value){
+   protected void setValue(byte[] realId, byte[] value){
       _backing.setValue(realId, subId, value);
    }
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2013, 2014 Megion Research & Development GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mycelium.wapi.wallet;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.util.ByteReader;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionEx;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Parsed transactions by transaction id, shared by all accounts of a wallet
+ * manager so that a transaction is parsed once per sync rather than by every
+ * step of it.
+ * <p>
+ * The cache is bounded by the size of the serialized transactions and evicts
+ * the least recently used ones first. The parsed transactions take a multiple
+ * of that on the heap. Cached transactions are shared and must not be
+ * modified.
+ */
+public class TransactionCache {
+   public static final long DEFAULT_MAX_BYTES = 1024 * 1024;
+
+   private final Cache<Sha256Hash, Transaction> _cache;
+
+   public TransactionCache() {
+      this(DEFAULT_MAX_BYTES);
+   }
+
+   /**
+    * @param maxBytes the maximum total size of the serialized transactions
+    *                 that are cached
+    */
+   public TransactionCache(long maxBytes) {
+      // Accounts are synchronized one at a time, and a single segment keeps
+      // the eviction order and the bound exact
+      _cache = CacheBuilder.newBuilder()
+            .concurrencyLevel(1)
+            .maximumWeight(maxBytes)
+            .weigher(new Weigher<Sha256Hash, Transaction>() {
+               @Override
+               public int weigh(Sha256Hash txid, Transaction transaction) {
+                  return transaction.getTxRawSize();
+               }
+            })
+            .recordStats()
+            .build();
+   }
+
+   /**
+    * Get the parsed transaction, parsing it if it is not cached
+    *
+    * @throws TransactionParsingException if the transaction cannot be parsed
+    */
+   public Transaction get(final TransactionEx tex) throws TransactionParsingException {
+      try {
+         return _cache.get(tex.txid, new Callable<Transaction>() {
+            @Override
+            public Transaction call() throws TransactionParsingException {
+               return Transaction.fromByteReader(new ByteReader(tex.binary), tex.txid);
+            }
+         });
+      } catch (ExecutionException e) {
+         throw (TransactionParsingException) e.getCause();
+      } catch (UncheckedExecutionException e) {
+         throw new TransactionParsingException(e.getCause().getMessage(), e);
+      }
+   }
+
+   /**
+    * Get the parsed transaction, parsing it if it is not cached
+    *
+    * @return the transaction or null if it is null or cannot be parsed
+    */
+   public Transaction getOrNull(TransactionEx tex) {
+      if (tex == null) {
+         return null;
+      }
+      try {
+         return get(tex);
+      } catch (TransactionParsingException e) {
+         return null;
+      }
+   }
+
+   /**
+    * Drop a transaction, for instance when it has been deleted or has been
+    * replaced after a reorg
+    */
+   public void invalidate(Sha256Hash txid) {
+      _cache.invalidate(txid);
+   }
+
+   public void invalidateAll() {
+      _cache.invalidateAll();
+   }
+
+   /**
+    * Get the hit and miss counts since the cache was created. A miss includes
+    * the time for parsing the transaction.
+    */
+   public CacheStats getStats() {
+      return _cache.stats();
+   }
+
+   public double getHitRate() {
+      return _cache.stats().hitRate();
+   }
+
+   public long size() {
+      return _cache.size();
+   }
+}
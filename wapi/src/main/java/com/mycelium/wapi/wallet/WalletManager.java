@@ -67,6 +67,7 @@ public class WalletManager {
    private State _state;
    private Thread _synchronizationThread;
    private AccountEventManager _accountEventManager;
+   private final TransactionCache _transactionCache = new TransactionCache();
    private NetworkParameters _network;
    private Wapi _wapi;
    private WapiLogger _logger;
@@ -661,6 +662,7 @@ public class WalletManager {
    public void addAccount(AbstractAccount account) {
       synchronized (_walletAccounts) {
          account.setEventHandler(_accountEventManager);
+         account.setTransactionCache(_transactionCache);
          _walletAccounts.put(account.getId(), account);
          _logger.logInfo("Account Added: " + account.getId());
       }
@@ -1030,6 +1032,14 @@ public class WalletManager {
       return _secureKeyValueStore;
    }
 
+   /**
+    * Get the cache of parsed transactions that is shared by all accounts, for
+    * instance to look at its hit rate
+    */
+   public TransactionCache getTransactionCache() {
+      return _transactionCache;
+   }
+
    public IdentityAccountKeyManager getIdentityAccountKeyManager(KeyCipher cipher) throws InvalidKeyCipher {
       if (null != _identityAccountKeyManager) {
          return _identityAccountKeyManager;
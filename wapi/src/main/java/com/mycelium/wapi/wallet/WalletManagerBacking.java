@@ -23,12 +23,6 @@ import java.util.List;
 import java.util.UUID;
 
 public interface WalletManagerBacking extends SecureKeyValueStoreBacking {
-   void beginTransaction();
-
-   void setTransactionSuccessful();
-
-   void endTransaction();
-
    void createBip44AccountContext(Bip44AccountContext context);
 
    List<Bip44AccountContext> loadBip44AccountContexts();
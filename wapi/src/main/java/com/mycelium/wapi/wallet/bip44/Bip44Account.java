@@ -196,12 +196,15 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
          }
          addressMap = _externalAddresses;
       }
-      while (index >= 0) {
-         if (addressMap.inverse().containsKey(index)) {
-            return;
-         }
-         addressMap.put(Preconditions.checkNotNull(_keyManager.getAddress(isChangeChain, index)), index);
-         index--;
+      // Find the range of missing indexes below the look ahead index
+      int fromIndex = index + 1;
+      while (fromIndex > 0 && !addressMap.inverse().containsKey(fromIndex - 1)) {
+         fromIndex--;
+      }
+      List<HdDerivedAddress> addresses = _keyManager.getAddresses(isChangeChain, fromIndex, index + 1);
+      // Add them from the top, in the same order as they were added one by one
+      for (int i = addresses.size() - 1; i >= 0; i--) {
+         addressMap.put(Preconditions.checkNotNull(addresses.get(i)), fromIndex + i);
       }
    }
 
@@ -249,11 +252,7 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
 
    private List<Address> getAddressRange(boolean isChangeChain, int fromIndex, int toIndex){
       fromIndex = Math.max(0, fromIndex); // clip at zero
-      ArrayList<Address> ret = new ArrayList<Address>(toIndex - fromIndex + 1);
-      for(int i=fromIndex; i<=toIndex; i++){
-         ret.add(_keyManager.getAddress(isChangeChain, i));
-      }
-      return ret;
+      return new ArrayList<Address>(_keyManager.getAddresses(isChangeChain, fromIndex, toIndex + 1));
    }
 
    @Override
@@ -512,6 +511,11 @@ public class Bip44Account extends AbstractAccount implements ExportableAccount {
       return _keyManager.getPrivateKey(indexLookUp.isChange(), indexLookUp.getIndex(), cipher);
    }
 
+   @Override
+   protected SecureKeyValueStore getSecureKeyValueStore() {
+      return _keyManager._secureKeyValueStore;
+   }
+
    @Override
    protected PublicKey getPublicKeyForAddress(Address address) {
       IndexLookUp indexLookUp = IndexLookUp.forAddress(address, _externalAddresses, _internalAddresses);
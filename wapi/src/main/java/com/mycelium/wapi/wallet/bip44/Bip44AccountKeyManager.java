@@ -32,7 +32,15 @@ import com.mycelium.wapi.wallet.KeyCipher;
 import com.mycelium.wapi.wallet.SecureKeyValueStore;
 import com.mycelium.wapi.wallet.SecureSubKeyValueStore;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Management functions for keys associated with a BIP44 account.
@@ -52,6 +60,8 @@ public class Bip44AccountKeyManager {
    protected static final int BIP44_PURPOSE = 0x8000002c;
    protected static final int BIP44_PRODNET_COIN_TYPE = 0x80000000;
    protected static final int BIP44_TESTNET_COIN_TYPE = 0x80000001;
+   // Up to this many missing addresses are derived in one go with a single shared inversion
+   private static final int DERIVATION_CHUNK_SIZE = 64;
    protected int _accountIndex;
    protected final SecureKeyValueStore _secureKeyValueStore;
 
@@ -165,12 +175,7 @@ public class Bip44AccountKeyManager {
       // See if we have it in the store
       byte[] id = getLeafNodeId(_network, _accountIndex, isChangeChain, index, false);
       byte[] addressNodeBytes = _secureKeyValueStore.getPlaintextValue(id);
-      final Bip44Address path = HdKeyPath
-            .BIP44
-            .getCoinTypeBitcoin(_network.isTestnet())
-            .getAccount(_accountIndex)
-            .getChain(!isChangeChain)
-            .getAddress(index);
+      final Bip44Address path = getAddressPath(isChangeChain, index);
 
       if (addressNodeBytes != null) {
          // We have it already, no need to calculate it
@@ -186,6 +191,172 @@ public class Bip44AccountKeyManager {
       return address;
    }
 
+   /**
+    * Get the addresses for all indexes from fromIndex (inclusive) to toIndex
+    * (exclusive) of a chain.
+    * <p>
+    * Addresses that are not in the store yet are calculated from their stored
+    * public leaf node, or derived with {@link HdKeyNode#createChildNodes(int, int)}
+    * if there is none. Large ranges are split in chunks which are derived in
+    * parallel on the derivation executor, and all new leaf nodes and addresses
+    * are written to the store in one batch.
+    *
+    * @return the addresses in index order
+    */
+   public List<HdDerivedAddress> getAddresses(boolean isChangeChain, int fromIndex, int toIndex) {
+      Preconditions.checkArgument(fromIndex >= 0 && fromIndex <= toIndex);
+      HdKeyNode chainNode = isChangeChain ? _publicChangeChainRoot : _publicExternalChainRoot;
+      HdDerivedAddress[] addresses = new HdDerivedAddress[toIndex - fromIndex];
+      HdKeyNode[] publicLeafNodes = new HdKeyNode[toIndex - fromIndex];
+      // Whether the public leaf node has to be stored as well
+      boolean[] derived = new boolean[toIndex - fromIndex];
+      List<int[]> ranges = new ArrayList<int[]>();
+      int missing = 0;
+      int runStart = -1;
+      for (int index = fromIndex; index <= toIndex; index++) {
+         if (index < toIndex) {
+            byte[] addressNodeBytes = _secureKeyValueStore.getPlaintextValue(getLeafNodeId(_network, _accountIndex, isChangeChain, index, false));
+            if (addressNodeBytes != null) {
+               addresses[index - fromIndex] = bytesToAddress(addressNodeBytes, getAddressPath(isChangeChain, index));
+            } else {
+               missing++;
+               HdKeyNode publicLeafNode = getStoredPublicLeafNode(isChangeChain, index);
+               if (publicLeafNode == null) {
+                  // Needs to be derived, extend the current run
+                  derived[index - fromIndex] = true;
+                  if (runStart == -1) {
+                     runStart = index;
+                  }
+                  continue;
+               }
+               publicLeafNodes[index - fromIndex] = publicLeafNode;
+            }
+         }
+         if (runStart != -1) {
+            // The run of leaf nodes to derive ends here, split it in chunks
+            for (int from = runStart; from < index; from += DERIVATION_CHUNK_SIZE) {
+               ranges.add(new int[]{from, Math.min(index, from + DERIVATION_CHUNK_SIZE)});
+            }
+            runStart = -1;
+         }
+      }
+      if (missing == 0) {
+         return Arrays.asList(addresses);
+      }
+
+      deriveRanges(chainNode, ranges, publicLeafNodes, fromIndex);
+
+      // Store all new leaf nodes and addresses for next time, like getPublicKey and getAddress do
+      List<byte[]> ids = new ArrayList<byte[]>(missing * 2);
+      List<byte[]> values = new ArrayList<byte[]>(missing * 2);
+      for (int index = fromIndex; index < toIndex; index++) {
+         HdKeyNode publicLeafNode = publicLeafNodes[index - fromIndex];
+         if (publicLeafNode == null) {
+            continue;
+         }
+         HdDerivedAddress address = new HdDerivedAddress(publicLeafNode.getPublicKey().toAddress(_network), getAddressPath(isChangeChain, index));
+         if (derived[index - fromIndex]) {
+            ids.add(getLeafNodeId(_network, _accountIndex, isChangeChain, index, true));
+            values.add(publicLeafNode.toCustomByteFormat());
+         }
+         ids.add(getLeafNodeId(_network, _accountIndex, isChangeChain, index, false));
+         values.add(addressToBytes(address));
+         addresses[index - fromIndex] = address;
+      }
+      _secureKeyValueStore.storePlaintextValues(ids, values);
+      return Arrays.asList(addresses);
+   }
+
+   private HdKeyNode getStoredPublicLeafNode(boolean isChangeChain, int index) {
+      byte[] publicLeafNodeBytes = _secureKeyValueStore.getPlaintextValue(getLeafNodeId(_network, _accountIndex, isChangeChain, index, true));
+      if (publicLeafNodeBytes == null) {
+         return null;
+      }
+      try {
+         return HdKeyNode.fromCustomByteformat(publicLeafNodeBytes);
+      } catch (ByteReader.InsufficientBytesException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Derive the public leaf nodes of the ranges, each of which has at most
+    * DERIVATION_CHUNK_SIZE indexes. A single range is derived on the calling
+    * thread, more are handed to the derivation executor.
+    */
+   private static void deriveRanges(final HdKeyNode chainNode, List<int[]> ranges, final HdKeyNode[] result,
+                                    final int offset) {
+      if (ranges.size() <= 1) {
+         for (int[] range : ranges) {
+            deriveRange(chainNode, range[0], range[1], result, offset);
+         }
+         return;
+      }
+      List<Future<?>> futures = new ArrayList<Future<?>>(ranges.size());
+      for (final int[] range : ranges) {
+         futures.add(getDerivationExecutor().submit(new Runnable() {
+            @Override
+            public void run() {
+               deriveRange(chainNode, range[0], range[1], result, offset);
+            }
+         }));
+      }
+      try {
+         for (Future<?> future : futures) {
+            future.get();
+         }
+      } catch (InterruptedException e) {
+         for (Future<?> future : futures) {
+            future.cancel(true);
+         }
+         Thread.currentThread().interrupt();
+         throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+         if (e.getCause() instanceof RuntimeException) {
+            throw (RuntimeException) e.getCause();
+         }
+         throw new RuntimeException(e.getCause());
+      }
+   }
+
+   private static void deriveRange(HdKeyNode chainNode, int from, int to, HdKeyNode[] result, int offset) {
+      List<HdKeyNode> nodes = chainNode.createChildNodes(from, to);
+      for (int i = 0; i < nodes.size(); i++) {
+         result[from - offset + i] = nodes.get(i);
+      }
+   }
+
+   /**
+    * Get the executor used for deriving large ranges of addresses. It is shared by all key managers and has one
+    * daemon thread per available processor.
+    */
+   protected static ExecutorService getDerivationExecutor() {
+      return DerivationExecutorHolder.EXECUTOR;
+   }
+
+   private static class DerivationExecutorHolder {
+      private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+               private final ThreadFactory delegate = Executors.defaultThreadFactory();
+
+               @Override
+               public Thread newThread(Runnable r) {
+                  Thread thread = delegate.newThread(r);
+                  thread.setDaemon(true);
+                  return thread;
+               }
+            });
+   }
+
+   private Bip44Address getAddressPath(boolean isChangeChain, int index) {
+      return HdKeyPath
+            .BIP44
+            .getCoinTypeBitcoin(_network.isTestnet())
+            .getAccount(_accountIndex)
+            .getChain(!isChangeChain)
+            .getAddress(index);
+   }
+
    protected static byte[] getAccountNodeId(NetworkParameters network, int accountIndex) {
       // Create a compact unique account ID
       byte[] id = new byte[1 + 1 + 4];
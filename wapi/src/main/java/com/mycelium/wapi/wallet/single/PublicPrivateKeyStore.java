@@ -34,6 +34,10 @@ public class PublicPrivateKeyStore {
       _secureStorage = secureStorage;
    }
 
+   SecureKeyValueStore getSecureStorage() {
+      return _secureStorage;
+   }
+
    public boolean isValidEncryptionKey(KeyCipher userCipher) {
       return _secureStorage.isValidEncryptionKey(userCipher);
    }
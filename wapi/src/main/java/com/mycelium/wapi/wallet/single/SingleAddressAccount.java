@@ -254,6 +254,11 @@ public class SingleAddressAccount extends AbstractAccount implements ExportableA
       }
    }
 
+   @Override
+   protected SecureKeyValueStore getSecureKeyValueStore() {
+      return _keyStore.getSecureStorage();
+   }
+
    @Override
    protected PublicKey getPublicKeyForAddress(Address address) {
       if (getAddress().equals(address)) {
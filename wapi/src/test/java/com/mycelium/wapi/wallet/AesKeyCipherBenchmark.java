@@ -0,0 +1,61 @@
+package com.mycelium.wapi.wallet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decryption latency of {@link AesKeyCipher} for a private key and for
+ * backup sized payloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AesKeyCipherBenchmark {
+
+   @Param({"32", "4096", "65536"})
+   public int payloadSize;
+
+   private AesKeyCipher cipher;
+   private byte[] payload;
+   private byte[] encrypted;
+
+   @Setup
+   public void setup() {
+      cipher = new AesKeyCipher("benchmark");
+      payload = new byte[payloadSize];
+      new Random(1).nextBytes(payload);
+      encrypted = cipher.encrypt(payload);
+   }
+
+   @Benchmark
+   public byte[] decrypt() throws KeyCipher.InvalidKeyCipher {
+      return cipher.decrypt(encrypted);
+   }
+
+   @Benchmark
+   public byte[] encrypt() {
+      return cipher.encrypt(payload);
+   }
+
+   public static void main(String[] args) throws RunnerException {
+      new Runner(new OptionsBuilder().include(AesKeyCipherBenchmark.class.getSimpleName()).build()).run();
+   }
+}
@@ -0,0 +1,79 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.util.HashUtils;
+import com.mrd.bitlib.util.HexUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class AesKeyCipherTest {
+
+   private static byte[] pattern(int length) {
+      byte[] data = new byte[length];
+      for (int i = 0; i < length; i++) {
+         data[i] = (byte) (i * 7);
+      }
+      return data;
+   }
+
+   @Test
+   public void encryptKnownValues() throws KeyCipher.InvalidKeyCipher {
+      // Produced by the block by block implementation this replaced
+      AesKeyCipher cipher = AesKeyCipher.defaultKeyCipher();
+      byte[] encrypted = cipher.encrypt("Mycelium".getBytes());
+      assertEquals("60f8274c7fbeac2b9a94d729616a9ba002d286042dac99084441cf2a9a9faad4", HexUtils.toHex(encrypted));
+      assertArrayEquals("Mycelium".getBytes(), cipher.decrypt(encrypted));
+
+      // Large enough for the platform cipher
+      encrypted = cipher.encrypt(pattern(5000));
+      assertEquals("9a4a9551436612cc15e29cac7d1f8341818d3c47048f46b82870fa172a4a2d70",
+            HashUtils.sha256(encrypted).toHex());
+      assertArrayEquals(pattern(5000), cipher.decrypt(encrypted));
+
+      encrypted = new AesKeyCipher("password").encrypt(pattern(300));
+      assertEquals("8fc807047fe61a197d57f2ae7268fbcaa0c54d28513b06e76d2072fd0157c934",
+            HashUtils.sha256(encrypted).toHex());
+   }
+
+   @Test
+   public void encryptAndDecrypt() throws KeyCipher.InvalidKeyCipher {
+      Random random = new Random(1);
+      AesKeyCipher cipher = new AesKeyCipher("password");
+      // All lengths around the block size, the length prefix sizes and the
+      // platform cipher threshold
+      int[] lengths = {0, 1, 14, 15, 16, 17, 31, 32, 252, 253, 254, 1000, 1007, 1008, 1024, 4095, 4096, 10000, 70000};
+      for (int length : lengths) {
+         byte[] data = new byte[length];
+         random.nextBytes(data);
+         byte[] encrypted = cipher.encrypt(data);
+         assertEquals(0, encrypted.length % 16);
+         assertArrayEquals(data, cipher.decrypt(encrypted));
+      }
+   }
+
+   @Test
+   public void failOnWrongKeyOrCorruption() {
+      AesKeyCipher cipher = new AesKeyCipher("password");
+      for (int length : new int[]{32, 5000}) {
+         byte[] encrypted = cipher.encrypt(pattern(length));
+         expectInvalid(new AesKeyCipher("wrong"), encrypted);
+         byte[] corrupted = encrypted.clone();
+         corrupted[corrupted.length - 20] ^= 1;
+         expectInvalid(cipher, corrupted);
+      }
+      expectInvalid(cipher, new byte[16]);
+   }
+
+   private static void expectInvalid(KeyCipher cipher, byte[] encrypted) {
+      try {
+         cipher.decrypt(encrypted);
+         fail();
+      } catch (KeyCipher.InvalidKeyCipher e) {
+         // expected
+      }
+   }
+}
@@ -6,8 +6,16 @@ import com.mrd.bitlib.util.HexUtils;
 import org.junit.Test;
 
 import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class SecureKeyValueStoreTest {
 
@@ -45,4 +53,142 @@ public class SecureKeyValueStoreTest {
       assertTrue(BitUtils.areEqual(result, VALUE_1));
    }
 
+   @Test
+   public void storeAndRetrievePlaintextBatch() throws KeyCipher.InvalidKeyCipher {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      SecureSubKeyValueStore subStore = store.createNewSubKeyStore();
+      byte[] id2 = HexUtils.toBytes("0f0e0d0c0b0a09080706050403020100");
+      subStore.storePlaintextValues(Arrays.asList(ID_1, id2), Arrays.asList(VALUE_1, ID_1));
+      assertTrue(BitUtils.areEqual(subStore.getPlaintextValue(ID_1), VALUE_1));
+      assertTrue(BitUtils.areEqual(subStore.getPlaintextValue(id2), ID_1));
+      assertNull(store.getPlaintextValue(ID_1));
+   }
+
+   @Test
+   public void unlockAndLock() throws KeyCipher.InvalidKeyCipher {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.encryptAndStoreValue(ID_1, VALUE_1, AesKeyCipher.defaultKeyCipher());
+      assertFalse(store.isUnlocked());
+      store.unlock(AesKeyCipher.defaultKeyCipher());
+      assertTrue(store.isUnlocked());
+      // Another instance with the same key uses the session
+      assertTrue(BitUtils.areEqual(store.getEncryptedValue(ID_1, AesKeyCipher.defaultKeyCipher()), VALUE_1));
+      store.lock();
+      assertFalse(store.isUnlocked());
+      assertTrue(BitUtils.areEqual(store.getEncryptedValue(ID_1, AesKeyCipher.defaultKeyCipher()), VALUE_1));
+   }
+
+   @Test
+   public void wrongCipherWhileUnlocked() throws KeyCipher.InvalidKeyCipher {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.encryptAndStoreValue(ID_1, VALUE_1, AesKeyCipher.defaultKeyCipher());
+      store.unlock(AesKeyCipher.defaultKeyCipher());
+      AesKeyCipher wrong = new AesKeyCipher(HexUtils.toBytes("00112233445566778899aabbccddeeff"));
+      assertFalse(store.isValidEncryptionKey(wrong));
+      try {
+         store.getEncryptedValue(ID_1, wrong);
+         fail("wrong cipher accepted");
+      } catch (KeyCipher.InvalidKeyCipher e) {
+         // expected
+      }
+      try {
+         store.unlock(wrong);
+         fail("wrong cipher accepted");
+      } catch (KeyCipher.InvalidKeyCipher e) {
+         // expected
+      }
+      store.lock();
+   }
+
+   @Test
+   public void unlockExpires() throws KeyCipher.InvalidKeyCipher, InterruptedException {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.unlock(AesKeyCipher.defaultKeyCipher(), 50);
+      assertTrue(store.isUnlocked());
+      Thread.sleep(200);
+      assertFalse(store.isUnlocked());
+   }
+
+   @Test
+   public void subStoresShareSession() throws KeyCipher.InvalidKeyCipher {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      SecureSubKeyValueStore subStore = store.createNewSubKeyStore();
+      subStore.encryptAndStoreValue(ID_1, VALUE_1, AesKeyCipher.defaultKeyCipher());
+      store.unlock(AesKeyCipher.defaultKeyCipher());
+      assertTrue(subStore.isUnlocked());
+      assertTrue(store.getSubKeyStore(subStore.getSubId()).isUnlocked());
+      subStore.lock();
+      assertFalse(store.isUnlocked());
+   }
+
+   @Test
+   public void replaceEncryptionKeyEndsSession() throws KeyCipher.InvalidKeyCipher {
+      SecureKeyValueStore store = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), new MyRandomSource());
+      store.encryptAndStoreValue(ID_1, VALUE_1, AesKeyCipher.defaultKeyCipher());
+      store.unlock(AesKeyCipher.defaultKeyCipher());
+      AesKeyCipher newCipher = new AesKeyCipher(HexUtils.toBytes("00112233445566778899aabbccddeeff"));
+      store.replaceEncryptionKey(AesKeyCipher.defaultKeyCipher(), newCipher);
+      assertFalse(store.isUnlocked());
+      assertFalse(store.isValidEncryptionKey(AesKeyCipher.defaultKeyCipher()));
+      assertTrue(BitUtils.areEqual(store.getEncryptedValue(ID_1, newCipher), VALUE_1));
+   }
+
+   @Test
+   public void rotateKeyEncryptionKey() throws KeyCipher.InvalidKeyCipher {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new MyRandomSource());
+      SecureSubKeyValueStore subStore = store.createNewSubKeyStore();
+      KeyCipher cipher = AesKeyCipher.defaultKeyCipher();
+      List<byte[]> ids = new ArrayList<byte[]>();
+      for (int i = 0; i < 100; i++) {
+         byte[] id = new byte[]{(byte) i};
+         ids.add(id);
+         store.encryptAndStoreValue(id, VALUE_1, cipher);
+         subStore.encryptAndStoreValue(id, id, cipher);
+      }
+      store.storePlaintextValue(ID_1, VALUE_1);
+      byte[] oldCiphertext = backing.getValue(store.getRealId(ids.get(0), true));
+
+      AesKeyCipher newCipher = new AesKeyCipher(HexUtils.toBytes("00112233445566778899aabbccddeeff"));
+      ExecutorService executor = Executors.newFixedThreadPool(3);
+      try {
+         store.rotateKeyEncryptionKey(cipher, newCipher, executor);
+      } finally {
+         executor.shutdown();
+      }
+
+      assertFalse(store.isValidEncryptionKey(cipher));
+      assertFalse(Arrays.equals(oldCiphertext, backing.getValue(store.getRealId(ids.get(0), true))));
+      for (byte[] id : ids) {
+         assertTrue(BitUtils.areEqual(store.getEncryptedValue(id, newCipher), VALUE_1));
+         assertTrue(BitUtils.areEqual(subStore.getEncryptedValue(id, newCipher), id));
+      }
+      assertTrue(BitUtils.areEqual(store.getPlaintextValue(ID_1), VALUE_1));
+
+      // Keep the user key and only replace the key encryption key
+      store.rotateKeyEncryptionKey(newCipher, newCipher);
+      assertTrue(BitUtils.areEqual(subStore.getEncryptedValue(ids.get(5), newCipher), ids.get(5)));
+   }
+
+   @Test
+   public void rotateKeyEncryptionKeyFailsWithoutChanges() throws KeyCipher.InvalidKeyCipher {
+      InMemoryWalletManagerBacking backing = new InMemoryWalletManagerBacking();
+      SecureKeyValueStore store = new SecureKeyValueStore(backing, new MyRandomSource());
+      KeyCipher cipher = AesKeyCipher.defaultKeyCipher();
+      store.encryptAndStoreValue(ID_1, VALUE_1, cipher);
+      byte[] corruptId = new byte[]{1};
+      store.encryptAndStoreValue(corruptId, VALUE_1, cipher);
+      backing.setValue(store.getRealId(corruptId, true), new byte[32]);
+
+      AesKeyCipher newCipher = new AesKeyCipher(HexUtils.toBytes("00112233445566778899aabbccddeeff"));
+      try {
+         store.rotateKeyEncryptionKey(cipher, newCipher);
+         fail("corrupted value re-encrypted");
+      } catch (KeyCipher.InvalidKeyCipher e) {
+         // expected
+      }
+      assertTrue(store.isValidEncryptionKey(cipher));
+      assertTrue(BitUtils.areEqual(store.getEncryptedValue(ID_1, cipher), VALUE_1));
+   }
+
 }
@@ -0,0 +1,72 @@
+package com.mycelium.wapi.wallet;
+
+import com.mrd.bitlib.model.Transaction;
+import com.mrd.bitlib.model.Transaction.TransactionParsingException;
+import com.mrd.bitlib.util.HexUtils;
+import com.mrd.bitlib.util.Sha256Hash;
+import com.mycelium.wapi.model.TransactionEx;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+public class TransactionCacheTest {
+   private static final String TX_HEX = "010000000190F55E38240AB795F7E11DF5E272D699B525C0E50AF69733FDA1B583C4273C23000000008A47304402206A945B64AE1478F1ED1374D3F1BD0B9DB66B424804EFB3CE59B38293A25F5CAF022037695FE1B04A07569E0F6C019AA406492294151F3A0E88CAE2C53ED713D5C6D50141048FD4539156A8AD9EF7E885CEAD013BF5377DE67E05AA34B662C6431F684C1D61D83B690FB8FEEEB69C305B4043F8D3DBB4F2847FEAF767E8EAC1E51E9C4425B2FFFFFFFF025E31920B000000001976A914152E9F6874A0768ADA32F1C8C5FC80337FD7EE5988AC00E1F505000000001976A914D3F9702528B302DBADCBBE26E91001C2E453814088ACB4270600";
+
+   // The same transaction with a different lock time, so it has another id
+   private static TransactionEx tex(int lockTime) {
+      String hex = TX_HEX.substring(0, TX_HEX.length() - 8) + HexUtils.toHex(new byte[]{(byte) lockTime, 0, 0, 0});
+      return TransactionEx.fromUnconfirmedTransaction(HexUtils.toBytes(hex));
+   }
+
+   @Test
+   public void parsesOnce() throws TransactionParsingException {
+      TransactionCache cache = new TransactionCache();
+      TransactionEx tex = tex(1);
+      Transaction first = cache.get(tex);
+      assertEquals(tex.txid, first.getHash());
+      assertSame(first, cache.get(tex));
+      assertEquals(1, cache.getStats().hitCount());
+      assertEquals(1, cache.getStats().missCount());
+      assertEquals(0.5, cache.getHitRate(), 0);
+   }
+
+   @Test
+   public void invalidate() throws TransactionParsingException {
+      TransactionCache cache = new TransactionCache();
+      TransactionEx tex = tex(1);
+      Transaction first = cache.get(tex);
+      cache.invalidate(tex.txid);
+      assertEquals(0, cache.size());
+      assertNotSame(first, cache.get(tex));
+      assertEquals(2, cache.getStats().missCount());
+   }
+
+   @Test
+   public void boundedBySize() throws TransactionParsingException {
+      int txSize = HexUtils.toBytes(TX_HEX).length;
+      TransactionCache cache = new TransactionCache(txSize * 3);
+      for (int i = 0; i < 10; i++) {
+         cache.get(tex(i));
+      }
+      assertEquals(3, cache.size());
+   }
+
+   @Test
+   public void parsingFailure() {
+      TransactionCache cache = new TransactionCache();
+      TransactionEx broken = new TransactionEx(Sha256Hash.ZERO_HASH, -1, 0, new byte[]{1, 0, 0, 0, 5});
+      try {
+         cache.get(broken);
+         fail("parsed a truncated transaction");
+      } catch (TransactionParsingException e) {
+         // expected
+      }
+      assertNull(cache.getOrNull(broken));
+      assertNull(cache.getOrNull(null));
+      assertEquals(0, cache.size());
+   }
+}
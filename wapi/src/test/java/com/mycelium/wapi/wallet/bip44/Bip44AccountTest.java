@@ -1,13 +1,16 @@
 package com.mycelium.wapi.wallet.bip44;
 
 import com.mrd.bitlib.crypto.Bip39;
+import com.mrd.bitlib.crypto.HdKeyNode;
 import com.mrd.bitlib.crypto.RandomSource;
 import com.mrd.bitlib.model.Address;
+import com.mrd.bitlib.model.HdDerivedAddress;
 import com.mrd.bitlib.model.NetworkParameters;
 import com.mycelium.wapi.api.Wapi;
 import com.mycelium.WapiLogger;
 import com.mycelium.wapi.wallet.*;
 import org.junit.Test;
+import java.util.List;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
@@ -48,4 +51,35 @@ public class Bip44AccountTest {
       assertEquals(Address.fromString(MASTER_SEED_512_A0_R0_ADDRESS), account1.getReceivingAddress().get());
       assertEquals(Address.fromString(MASTER_SEED_512_A0_C0_ADDRESS), account1.getChangeAddress());
    }
+
+   /**
+    * Test that deriving a range of addresses, in parallel chunks, gives the same addresses as deriving them one by one
+    */
+   @Test
+   public void addressRangeTest() throws KeyCipher.InvalidKeyCipher {
+      RandomSource fakeRandomSource = mock(RandomSource.class);
+      KeyCipher cipher = AesKeyCipher.defaultKeyCipher();
+      Bip39.MasterSeed masterSeed = Bip39.generateSeedFromWordList(MASTER_SEED_WORDS.split(" "), "");
+      HdKeyNode root = HdKeyNode.fromSeed(masterSeed.getBip32Seed());
+
+      SecureKeyValueStore rangeStore = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), fakeRandomSource);
+      Bip44AccountKeyManager rangeKeyManager = Bip44AccountKeyManager.createNew(root, NetworkParameters.productionNetwork, 0, rangeStore, cipher);
+      SecureKeyValueStore singleStore = new SecureKeyValueStore(new InMemoryWalletManagerBacking(), fakeRandomSource);
+      Bip44AccountKeyManager singleKeyManager = Bip44AccountKeyManager.createNew(root, NetworkParameters.productionNetwork, 0, singleStore, cipher);
+
+      // Leave a gap of already stored addresses in the middle of the range
+      rangeKeyManager.getAddress(false, 7);
+      rangeKeyManager.getAddress(false, 8);
+      // and public leaf nodes stored without their address
+      rangeKeyManager.getPublicKey(false, 20);
+      rangeKeyManager.getPublicKey(false, 150);
+      List<HdDerivedAddress> addresses = rangeKeyManager.getAddresses(false, 0, 200);
+      assertEquals(200, addresses.size());
+      assertEquals(Address.fromString(MASTER_SEED_512_A0_R0_ADDRESS), addresses.get(0));
+      for (int i = 0; i < addresses.size(); i++) {
+         assertEquals(singleKeyManager.getAddress(false, i), addresses.get(i));
+         assertEquals(singleKeyManager.getPublicKey(false, i), rangeKeyManager.getPublicKey(false, i));
+      }
+      assertEquals(Address.fromString(MASTER_SEED_512_A0_C0_ADDRESS), rangeKeyManager.getAddresses(true, 0, 1).get(0));
+   }
 }